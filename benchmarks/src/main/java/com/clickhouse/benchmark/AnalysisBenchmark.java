@@ -0,0 +1,139 @@
+package com.clickhouse.benchmark;
+
+import com.clickhouse.parser.AstParser;
+import com.clickhouse.parser.AstVisitor;
+import com.clickhouse.parser.AstWalker;
+import com.clickhouse.parser.DataLineageDetector;
+import com.clickhouse.parser.MetadataService;
+import com.clickhouse.parser.ReferredPartitionsDetector;
+import com.clickhouse.parser.ReferredTablesDetector;
+import com.clickhouse.parser.ast.INode;
+import com.clickhouse.parser.ast.Identifier;
+import com.clickhouse.parser.ast.SelectUnionQuery;
+import com.clickhouse.visitor.ClickHouseSqlBuilder;
+import com.clickhouse.visitor.ComparedResult;
+import com.clickhouse.visitor.GlobalJoinAstRewriter;
+import com.clickhouse.visitor.StreamingSqlRenderer;
+import com.clickhouse.visitor.WhereClauseComparator;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detectors, comparator and renderers over already parsed ASTs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AnalysisBenchmark {
+
+    private static final MetadataService METADATA_SERVICE = new MetadataService() {
+        @Override
+        public String getPartitionColName(String tableFullName) {
+            return "dt";
+        }
+
+        @Override
+        public List<String> getTables() {
+            return Collections.emptyList();
+        }
+    };
+
+    @Param({"SMALL", "MEDIUM", "HUGE_IN", "DEEP_NESTING", "WIDE_UNION"})
+    private Corpus corpus;
+
+    private SelectUnionQuery ast;
+
+    private SelectUnionQuery shiftedAst;
+
+    private INode insertSelectAst;
+
+    private final AstWalker astWalker = new AstWalker();
+
+    @Setup
+    public void setUp() {
+        AstParser astParser = new AstParser();
+        ast = (SelectUnionQuery) astParser.parse(corpus.sql());
+        shiftedAst = (SelectUnionQuery) astParser.parse(corpus.shiftedSql());
+        insertSelectAst = (INode) astParser.parse(Corpus.INSERT_SELECT.sql());
+    }
+
+    @Benchmark
+    public List<String> referredTables() {
+        return new ReferredTablesDetector().searchTables(ast);
+    }
+
+    @Benchmark
+    public List<String> referredPartitions() {
+        return new ReferredPartitionsDetector("2021-11-02", "127.0.0.1", METADATA_SERVICE).searchTablePartitions(ast);
+    }
+
+    @Benchmark
+    public Object dataLineage() {
+        DataLineageDetector dataLineageDetector = new DataLineageDetector();
+        dataLineageDetector.visit(insertSelectAst);
+        return dataLineageDetector.getFieldLineage();
+    }
+
+    @Benchmark
+    public ComparedResult compareWhereClause() {
+        return new WhereClauseComparator().compare(ast.getStatements().get(0).getWhereClause(),
+                shiftedAst.getStatements().get(0).getWhereClause());
+    }
+
+    @Benchmark
+    public String buildSql() {
+        return new ClickHouseSqlBuilder().build(ast);
+    }
+
+    @Benchmark
+    public int buildSqlStreaming() throws IOException {
+        StringBuilder sql = new StringBuilder(1024);
+        new StreamingSqlRenderer(sql).render(ast);
+        return sql.length();
+    }
+
+    @Benchmark
+    public String rewriteGlobalJoin() {
+        return new GlobalJoinAstRewriter().visit(ast);
+    }
+
+    @Benchmark
+    public int rewriteGlobalJoinStreaming() throws IOException {
+        StringBuilder sql = new StringBuilder(1024);
+        new StreamingSqlRenderer(new GlobalJoinAstRewriter(), sql).render(ast);
+        return sql.length();
+    }
+
+    @Benchmark
+    public int visitIdentifiers() {
+        int[] count = new int[1];
+        new AstVisitor<Object>() {
+            @Override
+            public Object visitIdentifier(Identifier identifier) {
+                count[0]++;
+                return null;
+            }
+        }.visit(ast);
+        return count[0];
+    }
+
+    @Benchmark
+    public int walkIdentifiers() {
+        int[] count = new int[1];
+        astWalker.walk(ast, new AstVisitor<Object>() {
+            @Override
+            public Object visitIdentifier(Identifier identifier) {
+                count[0]++;
+                return null;
+            }
+        });
+        return count[0];
+    }
+}
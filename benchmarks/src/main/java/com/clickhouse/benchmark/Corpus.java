@@ -0,0 +1,98 @@
+package com.clickhouse.benchmark;
+
+/**
+ * Queries used by the benchmarks, from a few tokens up to statements of several hundred KB.
+ */
+public enum Corpus {
+
+    SMALL("SELECT id, name FROM my_db.my_table WHERE id = 1"),
+
+    MEDIUM("SELECT toStartOfDay(toDateTime(t1.date)) AS __timestamp,\n" +
+            "       count(DISTINCT t1.id) AS id_count,\n" +
+            "       sum(t2.amount) AS amount\n" +
+            "FROM my_db.my_table t1\n" +
+            "LEFT JOIN my_db.my_dim t2 ON t1.id = t2.id\n" +
+            "WHERE t1.dt >= '2021-10-02'\n" +
+            "  AND t1.dt <= '2021-11-02'\n" +
+            "  AND t1.feature1 = 1\n" +
+            "  AND (t1.feature2 = 8 OR t1.feature3 LIKE '%abc%')\n" +
+            "  AND t2.category IN ('a', 'b', 'c')\n" +
+            "GROUP BY toStartOfDay(toDateTime(t1.date))\n" +
+            "HAVING count(DISTINCT t1.id) > 10\n" +
+            "ORDER BY id_count DESC\n" +
+            "LIMIT 50000"),
+
+    HUGE_IN(hugeIn(20000)),
+
+    DEEP_NESTING(deepNesting(30)),
+
+    WIDE_UNION(wideUnion(200)),
+
+    INSERT_SELECT("INSERT INTO TABLE db_test.table_result (id, name)\n" +
+            "SELECT t1.id, t2.name\n" +
+            "FROM (SELECT id1 + id2 AS id FROM db_test.table1) t1\n" +
+            "LEFT JOIN (SELECT id, name FROM (SELECT id, sourcename AS name FROM db_test.table2)) t2\n" +
+            "ON t1.id = t2.id"),
+
+    INSERT_VALUES(insertValues(20000));
+
+    private final String sql;
+
+    Corpus(String sql) {
+        this.sql = sql;
+    }
+
+    public String sql() {
+        return sql;
+    }
+
+    /**
+     * Same shape as the corpus query with other dates, used as the cached side of WhereClauseComparator.
+     */
+    public String shiftedSql() {
+        return sql.replace("2021-10-02", "2021-10-03").replace("2021-11-02", "2021-11-03");
+    }
+
+    private static String hugeIn(int size) {
+        StringBuilder sql = new StringBuilder("SELECT id, name FROM my_db.my_table WHERE dt = '2021-11-02' AND id IN (");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(1000000 + i);
+        }
+        return sql.append(")").toString();
+    }
+
+    private static String insertValues(int rows) {
+        StringBuilder sql = new StringBuilder("INSERT INTO my_db.my_table (id, name, dt) VALUES");
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sql.append(",");
+            }
+            sql.append(" (").append(1000000 + i).append(", 'name").append(i).append("', '2021-11-02')");
+        }
+        return sql.toString();
+    }
+
+    private static String deepNesting(int depth) {
+        String sql = "SELECT id, ((((((a + 1) * 2) - 3) / 4) + 5) * 6) AS v FROM my_db.my_table WHERE dt >= '2021-10-02'";
+        for (int i = 0; i < depth; i++) {
+            sql = "SELECT id, v FROM (" + sql + ") t" + i + " WHERE id > " + i;
+        }
+        return sql;
+    }
+
+    private static String wideUnion(int width) {
+        StringBuilder sql = new StringBuilder();
+        for (int i = 0; i < width; i++) {
+            if (i > 0) {
+                sql.append(" UNION ALL ");
+            }
+            sql.append("SELECT id, name, count() AS c FROM my_db.table").append(i)
+                    .append(" WHERE dt >= '2021-10-02' AND dt <= '2021-11-02' AND id % ").append(i + 2)
+                    .append(" = 0 GROUP BY id, name");
+        }
+        return sql.toString();
+    }
+}
@@ -0,0 +1,135 @@
+package com.clickhouse.benchmark;
+
+import com.clickhouse.parser.AstParser;
+import com.clickhouse.parser.AstVisitor;
+import com.clickhouse.parser.AstWalker;
+import com.clickhouse.parser.ast.INode;
+import com.clickhouse.parser.ast.NodeKind;
+import com.clickhouse.parser.ast.expr.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Choosing the handler of each expression of a wide expression tree: the former instanceof chain against the
+ * ExprType and NodeKind switches.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DispatchBenchmark {
+
+    @Param({"1000"})
+    private int width;
+
+    private ColumnExpr[] exprs;
+
+    @Setup
+    public void setUp() {
+        StringBuilder sql = new StringBuilder("SELECT ");
+        for (int i = 0; i < width; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            // literal last, so that the chain has to run to its end
+            sql.append("t.c").append(i).append(" AS a").append(i)
+                    .append(", f(c").append(i).append(", ").append(i).append(")");
+        }
+        sql.append(" FROM db.t");
+        INode ast = (INode) new AstParser().parse(sql.toString());
+        List<ColumnExpr> list = new ArrayList<>();
+        new AstWalker().walk(ast, new AstVisitor<Object>() {
+            @Override
+            public Object visitColumnExpr(ColumnExpr expr) {
+                list.add(expr);
+                return super.visitColumnExpr(expr);
+            }
+        });
+        exprs = list.toArray(new ColumnExpr[0]);
+    }
+
+    @Benchmark
+    public int instanceofChain() {
+        int sum = 0;
+        for (ColumnExpr expr : exprs) {
+            if (expr instanceof AsteriskColumnExpr) {
+                sum += 1;
+            } else if (expr instanceof AliasColumnExpr) {
+                sum += 2;
+            } else if (expr instanceof FunctionColumnExpr) {
+                sum += 3;
+            } else if (expr instanceof SubqueryColumnExpr) {
+                sum += 4;
+            } else if (expr instanceof IdentifierColumnExpr) {
+                sum += 5;
+            } else if (expr instanceof LiteralColumnExpr) {
+                sum += 6;
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int exprTypeSwitch() {
+        int sum = 0;
+        for (ColumnExpr expr : exprs) {
+            switch (expr.getExprType()) {
+                case ASTERISK:
+                    sum += 1;
+                    break;
+                case ALIAS:
+                    sum += 2;
+                    break;
+                case FUNCTION:
+                    sum += 3;
+                    break;
+                case SUBQUERY:
+                    sum += 4;
+                    break;
+                case IDENTIFIER:
+                    sum += 5;
+                    break;
+                case LITERAL:
+                    sum += 6;
+                    break;
+                default:
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int nodeKindSwitch() {
+        int sum = 0;
+        for (ColumnExpr expr : exprs) {
+            NodeKind kind = expr.getKind();
+            switch (kind) {
+                case ASTERISK_COLUMN_EXPR:
+                    sum += 1;
+                    break;
+                case ALIAS_COLUMN_EXPR:
+                    sum += 2;
+                    break;
+                case FUNCTION_COLUMN_EXPR:
+                    sum += 3;
+                    break;
+                case SUBQUERY_COLUMN_EXPR:
+                    sum += 4;
+                    break;
+                case IDENTIFIER_COLUMN_EXPR:
+                    sum += 5;
+                    break;
+                case LITERAL_COLUMN_EXPR:
+                    sum += 6;
+                    break;
+                default:
+            }
+        }
+        return sum;
+    }
+}
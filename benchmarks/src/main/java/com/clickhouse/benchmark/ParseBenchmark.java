@@ -0,0 +1,139 @@
+package com.clickhouse.benchmark;
+
+import com.clickhouse.parser.AstParser;
+import com.clickhouse.parser.CachingAstParser;
+import com.clickhouse.parser.ClickHouseLexer;
+import com.clickhouse.parser.ClickHouseParser;
+import com.clickhouse.parser.CstVisitor;
+import com.clickhouse.parser.FastClickHouseLexer;
+import com.clickhouse.parser.ParserSession;
+import com.clickhouse.parser.StringCharStream;
+import org.antlr.v4.runtime.Token;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse cost split into lexing, the ANTLR parse and the CstVisitor AST construction.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "HUGE_IN", "DEEP_NESTING", "WIDE_UNION", "INSERT_VALUES"})
+    private Corpus corpus;
+
+    private String sql;
+
+    private AstParser astParser;
+
+    private AstParser twoStageAstParser;
+
+    private AstParser eagerAstParser;
+
+    private AstParser lazyInsertDataAstParser;
+
+    private AstParser compactLiteralListsAstParser;
+
+    private CachingAstParser cachingAstParser;
+
+    private ClickHouseParser.QueryStmtContext tree;
+
+    private ClickHouseLexer lexer;
+
+    private FastClickHouseLexer fastLexer;
+
+    @Setup
+    public void setUp() {
+        sql = corpus.sql();
+        astParser = new AstParser();
+        twoStageAstParser = new AstParser(false, true);
+        eagerAstParser = new AstParser();
+        eagerAstParser.setBuildAstWhileParsing(true);
+        lazyInsertDataAstParser = new AstParser();
+        lazyInsertDataAstParser.setLazyInsertData(true);
+        compactLiteralListsAstParser = new AstParser();
+        compactLiteralListsAstParser.setCompactLiteralLists(true);
+        cachingAstParser = CachingAstParser.withMaximumSize(new AstParser(), 16);
+        cachingAstParser.parse(sql);
+        ParserSession session = new ParserSession();
+        session.reset(sql);
+        tree = session.parseLl();
+        lexer = new ClickHouseLexer(new StringCharStream(""));
+        lexer.removeErrorListeners();
+        fastLexer = new FastClickHouseLexer(new StringCharStream(""));
+        fastLexer.removeErrorListeners();
+    }
+
+    @Benchmark
+    public Object parse() {
+        return astParser.parse(sql);
+    }
+
+    @Benchmark
+    public Object parseTwoStage() {
+        return twoStageAstParser.parse(sql);
+    }
+
+    @Benchmark
+    public Object parseBuildingAstWhileParsing() {
+        return eagerAstParser.parse(sql);
+    }
+
+    @Benchmark
+    public Object parseLazyInsertData() {
+        return lazyInsertDataAstParser.parse(sql);
+    }
+
+    @Benchmark
+    public Object parseCompactLiteralLists() {
+        return compactLiteralListsAstParser.parse(sql);
+    }
+
+    /**
+     * A cache hit, which copies the cached tree.
+     */
+    @Benchmark
+    public Object parseCached() {
+        return cachingAstParser.parse(sql);
+    }
+
+    @Benchmark
+    public Object parseTree() {
+        ParserSession session = ParserSession.acquire();
+        try {
+            session.reset(sql, false);
+            return session.parseLl();
+        } finally {
+            ParserSession.release(session);
+        }
+    }
+
+    @Benchmark
+    public int lex() {
+        return countTokens(lexer);
+    }
+
+    @Benchmark
+    public int lexFast() {
+        return countTokens(fastLexer);
+    }
+
+    @Benchmark
+    public Object buildAst() {
+        return new CstVisitor("default", false).visit(tree);
+    }
+
+    private int countTokens(ClickHouseLexer lexer) {
+        lexer.setInputStream(new StringCharStream(sql));
+        int count = 0;
+        while (lexer.nextToken().getType() != Token.EOF) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,93 @@
+package com.clickhouse.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Keep every measurement in process in {@link Log2Histogram}s, phases are recorded in nanoseconds.
+ */
+public class InMemoryParseMetrics implements ParseMetrics {
+
+    private final Map<Phase, Log2Histogram> phases = new EnumMap<>(Phase.class);
+
+    private final Log2Histogram tokenCounts = new Log2Histogram();
+
+    private final Log2Histogram nodeCounts = new Log2Histogram();
+
+    private final Log2Histogram allocatedBytes = new Log2Histogram();
+
+    private final boolean allocationTrackingEnabled;
+
+    public InMemoryParseMetrics() {
+        this(false);
+    }
+
+    public InMemoryParseMetrics(boolean allocationTrackingEnabled) {
+        this.allocationTrackingEnabled = allocationTrackingEnabled;
+        for (Phase phase : Phase.values()) {
+            phases.put(phase, new Log2Histogram());
+        }
+    }
+
+    @Override
+    public void recordPhase(Phase phase, long nanos) {
+        phases.get(phase).record(nanos);
+    }
+
+    @Override
+    public void recordTokenCount(int tokenCount) {
+        tokenCounts.record(tokenCount);
+    }
+
+    @Override
+    public void recordNodeCount(int nodeCount) {
+        nodeCounts.record(nodeCount);
+    }
+
+    @Override
+    public void recordAllocatedBytes(long bytes) {
+        allocatedBytes.record(bytes);
+    }
+
+    @Override
+    public boolean isAllocationTrackingEnabled() {
+        return allocationTrackingEnabled;
+    }
+
+    public Log2Histogram getPhase(Phase phase) {
+        return phases.get(phase);
+    }
+
+    public Log2Histogram getTokenCounts() {
+        return tokenCounts;
+    }
+
+    public Log2Histogram getNodeCounts() {
+        return nodeCounts;
+    }
+
+    public Log2Histogram getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public void reset() {
+        phases.values().forEach(Log2Histogram::reset);
+        tokenCounts.reset();
+        nodeCounts.reset();
+        allocatedBytes.reset();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buffer = new StringBuilder("InMemoryParseMetrics{");
+        for (Map.Entry<Phase, Log2Histogram> entry : phases.entrySet()) {
+            buffer.append(entry.getKey()).append(" ns: [").append(entry.getValue()).append("], ");
+        }
+        buffer.append("tokens: [").append(tokenCounts).append("], ");
+        buffer.append("nodes: [").append(nodeCounts).append("]");
+        if (allocationTrackingEnabled) {
+            buffer.append(", allocated bytes: [").append(allocatedBytes).append("]");
+        }
+        return buffer.append("}").toString();
+    }
+}
@@ -0,0 +1,63 @@
+package com.clickhouse.metrics;
+
+import com.clickhouse.parser.AstVisitor;
+import com.clickhouse.parser.ast.INode;
+
+/**
+ * Receive per-statement measurements from AstParser. Implementations are called from every parsing thread and
+ * must be thread-safe.
+ */
+public interface ParseMetrics {
+
+    enum Phase {
+        LEX,
+        PARSE,
+        AST_BUILD,
+        VISIT,
+    }
+
+    ParseMetrics NOOP = new ParseMetrics() {
+        @Override
+        public void recordPhase(Phase phase, long nanos) {
+        }
+
+        @Override
+        public void recordTokenCount(int tokenCount) {
+        }
+
+        @Override
+        public void recordNodeCount(int nodeCount) {
+        }
+
+        @Override
+        public void recordAllocatedBytes(long bytes) {
+        }
+    };
+
+    void recordPhase(Phase phase, long nanos);
+
+    void recordTokenCount(int tokenCount);
+
+    void recordNodeCount(int nodeCount);
+
+    void recordAllocatedBytes(long bytes);
+
+    /**
+     * Whether AstParser should read the thread allocation counter around each parse.
+     */
+    default boolean isAllocationTrackingEnabled() {
+        return false;
+    }
+
+    /**
+     * Run a visitor over an AST and record it as the VISIT phase.
+     */
+    default <T> T timeVisit(AstVisitor<T> visitor, INode node) {
+        long start = System.nanoTime();
+        try {
+            return visitor.visit(node);
+        } finally {
+            recordPhase(Phase.VISIT, System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.clickhouse.parser;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+
+/**
+ * Parse listener that hands every finished column expression and SELECT statement to the CstVisitor right away,
+ * so their part of the parse tree does not outlive them. Only the contexts above them are retained until the
+ * regular visit of the whole tree.
+ */
+class AstBuildingListener extends ClickHouseParserBaseListener {
+
+    private final CstVisitor visitor;
+
+    AstBuildingListener(CstVisitor visitor) {
+        this.visitor = visitor;
+    }
+
+    @Override
+    public void enterQueryStmt(ClickHouseParser.QueryStmtContext ctx) {
+        // the LL stage of two-stage parsing starts over
+        visitor.clearBuiltNodes();
+    }
+
+    @Override
+    public void exitEveryRule(ParserRuleContext ctx) {
+        if (ctx instanceof ClickHouseParser.ColumnExprContext || ctx instanceof ClickHouseParser.SelectStmtContext) {
+            visitor.buildWhileParsing(ctx);
+        }
+    }
+}
@@ -1,20 +1,76 @@
 package com.clickhouse.parser;
 
+import com.clickhouse.metrics.ParseMetrics;
 import com.clickhouse.parser.ast.SelectUnionQuery;
 import lombok.extern.slf4j.Slf4j;
-import org.antlr.v4.runtime.ANTLRInputStream;
-import org.antlr.v4.runtime.CommonTokenStream;
-import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.PredictionContextCache;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 @Slf4j
 public class AstParser {
 
     private boolean fillDefaultDatabase = false;
 
+    /**
+     * Try the cheaper SLL prediction mode first and only fall back to full LL when SLL fails.
+     */
+    private boolean twoStageParsing = false;
+
+    /**
+     * Build the AST of column expressions and SELECT statements while parsing and drop their parse tree right away,
+     * instead of keeping the whole parse tree until it is visited. Ignored when filling in the default database,
+     * which depends on the order the tree is visited in.
+     */
+    private boolean buildAstWhileParsing = false;
+
+    /**
+     * Leave the data of INSERT ... VALUES and INSERT ... FORMAT untokenized, it is only available as
+     * {@link com.clickhouse.parser.ast.DataClause#getData()}. Parsing such an INSERT then costs the same whatever the
+     * size of its data.
+     */
+    private boolean lazyInsertData = false;
+
+    /**
+     * Share one String per identifier name across all parsed ASTs, worth it when many ASTs are kept, e.g. cached.
+     */
+    private boolean internNames = false;
+
+    /**
+     * Keep tuples and arrays of at least {@link com.clickhouse.parser.ast.expr.LiteralListColumnExpr#MIN_SIZE}
+     * literals, e.g. long IN lists, in a compact form until their args are first asked for. Read-only visitors never
+     * ask for them.
+     */
+    private boolean compactLiteralLists = false;
+
+    private final AtomicLong sllParseCount = new AtomicLong();
+
+    private final AtomicLong llFallbackCount = new AtomicLong();
+
+    private ParseMetrics parseMetrics = ParseMetrics.NOOP;
+
+    /**
+     * Pool used by {@link #parseAll(List)}, the common pool by default.
+     */
+    private ForkJoinPool forkJoinPool = ForkJoinPool.commonPool();
+
+    /**
+     * Upper bound of DFA states kept by the shared lexer/parser caches, 0 means unbounded.
+     */
+    private static volatile int maxDfaStateCount = 0;
+
     public AstParser() {
     }
 
@@ -22,39 +78,322 @@ public class AstParser {
         this.fillDefaultDatabase = fillDefaultDatabase;
     }
 
+    public AstParser(boolean fillDefaultDatabase, boolean twoStageParsing) {
+        this.fillDefaultDatabase = fillDefaultDatabase;
+        this.twoStageParsing = twoStageParsing;
+    }
+
     public Object parse(String sql, String defaultDatabase) {
+        return parse(sql, defaultDatabase, null);
+    }
+
+    private Object parse(String sql, String defaultDatabase, ParseResult result) {
+        ParseMetrics metrics = parseMetrics;
+        boolean measured = metrics != ParseMetrics.NOOP;
+        long allocatedBefore = measured && metrics.isAllocationTrackingEnabled() ? currentThreadAllocatedBytes() : -1;
+        long start = System.nanoTime();
+        // try parsing a SQL
+        ParserSession session = ParserSession.acquire();
         try {
-            long start = System.currentTimeMillis();
-            // try parsing a SQL
-            InputStream inputStream = new ByteArrayInputStream(sql.getBytes());
-            ANTLRInputStream antlrInputStream = new ANTLRInputStream(inputStream);
-            ClickHouseLexer ckLexer = new ClickHouseLexer(antlrInputStream);
-            TokenStream tokens = new CommonTokenStream(ckLexer);
-            ClickHouseParser ckParser = new ClickHouseParser(tokens);
-            ClickHouseParser.QueryStmtContext tree = ckParser.queryStmt();
-            // System.out.println(tree.toStringTree(ckParser));
-
-            // Notice: ckParser.queryStmt() can only be called once as it reads data from stream
+            session.setLazyInsertData(lazyInsertData);
+            session.reset(sql, null == result, measured);
             CstVisitor visitor = new CstVisitor(defaultDatabase, fillDefaultDatabase);
+            visitor.setInternNames(internNames);
+            visitor.setCompactLiteralLists(compactLiteralLists);
+            session.setParseListener(buildAstWhileParsing && !fillDefaultDatabase ? new AstBuildingListener(visitor) : null);
+            ClickHouseParser.QueryStmtContext tree = parseQueryStmt(session);
+            if (null != result) {
+                result.setSyntaxErrorCount(session.getSyntaxErrorCount());
+            }
+            long parsed = System.nanoTime();
+
             Object ast = visitor.visit(tree);
-            long end = System.currentTimeMillis();
-            log.debug("It takes " + (end - start) + " ms to parse the SQL.");
-            //System.out.println(ast);
-            if (null != ast && ast instanceof SelectUnionQuery) {
-                // this is a SELECT statement
-                log.debug("This is a SELECT statement.");
-            } else {
-                log.debug("This is NOT a SELECT statement.");
+            long end = System.nanoTime();
+            if (measured) {
+                long lexNanos = session.getLexNanos();
+                metrics.recordPhase(ParseMetrics.Phase.LEX, lexNanos);
+                metrics.recordPhase(ParseMetrics.Phase.PARSE, parsed - start - lexNanos);
+                metrics.recordPhase(ParseMetrics.Phase.AST_BUILD, end - parsed);
+                metrics.recordTokenCount(session.getTokenCount());
+                metrics.recordNodeCount(visitor.getNodeCount());
+                if (allocatedBefore >= 0) {
+                    metrics.recordAllocatedBytes(currentThreadAllocatedBytes() - allocatedBefore);
+                }
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("It takes {} ms to parse the SQL, it is {}a SELECT statement.", (end - start) / 1000000,
+                        ast instanceof SelectUnionQuery ? "" : "NOT ");
             }
             return ast;
-        } catch (IOException e) {
-            e.printStackTrace();
+        } finally {
+            ParserSession.release(session);
+            checkDfaCacheBound();
         }
-        return null;
     }
 
     public Object parse(String sql) {
         return parse(sql, "default");
     }
 
+    /**
+     * Parse a batch of statements in parallel on the configured ForkJoinPool. Every worker borrows its own
+     * lexer/parser session while the DFA caches are shared. Results come back in input order, and a statement
+     * that fails is recorded in its ParseResult instead of aborting the batch.
+     */
+    public List<ParseResult> parseAll(List<String> sqls) {
+        return parseAll(sqls, "default");
+    }
+
+    public List<ParseResult> parseAll(List<String> sqls, String defaultDatabase) {
+        return parseAll(sqls.stream(), defaultDatabase);
+    }
+
+    /**
+     * Same as {@link #parseAll(List)}, with the default database of each statement, e.g. the current_database
+     * column of system.query_log.
+     */
+    public List<ParseResult> parseAll(List<String> sqls, List<String> defaultDatabases) {
+        if (sqls.size() != defaultDatabases.size()) {
+            throw new IllegalArgumentException("Got " + sqls.size() + " statements but " + defaultDatabases.size()
+                    + " default databases");
+        }
+        return forkJoinPool.submit(() -> IntStream.range(0, sqls.size()).parallel()
+                .mapToObj(i -> parseQuietly(sqls.get(i), defaultDatabases.get(i)))
+                .collect(Collectors.toList()))
+                .join();
+    }
+
+    public List<ParseResult> parseAll(Stream<String> sqls) {
+        return parseAll(sqls, "default");
+    }
+
+    public List<ParseResult> parseAll(Stream<String> sqls, String defaultDatabase) {
+        return forkJoinPool.submit(() -> sqls.parallel()
+                .map(sql -> parseQuietly(sql, defaultDatabase))
+                .collect(Collectors.toList()))
+                .join();
+    }
+
+    private ParseResult parseQuietly(String sql, String defaultDatabase) {
+        ParseResult result = new ParseResult(sql);
+        result.setDefaultDatabase(defaultDatabase);
+        try {
+            result.setAst(parse(sql, defaultDatabase, result));
+        } catch (Exception e) {
+            result.setError(e);
+        }
+        return result;
+    }
+
+    /**
+     * Parse a representative corpus once so the shared DFA caches are filled before real traffic arrives.
+     * Statements that fail to parse are skipped.
+     *
+     * @return number of statements parsed successfully
+     */
+    public int warmUp(Iterable<String> corpus) {
+        int parsed = 0;
+        for (String sql : corpus) {
+            try {
+                if (null != parse(sql)) {
+                    parsed++;
+                }
+            } catch (Exception e) {
+                log.debug("Failed to parse warm-up statement: {}", sql, e);
+            }
+        }
+        log.info("Warmed up with {} statements, {} DFA states cached", parsed, getDfaStateCount());
+        return parsed;
+    }
+
+    /**
+     * Two-stage parsing: SLL with a bail-out error strategy is enough for almost all well-formed statements.
+     * Only when it gives up do we rewind the token stream and run the full LL prediction with the default
+     * error strategy, so the resulting tree (and the reported syntax errors) are the same as a plain LL parse.
+     */
+    private ClickHouseParser.QueryStmtContext parseQueryStmt(ParserSession session) {
+        if (!twoStageParsing) {
+            return session.parseLl();
+        }
+        try {
+            ClickHouseParser.QueryStmtContext tree = session.parseSll();
+            sllParseCount.incrementAndGet();
+            return tree;
+        } catch (ParseCancellationException e) {
+            llFallbackCount.incrementAndGet();
+            return session.parseLl();
+        }
+    }
+
+    /**
+     * @return bytes allocated by the current thread so far, or -1 if the JVM can not tell
+     */
+    private static long currentThreadAllocatedBytes() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunThreadMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+            if (sunThreadMXBean.isThreadAllocatedMemorySupported() && sunThreadMXBean.isThreadAllocatedMemoryEnabled()) {
+                return sunThreadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    public ParseMetrics getParseMetrics() {
+        return parseMetrics;
+    }
+
+    public void setParseMetrics(ParseMetrics parseMetrics) {
+        this.parseMetrics = null != parseMetrics ? parseMetrics : ParseMetrics.NOOP;
+    }
+
+    public ForkJoinPool getForkJoinPool() {
+        return forkJoinPool;
+    }
+
+    public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    public boolean isFillDefaultDatabase() {
+        return fillDefaultDatabase;
+    }
+
+    public boolean isTwoStageParsing() {
+        return twoStageParsing;
+    }
+
+    public boolean isBuildAstWhileParsing() {
+        return buildAstWhileParsing;
+    }
+
+    /**
+     * @see #buildAstWhileParsing
+     */
+    public void setBuildAstWhileParsing(boolean buildAstWhileParsing) {
+        this.buildAstWhileParsing = buildAstWhileParsing;
+    }
+
+    public boolean isLazyInsertData() {
+        return lazyInsertData;
+    }
+
+    /**
+     * @see #lazyInsertData
+     */
+    public void setLazyInsertData(boolean lazyInsertData) {
+        this.lazyInsertData = lazyInsertData;
+    }
+
+    public boolean isInternNames() {
+        return internNames;
+    }
+
+    /**
+     * @see #internNames
+     */
+    public void setInternNames(boolean internNames) {
+        this.internNames = internNames;
+    }
+
+    public boolean isCompactLiteralLists() {
+        return compactLiteralLists;
+    }
+
+    /**
+     * @see #compactLiteralLists
+     */
+    public void setCompactLiteralLists(boolean compactLiteralLists) {
+        this.compactLiteralLists = compactLiteralLists;
+    }
+
+    /**
+     * @return number of statements successfully parsed in SLL mode
+     */
+    public long getSllParseCount() {
+        return sllParseCount.get();
+    }
+
+    /**
+     * @return number of statements that SLL gave up on and were re-parsed in full LL mode
+     */
+    public long getLlFallbackCount() {
+        return llFallbackCount.get();
+    }
+
+    public static int getParserDfaStateCount() {
+        return countDfaStates(ClickHouseParser._decisionToDFA);
+    }
+
+    public static int getLexerDfaStateCount() {
+        return countDfaStates(ClickHouseLexer._decisionToDFA);
+    }
+
+    public static int getDfaStateCount() {
+        return getParserDfaStateCount() + getLexerDfaStateCount();
+    }
+
+    public static int getMaxDfaStateCount() {
+        return maxDfaStateCount;
+    }
+
+    /**
+     * Bound the shared DFA caches. Once more states than this are cached they are all dropped and
+     * rebuilt lazily, so adversarial statements can not grow the caches without limit.
+     *
+     * @param maxStateCount maximum number of states, 0 for unbounded
+     */
+    public static void setMaxDfaStateCount(int maxStateCount) {
+        maxDfaStateCount = Math.max(0, maxStateCount);
+    }
+
+    /**
+     * Drop everything the lexer and parser have learnt so far. Parses running concurrently keep
+     * working on the DFAs they already hold.
+     */
+    public static void clearDfaCache() {
+        clearDfa(ClickHouseParser._decisionToDFA, ClickHouseParser._ATN);
+        clearDfa(ClickHouseLexer._decisionToDFA, ClickHouseLexer._ATN);
+        clearContextCache(ClickHouseParser._sharedContextCache);
+        clearContextCache(ClickHouseLexer._sharedContextCache);
+    }
+
+    private static void checkDfaCacheBound() {
+        int maxStateCount = maxDfaStateCount;
+        if (maxStateCount > 0) {
+            int stateCount = getDfaStateCount();
+            if (stateCount > maxStateCount) {
+                log.warn("{} DFA states cached, exceeding the limit of {}. Clearing DFA cache.", stateCount, maxStateCount);
+                clearDfaCache();
+            }
+        }
+    }
+
+    private static int countDfaStates(DFA[] decisionToDFA) {
+        int count = 0;
+        for (DFA dfa : decisionToDFA) {
+            count += dfa.states.size();
+        }
+        return count;
+    }
+
+    private static void clearDfa(DFA[] decisionToDFA, ATN atn) {
+        for (int i = 0; i < decisionToDFA.length; i++) {
+            decisionToDFA[i] = new DFA(atn.getDecisionState(i), i);
+        }
+    }
+
+    private static void clearContextCache(PredictionContextCache contextCache) {
+        // PredictionContextCache has no public way to be cleared, ANTLR itself guards it with its monitor
+        try {
+            Field field = PredictionContextCache.class.getDeclaredField("cache");
+            field.setAccessible(true);
+            synchronized (contextCache) {
+                ((Map<?, ?>) field.get(contextCache)).clear();
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Failed to clear the prediction context cache.", e);
+        }
+    }
+
 }
@@ -5,13 +5,35 @@ import com.clickhouse.parser.ast.expr.*;
 
 import java.util.List;
 
+/**
+ * Recursive visitor of the AST. Every visitXxx visits the children of its node, an override prunes a subtree by not
+ * calling super. The same callbacks can be driven from an explicit stack by {@link AstWalker}.
+ */
 public class AstVisitor<T> {
 
+    /**
+     * Set while an AstWalker drives this visitor: a visitXxx hands the children of its node
+     * to the driver instead of visiting them itself.
+     */
+    VisitDriver driver;
+
     public T visit(INode astNode) {
         return astNode.accept(this);
     }
 
+    /**
+     * Post-order hook, called once the children of a node have been visited by super.visitXxx, whether the visit
+     * is recursive or walked by {@link AstWalker}. Work placed after super.visitXxx in an override runs after the
+     * children only in a recursive visit, work placed here runs after them in both. Nodes without children, e.g.
+     * identifiers and literals, are not left.
+     */
+    public void leave(Object node) {
+    }
+
     public T visitAlterTableQuery(AlterTableQuery alterTableQuery) {
+        if (null != driver && driver.descend(this, alterTableQuery, VisitMethod.ALTER_TABLE_QUERY)) {
+            return null;
+        }
         if (null != alterTableQuery.getIdentifier()) {
             visit(alterTableQuery.getIdentifier());
         }
@@ -20,29 +42,41 @@ public class AstVisitor<T> {
                 visit(alterTableClause);
             }
         }
+        leave(alterTableQuery);
         return null;
     }
 
     public T visitTableElementExpr(TableElementExpr tableElementExpr) {
+        if (null != driver && driver.descend(this, tableElementExpr, VisitMethod.TABLE_ELEMENT_EXPR)) {
+            return null;
+        }
         if (null != tableElementExpr.getCodec()) {
             visit(tableElementExpr.getCodec());
         }
         if (null != tableElementExpr.getTtl()) {
             visit(tableElementExpr.getTtl());
         }
+        leave(tableElementExpr);
         return null;
     }
 
     public T visitCodecExpr(CodecExpr codecExpr) {
+        if (null != driver && driver.descend(this, codecExpr, VisitMethod.CODEC_EXPR)) {
+            return null;
+        }
         if (null != codecExpr.getCodeArgExprList()) {
             for (CodecArgExpr codecArgExpr : codecExpr.getCodeArgExprList()) {
                 visit(codecArgExpr);
             }
         }
+        leave(codecExpr);
         return null;
     }
 
     public T visitCodecArgExpr(CodecArgExpr codecArgExpr) {
+        if (null != driver && driver.descend(this, codecArgExpr, VisitMethod.CODEC_ARG_EXPR)) {
+            return null;
+        }
         if (null != codecArgExpr.getIdentifier()) {
             visit(codecArgExpr.getIdentifier());
         }
@@ -51,40 +85,56 @@ public class AstVisitor<T> {
                 visit(columnExpr);
             }
         }
+        leave(codecArgExpr);
         return null;
     }
 
     public T visitAddColumnAlterTableClause(AddColumnAlterTableClause addColumnAlterTableClause) {
+        if (null != driver && driver.descend(this, addColumnAlterTableClause, VisitMethod.ADD_COLUMN_ALTER_TABLE_CLAUSE)) {
+            return null;
+        }
         if (null != addColumnAlterTableClause.getAfter()) {
             visit(addColumnAlterTableClause.getAfter());
         }
         if (null != addColumnAlterTableClause.getElement()) {
             visit(addColumnAlterTableClause.getElement());
         }
+        leave(addColumnAlterTableClause);
         return null;
     }
 
     public T visitAddIndexAlterTableClause(AddIndexAlterTableClause addIndexAlterTableClause) {
+        if (null != driver && driver.descend(this, addIndexAlterTableClause, VisitMethod.ADD_INDEX_ALTER_TABLE_CLAUSE)) {
+            return null;
+        }
         if (null != addIndexAlterTableClause.getAfter()) {
             visit(addIndexAlterTableClause.getAfter());
         }
         if (null != addIndexAlterTableClause.getElement()) {
             visit(addIndexAlterTableClause.getElement());
         }
+        leave(addIndexAlterTableClause);
         return null;
     }
 
     public T visitAttachAlterTableClause(AttachAlterTableClause attachAlterTableClause) {
+        if (null != driver && driver.descend(this, attachAlterTableClause, VisitMethod.ATTACH_ALTER_TABLE_CLAUSE)) {
+            return null;
+        }
         if (null != attachAlterTableClause.getFrom()) {
             visit(attachAlterTableClause.getFrom());
         }
         if (null != attachAlterTableClause.getPartitionClause()) {
             visit(attachAlterTableClause.getPartitionClause());
         }
+        leave(attachAlterTableClause);
         return null;
     }
 
     public T visitPartitionClause(PartitionClause partitionClause) {
+        if (null != driver && driver.descend(this, partitionClause, VisitMethod.PARTITION_CLAUSE)) {
+            return null;
+        }
         if (null != partitionClause.getId()) {
             visit(partitionClause.getId());
         }
@@ -93,129 +143,190 @@ public class AstVisitor<T> {
                 visit(literal);
             }
         }
+        leave(partitionClause);
         return null;
     }
 
     public T visitClearAlterTableClause(ClearAlterTableClause clearAlterTableClause) {
+        if (null != driver && driver.descend(this, clearAlterTableClause, VisitMethod.CLEAR_ALTER_TABLE_CLAUSE)) {
+            return null;
+        }
         if (null != clearAlterTableClause.getIdentifier()) {
             visit(clearAlterTableClause.getIdentifier());
         }
         if (null != clearAlterTableClause.getIn()) {
             visit(clearAlterTableClause.getIn());
         }
+        leave(clearAlterTableClause);
         return null;
     }
 
     public T visitCodecAlterTableClause(CodecAlterTableClause codecAlterTableClause) {
+        if (null != driver && driver.descend(this, codecAlterTableClause, VisitMethod.CODEC_ALTER_TABLE_CLAUSE)) {
+            return null;
+        }
         if (null != codecAlterTableClause.getIdentifier()) {
             visit(codecAlterTableClause.getIdentifier());
         }
         if (null != codecAlterTableClause.getCodec()) {
             visit(codecAlterTableClause.getCodec());
         }
+        leave(codecAlterTableClause);
         return null;
     }
 
     public T visitCommentAlterTableClause(CommentAlterTableClause commentAlterTableClause) {
+        if (null != driver && driver.descend(this, commentAlterTableClause, VisitMethod.COMMENT_ALTER_TABLE_CLAUSE)) {
+            return null;
+        }
         if (null != commentAlterTableClause.getComment()) {
             visit(commentAlterTableClause.getComment());
         }
         if (null != commentAlterTableClause.getIdentifier()) {
             visit(commentAlterTableClause.getIdentifier());
         }
+        leave(commentAlterTableClause);
         return null;
     }
 
     public T visitDeleteAlterTableClause(DeleteAlterTableClause deleteAlterTableClause) {
+        if (null != driver && driver.descend(this, deleteAlterTableClause, VisitMethod.DELETE_ALTER_TABLE_CLAUSE)) {
+            return null;
+        }
         if (null != deleteAlterTableClause.getExpr()) {
             visit(deleteAlterTableClause.getExpr());
         }
+        leave(deleteAlterTableClause);
         return null;
     }
 
     public T visitDetachAlterTableClause(DetachAlterTableClause detachAlterTableClause) {
+        if (null != driver && driver.descend(this, detachAlterTableClause, VisitMethod.DETACH_ALTER_TABLE_CLAUSE)) {
+            return null;
+        }
         if (null != detachAlterTableClause.getClause()) {
             visit(detachAlterTableClause.getClause());
         }
+        leave(detachAlterTableClause);
         return null;
     }
 
     public T visitDropColumnAlterTableClause(DropColumnAlterTableClause dropColumnAlterTableClause) {
+        if (null != driver && driver.descend(this, dropColumnAlterTableClause, VisitMethod.DROP_COLUMN_ALTER_TABLE_CLAUSE)) {
+            return null;
+        }
         if (null != dropColumnAlterTableClause.getIdentifier()) {
             visit(dropColumnAlterTableClause.getIdentifier());
         }
+        leave(dropColumnAlterTableClause);
         return null;
     }
 
     public T visitDropIndexAlterTableClause(DropIndexAlterTableClause dropIndexAlterTableClause) {
+        if (null != driver && driver.descend(this, dropIndexAlterTableClause, VisitMethod.DROP_INDEX_ALTER_TABLE_CLAUSE)) {
+            return null;
+        }
         if (null != dropIndexAlterTableClause.getIdentifier()) {
             visit(dropIndexAlterTableClause.getIdentifier());
         }
+        leave(dropIndexAlterTableClause);
         return null;
     }
 
     public T visitDropPartitionAlterTableClause(DropPartitionAlterTableClause dropPartitionAlterTableClause) {
+        if (null != driver && driver.descend(this, dropPartitionAlterTableClause, VisitMethod.DROP_PARTITION_ALTER_TABLE_CLAUSE)) {
+            return null;
+        }
         if (null != dropPartitionAlterTableClause.getClause()) {
             visit(dropPartitionAlterTableClause.getClause());
         }
+        leave(dropPartitionAlterTableClause);
         return null;
     }
 
     public T visitFreezePartitionAlterTableClause(FreezePartitionAlterTableClause freezePartitionAlterTableClause) {
+        if (null != driver && driver.descend(this, freezePartitionAlterTableClause, VisitMethod.FREEZE_PARTITION_ALTER_TABLE_CLAUSE)) {
+            return null;
+        }
         if (null != freezePartitionAlterTableClause.getClause()) {
             visit(freezePartitionAlterTableClause.getClause());
         }
+        leave(freezePartitionAlterTableClause);
         return null;
     }
 
     public T visitModifyAlterTableClause(ModifyAlterTableClause modifyAlterTableClause) {
+        if (null != driver && driver.descend(this, modifyAlterTableClause, VisitMethod.MODIFY_ALTER_TABLE_CLAUSE)) {
+            return null;
+        }
         if (null != modifyAlterTableClause.getElement()) {
             visit(modifyAlterTableClause.getElement());
         }
+        leave(modifyAlterTableClause);
         return null;
     }
 
     public T visitMovePartitionToDiskAlterTableClause(MovePartitionToDiskAlterTableClause movePartitionToDiskAlterTableClause) {
+        if (null != driver && driver.descend(this, movePartitionToDiskAlterTableClause, VisitMethod.MOVE_PARTITION_TO_DISK_ALTER_TABLE_CLAUSE)) {
+            return null;
+        }
         if (null != movePartitionToDiskAlterTableClause.getLiteral()) {
             visit(movePartitionToDiskAlterTableClause.getLiteral());
         }
         if (null != movePartitionToDiskAlterTableClause.getClause()) {
             visit(movePartitionToDiskAlterTableClause.getClause());
         }
+        leave(movePartitionToDiskAlterTableClause);
         return null;
     }
 
     public T visitMovePartitionToTableAlterTableClause(MovePartitionToTableAlterTableClause movePartitionToTableAlterTableClause) {
+        if (null != driver && driver.descend(this, movePartitionToTableAlterTableClause, VisitMethod.MOVE_PARTITION_TO_TABLE_ALTER_TABLE_CLAUSE)) {
+            return null;
+        }
         if (null != movePartitionToTableAlterTableClause.getIdentifier()) {
             visit(movePartitionToTableAlterTableClause.getIdentifier());
         }
         if (null != movePartitionToTableAlterTableClause.getClause()) {
             visit(movePartitionToTableAlterTableClause.getClause());
         }
+        leave(movePartitionToTableAlterTableClause);
         return null;
     }
 
     public T visitMovePartitionToVolumeAlterTableClause(MovePartitionToVolumeAlterTableClause movePartitionToVolumeAlterTableClause) {
+        if (null != driver && driver.descend(this, movePartitionToVolumeAlterTableClause, VisitMethod.MOVE_PARTITION_TO_VOLUME_ALTER_TABLE_CLAUSE)) {
+            return null;
+        }
         if (null != movePartitionToVolumeAlterTableClause.getLiteral()) {
             visit(movePartitionToVolumeAlterTableClause.getLiteral());
         }
         if (null != movePartitionToVolumeAlterTableClause.getClause()) {
             visit(movePartitionToVolumeAlterTableClause.getClause());
         }
+        leave(movePartitionToVolumeAlterTableClause);
         return null;
     }
 
     public T visitOrderByAlterTableClause(OrderByAlterTableClause orderByAlterTableClause) {
+        if (null != driver && driver.descend(this, orderByAlterTableClause, VisitMethod.ORDER_BY_ALTER_TABLE_CLAUSE)) {
+            return null;
+        }
         if (null != orderByAlterTableClause.getExpr()) {
             visit(orderByAlterTableClause.getExpr());
         }
+        leave(orderByAlterTableClause);
         return null;
     }
 
     public T visitRemoveAlterTableClause(RemoveAlterTableClause removeAlterTableClause) {
+        if (null != driver && driver.descend(this, removeAlterTableClause, VisitMethod.REMOVE_ALTER_TABLE_CLAUSE)) {
+            return null;
+        }
         if (null != removeAlterTableClause.getIdentifier()) {
             visit(removeAlterTableClause.getIdentifier());
         }
+        leave(removeAlterTableClause);
         return null;
     }
 
@@ -224,52 +335,75 @@ public class AstVisitor<T> {
     }
 
     public T visitRenameAlterTableClause(RenameAlterTableClause renameAlterTableClause) {
+        if (null != driver && driver.descend(this, renameAlterTableClause, VisitMethod.RENAME_ALTER_TABLE_CLAUSE)) {
+            return null;
+        }
         if (null != renameAlterTableClause.getIdentifier()) {
             visit(renameAlterTableClause.getIdentifier());
         }
         if (null != renameAlterTableClause.getTo()) {
             visit(renameAlterTableClause.getTo());
         }
+        leave(renameAlterTableClause);
         return null;
     }
 
     public T visitReplaceAlterTableClause(ReplaceAlterTableClause replaceAlterTableClause) {
+        if (null != driver && driver.descend(this, replaceAlterTableClause, VisitMethod.REPLACE_ALTER_TABLE_CLAUSE)) {
+            return null;
+        }
         if (null != replaceAlterTableClause.getFrom()) {
             visit(replaceAlterTableClause.getFrom());
         }
         if (null != replaceAlterTableClause.getClause()) {
             visit(replaceAlterTableClause.getClause());
         }
+        leave(replaceAlterTableClause);
         return null;
     }
 
     public T visitTTLAlterTableClause(TTLAlterTableClause ttlAlterTableClause) {
+        if (null != driver && driver.descend(this, ttlAlterTableClause, VisitMethod.TTL_ALTER_TABLE_CLAUSE)) {
+            return null;
+        }
         if (null != ttlAlterTableClause.getClause()) {
             visit(ttlAlterTableClause.getClause());
         }
+        leave(ttlAlterTableClause);
         return null;
     }
 
     public T visitTTLClause(TTLClause ttlClause) {
+        if (null != driver && driver.descend(this, ttlClause, VisitMethod.TTL_CLAUSE)) {
+            return null;
+        }
         if (null != ttlClause.getTtlExprList()) {
             for (TTLExpr ttlExpr : ttlClause.getTtlExprList()) {
                 visit(ttlExpr);
             }
         }
+        leave(ttlClause);
         return null;
     }
 
     public T visitTTLExpr(TTLExpr ttlExpr) {
+        if (null != driver && driver.descend(this, ttlExpr, VisitMethod.TTL_EXPR)) {
+            return null;
+        }
         if (null != ttlExpr.getLiteral()) {
             visit(ttlExpr.getLiteral());
         }
         if (null != ttlExpr.getExpr()) {
             visit(ttlExpr.getExpr());
         }
+        leave(ttlExpr);
         return null;
     }
 
     public T visitUpdateAlterTableClause(UpdateAlterTableClause updateAlterTableClause) {
+        if (null != driver && driver.descend(this, updateAlterTableClause, VisitMethod.UPDATE_ALTER_TABLE_CLAUSE)) {
+            return null;
+        }
         if (null != updateAlterTableClause.getWhere()) {
             visit(updateAlterTableClause.getWhere());
         }
@@ -278,16 +412,21 @@ public class AstVisitor<T> {
                 visit(assignmentExpr);
             }
         }
+        leave(updateAlterTableClause);
         return null;
     }
 
     public T visitAssignmentExpr(AssignmentExpr assignmentExpr) {
+        if (null != driver && driver.descend(this, assignmentExpr, VisitMethod.ASSIGNMENT_EXPR)) {
+            return null;
+        }
         if (null != assignmentExpr.getExpr()) {
             visit(assignmentExpr.getExpr());
         }
         if (null != assignmentExpr.getIdentifier()) {
             visit(assignmentExpr.getIdentifier());
         }
+        leave(assignmentExpr);
         return null;
     }
 
@@ -369,6 +508,9 @@ public class AstVisitor<T> {
     }
 
     public T visitInsertQuery(InsertQuery insertQuery) {
+        if (null != driver && driver.descend(this, insertQuery, VisitMethod.INSERT_QUERY)) {
+            return null;
+        }
         if (null != insertQuery.getTableIdentifier()) {
             visitTableIdentifier(insertQuery.getTableIdentifier());
         }
@@ -383,27 +525,121 @@ public class AstVisitor<T> {
                 visitIdentifier(column);
             }
         }
+        leave(insertQuery);
         return null;
     }
 
     public T visitDataClause(DataClause dataClause) {
+        if (null != driver && driver.descend(this, dataClause, VisitMethod.DATA_CLAUSE)) {
+            return null;
+        }
         if (null != dataClause.getIdentifier()) {
             visit(dataClause.getIdentifier());
         }
         if (null != dataClause.getSelectUnionQuery()) {
             visit(dataClause.getSelectUnionQuery());
         }
+        leave(dataClause);
+        return null;
+    }
+
+    public T visitCreateTableQuery(CreateTableQuery createTableQuery) {
+        if (null != driver && driver.descend(this, createTableQuery, VisitMethod.CREATE_TABLE_QUERY)) {
+            return null;
+        }
+        if (null != createTableQuery.getIdentifier()) {
+            visitTableIdentifier(createTableQuery.getIdentifier());
+        }
+        if (null != createTableQuery.getSchema()) {
+            visitTableSchemaClause(createTableQuery.getSchema());
+        }
+        if (null != createTableQuery.getEngine()) {
+            visitEngineClause(createTableQuery.getEngine());
+        }
+        if (null != createTableQuery.getQuery()) {
+            visitSelectUnionQuery(createTableQuery.getQuery());
+        }
+        leave(createTableQuery);
+        return null;
+    }
+
+    public T visitTableSchemaClause(TableSchemaClause tableSchemaClause) {
+        if (null != driver && driver.descend(this, tableSchemaClause, VisitMethod.TABLE_SCHEMA_CLAUSE)) {
+            return null;
+        }
+        if (null != tableSchemaClause.getExprs()) {
+            for (TableElementExpr tableElementExpr : tableSchemaClause.getExprs()) {
+                visit(tableElementExpr);
+            }
+        }
+        if (null != tableSchemaClause.getIdentifier()) {
+            visitTableIdentifier(tableSchemaClause.getIdentifier());
+        }
+        if (null != tableSchemaClause.getFunctionExpr()) {
+            visitTableFunctionExpr(tableSchemaClause.getFunctionExpr());
+        }
+        leave(tableSchemaClause);
+        return null;
+    }
+
+    public T visitEngineClause(EngineClause engineClause) {
+        if (null != driver && driver.descend(this, engineClause, VisitMethod.ENGINE_CLAUSE)) {
+            return null;
+        }
+        if (null != engineClause.getEngineExpr()) {
+            visitEngineExpr(engineClause.getEngineExpr());
+        }
+        if (null != engineClause.getPartitionByClause()) {
+            visitColumnExpr(engineClause.getPartitionByClause());
+        }
+        if (null != engineClause.getPrimaryKeyClause()) {
+            visitColumnExpr(engineClause.getPrimaryKeyClause());
+        }
+        if (null != engineClause.getOrderByClause()) {
+            visitOrderByClause(engineClause.getOrderByClause());
+        }
+        if (null != engineClause.getSampleByClause()) {
+            visitColumnExpr(engineClause.getSampleByClause());
+        }
+        if (null != engineClause.getTtlClause()) {
+            visitTTLClause(engineClause.getTtlClause());
+        }
+        if (null != engineClause.getSettingsClause()) {
+            visitSettingsClause(engineClause.getSettingsClause());
+        }
+        leave(engineClause);
+        return null;
+    }
+
+    public T visitEngineExpr(EngineExpr engineExpr) {
+        if (null != driver && driver.descend(this, engineExpr, VisitMethod.ENGINE_EXPR)) {
+            return null;
+        }
+        if (null != engineExpr.getIdentifier()) {
+            visitIdentifier(engineExpr.getIdentifier());
+        }
+        if (null != engineExpr.getArgs()) {
+            visitColumnExprList(engineExpr.getArgs());
+        }
+        leave(engineExpr);
         return null;
     }
 
     public T visitSelectUnionQuery(SelectUnionQuery selectUnionQuery) {
+        if (null != driver && driver.descend(this, selectUnionQuery, VisitMethod.SELECT_UNION_QUERY)) {
+            return null;
+        }
         for (SelectStatement selectStatement : selectUnionQuery.getStatements()) {
             visitSelectStatement(selectStatement);
         }
+        leave(selectUnionQuery);
         return null;
     }
 
     public T visitSelectStatement(SelectStatement selectStatement) {
+        if (null != driver && driver.descend(this, selectStatement, VisitMethod.SELECT_STATEMENT)) {
+            return null;
+        }
         if (null != selectStatement.getWithClause()) {
             visitWithClause(selectStatement.getWithClause());
         }
@@ -440,22 +676,34 @@ public class AstVisitor<T> {
         if (null != selectStatement.getSettingsClause()) {
             visitSettingsClause(selectStatement.getSettingsClause());
         }
+        leave(selectStatement);
         return null;
     }
 
     public T visitWithClause(WithClause withClause) {
+        if (null != driver && driver.descend(this, withClause, VisitMethod.WITH_CLAUSE)) {
+            return null;
+        }
         visitColumnExprList(withClause.getWithExpr());
+        leave(withClause);
         return null;
     }
 
     public T visitFromClause(FromClause fromClause) {
+        if (null != driver && driver.descend(this, fromClause, VisitMethod.FROM_CLAUSE)) {
+            return null;
+        }
         if (null != fromClause.getExpr()) {
             visitJoinExpr(fromClause.getExpr());
         }
+        leave(fromClause);
         return null;
     }
 
     public T visitJoinExpr(JoinExpr joinExpr) {
+        if (null != driver && driver.descend(this, joinExpr, VisitMethod.JOIN_EXPR)) {
+            return null;
+        }
         if (null != joinExpr.getTableExpr()) {
             visitTableExpr(joinExpr.getTableExpr());
         }
@@ -471,10 +719,14 @@ public class AstVisitor<T> {
         if (null != joinExpr.getJoinConstraintClause()) {
             visitJoinConstraintClause(joinExpr.getJoinConstraintClause());
         }
+        leave(joinExpr);
         return null;
     }
 
     public T visitTableExpr(TableExpr tableExpr) {
+        if (null != driver && driver.descend(this, tableExpr, VisitMethod.TABLE_EXPR)) {
+            return null;
+        }
         if (null != tableExpr.getExpr()) {
             visitTableExpr(tableExpr.getExpr());
         }
@@ -490,6 +742,7 @@ public class AstVisitor<T> {
         if (null != tableExpr.getSubQuery()) {
             visitSelectUnionQuery(tableExpr.getSubQuery());
         }
+        leave(tableExpr);
         return null;
     }
 
@@ -498,23 +751,34 @@ public class AstVisitor<T> {
     }
 
     public T visitTableFunctionExpr(TableFunctionExpr function) {
+        if (null != driver && driver.descend(this, function, VisitMethod.TABLE_FUNCTION_EXPR)) {
+            return null;
+        }
         if (null != function.getName()) {
             visitIdentifier(function.getName());
         }
         if (null != function.getArgs()) {
             visitTableArgExprList(function.getArgs());
         }
+        leave(function);
         return null;
     }
 
     public T visitTableArgExprList(List<TableArgExpr> args) {
+        if (null != driver && driver.descend(this, args, VisitMethod.TABLE_ARG_EXPR_LIST)) {
+            return null;
+        }
         for (TableArgExpr arg : args) {
             visitTableArgExpr(arg);
         }
+        leave(args);
         return null;
     }
 
     public T visitTableArgExpr(TableArgExpr arg) {
+        if (null != driver && driver.descend(this, arg, VisitMethod.TABLE_ARG_EXPR)) {
+            return null;
+        }
         if (null != arg.getLiteral()) {
             visitLiteral(arg.getLiteral());
         }
@@ -524,6 +788,7 @@ public class AstVisitor<T> {
         if (null != arg.getIdentifier()) {
             visitTableIdentifier(arg.getIdentifier());
         }
+        leave(arg);
         return null;
     }
 
@@ -538,29 +803,41 @@ public class AstVisitor<T> {
     }
 
     public T visitTableIdentifier(TableIdentifier tableIdentifier) {
+        if (null != driver && driver.descend(this, tableIdentifier, VisitMethod.TABLE_IDENTIFIER)) {
+            return null;
+        }
         if (null != tableIdentifier.getDatabase()) {
             visitIdentifier(tableIdentifier.getDatabase());
         }
+        leave(tableIdentifier);
         return null;
     }
 
     public T visitSampleClause(SampleClause sampleClause) {
+        if (null != driver && driver.descend(this, sampleClause, VisitMethod.SAMPLE_CLAUSE)) {
+            return null;
+        }
         if (null != sampleClause.getRatio()) {
             visitRatioExpr(sampleClause.getRatio());
         }
         if (null != sampleClause.getOffset()) {
             visitRatioExpr(sampleClause.getOffset());
         }
+        leave(sampleClause);
         return null;
     }
 
     public T visitRatioExpr(RatioExpr ratioExpr) {
+        if (null != driver && driver.descend(this, ratioExpr, VisitMethod.RATIO_EXPR)) {
+            return null;
+        }
         if (null != ratioExpr.getNumerator()) {
             visitNumberLiteral(ratioExpr.getNumerator());
         }
         if (null != ratioExpr.getDenominator()) {
             visitNumberLiteral(ratioExpr.getDenominator());
         }
+        leave(ratioExpr);
         return null;
     }
 
@@ -569,64 +846,96 @@ public class AstVisitor<T> {
     }
 
     public T visitJoinConstraintClause(JoinConstraintClause joinConstraintClause) {
+        if (null != driver && driver.descend(this, joinConstraintClause, VisitMethod.JOIN_CONSTRAINT_CLAUSE)) {
+            return null;
+        }
         if (null != joinConstraintClause.getExprs()) {
             visitColumnExprList(joinConstraintClause.getExprs());
         }
+        leave(joinConstraintClause);
         return null;
     }
 
 
     public T visitArrayJoinClause(ArrayJoinClause arrayJoinClause) {
+        if (null != driver && driver.descend(this, arrayJoinClause, VisitMethod.ARRAY_JOIN_CLAUSE)) {
+            return null;
+        }
         if (null != arrayJoinClause.getExprs()) {
             visitColumnExprList(arrayJoinClause.getExprs());
         }
+        leave(arrayJoinClause);
         return null;
     }
 
     public T visitPrewhereClause(PrewhereClause prewhereClause) {
+        if (null != driver && driver.descend(this, prewhereClause, VisitMethod.PREWHERE_CLAUSE)) {
+            return null;
+        }
         if (null != prewhereClause.getPrewhereExpr()) {
             visitColumnExpr(prewhereClause.getPrewhereExpr());
         }
+        leave(prewhereClause);
         return null;
     }
 
     public T visitWhereClause(WhereClause whereClause) {
+        if (null != driver && driver.descend(this, whereClause, VisitMethod.WHERE_CLAUSE)) {
+            return null;
+        }
         if (null != whereClause.getWhereExpr()) {
             visitColumnExpr(whereClause.getWhereExpr());
         }
+        leave(whereClause);
         return null;
     }
 
     public T visitGroupByClause(GroupByClause groupByClause) {
+        if (null != driver && driver.descend(this, groupByClause, VisitMethod.GROUP_BY_CLAUSE)) {
+            return null;
+        }
         if (null != groupByClause.getGroupByExprs()) {
             visitColumnExprList(groupByClause.getGroupByExprs());
         }
+        leave(groupByClause);
         return null;
     }
 
     public T visitHavingClause(HavingClause havingClause) {
+        if (null != driver && driver.descend(this, havingClause, VisitMethod.HAVING_CLAUSE)) {
+            return null;
+        }
         if (null != havingClause.getHavingExpr()) {
             visitColumnExpr(havingClause.getHavingExpr());
         }
+        leave(havingClause);
         return null;
     }
 
     public T visitOrderByClause(OrderByClause orderByClause) {
+        if (null != driver && driver.descend(this, orderByClause, VisitMethod.ORDER_BY_CLAUSE)) {
+            return null;
+        }
         if (null != orderByClause.getOrderExprs()) {
             for (OrderExpr orderExpr : orderByClause.getOrderExprs()) {
                 visitOrderExpr(orderExpr);
             }
         }
+        leave(orderByClause);
         return null;
     }
 
     public T visitOrderExpr(OrderExpr orderExpr) {
+        if (null != driver && driver.descend(this, orderExpr, VisitMethod.ORDER_EXPR)) {
+            return null;
+        }
         if (null != orderExpr.getExpr()) {
             visitColumnExpr(orderExpr.getExpr());
         }
         if (null != orderExpr.getCollate()) {
             visitStringLiteral(orderExpr.getCollate());
         }
+        leave(orderExpr);
         return null;
     }
 
@@ -635,62 +944,90 @@ public class AstVisitor<T> {
     }
 
     public T visitLimitByClause(LimitByClause limitByClause) {
+        if (null != driver && driver.descend(this, limitByClause, VisitMethod.LIMIT_BY_CLAUSE)) {
+            return null;
+        }
         if (null != limitByClause.getLimit()) {
             visitLimitExpr(limitByClause.getLimit());
         }
         if (null != limitByClause.getExprs()) {
             visitColumnExprList(limitByClause.getExprs());
         }
+        leave(limitByClause);
         return null;
     }
 
     public T visitLimitExpr(LimitExpr limitExpr) {
+        if (null != driver && driver.descend(this, limitExpr, VisitMethod.LIMIT_EXPR)) {
+            return null;
+        }
         if (null != limitExpr.getLimit()) {
             visitColumnExpr(limitExpr.getLimit());
         }
         if (null != limitExpr.getOffset()) {
             visitColumnExpr(limitExpr.getOffset());
         }
+        leave(limitExpr);
         return null;
     }
 
     public T visitLimitClause(LimitClause limitClause) {
+        if (null != driver && driver.descend(this, limitClause, VisitMethod.LIMIT_CLAUSE)) {
+            return null;
+        }
         if (null != limitClause.getLimitExpr()) {
             visitLimitExpr(limitClause.getLimitExpr());
         }
+        leave(limitClause);
         return null;
     }
 
     public T visitSettingsClause(SettingsClause settingsClause) {
+        if (null != driver && driver.descend(this, settingsClause, VisitMethod.SETTINGS_CLAUSE)) {
+            return null;
+        }
         if (null != settingsClause.getSettingExprs()) {
             for (SettingExpr settingExpr : settingsClause.getSettingExprs()) {
                 visitSettingExpr(settingExpr);
             }
         }
+        leave(settingsClause);
         return null;
     }
 
     public T visitSettingExpr(SettingExpr settingExpr) {
+        if (null != driver && driver.descend(this, settingExpr, VisitMethod.SETTING_EXPR)) {
+            return null;
+        }
         if (null != settingExpr.getName()) {
             visitIdentifier(settingExpr.getName());
         }
         if (null != settingExpr.getValue()) {
             visitLiteral(settingExpr.getValue());
         }
+        leave(settingExpr);
         return null;
     }
 
     public T visitSelectColumnExprList(List<ColumnExpr> exprs) {
+        if (null != driver && driver.descend(this, exprs, VisitMethod.SELECT_COLUMN_EXPR_LIST)) {
+            return null;
+        }
         for (ColumnExpr expr : exprs) {
             visitColumnExpr(expr);
         }
+        leave(exprs);
         return null;
     }
 
     public T visitColumnExprList(List<ColumnExpr> exprs) {
+        if (null != driver && driver.descend(this, exprs, VisitMethod.COLUMN_EXPR_LIST)) {
+            return null;
+        }
         for (ColumnExpr expr : exprs) {
             visitColumnExpr(expr);
         }
+        leave(exprs);
         return null;
     }
 
@@ -699,25 +1036,25 @@ public class AstVisitor<T> {
     }
 
     public T visitColumnExpr(ColumnExpr expr) {
-        if (expr instanceof AsteriskColumnExpr) {
-            return visitAsteriskColumnExpr((AsteriskColumnExpr) expr);
-        }
-        if (expr instanceof AliasColumnExpr) {
-            return visitAliasColumnExpr((AliasColumnExpr) expr);
-        }
-        if (expr instanceof FunctionColumnExpr) {
-            return visitFunctionColumnExpr(expr);
-        }
-        if (expr instanceof SubqueryColumnExpr) {
-            return visitSubqueryColumnExpr(expr);
-        }
-        if (expr instanceof IdentifierColumnExpr) {
-            return visitIdentifierColumnExpr(expr);
-        }
-        if (expr instanceof LiteralColumnExpr) {
-            return visitLiteralColumnExpr(expr);
+        if (null == expr || null == expr.getExprType()) {
+            return null;
+        }
+        switch (expr.getExprType()) {
+            case ASTERISK:
+                return visitAsteriskColumnExpr((AsteriskColumnExpr) expr);
+            case ALIAS:
+                return visitAliasColumnExpr((AliasColumnExpr) expr);
+            case FUNCTION:
+                return visitFunctionColumnExpr(expr);
+            case SUBQUERY:
+                return visitSubqueryColumnExpr(expr);
+            case IDENTIFIER:
+                return visitIdentifierColumnExpr(expr);
+            case LITERAL:
+                return visitLiteralColumnExpr(expr);
+            default:
+                return null;
         }
-        return null;
     }
 
     public T visitLiteralColumnExpr(ColumnExpr expr) {
@@ -736,17 +1073,24 @@ public class AstVisitor<T> {
     }
 
     public T visitAliasColumnExpr(AliasColumnExpr expr) {
+        if (null != driver && driver.descend(this, expr, VisitMethod.ALIAS_COLUMN_EXPR)) {
+            return null;
+        }
         if (null != expr.getExpr()) {
             visitColumnExpr(expr.getExpr());
         }
         if (null != expr.getAlias()) {
             visitIdentifier(expr.getAlias());
         }
+        leave(expr);
         return null;
     }
 
     public T visitFunctionColumnExpr(ColumnExpr expr) {
         if (null != expr && expr instanceof FunctionColumnExpr) {
+            if (null != driver && driver.descend(this, expr, VisitMethod.FUNCTION_COLUMN_EXPR)) {
+                return null;
+            }
             FunctionColumnExpr functionColumnExpr = (FunctionColumnExpr) expr;
             if (null != functionColumnExpr.getName()) {
                 visitIdentifier(functionColumnExpr.getName());
@@ -754,9 +1098,12 @@ public class AstVisitor<T> {
             if (null != functionColumnExpr.getParams()) {
                 visitColumnExprList(functionColumnExpr.getParams());
             }
-            if (null != functionColumnExpr.getArgs()) {
-                visitColumnExprList(functionColumnExpr.getArgs());
+            // a compact literal list stays compact
+            List<ColumnExpr> args = LiteralListColumnExpr.readArgs(functionColumnExpr);
+            if (null != args) {
+                visitColumnExprList(args);
             }
+            leave(expr);
         }
         return null;
     }
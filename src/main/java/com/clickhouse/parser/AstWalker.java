@@ -0,0 +1,158 @@
+package com.clickhouse.parser;
+
+import com.clickhouse.parser.ast.INode;
+
+import java.util.Arrays;
+
+/**
+ * Drive the visitXxx callbacks of an {@link AstVisitor} from an explicit work stack instead of the Java call stack,
+ * so the depth of a query (long OR chains, deeply nested subqueries) can not overflow the thread stack.
+ * <p>
+ * Every node gets the same visitXxx call as in a recursive visit, in the same order. When an override calls
+ * super.visitXxx, the default hands the node's children to the walker and returns; the walker visits them after the
+ * override has returned, and then calls {@link AstVisitor#leave(Object)}. So work done before super runs before
+ * the children as usual, while post-order work belongs in leave. An override that does not call super prunes the
+ * subtree, and one that calls visitXxx on other nodes itself visits them recursively. Values returned by visitXxx
+ * are dropped.
+ * <p>
+ * The children of a node and their order are the ones its default visitXxx visits: the walker runs that default on a
+ * visitor which records the children instead of visiting them. A walker reuses its stack between walks and is not
+ * thread-safe.
+ * <p>
+ * The walker is only there for depth safety. It takes 5 to 8 times as long as a recursive visit of the same tree
+ * (AnalysisBenchmark walkIdentifiers against visitIdentifiers), so queries of ordinary depth are visited recursively.
+ */
+public class AstWalker implements VisitDriver {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * A stack grown beyond this by a huge query is dropped after the walk instead of being kept by the walker.
+     */
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    /**
+     * Whether a visitor class overrides leave, the walker does not push leave entries for one that does not.
+     */
+    private static final ClassValue<Boolean> OVERRIDES_LEAVE = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            try {
+                return type.getMethod("leave", Object.class).getDeclaringClass() != AstVisitor.class;
+            } catch (NoSuchMethodException e) {
+                return true;
+            }
+        }
+    };
+
+    /**
+     * Node of each stack entry.
+     */
+    private Object[] nodes = new Object[INITIAL_CAPACITY];
+
+    /**
+     * Method to call on the node, null for the leave of the node.
+     */
+    private VisitMethod[] methods = new VisitMethod[INITIAL_CAPACITY];
+
+    private int size = 0;
+
+    private AstVisitor<?> visitor;
+
+    private boolean leaving;
+
+    /**
+     * Node whose visitXxx is being called, the only one whose children the walker takes over.
+     */
+    private Object current;
+
+    /**
+     * Pushes the children of the node the walker descends into.
+     */
+    private final ChildCollector children = new ChildCollector() {
+        @Override
+        void child(Object node, VisitMethod method) {
+            push(node, method);
+        }
+    };
+
+    public void walk(INode root, AstVisitor<?> visitor) {
+        if (null == root) {
+            return;
+        }
+        if (null != this.visitor) {
+            throw new IllegalStateException("The walker is already walking");
+        }
+        VisitDriver previousDriver = visitor.driver;
+        this.visitor = visitor;
+        leaving = OVERRIDES_LEAVE.get(visitor.getClass());
+        visitor.driver = this;
+        size = 0;
+        try {
+            push(root, VisitMethod.VISIT);
+            while (size > 0) {
+                size--;
+                Object node = nodes[size];
+                VisitMethod method = methods[size];
+                nodes[size] = null;
+                if (null == method) {
+                    visitor.leave(node);
+                    continue;
+                }
+                current = node;
+                method.invoke(visitor, node);
+                current = null;
+            }
+        } finally {
+            visitor.driver = previousDriver;
+            this.visitor = null;
+            current = null;
+            if (nodes.length > MAX_RETAINED_CAPACITY) {
+                nodes = new Object[INITIAL_CAPACITY];
+                methods = new VisitMethod[INITIAL_CAPACITY];
+            } else {
+                Arrays.fill(nodes, 0, size, null);
+            }
+            size = 0;
+        }
+    }
+
+    @Override
+    public boolean descend(AstVisitor<?> visitor, Object node, VisitMethod method) {
+        if (visitor != this.visitor || node != current) {
+            return false;
+        }
+        current = null;
+        if (leaving) {
+            push(node, null);
+        }
+        int first = size;
+        children.collect(node, method);
+        reverse(first);
+        return true;
+    }
+
+    private void push(Object node, VisitMethod method) {
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size * 2);
+            methods = Arrays.copyOf(methods, size * 2);
+        }
+        nodes[size] = node;
+        methods[size] = method;
+        size++;
+    }
+
+    /**
+     * Children are pushed in visiting order, then turned around so that the first one is on top.
+     */
+    private void reverse(int from) {
+        for (int i = from, j = size - 1; i < j; i++, j--) {
+            Object node = nodes[i];
+            nodes[i] = nodes[j];
+            nodes[j] = node;
+            VisitMethod method = methods[i];
+            methods[i] = methods[j];
+            methods[j] = method;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.clickhouse.parser;
+
+import com.clickhouse.parser.ast.AstCopier;
+import com.clickhouse.parser.ast.INode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import lombok.Data;
+
+/**
+ * Cache parse results by the exact SQL text in front of an AstParser.
+ * Every hit returns a fresh deep copy of the cached tree (see {@link AstCopier}), so callers (e.g. rewriters) are free
+ * to modify the AST they get back.
+ */
+public class CachingAstParser {
+
+    /**
+     * Roughly the bytes a copied node, list or array takes.
+     */
+    private static final int COPIED_OBJECT_WEIGHT = 48;
+
+    private final AstParser astParser;
+
+    private final Cache<CacheKey, CachedAst> cache;
+
+    /**
+     * @param maximumSize maximum number of cached statements
+     */
+    public static CachingAstParser withMaximumSize(AstParser astParser, long maximumSize) {
+        return new CachingAstParser(astParser, CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build());
+    }
+
+    /**
+     * @param maximumWeight maximum bytes of SQL text and trees kept by the cache, the trees are estimated at
+     *                      {@value #COPIED_OBJECT_WEIGHT} bytes per node
+     */
+    public static CachingAstParser withMaximumWeight(AstParser astParser, long maximumWeight) {
+        return new CachingAstParser(astParser, CacheBuilder.newBuilder()
+                .maximumWeight(maximumWeight)
+                .weigher((CacheKey key, CachedAst value) -> key.getSql().length() * 2 + value.getWeight())
+                .recordStats()
+                .build());
+    }
+
+    private CachingAstParser(AstParser astParser, Cache<CacheKey, CachedAst> cache) {
+        this.astParser = astParser;
+        this.cache = cache;
+    }
+
+    public Object parse(String sql) {
+        return parse(sql, "default");
+    }
+
+    public Object parse(String sql, String defaultDatabase) {
+        CacheKey key = new CacheKey(sql, defaultDatabase, astParser.isFillDefaultDatabase(),
+                astParser.isLazyInsertData(), astParser.isCompactLiteralLists());
+        CachedAst cachedAst = cache.getIfPresent(key);
+        if (null != cachedAst) {
+            return AstCopier.copy(cachedAst.getAst());
+        }
+        Object ast = astParser.parse(sql, defaultDatabase);
+        if (ast instanceof INode) {
+            // keep a copy, the caller may modify the tree it gets
+            AstCopier copier = new AstCopier();
+            Object copy = copier.copyOf(ast);
+            cache.put(key, new CachedAst(copy, copier.getCopiedCount() * COPIED_OBJECT_WEIGHT));
+        }
+        return ast;
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public AstParser getAstParser() {
+        return astParser;
+    }
+
+    @Data
+    private static class CacheKey {
+
+        private final String sql;
+
+        private final String defaultDatabase;
+
+        private final boolean fillDefaultDatabase;
+
+        private final boolean lazyInsertData;
+
+        private final boolean compactLiteralLists;
+    }
+
+    @Data
+    private static class CachedAst {
+
+        private final Object ast;
+
+        private final int weight;
+    }
+}
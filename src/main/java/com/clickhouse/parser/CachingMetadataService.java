@@ -0,0 +1,165 @@
+package com.clickhouse.parser;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Cache partition column names and partition keys in front of a MetadataService, shared by all the detectors using
+ * it. Tables without a partition column are cached too, in a separate cache with its own expiry, so that a table
+ * created later is noticed sooner. getTables() is not cached.
+ * <pre>
+ *     MetadataService metadataService = new CachingMetadataService(clickHouseMetadataService,
+ *             10000, 10, 1, TimeUnit.MINUTES);
+ * </pre>
+ */
+public class CachingMetadataService implements MetadataService {
+
+    private final MetadataService metadataService;
+
+    private final LookupCache partitionColNames;
+
+    private final LookupCache partitionKeys;
+
+    /**
+     * @param maximumSize              maximum number of tables kept by each cache
+     * @param expireAfterWrite         how long a partition column name is kept
+     * @param negativeExpireAfterWrite how long a table without partition column is remembered, 0 to disable
+     */
+    public CachingMetadataService(MetadataService metadataService, long maximumSize, long expireAfterWrite,
+                                  long negativeExpireAfterWrite, TimeUnit unit) {
+        this.metadataService = metadataService;
+        this.partitionColNames = new LookupCache(maximumSize, expireAfterWrite, negativeExpireAfterWrite, unit);
+        this.partitionKeys = new LookupCache(maximumSize, expireAfterWrite, negativeExpireAfterWrite, unit);
+    }
+
+    @Override
+    public String getPartitionColName(String tableFullName) {
+        return partitionColNames.get(tableFullName, metadataService::getPartitionColName);
+    }
+
+    @Override
+    public Map<String, String> getPartitionColNames(Collection<String> tableFullNames) {
+        return partitionColNames.getAll(tableFullNames, metadataService::getPartitionColNames);
+    }
+
+    @Override
+    public String getPartitionKey(String tableFullName) {
+        return partitionKeys.get(tableFullName, metadataService::getPartitionKey);
+    }
+
+    @Override
+    public Map<String, String> getPartitionKeys(Collection<String> tableFullNames) {
+        return partitionKeys.getAll(tableFullNames, metadataService::getPartitionKeys);
+    }
+
+    @Override
+    public List<String> getTables() {
+        return metadataService.getTables();
+    }
+
+    public void invalidate(String tableFullName) {
+        partitionColNames.invalidate(tableFullName);
+        partitionKeys.invalidate(tableFullName);
+    }
+
+    public void invalidateAll() {
+        partitionColNames.invalidateAll();
+        partitionKeys.invalidateAll();
+    }
+
+    public CacheStats stats() {
+        return partitionColNames.values.stats().plus(partitionKeys.values.stats());
+    }
+
+    public CacheStats negativeStats() {
+        return partitionColNames.missing.stats().plus(partitionKeys.missing.stats());
+    }
+
+    /**
+     * Values by table, with the tables which have none kept in a second cache.
+     */
+    private static class LookupCache {
+
+        private final Cache<String, String> values;
+
+        private final Cache<String, Boolean> missing;
+
+        LookupCache(long maximumSize, long expireAfterWrite, long negativeExpireAfterWrite, TimeUnit unit) {
+            this.values = CacheBuilder.newBuilder()
+                    .maximumSize(maximumSize)
+                    .expireAfterWrite(expireAfterWrite, unit)
+                    .recordStats()
+                    .build();
+            this.missing = CacheBuilder.newBuilder()
+                    .maximumSize(negativeExpireAfterWrite > 0 ? maximumSize : 0)
+                    .expireAfterWrite(negativeExpireAfterWrite, unit)
+                    .recordStats()
+                    .build();
+        }
+
+        String get(String tableFullName, Function<String, String> loader) {
+            String value = values.getIfPresent(tableFullName);
+            if (null != value || null != missing.getIfPresent(tableFullName)) {
+                return value;
+            }
+            value = loader.apply(tableFullName);
+            put(tableFullName, value);
+            return value;
+        }
+
+        Map<String, String> getAll(Collection<String> tableFullNames,
+                                   Function<Collection<String>, Map<String, String>> loader) {
+            Map<String, String> result = new HashMap<>();
+            Set<String> missed = new LinkedHashSet<>();
+            for (String tableFullName : tableFullNames) {
+                String value = values.getIfPresent(tableFullName);
+                if (null != value) {
+                    result.put(tableFullName, value);
+                } else if (null == missing.getIfPresent(tableFullName)) {
+                    missed.add(tableFullName);
+                }
+            }
+            if (missed.isEmpty()) {
+                return result;
+            }
+            Map<String, String> loaded = loader.apply(missed);
+            for (String tableFullName : missed) {
+                String value = loaded.get(tableFullName);
+                put(tableFullName, value);
+                if (null != value && !value.isEmpty()) {
+                    result.put(tableFullName, value);
+                }
+            }
+            return result;
+        }
+
+        void invalidate(String tableFullName) {
+            values.invalidate(tableFullName);
+            missing.invalidate(tableFullName);
+        }
+
+        void invalidateAll() {
+            values.invalidateAll();
+            missing.invalidateAll();
+        }
+
+        private void put(String tableFullName, String value) {
+            if (null != value && !value.isEmpty()) {
+                values.put(tableFullName, value);
+                missing.invalidate(tableFullName);
+            } else {
+                missing.put(tableFullName, Boolean.TRUE);
+            }
+        }
+    }
+}
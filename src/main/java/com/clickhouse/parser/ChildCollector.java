@@ -0,0 +1,430 @@
+package com.clickhouse.parser;
+
+import com.clickhouse.parser.ast.*;
+import com.clickhouse.parser.ast.expr.*;
+
+import java.util.List;
+
+/**
+ * Collects the children of a node for {@link AstWalker}. It runs the default visitXxx of the node, and each visitXxx
+ * that default calls on a child is recorded instead of run, so the children and their order are those of the
+ * {@link AstVisitor} defaults.
+ */
+abstract class ChildCollector extends AstVisitor<Object> {
+
+    /**
+     * Node whose children are collected.
+     */
+    private Object parent;
+
+    /**
+     * Called for each child of the node, in visiting order, with the visitXxx the default calls on it.
+     */
+    abstract void child(Object node, VisitMethod method);
+
+    void collect(Object node, VisitMethod method) {
+        parent = node;
+        try {
+            method.invoke(this, node);
+        } finally {
+            parent = null;
+        }
+    }
+
+    /**
+     * @return true for the node whose children are collected, false for a child, which is recorded
+     */
+    private boolean expand(Object node, VisitMethod method) {
+        if (node == parent) {
+            parent = null;
+            return true;
+        }
+        child(node, method);
+        return false;
+    }
+
+    @Override
+    public Object visit(INode astNode) {
+        return expand(astNode, VisitMethod.VISIT) ? super.visit(astNode) : null;
+    }
+
+    @Override
+    public Object visitAlterTableQuery(AlterTableQuery alterTableQuery) {
+        return expand(alterTableQuery, VisitMethod.ALTER_TABLE_QUERY) ? super.visitAlterTableQuery(alterTableQuery) : null;
+    }
+
+    @Override
+    public Object visitTableElementExpr(TableElementExpr tableElementExpr) {
+        return expand(tableElementExpr, VisitMethod.TABLE_ELEMENT_EXPR) ? super.visitTableElementExpr(tableElementExpr) : null;
+    }
+
+    @Override
+    public Object visitCodecExpr(CodecExpr codecExpr) {
+        return expand(codecExpr, VisitMethod.CODEC_EXPR) ? super.visitCodecExpr(codecExpr) : null;
+    }
+
+    @Override
+    public Object visitCodecArgExpr(CodecArgExpr codecArgExpr) {
+        return expand(codecArgExpr, VisitMethod.CODEC_ARG_EXPR) ? super.visitCodecArgExpr(codecArgExpr) : null;
+    }
+
+    @Override
+    public Object visitAddColumnAlterTableClause(AddColumnAlterTableClause addColumnAlterTableClause) {
+        return expand(addColumnAlterTableClause, VisitMethod.ADD_COLUMN_ALTER_TABLE_CLAUSE) ? super.visitAddColumnAlterTableClause(addColumnAlterTableClause) : null;
+    }
+
+    @Override
+    public Object visitAddIndexAlterTableClause(AddIndexAlterTableClause addIndexAlterTableClause) {
+        return expand(addIndexAlterTableClause, VisitMethod.ADD_INDEX_ALTER_TABLE_CLAUSE) ? super.visitAddIndexAlterTableClause(addIndexAlterTableClause) : null;
+    }
+
+    @Override
+    public Object visitAttachAlterTableClause(AttachAlterTableClause attachAlterTableClause) {
+        return expand(attachAlterTableClause, VisitMethod.ATTACH_ALTER_TABLE_CLAUSE) ? super.visitAttachAlterTableClause(attachAlterTableClause) : null;
+    }
+
+    @Override
+    public Object visitPartitionClause(PartitionClause partitionClause) {
+        return expand(partitionClause, VisitMethod.PARTITION_CLAUSE) ? super.visitPartitionClause(partitionClause) : null;
+    }
+
+    @Override
+    public Object visitClearAlterTableClause(ClearAlterTableClause clearAlterTableClause) {
+        return expand(clearAlterTableClause, VisitMethod.CLEAR_ALTER_TABLE_CLAUSE) ? super.visitClearAlterTableClause(clearAlterTableClause) : null;
+    }
+
+    @Override
+    public Object visitCodecAlterTableClause(CodecAlterTableClause codecAlterTableClause) {
+        return expand(codecAlterTableClause, VisitMethod.CODEC_ALTER_TABLE_CLAUSE) ? super.visitCodecAlterTableClause(codecAlterTableClause) : null;
+    }
+
+    @Override
+    public Object visitCommentAlterTableClause(CommentAlterTableClause commentAlterTableClause) {
+        return expand(commentAlterTableClause, VisitMethod.COMMENT_ALTER_TABLE_CLAUSE) ? super.visitCommentAlterTableClause(commentAlterTableClause) : null;
+    }
+
+    @Override
+    public Object visitDeleteAlterTableClause(DeleteAlterTableClause deleteAlterTableClause) {
+        return expand(deleteAlterTableClause, VisitMethod.DELETE_ALTER_TABLE_CLAUSE) ? super.visitDeleteAlterTableClause(deleteAlterTableClause) : null;
+    }
+
+    @Override
+    public Object visitDetachAlterTableClause(DetachAlterTableClause detachAlterTableClause) {
+        return expand(detachAlterTableClause, VisitMethod.DETACH_ALTER_TABLE_CLAUSE) ? super.visitDetachAlterTableClause(detachAlterTableClause) : null;
+    }
+
+    @Override
+    public Object visitDropColumnAlterTableClause(DropColumnAlterTableClause dropColumnAlterTableClause) {
+        return expand(dropColumnAlterTableClause, VisitMethod.DROP_COLUMN_ALTER_TABLE_CLAUSE) ? super.visitDropColumnAlterTableClause(dropColumnAlterTableClause) : null;
+    }
+
+    @Override
+    public Object visitDropIndexAlterTableClause(DropIndexAlterTableClause dropIndexAlterTableClause) {
+        return expand(dropIndexAlterTableClause, VisitMethod.DROP_INDEX_ALTER_TABLE_CLAUSE) ? super.visitDropIndexAlterTableClause(dropIndexAlterTableClause) : null;
+    }
+
+    @Override
+    public Object visitDropPartitionAlterTableClause(DropPartitionAlterTableClause dropPartitionAlterTableClause) {
+        return expand(dropPartitionAlterTableClause, VisitMethod.DROP_PARTITION_ALTER_TABLE_CLAUSE) ? super.visitDropPartitionAlterTableClause(dropPartitionAlterTableClause) : null;
+    }
+
+    @Override
+    public Object visitFreezePartitionAlterTableClause(FreezePartitionAlterTableClause freezePartitionAlterTableClause) {
+        return expand(freezePartitionAlterTableClause, VisitMethod.FREEZE_PARTITION_ALTER_TABLE_CLAUSE) ? super.visitFreezePartitionAlterTableClause(freezePartitionAlterTableClause) : null;
+    }
+
+    @Override
+    public Object visitModifyAlterTableClause(ModifyAlterTableClause modifyAlterTableClause) {
+        return expand(modifyAlterTableClause, VisitMethod.MODIFY_ALTER_TABLE_CLAUSE) ? super.visitModifyAlterTableClause(modifyAlterTableClause) : null;
+    }
+
+    @Override
+    public Object visitMovePartitionToDiskAlterTableClause(MovePartitionToDiskAlterTableClause movePartitionToDiskAlterTableClause) {
+        return expand(movePartitionToDiskAlterTableClause, VisitMethod.MOVE_PARTITION_TO_DISK_ALTER_TABLE_CLAUSE) ? super.visitMovePartitionToDiskAlterTableClause(movePartitionToDiskAlterTableClause) : null;
+    }
+
+    @Override
+    public Object visitMovePartitionToTableAlterTableClause(MovePartitionToTableAlterTableClause movePartitionToTableAlterTableClause) {
+        return expand(movePartitionToTableAlterTableClause, VisitMethod.MOVE_PARTITION_TO_TABLE_ALTER_TABLE_CLAUSE) ? super.visitMovePartitionToTableAlterTableClause(movePartitionToTableAlterTableClause) : null;
+    }
+
+    @Override
+    public Object visitMovePartitionToVolumeAlterTableClause(MovePartitionToVolumeAlterTableClause movePartitionToVolumeAlterTableClause) {
+        return expand(movePartitionToVolumeAlterTableClause, VisitMethod.MOVE_PARTITION_TO_VOLUME_ALTER_TABLE_CLAUSE) ? super.visitMovePartitionToVolumeAlterTableClause(movePartitionToVolumeAlterTableClause) : null;
+    }
+
+    @Override
+    public Object visitOrderByAlterTableClause(OrderByAlterTableClause orderByAlterTableClause) {
+        return expand(orderByAlterTableClause, VisitMethod.ORDER_BY_ALTER_TABLE_CLAUSE) ? super.visitOrderByAlterTableClause(orderByAlterTableClause) : null;
+    }
+
+    @Override
+    public Object visitRemoveAlterTableClause(RemoveAlterTableClause removeAlterTableClause) {
+        return expand(removeAlterTableClause, VisitMethod.REMOVE_ALTER_TABLE_CLAUSE) ? super.visitRemoveAlterTableClause(removeAlterTableClause) : null;
+    }
+
+    @Override
+    public Object visitRemoveTTLAlterTableClause(RemoveTTLAlterTableClause removeTTLAlterTableClause) {
+        return expand(removeTTLAlterTableClause, VisitMethod.REMOVE_TTL_ALTER_TABLE_CLAUSE) ? super.visitRemoveTTLAlterTableClause(removeTTLAlterTableClause) : null;
+    }
+
+    @Override
+    public Object visitRenameAlterTableClause(RenameAlterTableClause renameAlterTableClause) {
+        return expand(renameAlterTableClause, VisitMethod.RENAME_ALTER_TABLE_CLAUSE) ? super.visitRenameAlterTableClause(renameAlterTableClause) : null;
+    }
+
+    @Override
+    public Object visitReplaceAlterTableClause(ReplaceAlterTableClause replaceAlterTableClause) {
+        return expand(replaceAlterTableClause, VisitMethod.REPLACE_ALTER_TABLE_CLAUSE) ? super.visitReplaceAlterTableClause(replaceAlterTableClause) : null;
+    }
+
+    @Override
+    public Object visitTTLAlterTableClause(TTLAlterTableClause ttlAlterTableClause) {
+        return expand(ttlAlterTableClause, VisitMethod.TTL_ALTER_TABLE_CLAUSE) ? super.visitTTLAlterTableClause(ttlAlterTableClause) : null;
+    }
+
+    @Override
+    public Object visitTTLClause(TTLClause ttlClause) {
+        return expand(ttlClause, VisitMethod.TTL_CLAUSE) ? super.visitTTLClause(ttlClause) : null;
+    }
+
+    @Override
+    public Object visitTTLExpr(TTLExpr ttlExpr) {
+        return expand(ttlExpr, VisitMethod.TTL_EXPR) ? super.visitTTLExpr(ttlExpr) : null;
+    }
+
+    @Override
+    public Object visitUpdateAlterTableClause(UpdateAlterTableClause updateAlterTableClause) {
+        return expand(updateAlterTableClause, VisitMethod.UPDATE_ALTER_TABLE_CLAUSE) ? super.visitUpdateAlterTableClause(updateAlterTableClause) : null;
+    }
+
+    @Override
+    public Object visitAssignmentExpr(AssignmentExpr assignmentExpr) {
+        return expand(assignmentExpr, VisitMethod.ASSIGNMENT_EXPR) ? super.visitAssignmentExpr(assignmentExpr) : null;
+    }
+
+    @Override
+    public Object visitAlterTableClause(AlterTableClause alterTableClause) {
+        return expand(alterTableClause, VisitMethod.ALTER_TABLE_CLAUSE) ? super.visitAlterTableClause(alterTableClause) : null;
+    }
+
+    @Override
+    public Object visitInsertQuery(InsertQuery insertQuery) {
+        return expand(insertQuery, VisitMethod.INSERT_QUERY) ? super.visitInsertQuery(insertQuery) : null;
+    }
+
+    @Override
+    public Object visitDataClause(DataClause dataClause) {
+        return expand(dataClause, VisitMethod.DATA_CLAUSE) ? super.visitDataClause(dataClause) : null;
+    }
+
+    @Override
+    public Object visitCreateTableQuery(CreateTableQuery createTableQuery) {
+        return expand(createTableQuery, VisitMethod.CREATE_TABLE_QUERY) ? super.visitCreateTableQuery(createTableQuery) : null;
+    }
+
+    @Override
+    public Object visitTableSchemaClause(TableSchemaClause tableSchemaClause) {
+        return expand(tableSchemaClause, VisitMethod.TABLE_SCHEMA_CLAUSE) ? super.visitTableSchemaClause(tableSchemaClause) : null;
+    }
+
+    @Override
+    public Object visitEngineClause(EngineClause engineClause) {
+        return expand(engineClause, VisitMethod.ENGINE_CLAUSE) ? super.visitEngineClause(engineClause) : null;
+    }
+
+    @Override
+    public Object visitEngineExpr(EngineExpr engineExpr) {
+        return expand(engineExpr, VisitMethod.ENGINE_EXPR) ? super.visitEngineExpr(engineExpr) : null;
+    }
+
+    @Override
+    public Object visitSelectUnionQuery(SelectUnionQuery selectUnionQuery) {
+        return expand(selectUnionQuery, VisitMethod.SELECT_UNION_QUERY) ? super.visitSelectUnionQuery(selectUnionQuery) : null;
+    }
+
+    @Override
+    public Object visitSelectStatement(SelectStatement selectStatement) {
+        return expand(selectStatement, VisitMethod.SELECT_STATEMENT) ? super.visitSelectStatement(selectStatement) : null;
+    }
+
+    @Override
+    public Object visitWithClause(WithClause withClause) {
+        return expand(withClause, VisitMethod.WITH_CLAUSE) ? super.visitWithClause(withClause) : null;
+    }
+
+    @Override
+    public Object visitFromClause(FromClause fromClause) {
+        return expand(fromClause, VisitMethod.FROM_CLAUSE) ? super.visitFromClause(fromClause) : null;
+    }
+
+    @Override
+    public Object visitJoinExpr(JoinExpr joinExpr) {
+        return expand(joinExpr, VisitMethod.JOIN_EXPR) ? super.visitJoinExpr(joinExpr) : null;
+    }
+
+    @Override
+    public Object visitTableExpr(TableExpr tableExpr) {
+        return expand(tableExpr, VisitMethod.TABLE_EXPR) ? super.visitTableExpr(tableExpr) : null;
+    }
+
+    @Override
+    public Object visitIdentifier(Identifier identifier) {
+        return expand(identifier, VisitMethod.IDENTIFIER) ? super.visitIdentifier(identifier) : null;
+    }
+
+    @Override
+    public Object visitTableFunctionExpr(TableFunctionExpr function) {
+        return expand(function, VisitMethod.TABLE_FUNCTION_EXPR) ? super.visitTableFunctionExpr(function) : null;
+    }
+
+    @Override
+    public Object visitTableArgExprList(List<TableArgExpr> args) {
+        return expand(args, VisitMethod.TABLE_ARG_EXPR_LIST) ? super.visitTableArgExprList(args) : null;
+    }
+
+    @Override
+    public Object visitTableArgExpr(TableArgExpr arg) {
+        return expand(arg, VisitMethod.TABLE_ARG_EXPR) ? super.visitTableArgExpr(arg) : null;
+    }
+
+    @Override
+    public Object visitLiteral(Literal literal) {
+        return expand(literal, VisitMethod.LITERAL) ? super.visitLiteral(literal) : null;
+    }
+
+    @Override
+    public Object visitTableIdentifier(TableIdentifier tableIdentifier) {
+        return expand(tableIdentifier, VisitMethod.TABLE_IDENTIFIER) ? super.visitTableIdentifier(tableIdentifier) : null;
+    }
+
+    @Override
+    public Object visitSampleClause(SampleClause sampleClause) {
+        return expand(sampleClause, VisitMethod.SAMPLE_CLAUSE) ? super.visitSampleClause(sampleClause) : null;
+    }
+
+    @Override
+    public Object visitRatioExpr(RatioExpr ratioExpr) {
+        return expand(ratioExpr, VisitMethod.RATIO_EXPR) ? super.visitRatioExpr(ratioExpr) : null;
+    }
+
+    @Override
+    public Object visitNumberLiteral(NumberLiteral numberLiteral) {
+        return expand(numberLiteral, VisitMethod.NUMBER_LITERAL) ? super.visitNumberLiteral(numberLiteral) : null;
+    }
+
+    @Override
+    public Object visitJoinConstraintClause(JoinConstraintClause joinConstraintClause) {
+        return expand(joinConstraintClause, VisitMethod.JOIN_CONSTRAINT_CLAUSE) ? super.visitJoinConstraintClause(joinConstraintClause) : null;
+    }
+
+    @Override
+    public Object visitArrayJoinClause(ArrayJoinClause arrayJoinClause) {
+        return expand(arrayJoinClause, VisitMethod.ARRAY_JOIN_CLAUSE) ? super.visitArrayJoinClause(arrayJoinClause) : null;
+    }
+
+    @Override
+    public Object visitPrewhereClause(PrewhereClause prewhereClause) {
+        return expand(prewhereClause, VisitMethod.PREWHERE_CLAUSE) ? super.visitPrewhereClause(prewhereClause) : null;
+    }
+
+    @Override
+    public Object visitWhereClause(WhereClause whereClause) {
+        return expand(whereClause, VisitMethod.WHERE_CLAUSE) ? super.visitWhereClause(whereClause) : null;
+    }
+
+    @Override
+    public Object visitGroupByClause(GroupByClause groupByClause) {
+        return expand(groupByClause, VisitMethod.GROUP_BY_CLAUSE) ? super.visitGroupByClause(groupByClause) : null;
+    }
+
+    @Override
+    public Object visitHavingClause(HavingClause havingClause) {
+        return expand(havingClause, VisitMethod.HAVING_CLAUSE) ? super.visitHavingClause(havingClause) : null;
+    }
+
+    @Override
+    public Object visitOrderByClause(OrderByClause orderByClause) {
+        return expand(orderByClause, VisitMethod.ORDER_BY_CLAUSE) ? super.visitOrderByClause(orderByClause) : null;
+    }
+
+    @Override
+    public Object visitOrderExpr(OrderExpr orderExpr) {
+        return expand(orderExpr, VisitMethod.ORDER_EXPR) ? super.visitOrderExpr(orderExpr) : null;
+    }
+
+    @Override
+    public Object visitStringLiteral(StringLiteral stringLiteral) {
+        return expand(stringLiteral, VisitMethod.STRING_LITERAL) ? super.visitStringLiteral(stringLiteral) : null;
+    }
+
+    @Override
+    public Object visitLimitByClause(LimitByClause limitByClause) {
+        return expand(limitByClause, VisitMethod.LIMIT_BY_CLAUSE) ? super.visitLimitByClause(limitByClause) : null;
+    }
+
+    @Override
+    public Object visitLimitExpr(LimitExpr limitExpr) {
+        return expand(limitExpr, VisitMethod.LIMIT_EXPR) ? super.visitLimitExpr(limitExpr) : null;
+    }
+
+    @Override
+    public Object visitLimitClause(LimitClause limitClause) {
+        return expand(limitClause, VisitMethod.LIMIT_CLAUSE) ? super.visitLimitClause(limitClause) : null;
+    }
+
+    @Override
+    public Object visitSettingsClause(SettingsClause settingsClause) {
+        return expand(settingsClause, VisitMethod.SETTINGS_CLAUSE) ? super.visitSettingsClause(settingsClause) : null;
+    }
+
+    @Override
+    public Object visitSettingExpr(SettingExpr settingExpr) {
+        return expand(settingExpr, VisitMethod.SETTING_EXPR) ? super.visitSettingExpr(settingExpr) : null;
+    }
+
+    @Override
+    public Object visitSelectColumnExprList(List<ColumnExpr> exprs) {
+        return expand(exprs, VisitMethod.SELECT_COLUMN_EXPR_LIST) ? super.visitSelectColumnExprList(exprs) : null;
+    }
+
+    @Override
+    public Object visitColumnExprList(List<ColumnExpr> exprs) {
+        return expand(exprs, VisitMethod.COLUMN_EXPR_LIST) ? super.visitColumnExprList(exprs) : null;
+    }
+
+    @Override
+    public Object visitAsteriskColumnExpr(AsteriskColumnExpr expr) {
+        return expand(expr, VisitMethod.ASTERISK_COLUMN_EXPR) ? super.visitAsteriskColumnExpr(expr) : null;
+    }
+
+    @Override
+    public Object visitColumnExpr(ColumnExpr expr) {
+        return expand(expr, VisitMethod.COLUMN_EXPR) ? super.visitColumnExpr(expr) : null;
+    }
+
+    @Override
+    public Object visitLiteralColumnExpr(ColumnExpr expr) {
+        return expand(expr, VisitMethod.LITERAL_COLUMN_EXPR) ? super.visitLiteralColumnExpr(expr) : null;
+    }
+
+    @Override
+    public Object visitIdentifierColumnExpr(ColumnExpr expr) {
+        return expand(expr, VisitMethod.IDENTIFIER_COLUMN_EXPR) ? super.visitIdentifierColumnExpr(expr) : null;
+    }
+
+    @Override
+    public Object visitAliasColumnExpr(AliasColumnExpr expr) {
+        return expand(expr, VisitMethod.ALIAS_COLUMN_EXPR) ? super.visitAliasColumnExpr(expr) : null;
+    }
+
+    @Override
+    public Object visitFunctionColumnExpr(ColumnExpr expr) {
+        return expand(expr, VisitMethod.FUNCTION_COLUMN_EXPR) ? super.visitFunctionColumnExpr(expr) : null;
+    }
+
+    @Override
+    public Object visitSubqueryColumnExpr(ColumnExpr expr) {
+        return expand(expr, VisitMethod.SUBQUERY_COLUMN_EXPR) ? super.visitSubqueryColumnExpr(expr) : null;
+    }
+}
@@ -2,21 +2,64 @@ package com.clickhouse.parser;
 
 import com.clickhouse.parser.ast.*;
 import com.clickhouse.parser.ast.expr.*;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.RuleNode;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
 public class CstVisitor extends ClickHouseParserBaseVisitor {
 
+    /**
+     * Names of the functions operators are turned into. Identifiers are immutable, so all ASTs share one per name.
+     */
+    private static final Map<String, Identifier> FUNCTION_NAMES = new HashMap<>();
+
+    static {
+        for (String name : new String[]{"and", "or", "not", "negate", "plus", "minus", "multiply", "divide", "modulo",
+                "concat", "equals", "notEquals", "less", "lessOrEquals", "greater", "greaterOrEquals", "like",
+                "notLike", "ilike", "notILike", "in", "notIn", "globalIn", "globalNotIn", "isNull", "isNotNull", "if",
+                "multiIf", "caseWithExpression", "tuple", "array", "arrayElement", "tupleElement", "cast", "substring",
+                "trim", "countDistinct", "toDate", "toDateTime", "toSecond", "toMinute", "toHour", "toDayOfMonth",
+                "toMonth", "toQuarter", "toYear", "toIntervalSecond", "toIntervalMinute", "toIntervalHour",
+                "toIntervalDay", "toIntervalWeek", "toIntervalMonth", "toIntervalQuarter", "toIntervalYear"}) {
+            FUNCTION_NAMES.put(name, new Identifier(name));
+        }
+    }
+
+    /**
+     * Weak, so a name stays only as long as some AST uses it.
+     */
+    private static final Interner<String> NAMES = Interners.newWeakInterner();
+
     private TableIdentifier currentTableIdentifier;
 
     private String defaultDatabase = "default";
 
     private boolean fillDefaultDatabase = false;
 
+    private boolean internNames = false;
+
+    private boolean compactLiteralLists = false;
+
+    private int nodeCount = 0;
+
+    private Object lastNode;
+
+    /**
+     * Nodes built by {@link #buildWhileParsing(ParserRuleContext)} for contexts whose children have been dropped.
+     */
+    private Map<ParseTree, Object> builtNodes;
+
     public CstVisitor() {
     }
 
@@ -29,6 +72,143 @@ public class CstVisitor extends ClickHouseParserBaseVisitor {
         this.fillDefaultDatabase = fillDefaultDatabase;
     }
 
+    /**
+     * Count the AST nodes built from the parse tree. A rule that just passes its child's node through returns the
+     * node counted last, so it is not counted twice.
+     */
+    @Override
+    public Object visit(ParseTree tree) {
+        if (null != builtNodes) {
+            Object node = builtNodes.get(tree);
+            if (null != node) {
+                lastNode = node;
+                return node;
+            }
+        }
+        Object result = super.visit(tree);
+        if (result instanceof INode && result != lastNode) {
+            nodeCount++;
+            lastNode = result;
+        }
+        return result;
+    }
+
+    /**
+     * Same as the default, except that children built while parsing are not visited again.
+     */
+    @Override
+    public Object visitChildren(RuleNode node) {
+        if (null == builtNodes) {
+            return super.visitChildren(node);
+        }
+        Object result = defaultResult();
+        int n = node.getChildCount();
+        for (int i = 0; i < n; i++) {
+            if (!shouldVisitNextChild(node, result)) {
+                break;
+            }
+            ParseTree child = node.getChild(i);
+            Object childResult = builtNodes.get(child);
+            if (null == childResult) {
+                childResult = child.accept(this);
+            }
+            result = aggregateResult(result, childResult);
+        }
+        return result;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public boolean isInternNames() {
+        return internNames;
+    }
+
+    /**
+     * Share one String per identifier name across all ASTs built with interning, e.g. for a cache of many parsed
+     * queries over the same tables and columns.
+     */
+    public void setInternNames(boolean internNames) {
+        this.internNames = internNames;
+    }
+
+    public boolean isCompactLiteralLists() {
+        return compactLiteralLists;
+    }
+
+    /**
+     * Keep long tuples and arrays of literals, e.g. the values of an IN list, as a {@link LiteralListColumnExpr}.
+     */
+    public void setCompactLiteralLists(boolean compactLiteralLists) {
+        this.compactLiteralLists = compactLiteralLists;
+    }
+
+    private String name(String text) {
+        return internNames && null != text ? NAMES.intern(text) : text;
+    }
+
+    private static Identifier functionName(String name) {
+        Identifier identifier = FUNCTION_NAMES.get(name);
+        return null != identifier ? identifier : new Identifier(name);
+    }
+
+    private FunctionColumnExpr createFunction(Identifier name, List<ColumnExpr> params, List<ColumnExpr> args) {
+        if (compactLiteralLists && null == params) {
+            LiteralListColumnExpr literalList = LiteralListColumnExpr.of(name, args);
+            if (null != literalList) {
+                return literalList;
+            }
+        }
+        return ColumnExpr.createFunction(name, params, args);
+    }
+
+    /**
+     * Build the node of a context as soon as the parser has finished it and drop the context's children, so the
+     * parse tree below it can be collected while the rest of the statement is parsed. visit(ctx) returns the node
+     * later on. A context that fails to build is left alone for the regular visit.
+     */
+    void buildWhileParsing(ParserRuleContext ctx) {
+        if (null == builtNodes) {
+            builtNodes = new IdentityHashMap<>();
+        }
+        Object node;
+        try {
+            node = visit(ctx);
+        } catch (RuntimeException e) {
+            return;
+        }
+        if (null == node) {
+            return;
+        }
+        // the nodes built for contexts below are part of this node now
+        forgetBuiltNodes(ctx);
+        builtNodes.put(ctx, node);
+        ctx.children = null;
+    }
+
+    /**
+     * Drop the nodes built during an abandoned parse, e.g. the SLL stage of two-stage parsing.
+     */
+    void clearBuiltNodes() {
+        if (null != builtNodes) {
+            builtNodes.clear();
+        }
+        nodeCount = 0;
+        lastNode = null;
+    }
+
+    private void forgetBuiltNodes(ParserRuleContext ctx) {
+        if (null == ctx.children) {
+            return;
+        }
+        for (ParseTree child : ctx.children) {
+            if (child instanceof ParserRuleContext && null == builtNodes.remove(child)) {
+                forgetBuiltNodes((ParserRuleContext) child);
+            }
+        }
+    }
+
     @Override
     public Object visitAlterTableStmt(ClickHouseParser.AlterTableStmtContext ctx) {
         StringLiteral cluster = null;
@@ -354,7 +534,9 @@ public class CstVisitor extends ClickHouseParserBaseVisitor {
     public Object visitDataClauseFormat(ClickHouseParser.DataClauseFormatContext ctx) {
         Identifier identifier = (Identifier) visit(ctx.identifier());
         int dataOffset = ctx.getStop().getStopIndex() + 1;
-        return DataClause.createFormat(identifier, dataOffset);
+        DataClause dataClause = DataClause.createFormat(identifier, dataOffset);
+        dataClause.setData(remainingText(ctx.getStop().getInputStream(), dataOffset));
+        return dataClause;
     }
 
     @Override
@@ -366,7 +548,19 @@ public class CstVisitor extends ClickHouseParserBaseVisitor {
     @Override
     public Object visitDataClauseValues(ClickHouseParser.DataClauseValuesContext ctx) {
         int dataOffset = ctx.getStop().getStopIndex() + 1;
-        return DataClause.createValues(dataOffset);
+        DataClause dataClause = DataClause.createValues(dataOffset);
+        dataClause.setData(remainingText(ctx.getStop().getInputStream(), dataOffset));
+        return dataClause;
+    }
+
+    /**
+     * The statement from the offset to its end, without copying it if it is held in a StringCharStream.
+     */
+    private static CharSequence remainingText(CharStream input, int offset) {
+        if (input instanceof StringCharStream) {
+            return ((StringCharStream) input).subSequence(Math.min(offset, input.size()), input.size());
+        }
+        return input.getText(Interval.of(offset, input.size() - 1));
     }
 
     @Override
@@ -552,7 +746,7 @@ public class CstVisitor extends ClickHouseParserBaseVisitor {
                 database = databaseAndTable[0];
                 table = databaseAndTable[1];
             }
-            TableIdentifier tableIdentifier = new TableIdentifier(new Identifier(database), new Identifier(table));
+            TableIdentifier tableIdentifier = new TableIdentifier(new Identifier(name(database)), new Identifier(name(table)));
             SelectStatement selectStatement = new SelectStatement(false, SelectStatement.ModifierType.NONE, false, null);
             JoinExpr joinExpr = JoinExpr.createTableExpr(TableExpr.createIdentifier(tableIdentifier), new SampleClause(null, null), true);
             FromClause fromClause = new FromClause(joinExpr);
@@ -788,30 +982,23 @@ public class CstVisitor extends ClickHouseParserBaseVisitor {
 
     @Override
     public Object visitColumnExprAnd(ClickHouseParser.ColumnExprAndContext ctx) {
-        Identifier name = new Identifier("and");
-        List<ColumnExpr> args = new ArrayList<>();
-        for (ClickHouseParser.ColumnExprContext expr : ctx.columnExpr()) {
-            ColumnExpr arg = (ColumnExpr) visit(expr);
-            args.add(arg);
-        }
-        FunctionColumnExpr functionColumnExpr = ColumnExpr.createFunction(name, null, args);
-        return functionColumnExpr;
+        return visitLogicalChain(ctx, "and");
     }
 
     @Override
     public Object visitColumnExprArray(ClickHouseParser.ColumnExprArrayContext ctx) {
-        Identifier name = new Identifier("array");
+        Identifier name = functionName("array");
         List<ColumnExpr> args = null;
         if (null != ctx.columnExprList()) {
             args = (List<ColumnExpr>) visit(ctx.columnExprList());
         }
-        FunctionColumnExpr functionColumnExpr = ColumnExpr.createFunction(name, null, args);
+        FunctionColumnExpr functionColumnExpr = createFunction(name, null, args);
         return functionColumnExpr;
     }
 
     @Override
     public Object visitColumnExprArrayAccess(ClickHouseParser.ColumnExprArrayAccessContext ctx) {
-        Identifier name = new Identifier("arrayElement");
+        Identifier name = functionName("arrayElement");
         List<ColumnExpr> args = new ArrayList<>();
         for (ClickHouseParser.ColumnExprContext expr : ctx.columnExpr()) {
             ColumnExpr arg = (ColumnExpr) visit(expr);
@@ -844,9 +1031,9 @@ public class CstVisitor extends ClickHouseParserBaseVisitor {
         {
             Identifier name = null;
             if (null != ctx.NOT()) {
-                name = new Identifier("lessOrEquals");
+                name = functionName("lessOrEquals");
             } else {
-                name = new Identifier("greaterOrEquals");
+                name = functionName("greaterOrEquals");
             }
             List<ColumnExpr> args = new ArrayList<>();
             args.add((ColumnExpr) visit(ctx.columnExpr(0)));
@@ -857,9 +1044,9 @@ public class CstVisitor extends ClickHouseParserBaseVisitor {
         {
             Identifier name = null;
             if (null != ctx.NOT()) {
-                name = new Identifier("greaterOrEquals");
+                name = functionName("greaterOrEquals");
             } else {
-                name = new Identifier("lessOrEquals");
+                name = functionName("lessOrEquals");
             }
             List<ColumnExpr> args = new ArrayList<>();
             args.add((ColumnExpr) visit(ctx.columnExpr(0)));
@@ -867,7 +1054,7 @@ public class CstVisitor extends ClickHouseParserBaseVisitor {
             expr2 = ColumnExpr.createFunction(name, null, args);
         }
 
-        Identifier name = new Identifier("and");
+        Identifier name = functionName("and");
         List<ColumnExpr> args = new ArrayList<>();
         args.add(expr1);
         args.add(expr2);
@@ -879,7 +1066,7 @@ public class CstVisitor extends ClickHouseParserBaseVisitor {
     public Object visitColumnExprCase(ClickHouseParser.ColumnExprCaseContext ctx) {
         boolean hasCaseExpr = (null != ctx.ELSE() && ctx.columnExpr().size() % 2 == 0) ||
                 (null == ctx.ELSE() && ctx.columnExpr().size() % 2 == 1);
-        Identifier name = new Identifier(hasCaseExpr ? "caseWithExpression" : "multiIf");
+        Identifier name = functionName(hasCaseExpr ? "caseWithExpression" : "multiIf");
         List<ColumnExpr> args = new ArrayList<>();
         for (ClickHouseParser.ColumnExprContext expr : ctx.columnExpr()) {
             ColumnExpr columnExpr = (ColumnExpr) visit(expr);
@@ -900,13 +1087,13 @@ public class CstVisitor extends ClickHouseParserBaseVisitor {
         ColumnTypeExpr columnTypeExpr = (ColumnTypeExpr) visit(ctx.columnTypeExpr());
         LiteralColumnExpr literalColumnExpr = ColumnExpr.createLiteral(Literal.createString(columnTypeExpr.toString()));
         args.add(literalColumnExpr);
-        FunctionColumnExpr functionColumnExpr = ColumnExpr.createFunction(new Identifier("cast"), null, args);
+        FunctionColumnExpr functionColumnExpr = ColumnExpr.createFunction(functionName("cast"), null, args);
         return functionColumnExpr;
     }
 
     @Override
     public Object visitColumnExprDate(ClickHouseParser.ColumnExprDateContext ctx) {
-        Identifier name = new Identifier("toDate");
+        Identifier name = functionName("toDate");
         List<ColumnExpr> args = new ArrayList<>();
         LiteralColumnExpr literalColumnExpr = ColumnExpr.createLiteral(Literal.createString(ctx.STRING_LITERAL()));
         args.add(literalColumnExpr);
@@ -940,7 +1127,7 @@ public class CstVisitor extends ClickHouseParserBaseVisitor {
         }
         ColumnExpr arg = (ColumnExpr) visit(ctx.columnExpr());
         args.add(arg);
-        FunctionColumnExpr functionColumnExpr = ColumnExpr.createFunction(new Identifier(name), null, args);
+        FunctionColumnExpr functionColumnExpr = ColumnExpr.createFunction(functionName(name), null, args);
         return functionColumnExpr;
     }
 
@@ -949,7 +1136,7 @@ public class CstVisitor extends ClickHouseParserBaseVisitor {
         Identifier name = (Identifier) visit(ctx.identifier());
         List<ColumnExpr> params = null;
         if (null != ctx.DISTINCT() && null != name && name.getName().equals("count")) {
-            name = new Identifier("countDistinct");
+            name = functionName("countDistinct");
         }
         if (null != ctx.columnExprList()) {
             params = (List<ColumnExpr>) visit(ctx.columnExprList());
@@ -958,7 +1145,7 @@ public class CstVisitor extends ClickHouseParserBaseVisitor {
         if (null != ctx.columnArgList()) {
             args = (List<ColumnExpr>) visit(ctx.columnArgList());
         }
-        FunctionColumnExpr functionColumnExpr = ColumnExpr.createFunction(name, params, args);
+        FunctionColumnExpr functionColumnExpr = createFunction(name, params, args);
         return functionColumnExpr;
     }
 
@@ -973,21 +1160,21 @@ public class CstVisitor extends ClickHouseParserBaseVisitor {
     public Object visitColumnExprInterval(ClickHouseParser.ColumnExprIntervalContext ctx) {
         Identifier name;
         if (null != ctx.interval().SECOND()) {
-            name = new Identifier("toIntervalSecond");
+            name = functionName("toIntervalSecond");
         } else if (null != ctx.interval().MINUTE()) {
-            name = new Identifier("toIntervalMinute");
+            name = functionName("toIntervalMinute");
         } else if (null != ctx.interval().HOUR()) {
-            name = new Identifier("toIntervalHour");
+            name = functionName("toIntervalHour");
         } else if (null != ctx.interval().DAY()) {
-            name = new Identifier("toIntervalDay");
+            name = functionName("toIntervalDay");
         } else if (null != ctx.interval().WEEK()) {
-            name = new Identifier("toIntervalWeek");
+            name = functionName("toIntervalWeek");
         } else if (null != ctx.interval().MONTH()) {
-            name = new Identifier("toIntervalMonth");
+            name = functionName("toIntervalMonth");
         } else if (null != ctx.interval().QUARTER()) {
-            name = new Identifier("toIntervalQuarter");
+            name = functionName("toIntervalQuarter");
         } else if (null != ctx.interval().YEAR()) {
-            name = new Identifier("toIntervalYear");
+            name = functionName("toIntervalYear");
         } else {
             // this can't happen
             throw new RuntimeException("Syntax Error");
@@ -1003,9 +1190,9 @@ public class CstVisitor extends ClickHouseParserBaseVisitor {
     public Object visitColumnExprIsNull(ClickHouseParser.ColumnExprIsNullContext ctx) {
         Identifier name;
         if (null != ctx.NOT()) {
-            name = new Identifier("isNotNull");
+            name = functionName("isNotNull");
         } else {
-            name = new Identifier("isNull");
+            name = functionName("isNull");
         }
         List<ColumnExpr> args = new ArrayList<>();
         ColumnExpr arg = (ColumnExpr) visit(ctx.columnExpr());
@@ -1033,7 +1220,7 @@ public class CstVisitor extends ClickHouseParserBaseVisitor {
 
     @Override
     public Object visitColumnExprNegate(ClickHouseParser.ColumnExprNegateContext ctx) {
-        Identifier name = new Identifier("negate");
+        Identifier name = functionName("negate");
         List<ColumnExpr> args = new ArrayList<>();
         ColumnExpr arg = (ColumnExpr) visit(ctx.columnExpr());
         args.add(arg);
@@ -1043,7 +1230,7 @@ public class CstVisitor extends ClickHouseParserBaseVisitor {
 
     @Override
     public Object visitColumnExprNot(ClickHouseParser.ColumnExprNotContext ctx) {
-        Identifier name = new Identifier("not");
+        Identifier name = functionName("not");
         List<ColumnExpr> args = new ArrayList<>();
         ColumnExpr arg = (ColumnExpr) visit(ctx.columnExpr());
         args.add(arg);
@@ -1053,14 +1240,35 @@ public class CstVisitor extends ClickHouseParserBaseVisitor {
 
     @Override
     public Object visitColumnExprOr(ClickHouseParser.ColumnExprOrContext ctx) {
-        Identifier name = new Identifier("or");
-        List<ColumnExpr> args = new ArrayList<>();
-        for (ClickHouseParser.ColumnExprContext expr : ctx.columnExpr()) {
-            ColumnExpr arg = (ColumnExpr) visit(expr);
-            args.add(arg);
+        return visitLogicalChain(ctx, "or");
+    }
+
+    /**
+     * a OR b OR c parses into a left-deep chain of contexts, one per operator. Walk down the left side of the chain
+     * in a loop and build the nodes bottom-up, so that a generated query with thousands of conditions does not
+     * recurse once per condition. The nodes are the same as visiting each context on its own.
+     */
+    private Object visitLogicalChain(ClickHouseParser.ColumnExprContext ctx, String operator) {
+        List<ClickHouseParser.ColumnExprContext> chain = new ArrayList<>();
+        ClickHouseParser.ColumnExprContext left = ctx;
+        while (left.getClass() == ctx.getClass() && null != left.children
+                && (null == builtNodes || !builtNodes.containsKey(left))) {
+            chain.add(left);
+            left = left.getRuleContext(ClickHouseParser.ColumnExprContext.class, 0);
+        }
+        Identifier name = functionName(operator);
+        ColumnExpr result = (ColumnExpr) visit(left);
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            List<ColumnExpr> args = new ArrayList<>();
+            args.add(result);
+            args.add((ColumnExpr) visit(chain.get(i).getRuleContext(ClickHouseParser.ColumnExprContext.class, 1)));
+            result = ColumnExpr.createFunction(name, null, args);
+            if (i > 0) {
+                // the outermost node is counted by visit
+                nodeCount++;
+            }
         }
-        FunctionColumnExpr functionColumnExpr = ColumnExpr.createFunction(name, null, args);
-        return functionColumnExpr;
+        return result;
     }
 
     @Override
@@ -1072,11 +1280,11 @@ public class CstVisitor extends ClickHouseParserBaseVisitor {
     public Object visitColumnExprPrecedence1(ClickHouseParser.ColumnExprPrecedence1Context ctx) {
         Identifier name = null;
         if (null != ctx.ASTERISK()) {
-            name = new Identifier("multiply");
+            name = functionName("multiply");
         } else if (null != ctx.SLASH()) {
-            name = new Identifier("divide");
+            name = functionName("divide");
         } else if (null != ctx.PERCENT()) {
-            name = new Identifier("modulo");
+            name = functionName("modulo");
         }
         List<ColumnExpr> args = new ArrayList<>();
         for (ClickHouseParser.ColumnExprContext expr : ctx.columnExpr()) {
@@ -1091,11 +1299,11 @@ public class CstVisitor extends ClickHouseParserBaseVisitor {
     public Object visitColumnExprPrecedence2(ClickHouseParser.ColumnExprPrecedence2Context ctx) {
         Identifier name = null;
         if (null != ctx.PLUS()) {
-            name = new Identifier("plus");
+            name = functionName("plus");
         } else if (null != ctx.DASH()) {
-            name = new Identifier("minus");
+            name = functionName("minus");
         } else if (null != ctx.CONCAT()) {
-            name = new Identifier("concat");
+            name = functionName("concat");
         }
         List<ColumnExpr> args = new ArrayList<>();
         for (ClickHouseParser.ColumnExprContext expr : ctx.columnExpr()) {
@@ -1110,41 +1318,41 @@ public class CstVisitor extends ClickHouseParserBaseVisitor {
     public Object visitColumnExprPrecedence3(ClickHouseParser.ColumnExprPrecedence3Context ctx) {
         Identifier name = null;
         if (null != ctx.EQ_DOUBLE() || null != ctx.EQ_SINGLE()) {
-            name = new Identifier("equals");
+            name = functionName("equals");
         } else if (null != ctx.NOT_EQ()) {
-            name = new Identifier("notEquals");
+            name = functionName("notEquals");
         } else if (null != ctx.LE()) {
-            name = new Identifier("lessOrEquals");
+            name = functionName("lessOrEquals");
         } else if (null != ctx.GE()) {
-            name = new Identifier("greaterOrEquals");
+            name = functionName("greaterOrEquals");
         } else if (null != ctx.LT()) {
-            name = new Identifier("less");
+            name = functionName("less");
         } else if (null != ctx.GT()) {
-            name = new Identifier("greater");
+            name = functionName("greater");
         } else if (null != ctx.LIKE()) {
             if (null != ctx.NOT()) {
-                name = new Identifier("notLike");
+                name = functionName("notLike");
             } else {
-                name = new Identifier("like");
+                name = functionName("like");
             }
         } else if (null != ctx.ILIKE()) {
             if (null != ctx.NOT()) {
-                name = new Identifier("notILike");
+                name = functionName("notILike");
             } else {
-                name = new Identifier("ilike");
+                name = functionName("ilike");
             }
         } else if (null != ctx.IN()) {
             if (null != ctx.GLOBAL()) {
                 if (null != ctx.NOT()) {
-                    name = new Identifier("globalNotIn");
+                    name = functionName("globalNotIn");
                 } else {
-                    name = new Identifier("globalIn");
+                    name = functionName("globalIn");
                 }
             } else {
                 if (null != ctx.NOT()) {
-                    name = new Identifier("notIn");
+                    name = functionName("notIn");
                 } else {
-                    name = new Identifier("in");
+                    name = functionName("in");
                 }
             }
         }
@@ -1172,7 +1380,7 @@ public class CstVisitor extends ClickHouseParserBaseVisitor {
 
     @Override
     public Object visitColumnExprSubstring(ClickHouseParser.ColumnExprSubstringContext ctx) {
-        Identifier name = new Identifier("substring");
+        Identifier name = functionName("substring");
         List<ColumnExpr> args = new ArrayList<>();
         for (ClickHouseParser.ColumnExprContext expr : ctx.columnExpr()) {
             ColumnExpr arg = (ColumnExpr) visit(expr);
@@ -1184,7 +1392,7 @@ public class CstVisitor extends ClickHouseParserBaseVisitor {
 
     @Override
     public Object visitColumnExprTernaryOp(ClickHouseParser.ColumnExprTernaryOpContext ctx) {
-        Identifier name = new Identifier("if");
+        Identifier name = functionName("if");
         List<ColumnExpr> args = new ArrayList<>();
         for (ClickHouseParser.ColumnExprContext expr : ctx.columnExpr()) {
             ColumnExpr arg = (ColumnExpr) visit(expr);
@@ -1196,7 +1404,7 @@ public class CstVisitor extends ClickHouseParserBaseVisitor {
 
     @Override
     public Object visitColumnExprTimestamp(ClickHouseParser.ColumnExprTimestampContext ctx) {
-        Identifier name = new Identifier("toDateTime");
+        Identifier name = functionName("toDateTime");
         List<ColumnExpr> args = new ArrayList<>();
         LiteralColumnExpr literalColumnExpr = ColumnExpr.createLiteral(Literal.createString(ctx.STRING_LITERAL()));
         args.add(literalColumnExpr);
@@ -1206,7 +1414,7 @@ public class CstVisitor extends ClickHouseParserBaseVisitor {
 
     @Override
     public Object visitColumnExprTrim(ClickHouseParser.ColumnExprTrimContext ctx) {
-        Identifier name = new Identifier("trim");
+        Identifier name = functionName("trim");
         List<ColumnExpr> args = new ArrayList<>();
         List<ColumnExpr> params = new ArrayList<>();
         ColumnExpr columnExpr = (ColumnExpr) visit(ctx.columnExpr());
@@ -1220,15 +1428,15 @@ public class CstVisitor extends ClickHouseParserBaseVisitor {
 
     @Override
     public Object visitColumnExprTuple(ClickHouseParser.ColumnExprTupleContext ctx) {
-        Identifier name = new Identifier("tuple");
+        Identifier name = functionName("tuple");
         List<ColumnExpr> args = (List<ColumnExpr>) visit(ctx.columnExprList());
-        FunctionColumnExpr functionColumnExpr = ColumnExpr.createFunction(name, null, args);
+        FunctionColumnExpr functionColumnExpr = createFunction(name, null, args);
         return functionColumnExpr;
     }
 
     @Override
     public Object visitColumnExprTupleAccess(ClickHouseParser.ColumnExprTupleAccessContext ctx) {
-        Identifier name = new Identifier("tupleElement");
+        Identifier name = functionName("tupleElement");
         List<ColumnExpr> args = new ArrayList<>();
         ColumnExpr columnExpr = (ColumnExpr) visit(ctx.columnExpr());
         args.add(columnExpr);
@@ -1277,10 +1485,10 @@ public class CstVisitor extends ClickHouseParserBaseVisitor {
     @Override
     public Object visitAlias(ClickHouseParser.AliasContext ctx) {
         if (null != ctx.IDENTIFIER()) {
-            return new Identifier(ctx.IDENTIFIER().getText());
+            return new Identifier(name(ctx.IDENTIFIER().getText()));
         }
         if (null != ctx.keywordForAlias()) {
-            return new Identifier(ctx.keywordForAlias().getText());
+            return new Identifier(name(ctx.keywordForAlias().getText()));
         }
         // this can't happen
         return super.visitAlias(ctx);
@@ -1296,7 +1504,7 @@ public class CstVisitor extends ClickHouseParserBaseVisitor {
         if (null != ctx.nestedIdentifier()) {
             identifier = (Identifier) visit(ctx.nestedIdentifier());
         } else {
-            identifier = new Identifier(table.getQualifiedName());
+            identifier = new Identifier(name(table.getQualifiedName()));
         }
         if (null == table || null == table.getName() || table.getName().isEmpty()) {
             // TODO: this is used for paring partition range, we need to consider alias in SELECT clause
@@ -1317,13 +1525,13 @@ public class CstVisitor extends ClickHouseParserBaseVisitor {
     @Override
     public Object visitIdentifier(ClickHouseParser.IdentifierContext ctx) {
         if (null != ctx.IDENTIFIER()) {
-            return new Identifier(ctx.IDENTIFIER().getText());
+            return new Identifier(name(ctx.IDENTIFIER().getText()));
         }
         if (null != ctx.interval()) {
-            return new Identifier(ctx.interval().getText());
+            return new Identifier(name(ctx.interval().getText()));
         }
         if (null != ctx.keyword()) {
-            return new Identifier(ctx.keyword().getText());
+            return new Identifier(name(ctx.keyword().getText()));
         }
         // this can't happen
         return super.visitIdentifier(ctx);
@@ -1365,7 +1573,7 @@ public class CstVisitor extends ClickHouseParserBaseVisitor {
         if (ctx.identifier().size() == 2) {
             String name1 = ((Identifier) visit(ctx.identifier(0))).getName();
             String name2 = ((Identifier) visit(ctx.identifier(1))).getName();
-            return new Identifier(name1, name2);
+            return new Identifier(name(name1 + "." + name2));
         } else {
             return visit(ctx.identifier(0));
         }
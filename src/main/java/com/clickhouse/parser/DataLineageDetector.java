@@ -5,6 +5,7 @@ import com.clickhouse.data.FieldLineageInfo;
 import com.clickhouse.data.SelectFieldsInfo;
 import com.clickhouse.data.TableInfo;
 import com.clickhouse.parser.ast.FromClause;
+import com.clickhouse.parser.ast.INode;
 import com.clickhouse.parser.ast.Identifier;
 import com.clickhouse.parser.ast.InsertQuery;
 import com.clickhouse.parser.ast.SelectStatement;
@@ -92,6 +93,36 @@ public class DataLineageDetector extends AstVisitor<Object> {
 
     Stack<TableInfo> fromTableNameStack = new Stack<>();
 
+    /**
+     * Forget the previous query, keeping the collections for the next one.
+     * An instance is not thread safe, reuse it for the next query with reset or analyze.
+     */
+    public DataLineageDetector reset() {
+        toTableInfo = null;
+        toColumnList.clear();
+        fromTableInfoList.clear();
+        selectId = null;
+        selectParentId = null;
+        selectFieldInfo = null;
+        fieldInfoTempList = null;
+        selectParentMap.clear();
+        selectFieldsInfoMap.clear();
+        isAliasColumn = false;
+        isFunctionColumn = false;
+        fromTableAliasStack.clear();
+        fromTableNameStack.clear();
+        return this;
+    }
+
+    /**
+     * Field lineage of a query, the previous query is forgotten.
+     */
+    public List<FieldLineageInfo> analyze(INode node) {
+        reset();
+        visit(node);
+        return getFieldLineage();
+    }
+
     @Override
     public TableInfo visitTableIdentifier(TableIdentifier tableIdentifier) {
         return TableInfo.builder()
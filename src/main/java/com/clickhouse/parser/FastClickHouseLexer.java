@@ -0,0 +1,563 @@
+package com.clickhouse.parser;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.LexerNoViableAltException;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.misc.Interval;
+
+import java.util.Arrays;
+
+/**
+ * A hand-written replacement for the generated {@link ClickHouseLexer}, scanning the statement as a char array
+ * and looking keywords up in a trie instead of running the ATN simulator. It produces the same tokens, positions
+ * and lexer errors as the generated lexer, so it can be handed to the parser in its place.
+ */
+public class FastClickHouseLexer extends ClickHouseLexer {
+
+    /**
+     * The statement is copied in chunks as it is lexed, starting with this many chars. A parser that stops early,
+     * e.g. at the data of an INSERT, leaves the rest of a long statement uncopied.
+     */
+    private static final int FIRST_CHUNK = 4096;
+
+    /**
+     * Buffers longer than this are not kept for the next statement.
+     */
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+    private static final int TRIE_WIDTH = 27;
+
+    private static int[] trie = new int[TRIE_WIDTH * 1024];
+
+    private static int[] keywordTypes = new int[1024];
+
+    private static int trieSize = 1;
+
+    static {
+        for (int type = 1; type < JSON_FALSE; type++) {
+            String name = VOCABULARY.getSymbolicName(type);
+            addKeyword(name.endsWith("_SQL") ? name.substring(0, name.length() - 4) : name, type);
+        }
+        addKeyword("ASC", ASCENDING);
+        addKeyword("INFINITY", INF);
+        addKeyword("YYYY", YEAR);
+    }
+
+    private char[] chars = new char[FIRST_CHUNK];
+
+    /**
+     * Number of chars copied into the buffer so far.
+     */
+    private int length;
+
+    private int inputLength;
+
+    /**
+     * Whether the current token was scanned up to the end of the copied chars, it is scanned again once more chars
+     * are copied.
+     */
+    private boolean hitEnd;
+
+    private int pos;
+
+    private int line = 1;
+
+    private int column = 0;
+
+    public FastClickHouseLexer(CharStream input) {
+        super(input);
+        load();
+    }
+
+    @Override
+    public void setInputStream(IntStream input) {
+        super.setInputStream(input);
+        load();
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        pos = 0;
+        line = 1;
+        column = 0;
+    }
+
+    @Override
+    public int getLine() {
+        return line;
+    }
+
+    @Override
+    public int getCharPositionInLine() {
+        return column;
+    }
+
+    @Override
+    public Token nextToken() {
+        while (pos < inputLength) {
+            if (pos == length) {
+                copyMore();
+            }
+            char[] s = chars;
+            hitEnd = false;
+            int start = pos;
+            int startLine = line;
+            int startColumn = column;
+            char c = s[pos];
+            int type;
+            int end;
+            if (isLetter(c) || c == '_') {
+                end = start + 1;
+                while (has(end) && isWordChar(s[end])) {
+                    end++;
+                }
+                type = wordType(s, start, end);
+            } else if (isDigit(c)) {
+                end = scanNumber(s, start);
+                type = numberType;
+            } else {
+                end = start + 1;
+                switch (c) {
+                    case ' ':
+                    case '\t':
+                    case '\n':
+                    case '\r':
+                    case '\u000B':
+                    case '\u000C':
+                        type = WHITESPACE;
+                        break;
+                    case '`':
+                        end = scanQuoted(s, start, '`');
+                        type = end > start + 1 ? IDENTIFIER : BACKQUOTE;
+                        break;
+                    case '"':
+                        end = scanQuoted(s, start, '"');
+                        type = end > start + 1 ? IDENTIFIER : QUOTE_DOUBLE;
+                        break;
+                    case '\'':
+                        end = scanQuoted(s, start, '\'');
+                        type = end > start + 1 ? STRING_LITERAL : QUOTE_SINGLE;
+                        break;
+                    case '.':
+                        end = Math.max(scanExponentFloat(s, start), start + 1);
+                        type = end > start + 1 ? FLOATING_LITERAL : DOT;
+                        break;
+                    case '-':
+                        if (has(end) && s[end] == '-') {
+                            end++;
+                            while (has(end) && s[end] != '\n' && s[end] != '\r') {
+                                end++;
+                            }
+                            // the line break is part of the comment
+                            end = Math.min(end + 1, length);
+                            type = SINGLE_LINE_COMMENT;
+                        } else if (has(end) && s[end] == '>') {
+                            end++;
+                            type = ARROW;
+                        } else {
+                            type = DASH;
+                        }
+                        break;
+                    case '/':
+                        type = SLASH;
+                        if (has(end) && s[end] == '*') {
+                            for (int i = start + 2; has(i + 1); i++) {
+                                if (s[i] == '*' && s[i + 1] == '/') {
+                                    end = i + 2;
+                                    type = MULTI_LINE_COMMENT;
+                                    break;
+                                }
+                            }
+                        }
+                        break;
+                    case '|':
+                        type = 0;
+                        if (has(end) && s[end] == '|') {
+                            end++;
+                            type = CONCAT;
+                        }
+                        break;
+                    case '!':
+                        type = 0;
+                        if (has(end) && s[end] == '=') {
+                            end++;
+                            type = NOT_EQ;
+                        }
+                        break;
+                    case '=':
+                        type = EQ_SINGLE;
+                        if (has(end) && s[end] == '=') {
+                            end++;
+                            type = EQ_DOUBLE;
+                        }
+                        break;
+                    case '<':
+                        type = LT;
+                        if (has(end) && (s[end] == '=' || s[end] == '>')) {
+                            type = s[end] == '=' ? LE : NOT_EQ;
+                            end++;
+                        }
+                        break;
+                    case '>':
+                        type = GT;
+                        if (has(end) && s[end] == '=') {
+                            end++;
+                            type = GE;
+                        }
+                        break;
+                    case '*':
+                        type = ASTERISK;
+                        break;
+                    case '\\':
+                        type = BACKSLASH;
+                        break;
+                    case ':':
+                        type = COLON;
+                        break;
+                    case ',':
+                        type = COMMA;
+                        break;
+                    case '{':
+                        type = LBRACE;
+                        break;
+                    case '[':
+                        type = LBRACKET;
+                        break;
+                    case '(':
+                        type = LPAREN;
+                        break;
+                    case '%':
+                        type = PERCENT;
+                        break;
+                    case '+':
+                        type = PLUS;
+                        break;
+                    case '?':
+                        type = QUERY;
+                        break;
+                    case '}':
+                        type = RBRACE;
+                        break;
+                    case ']':
+                        type = RBRACKET;
+                        break;
+                    case ')':
+                        type = RPAREN;
+                        break;
+                    case ';':
+                        type = SEMICOLON;
+                        break;
+                    default:
+                        type = 0;
+                        end = start;
+                }
+            }
+            if (hitEnd && length < inputLength) {
+                copyMore();
+                continue;
+            }
+            if (type == 0) {
+                noViableAlt(start, startLine, startColumn, end);
+                continue;
+            }
+            advance(end);
+            if (type == WHITESPACE || type == SINGLE_LINE_COMMENT || type == MULTI_LINE_COMMENT) {
+                continue;
+            }
+            _input.seek(end);
+            _token = _factory.create(_tokenFactorySourcePair, type, null, Token.DEFAULT_CHANNEL, start, end - 1,
+                    startLine, startColumn);
+            return _token;
+        }
+        _input.seek(pos);
+        _hitEOF = true;
+        _token = _factory.create(_tokenFactorySourcePair, Token.EOF, null, Token.DEFAULT_CHANNEL, pos, pos - 1, line,
+                column);
+        return _token;
+    }
+
+    private void load() {
+        CharStream input = getInputStream();
+        length = 0;
+        inputLength = null == input ? 0 : input.size();
+        if (chars.length > MAX_RETAINED_BUFFER) {
+            chars = new char[FIRST_CHUNK];
+        }
+        pos = 0;
+        line = 1;
+        column = 0;
+    }
+
+    /**
+     * Copy the next chunk of the statement, twice as long as what has been copied so far.
+     */
+    private void copyMore() {
+        int newLength = (int) Math.min(inputLength, Math.max(FIRST_CHUNK, 2L * length));
+        if (newLength > chars.length) {
+            chars = Arrays.copyOf(chars, newLength);
+        }
+        CharStream input = getInputStream();
+        if (input instanceof StringCharStream) {
+            input.toString().getChars(length, newLength, chars, length);
+        } else {
+            input.getText(Interval.of(length, newLength - 1)).getChars(0, newLength - length, chars, length);
+        }
+        length = newLength;
+    }
+
+    private boolean has(int i) {
+        if (i < length) {
+            return true;
+        }
+        hitEnd = true;
+        return false;
+    }
+
+    /**
+     * Report a character no token starts with. Like the generated lexer, the characters matched so far and the one
+     * it failed on are dropped, e.g. both characters of "!x".
+     *
+     * @param failIndex index of the character the match failed on
+     */
+    private void noViableAlt(int start, int startLine, int startColumn, int failIndex) {
+        _tokenStartCharIndex = start;
+        _tokenStartLine = startLine;
+        _tokenStartCharPositionInLine = startColumn;
+        _input.seek(failIndex);
+        notifyListeners(new LexerNoViableAltException(this, _input, start, null));
+        advance(Math.min(failIndex + 1, length));
+    }
+
+    private void advance(int end) {
+        char[] s = chars;
+        for (int i = pos; i < end; i++) {
+            if (s[i] == '\n') {
+                line++;
+                column = 0;
+            } else {
+                column++;
+            }
+        }
+        pos = end;
+    }
+
+    /**
+     * Type of the last number scanned by {@link #scanNumber(char[], int)}.
+     */
+    private int numberType;
+
+    /**
+     * Longest of FLOATING_LITERAL, OCTAL_LITERAL, DECIMAL_LITERAL and HEXADECIMAL_LITERAL, the first of them on a tie.
+     *
+     * @return end of the number
+     */
+    private int scanNumber(char[] s, int start) {
+        int decimalEnd = skipDigits(s, start);
+        int end = Math.max(scanExponentFloat(s, start), scanHexFloat(s, start));
+        numberType = FLOATING_LITERAL;
+        if (s[start] == '0') {
+            int octalEnd = start + 1;
+            while (has(octalEnd) && s[octalEnd] >= '0' && s[octalEnd] <= '7') {
+                octalEnd++;
+            }
+            if (octalEnd > start + 1 && octalEnd > end) {
+                end = octalEnd;
+                numberType = OCTAL_LITERAL;
+            }
+        }
+        if (decimalEnd > end) {
+            end = decimalEnd;
+            numberType = DECIMAL_LITERAL;
+        }
+        int hexEnd = skipHexDigits(s, start + 2);
+        if (isHexPrefix(s, start) && hexEnd > start + 2 && hexEnd > end) {
+            end = hexEnd;
+            numberType = HEXADECIMAL_LITERAL;
+        }
+        return end;
+    }
+
+    /**
+     * The decimal alternatives of FLOATING_LITERAL: 1e5, 1.e5, 1.5e-5 and .5e5.
+     *
+     * @return end of the literal, start if there is none
+     */
+    private int scanExponentFloat(char[] s, int start) {
+        int i = skipDigits(s, start);
+        boolean dot = has(i) && s[i] == '.';
+        if (i == start) {
+            if (!dot || skipDigits(s, i + 1) == i + 1) {
+                return start;
+            }
+            i = skipDigits(s, i + 1);
+        } else if (dot) {
+            i = skipDigits(s, i + 1);
+        }
+        int end = scanExponent(s, i, false);
+        return end > 0 ? end : start;
+    }
+
+    /**
+     * The hexadecimal alternatives of FLOATING_LITERAL: 0x1p5 and 0x1.8p5. E is a hex digit as well, so every E
+     * among the digits may start the exponent.
+     *
+     * @return end of the literal, start if there is none
+     */
+    private int scanHexFloat(char[] s, int start) {
+        if (!isHexPrefix(s, start)) {
+            return start;
+        }
+        int digitsStart = start + 2;
+        int digitsEnd = skipHexDigits(s, digitsStart);
+        if (digitsEnd == digitsStart) {
+            return start;
+        }
+        int end = start;
+        for (int i = digitsStart + 1; i <= digitsEnd; i++) {
+            end = Math.max(end, scanExponent(s, i, true));
+        }
+        if (has(digitsEnd) && s[digitsEnd] == '.') {
+            int fractionEnd = skipHexDigits(s, digitsEnd + 1);
+            for (int i = digitsEnd + 1; i <= fractionEnd; i++) {
+                end = Math.max(end, scanExponent(s, i, true));
+            }
+        }
+        return end;
+    }
+
+    /**
+     * @return end of an exponent such as e-5 at i, 0 if there is none
+     */
+    private int scanExponent(char[] s, int i, boolean binary) {
+        if (!has(i)) {
+            return 0;
+        }
+        char c = s[i];
+        if (c != 'e' && c != 'E' && (!binary || (c != 'p' && c != 'P'))) {
+            return 0;
+        }
+        i++;
+        if (has(i) && (s[i] == '+' || s[i] == '-')) {
+            i++;
+        }
+        int end = skipDigits(s, i);
+        return end > i ? end : 0;
+    }
+
+    /**
+     * Quoted identifier or string literal, quotes inside are escaped by a backslash or doubled.
+     *
+     * @return end of the longest terminated token, start + 1 if it is not terminated
+     */
+    private int scanQuoted(char[] s, int start, char quote) {
+        int end = start + 1;
+        int i = start + 1;
+        while (has(i)) {
+            char c = s[i];
+            if (c == '\\') {
+                i += 2;
+            } else if (c == quote) {
+                end = i + 1;
+                if (has(i + 1) && s[i + 1] == quote) {
+                    i += 2;
+                } else {
+                    break;
+                }
+            } else {
+                i++;
+            }
+        }
+        return end;
+    }
+
+    private int skipDigits(char[] s, int i) {
+        while (has(i) && isDigit(s[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    private int skipHexDigits(char[] s, int i) {
+        while (has(i) && isHexDigit(s[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    private boolean isHexPrefix(char[] s, int start) {
+        return s[start] == '0' && has(start + 1) && (s[start + 1] == 'x' || s[start + 1] == 'X');
+    }
+
+    /**
+     * A keyword, JSON_FALSE, JSON_TRUE or else IDENTIFIER.
+     */
+    private static int wordType(char[] s, int start, int end) {
+        if (end - start == 4 && s[start] == 't' && s[start + 1] == 'r' && s[start + 2] == 'u' && s[start + 3] == 'e') {
+            return JSON_TRUE;
+        }
+        if (end - start == 5 && s[start] == 'f' && s[start + 1] == 'a' && s[start + 2] == 'l' && s[start + 3] == 's'
+                && s[start + 4] == 'e') {
+            return JSON_FALSE;
+        }
+        int node = 0;
+        for (int i = start; i < end; i++) {
+            int index = trieIndex(s[i]);
+            if (index < 0) {
+                return IDENTIFIER;
+            }
+            node = trie[node * TRIE_WIDTH + index];
+            if (node == 0) {
+                return IDENTIFIER;
+            }
+        }
+        int type = keywordTypes[node];
+        return type != 0 ? type : IDENTIFIER;
+    }
+
+    private static void addKeyword(String keyword, int type) {
+        int node = 0;
+        for (int i = 0; i < keyword.length(); i++) {
+            int slot = node * TRIE_WIDTH + trieIndex(keyword.charAt(i));
+            if (trie[slot] == 0) {
+                if (trieSize == keywordTypes.length) {
+                    trie = Arrays.copyOf(trie, trie.length * 2);
+                    keywordTypes = Arrays.copyOf(keywordTypes, keywordTypes.length * 2);
+                }
+                trie[slot] = trieSize++;
+            }
+            node = trie[slot];
+        }
+        keywordTypes[node] = type;
+    }
+
+    /**
+     * Case-insensitive index of a letter or underscore in a trie node, -1 for a digit.
+     */
+    private static int trieIndex(char c) {
+        if (c == '_') {
+            return 26;
+        }
+        if (isDigit(c)) {
+            return -1;
+        }
+        return (c | 0x20) - 'a';
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isHexDigit(char c) {
+        return isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    private static boolean isWordChar(char c) {
+        return isLetter(c) || isDigit(c) || c == '_';
+    }
+}
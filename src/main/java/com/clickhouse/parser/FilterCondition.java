@@ -26,7 +26,7 @@ public class FilterCondition {
     }
 
     /**
-     * date or datetime. day by default
+     * granularity of the partitions: hour, day, month or year. day by default
      */
     private String partitionType = "day";
 
@@ -1,109 +1,183 @@
 package com.clickhouse.parser;
 
 import com.clickhouse.util.DateUtil;
-import lombok.Data;
-import lombok.extern.slf4j.Slf4j;
+import lombok.EqualsAndHashCode;
 
 import java.util.*;
 
-@Slf4j
-@Data
+/**
+ * Days matched by a filter on a date partition column, stored as sorted, disjoint and non-adjacent inclusive
+ * ranges of epoch days. Open bounds are clamped to [2018-01-01, today + 7] when the range is built, so days are
+ * only enumerated when the partition names are asked for.
+ */
+@EqualsAndHashCode
 public class FilterSpecElements {
 
-    private Set<String> elements = new HashSet<>();
+    private static final String POSITIVE_INF = "positive_inf";
+    private static final String NEGATIVE_INF = "negative_inf";
+    private static final String MIN_LOWER_BOUND = "2018-01-01";
 
-    private final String POSITIVE_INF = "positive_inf";
-    private final String NEGATIVE_INF = "negative_inf";
+    private static final int[] EMPTY = new int[0];
+
+    private int[] starts = EMPTY;
+
+    private int[] ends = EMPTY;
 
     public FilterSpecElements() {
     }
 
     public FilterSpecElements(Set<String> elements) {
-        if (null != elements) {
-            this.elements = elements;
-        }
+        setElements(elements);
     }
 
     public FilterSpecElements(String lowerBound, String upperBound) {
-        String tmpLowerBound = lowerBound;
-        String tmpUpperBound = upperBound;
-        if (lowerBound.equals(NEGATIVE_INF)) {
-            tmpLowerBound = "2018-01-01";
-        }
-        if (upperBound.equals(POSITIVE_INF)) {
-            tmpUpperBound = addDays(DateUtil.formatDate(new Date()), 7);
-            //tmpUpperBound = "2023-01-01";
+        Integer lower = DateUtil.toEpochDay(NEGATIVE_INF.equals(lowerBound) ? MIN_LOWER_BOUND : lowerBound);
+        Integer upper = POSITIVE_INF.equals(upperBound) ? Integer.valueOf(DateUtil.todayEpochDay() + 7)
+                : DateUtil.toEpochDay(upperBound);
+        if (null != lower && null != upper && lower <= upper) {
+            starts = new int[]{lower};
+            ends = new int[]{upper};
         }
-        buildElements(tmpLowerBound, tmpUpperBound);
     }
 
-    private void buildElements(String lowerBound, String upperBound) {
-        String cursor = lowerBound;
-        while (lessThan(cursor, upperBound) || equalsTo(cursor, upperBound)) {
-            elements.add(cursor);
-            cursor = nextDay(cursor);
-        }
+    private FilterSpecElements(int[] starts, int[] ends) {
+        this.starts = starts;
+        this.ends = ends;
     }
 
-    private String lastDay(String dateStr) {
-        return addDays(dateStr, -1);
+    /**
+     * Number of ranges.
+     */
+    public int size() {
+        return starts.length;
     }
 
-    private String nextDay(String dateStr) {
-        return addDays(dateStr, 1);
+    public boolean isEmpty() {
+        return starts.length == 0;
     }
 
-    private String addDays(String dateStr, int offset) {
-        try {
-            Date date = DateUtil.parseDate(dateStr);
-            Calendar calendar = new GregorianCalendar();
-            calendar.setTime(date);
-            calendar.add(Calendar.DATE, offset);
-            String lastDayStr = DateUtil.formatDate(calendar.getTime());
-            return lastDayStr;
-        } catch (Exception e) {
-            log.error("", e);
-        }
-        return null;
+    /**
+     * First epoch day of the i-th range.
+     */
+    public int getStart(int i) {
+        return starts[i];
+    }
+
+    /**
+     * Last epoch day of the i-th range, inclusive.
+     */
+    public int getEnd(int i) {
+        return ends[i];
     }
 
-    private boolean equalsTo(String date1Str, String date2Str) {
-        if (compare(date1Str, date2Str) == 0) {
-            return true;
-        } else {
-            return false;
+    public FilterSpecElements intersect(FilterSpecElements other) {
+        int[] newStarts = new int[starts.length + other.starts.length];
+        int[] newEnds = new int[newStarts.length];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < starts.length && j < other.starts.length) {
+            int start = Math.max(starts[i], other.starts[j]);
+            int end = Math.min(ends[i], other.ends[j]);
+            if (start <= end) {
+                newStarts[n] = start;
+                newEnds[n] = end;
+                n++;
+            }
+            if (ends[i] < other.ends[j]) {
+                i++;
+            } else {
+                j++;
+            }
         }
+        return new FilterSpecElements(Arrays.copyOf(newStarts, n), Arrays.copyOf(newEnds, n));
     }
 
-    private boolean lessThan(String date1Str, String date2Str) {
-        if (compare(date1Str, date2Str) < 0) {
-            return true;
-        } else {
-            return false;
+    public FilterSpecElements union(FilterSpecElements other) {
+        int[] newStarts = new int[starts.length + other.starts.length];
+        int[] newEnds = new int[newStarts.length];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < starts.length || j < other.starts.length) {
+            int start;
+            int end;
+            if (j == other.starts.length || (i < starts.length && starts[i] <= other.starts[j])) {
+                start = starts[i];
+                end = ends[i];
+                i++;
+            } else {
+                start = other.starts[j];
+                end = other.ends[j];
+                j++;
+            }
+            // adjacent ranges are merged too
+            if (n > 0 && start <= (long) newEnds[n - 1] + 1) {
+                newEnds[n - 1] = Math.max(newEnds[n - 1], end);
+            } else {
+                newStarts[n] = start;
+                newEnds[n] = end;
+                n++;
+            }
         }
+        return new FilterSpecElements(Arrays.copyOf(newStarts, n), Arrays.copyOf(newEnds, n));
     }
 
-    private boolean greaterThan(String date1Str, String date2Str) {
-        if (compare(date1Str, date2Str) > 0) {
-            return true;
-        } else {
-            return false;
+    /**
+     * Every day of the ranges as yyyy-MM-dd, in ascending order.
+     */
+    public Set<String> getElements() {
+        Set<String> elements = new LinkedHashSet<>();
+        for (int i = 0; i < starts.length; i++) {
+            for (int day = starts[i]; day <= ends[i]; day++) {
+                elements.add(DateUtil.formatEpochDay(day));
+            }
         }
+        return elements;
     }
 
-    private Integer compare(String date1Str, String date2Str) {
-        try {
-            long date1 = DateUtil.parseDate(date1Str).getTime();
-            long date2 = DateUtil.parseDate(date2Str).getTime();
-            if (date1 == date2) {
-                return 0;
+    /**
+     * Replace the ranges with single days, strings which are not dates are dropped.
+     */
+    public void setElements(Set<String> elements) {
+        int[] days = new int[null == elements ? 0 : elements.size()];
+        int n = 0;
+        if (null != elements) {
+            for (String element : elements) {
+                Integer day = DateUtil.toEpochDay(element);
+                if (null != day) {
+                    days[n++] = day;
+                }
+            }
+        }
+        Arrays.sort(days, 0, n);
+        int[] newStarts = new int[n];
+        int[] newEnds = new int[n];
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            if (m > 0 && days[i] <= (long) newEnds[m - 1] + 1) {
+                newEnds[m - 1] = days[i];
             } else {
-                return date1 - date2 > 0 ? 1 : -1;
+                newStarts[m] = days[i];
+                newEnds[m] = days[i];
+                m++;
+            }
+        }
+        this.starts = Arrays.copyOf(newStarts, m);
+        this.ends = Arrays.copyOf(newEnds, m);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("FilterSpecElements(");
+        for (int i = 0; i < starts.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
             }
-        } catch (Exception e) {
-            log.error("", e);
+            builder.append('[').append(DateUtil.formatEpochDay(starts[i])).append(", ")
+                    .append(DateUtil.formatEpochDay(ends[i])).append(']');
         }
-        return null;
+        return builder.append(')').toString();
     }
 
 }
@@ -1,6 +1,9 @@
 package com.clickhouse.parser;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public interface MetadataService {
 
@@ -8,4 +11,35 @@ public interface MetadataService {
 
     List<String> getTables();
 
+    /**
+     * Partition column names of several tables. Tables without a partition column are left out of the result.
+     * Implementations backed by a remote catalog should override this with a single lookup.
+     */
+    default Map<String, String> getPartitionColNames(Collection<String> tableFullNames) {
+        Map<String, String> partitionColNames = new HashMap<>();
+        for (String tableFullName : tableFullNames) {
+            String partitionColName = getPartitionColName(tableFullName);
+            if (null != partitionColName && !partitionColName.isEmpty()) {
+                partitionColNames.put(tableFullName, partitionColName);
+            }
+        }
+        return partitionColNames;
+    }
+
+    /**
+     * PARTITION BY expression of a table, e.g. toYYYYMM(ts), see {@link PartitionKey}.
+     * By default the partition column name, i.e. a Date column partitioned by day.
+     */
+    default String getPartitionKey(String tableFullName) {
+        return getPartitionColName(tableFullName);
+    }
+
+    /**
+     * PARTITION BY expressions of several tables. Tables without partition key are left out of the result.
+     * By default the partition column names; implementations overriding getPartitionKey should override this too.
+     */
+    default Map<String, String> getPartitionKeys(Collection<String> tableFullNames) {
+        return getPartitionColNames(tableFullNames);
+    }
+
 }
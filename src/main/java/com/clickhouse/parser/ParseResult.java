@@ -0,0 +1,29 @@
+package com.clickhouse.parser;
+
+import lombok.Data;
+
+/**
+ * Outcome of parsing one statement of a batch, see {@link AstParser#parseAll(java.util.List)}.
+ */
+@Data
+public class ParseResult {
+
+    private String sql;
+
+    private String defaultDatabase;
+
+    private Object ast;
+
+    private int syntaxErrorCount;
+
+    private Exception error;
+
+    public ParseResult(String sql) {
+        this.sql = sql;
+    }
+
+    public boolean isSuccess() {
+        return null == error && null != ast && syntaxErrorCount == 0;
+    }
+
+}
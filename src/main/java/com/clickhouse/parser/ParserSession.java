@@ -0,0 +1,391 @@
+package com.clickhouse.parser;
+
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ConsoleErrorListener;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenFactory;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.Pair;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A lexer, token stream and parser bundle that is reset for every statement instead of being rebuilt.
+ * A session is confined to one thread at a time: borrow it with {@link #acquire()} and give it back
+ * with {@link #release(ParserSession)} once the parse tree has been visited.
+ */
+public class ParserSession {
+
+    private static final int POOL_SIZE = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    private static final BlockingQueue<ParserSession> POOL = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private static volatile boolean useFastLexer = false;
+
+    private final StringCharStream emptyInput = new StringCharStream("");
+
+    private final ClickHouseLexer lexer;
+
+    private final CommonTokenStream tokens;
+
+    private final ClickHouseParser parser;
+
+    private final BailErrorStrategy bailErrorStrategy = new BailErrorStrategy();
+
+    private final DefaultErrorStrategy defaultErrorStrategy = new DefaultErrorStrategy();
+
+    private final SyntaxErrorCounter syntaxErrorCounter = new SyntaxErrorCounter();
+
+    private final TimedTokenSource timedTokenSource;
+
+    private final InsertDataCutoff insertDataCutoff = new InsertDataCutoff();
+
+    private boolean reportSyntaxErrors = true;
+
+    private boolean lazyInsertData = false;
+
+    public ParserSession() {
+        lexer = useFastLexer ? new FastClickHouseLexer(emptyInput) : new ClickHouseLexer(emptyInput);
+        tokens = new CommonTokenStream(lexer);
+        parser = new ClickHouseParser(tokens);
+        timedTokenSource = new TimedTokenSource(lexer);
+    }
+
+    public static ParserSession acquire() {
+        ParserSession session = POOL.poll();
+        // sessions pooled before the lexer was switched are dropped
+        while (null != session && session.lexer instanceof FastClickHouseLexer != useFastLexer) {
+            session = POOL.poll();
+        }
+        return null != session ? session : new ParserSession();
+    }
+
+    /**
+     * Lex with the hand-written {@link FastClickHouseLexer} instead of the generated lexer in sessions created from
+     * now on. Both produce the same tokens.
+     */
+    public static void setUseFastLexer(boolean useFastLexer) {
+        ParserSession.useFastLexer = useFastLexer;
+    }
+
+    public static boolean isUseFastLexer() {
+        return useFastLexer;
+    }
+
+    public static void release(ParserSession session) {
+        session.clear();
+        // the pool is bounded, surplus sessions are simply dropped
+        POOL.offer(session);
+    }
+
+    /**
+     * Point the session at a new statement.
+     */
+    public void reset(String sql) {
+        reset(sql, true);
+    }
+
+    /**
+     * Point the session at a new statement.
+     *
+     * @param reportSyntaxErrors whether syntax errors are printed to the console, they are counted either way
+     */
+    public void reset(String sql, boolean reportSyntaxErrors) {
+        reset(sql, reportSyntaxErrors, false);
+    }
+
+    /**
+     * Point the session at a new statement.
+     *
+     * @param reportSyntaxErrors whether syntax errors are printed to the console, they are counted either way
+     * @param timeLexer          whether the time spent in the lexer is measured, see {@link #getLexNanos()}
+     */
+    public void reset(String sql, boolean reportSyntaxErrors, boolean timeLexer) {
+        this.reportSyntaxErrors = reportSyntaxErrors;
+        syntaxErrorCounter.count = 0;
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(syntaxErrorCounter);
+        if (reportSyntaxErrors) {
+            lexer.addErrorListener(ConsoleErrorListener.INSTANCE);
+        }
+        lexer.setInputStream(new StringCharStream(sql));
+        timedTokenSource.nanos = 0;
+        TokenSource tokenSource = timeLexer ? timedTokenSource : lexer;
+        if (lazyInsertData) {
+            insertDataCutoff.reset(tokenSource);
+            tokenSource = insertDataCutoff;
+        }
+        tokens.setTokenSource(tokenSource);
+        parser.setTokenStream(tokens);
+    }
+
+    /**
+     * Parse in SLL mode, throwing ParseCancellationException at the first syntax error.
+     */
+    public ClickHouseParser.QueryStmtContext parseSll() {
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        parser.removeErrorListeners();
+        parser.setErrorHandler(bailErrorStrategy);
+        return parser.queryStmt();
+    }
+
+    /**
+     * Parse in full LL mode with the default error recovery, starting from the first token.
+     */
+    public ClickHouseParser.QueryStmtContext parseLl() {
+        tokens.seek(0);
+        parser.reset();
+        parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+        parser.removeErrorListeners();
+        parser.addErrorListener(syntaxErrorCounter);
+        if (reportSyntaxErrors) {
+            parser.addErrorListener(ConsoleErrorListener.INSTANCE);
+        }
+        parser.setErrorHandler(defaultErrorStrategy);
+        return parser.queryStmt();
+    }
+
+    /**
+     * Listener notified by the parser while it builds the tree of the current statement, null for none.
+     */
+    public void setParseListener(ParseTreeListener listener) {
+        parser.removeParseListeners();
+        if (lazyInsertData) {
+            parser.addParseListener(insertDataCutoff);
+        }
+        if (null != listener) {
+            parser.addParseListener(listener);
+        }
+    }
+
+    /**
+     * Stop lexing an INSERT where the data of its VALUES or FORMAT clause starts, so the cost of parsing it depends
+     * on the size of the header only. The data is never tokenized, it is left to {@link com.clickhouse.parser.ast.DataClause#getData()}.
+     * Takes effect from the next {@link #reset(String)}.
+     */
+    public void setLazyInsertData(boolean lazyInsertData) {
+        if (this.lazyInsertData != lazyInsertData) {
+            this.lazyInsertData = lazyInsertData;
+            if (lazyInsertData) {
+                parser.addParseListener(insertDataCutoff);
+            } else {
+                parser.removeParseListener(insertDataCutoff);
+            }
+        }
+    }
+
+    public boolean isLazyInsertData() {
+        return lazyInsertData;
+    }
+
+    /**
+     * @return number of lexer and parser errors reported for the current statement
+     */
+    public int getSyntaxErrorCount() {
+        return syntaxErrorCounter.count;
+    }
+
+    /**
+     * @return nanoseconds spent in the lexer for the current statement, 0 unless the session was reset with timeLexer
+     */
+    public long getLexNanos() {
+        return timedTokenSource.nanos;
+    }
+
+    /**
+     * @return number of tokens read by the parser so far
+     */
+    public int getTokenCount() {
+        return tokens.size();
+    }
+
+    public ClickHouseLexer getLexer() {
+        return lexer;
+    }
+
+    public ClickHouseParser getParser() {
+        return parser;
+    }
+
+    public CommonTokenStream getTokens() {
+        return tokens;
+    }
+
+    /**
+     * Drop the references to the last statement so a pooled session does not keep it alive.
+     */
+    private void clear() {
+        lexer.setInputStream(emptyInput);
+        parser.removeParseListeners();
+        lazyInsertData = false;
+        insertDataCutoff.reset(lexer);
+        tokens.setTokenSource(lexer);
+        parser.setTokenStream(tokens);
+    }
+
+    private static class SyntaxErrorCounter extends BaseErrorListener {
+
+        private int count = 0;
+
+        @Override
+        public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine,
+                                String msg, RecognitionException e) {
+            count++;
+        }
+    }
+
+    /**
+     * Measure the time spent in the lexer. Tokens are pulled lazily while parsing, so this is the only way to split
+     * lexing from parsing.
+     */
+    private static class TimedTokenSource implements TokenSource {
+
+        private final TokenSource delegate;
+
+        private long nanos = 0;
+
+        private TimedTokenSource(TokenSource delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Token nextToken() {
+            long start = System.nanoTime();
+            Token token = delegate.nextToken();
+            nanos += System.nanoTime() - start;
+            return token;
+        }
+
+        @Override
+        public int getLine() {
+            return delegate.getLine();
+        }
+
+        @Override
+        public int getCharPositionInLine() {
+            return delegate.getCharPositionInLine();
+        }
+
+        @Override
+        public CharStream getInputStream() {
+            return delegate.getInputStream();
+        }
+
+        @Override
+        public String getSourceName() {
+            return delegate.getSourceName();
+        }
+
+        @Override
+        public void setTokenFactory(TokenFactory<?> factory) {
+            delegate.setTokenFactory(factory);
+        }
+
+        @Override
+        public TokenFactory<?> getTokenFactory() {
+            return delegate.getTokenFactory();
+        }
+    }
+
+    /**
+     * Ends the token stream of an INSERT after the VALUES keyword or the format name of its data clause. The parser
+     * has read that far when it enters the data clause, so the data itself never reaches the lexer, not even as
+     * lookahead.
+     */
+    private static class InsertDataCutoff implements TokenSource, ParseTreeListener {
+
+        private TokenSource delegate;
+
+        private int tokenCount = 0;
+
+        private int lastTokenIndex = Integer.MAX_VALUE;
+
+        private Token lastToken;
+
+        private void reset(TokenSource delegate) {
+            this.delegate = delegate;
+            tokenCount = 0;
+            lastTokenIndex = Integer.MAX_VALUE;
+            lastToken = null;
+        }
+
+        @Override
+        public void enterEveryRule(ParserRuleContext ctx) {
+            if (ctx.getRuleIndex() != ClickHouseParser.RULE_dataClause) {
+                return;
+            }
+            Token start = ctx.getStart();
+            if (start.getType() == ClickHouseParser.VALUES) {
+                lastTokenIndex = Math.min(lastTokenIndex, start.getTokenIndex());
+            } else if (start.getType() == ClickHouseParser.FORMAT) {
+                lastTokenIndex = Math.min(lastTokenIndex, start.getTokenIndex() + 1);
+            }
+        }
+
+        @Override
+        public void exitEveryRule(ParserRuleContext ctx) {
+        }
+
+        @Override
+        public void visitTerminal(TerminalNode node) {
+        }
+
+        @Override
+        public void visitErrorNode(ErrorNode node) {
+        }
+
+        @Override
+        public Token nextToken() {
+            if (tokenCount > lastTokenIndex && null != lastToken) {
+                int index = lastToken.getStopIndex() + 1;
+                return getTokenFactory().create(new Pair<>(delegate, delegate.getInputStream()), Token.EOF, null,
+                        Token.DEFAULT_CHANNEL, index, index - 1, delegate.getLine(), delegate.getCharPositionInLine());
+            }
+            lastToken = delegate.nextToken();
+            tokenCount++;
+            return lastToken;
+        }
+
+        @Override
+        public int getLine() {
+            return delegate.getLine();
+        }
+
+        @Override
+        public int getCharPositionInLine() {
+            return delegate.getCharPositionInLine();
+        }
+
+        @Override
+        public CharStream getInputStream() {
+            return delegate.getInputStream();
+        }
+
+        @Override
+        public String getSourceName() {
+            return delegate.getSourceName();
+        }
+
+        @Override
+        public void setTokenFactory(TokenFactory<?> factory) {
+            delegate.setTokenFactory(factory);
+        }
+
+        @Override
+        public TokenFactory<?> getTokenFactory() {
+            return delegate.getTokenFactory();
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.clickhouse.parser;
+
+import com.clickhouse.parser.ast.CreateTableQuery;
+import com.clickhouse.parser.ast.EngineClause;
+import com.clickhouse.parser.ast.SelectStatement;
+import com.clickhouse.parser.ast.SelectUnionQuery;
+import com.clickhouse.parser.ast.expr.ColumnExpr;
+import com.clickhouse.parser.ast.expr.FunctionColumnExpr;
+import com.clickhouse.parser.ast.expr.IdentifierColumnExpr;
+import com.clickhouse.util.DateUtil;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The time part of a table's PARTITION BY expression, used to map predicates on the raw column onto partitions.
+ * A bare column is taken as a Date column partitioned by day, which is what the detectors assumed before. A tuple of
+ * several components, e.g. (toDate(ts), tenant_id), has no key: its partitions are named after all components, so
+ * the table is not pruned.
+ * Partitions are named the way ClickHouse shows them in system.parts.partition, e.g. 2021-10-01 for toDate(ts),
+ * 202110 for toYYYYMM(ts) and 2021-10-01 10:00:00 for toStartOfHour(ts).
+ */
+@Slf4j
+@Data
+public class PartitionKey {
+
+    public enum Granularity {
+        HOUR,
+        DAY,
+        MONTH,
+        YEAR
+    }
+
+    public enum Transform {
+        IDENTITY(Granularity.DAY),
+        TO_DATE(Granularity.DAY),
+        TO_YYYYMMDD(Granularity.DAY),
+        TO_START_OF_DAY(Granularity.DAY),
+        TO_START_OF_HOUR(Granularity.HOUR),
+        TO_YYYYMM(Granularity.MONTH),
+        TO_START_OF_MONTH(Granularity.MONTH),
+        TO_YEAR(Granularity.YEAR),
+        TO_START_OF_YEAR(Granularity.YEAR);
+
+        private final Granularity granularity;
+
+        Transform(Granularity granularity) {
+            this.granularity = granularity;
+        }
+
+        public Granularity getGranularity() {
+            return granularity;
+        }
+
+        static Transform of(String functionName) {
+            switch (functionName) {
+                case "toDate":
+                    return TO_DATE;
+                case "toYYYYMMDD":
+                    return TO_YYYYMMDD;
+                case "toStartOfDay":
+                    return TO_START_OF_DAY;
+                case "toStartOfHour":
+                    return TO_START_OF_HOUR;
+                case "toYYYYMM":
+                    return TO_YYYYMM;
+                case "toStartOfMonth":
+                    return TO_START_OF_MONTH;
+                case "toYear":
+                    return TO_YEAR;
+                case "toStartOfYear":
+                    return TO_START_OF_YEAR;
+                default:
+                    return null;
+            }
+        }
+    }
+
+    /**
+     * Parsed keys by expression. Tables share a handful of PARTITION BY expressions, while the detectors look keys
+     * up again for every query.
+     */
+    private static final Cache<String, Optional<PartitionKey>> PARSED_KEYS = CacheBuilder.newBuilder()
+            .maximumSize(1000)
+            .build();
+
+    private final String columnName;
+
+    private final Transform transform;
+
+    public PartitionKey(String columnName, Transform transform) {
+        this.columnName = columnName;
+        this.transform = transform;
+    }
+
+    public Granularity getGranularity() {
+        return transform.getGranularity();
+    }
+
+    /**
+     * @return null if the expression is not a time function of a column or is a tuple of several components
+     */
+    public static PartitionKey of(ColumnExpr partitionExpr) {
+        if (partitionExpr instanceof IdentifierColumnExpr) {
+            return new PartitionKey(((IdentifierColumnExpr) partitionExpr).getIdentifier().getName(), Transform.IDENTITY);
+        }
+        if (!(partitionExpr instanceof FunctionColumnExpr)) {
+            return null;
+        }
+        FunctionColumnExpr funcColExpr = (FunctionColumnExpr) partitionExpr;
+        List<ColumnExpr> args = funcColExpr.getArgs();
+        if (null == args || args.isEmpty()) {
+            return null;
+        }
+        String functionName = funcColExpr.getName().getName();
+        if ("tuple".equals(functionName)) {
+            // a partition of (toDate(ts), tenant_id) is named ('2021-10-01', 3), not after the date alone
+            return args.size() == 1 ? of(args.get(0)) : null;
+        }
+        Transform transform = Transform.of(functionName);
+        if (null == transform) {
+            return null;
+        }
+        // toDate(toDateTime(ts)) and the like
+        PartitionKey inner = of(args.get(0));
+        if (null == inner) {
+            return null;
+        }
+        return new PartitionKey(inner.getColumnName(), transform);
+    }
+
+    /**
+     * Parse a partition key expression as found in system.tables.partition_key.
+     *
+     * @return null if the expression is not a time function of a column, is a tuple of several components or cannot
+     * be parsed
+     */
+    public static PartitionKey parse(String partitionExpr) {
+        if (null == partitionExpr || partitionExpr.isEmpty()) {
+            return null;
+        }
+        if (isBareColumn(partitionExpr)) {
+            return new PartitionKey(partitionExpr, Transform.IDENTITY);
+        }
+        Optional<PartitionKey> partitionKey = PARSED_KEYS.getIfPresent(partitionExpr);
+        if (null == partitionKey) {
+            partitionKey = Optional.ofNullable(parseExpr(partitionExpr));
+            PARSED_KEYS.put(partitionExpr, partitionKey);
+        }
+        return partitionKey.orElse(null);
+    }
+
+    /**
+     * A plain column name, that needs no parser. NULL, INF and NAN are literals.
+     */
+    private static boolean isBareColumn(String partitionExpr) {
+        for (int i = 0; i < partitionExpr.length(); i++) {
+            char c = partitionExpr.charAt(i);
+            boolean letter = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+            if (!letter && (i == 0 || c < '0' || c > '9')) {
+                return false;
+            }
+        }
+        return !"null".equalsIgnoreCase(partitionExpr) && !"inf".equalsIgnoreCase(partitionExpr)
+                && !"nan".equalsIgnoreCase(partitionExpr);
+    }
+
+    private static PartitionKey parseExpr(String partitionExpr) {
+        try {
+            Object ast = new AstParser(false).parse("SELECT " + partitionExpr);
+            if (!(ast instanceof SelectUnionQuery)) {
+                return null;
+            }
+            SelectStatement selectStatement = ((SelectUnionQuery) ast).getStatements().get(0);
+            if (selectStatement.getExprs().size() > 1) {
+                // (toDate(ts), tenant_id) without the outer parentheses
+                return null;
+            }
+            return of(selectStatement.getExprs().get(0));
+        } catch (Exception e) {
+            log.error("", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return null if the table has no engine clause or no PARTITION BY
+     */
+    public static PartitionKey of(CreateTableQuery createTableQuery) {
+        EngineClause engineClause = createTableQuery.getEngine();
+        if (null == engineClause) {
+            return null;
+        }
+        return of(engineClause.getPartitionByClause());
+    }
+
+    /**
+     * Partitions holding the given days, in ascending order.
+     *
+     * @param firstDay days before this epoch day are skipped
+     */
+    public List<String> getPartitions(FilterSpecElements days, int firstDay) {
+        List<String> partitions = new ArrayList<>();
+        StringBuilder builder = new StringBuilder(19);
+        for (int i = 0; i < days.size(); i++) {
+            int day = Math.max(days.getStart(i), firstDay);
+            while (day <= days.getEnd(i)) {
+                switch (getGranularity()) {
+                    case HOUR:
+                        for (int hour = 0; hour < 24; hour++) {
+                            builder.setLength(0);
+                            DateUtil.appendEpochDay(builder, day).append(' ')
+                                    .append((char) ('0' + hour / 10)).append((char) ('0' + hour % 10)).append(":00:00");
+                            partitions.add(builder.toString());
+                        }
+                        day++;
+                        break;
+                    case DAY:
+                        partitions.add(format(day));
+                        day++;
+                        break;
+                    case MONTH: {
+                        LocalDate date = LocalDate.ofEpochDay(day);
+                        String partition = format((int) date.withDayOfMonth(1).toEpochDay());
+                        // months shared by two ranges are listed once
+                        if (partitions.isEmpty() || !partitions.get(partitions.size() - 1).equals(partition)) {
+                            partitions.add(partition);
+                        }
+                        day = (int) date.withDayOfMonth(1).plusMonths(1).toEpochDay();
+                        break;
+                    }
+                    case YEAR: {
+                        LocalDate date = LocalDate.ofEpochDay(day);
+                        String partition = format((int) date.withDayOfYear(1).toEpochDay());
+                        if (partitions.isEmpty() || !partitions.get(partitions.size() - 1).equals(partition)) {
+                            partitions.add(partition);
+                        }
+                        day = (int) date.withDayOfYear(1).plusYears(1).toEpochDay();
+                        break;
+                    }
+                    default:
+                }
+            }
+        }
+        return partitions;
+    }
+
+    private String format(int epochDay) {
+        String date = DateUtil.formatEpochDay(epochDay);
+        switch (transform) {
+            case TO_YYYYMMDD:
+                return date.substring(0, 4) + date.substring(5, 7) + date.substring(8, 10);
+            case TO_START_OF_DAY:
+                return date + " 00:00:00";
+            case TO_YYYYMM:
+                return date.substring(0, 4) + date.substring(5, 7);
+            case TO_YEAR:
+                return date.substring(0, 4);
+            default:
+                return date;
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.clickhouse.parser;
+
+import com.clickhouse.parser.ast.ColumnIdentifier;
+import com.clickhouse.parser.ast.Literal;
+import com.clickhouse.parser.ast.NumberLiteral;
+import com.clickhouse.parser.ast.SelectStatement;
+import com.clickhouse.parser.ast.StringLiteral;
+import com.clickhouse.parser.ast.expr.ColumnExpr;
+import com.clickhouse.parser.ast.expr.FunctionColumnExpr;
+import com.clickhouse.parser.ast.expr.IdentifierColumnExpr;
+import com.clickhouse.parser.ast.expr.LiteralColumnExpr;
+import com.clickhouse.parser.ast.expr.LiteralListColumnExpr;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Ranges of values a condition allows for each column, e.g. for primary key or sort key columns:
+ * <pre>
+ *     WHERE id BETWEEN 10 AND 20 AND (name = 'a' OR name = 'b')
+ *     id: [10, 20], name: ['a', 'a'] U ['b', 'b']
+ * </pre>
+ * Comparisons, BETWEEN, IN and NOT IN against literals are understood, across AND and OR. A column missing from
+ * the result is not restricted, an empty set means the condition can never be true. The result may be wider than
+ * the condition but never narrower. Subclasses can understand more functions by overriding
+ * {@link #analyzeFunction(FunctionColumnExpr)}.
+ * Column names are as written in the query, qualified by table if they were.
+ */
+public class PredicateRangeAnalyzer {
+
+    private final Predicate<String> columnFilter;
+
+    public PredicateRangeAnalyzer() {
+        this(columnName -> true);
+    }
+
+    /**
+     * @param columnFilter the columns to report, e.g. the sort key columns
+     */
+    public PredicateRangeAnalyzer(Predicate<String> columnFilter) {
+        this.columnFilter = columnFilter;
+    }
+
+    /**
+     * Ranges allowed by both the PREWHERE and the WHERE clause of a statement.
+     */
+    public Map<String, ValueRangeSet> analyze(SelectStatement selectStatement) {
+        Map<String, ValueRangeSet> ranges = new HashMap<>();
+        if (null != selectStatement.getPrewhereClause()) {
+            ranges = analyze(selectStatement.getPrewhereClause().getPrewhereExpr());
+        }
+        if (null != selectStatement.getWhereClause()) {
+            ranges = and(ranges, analyze(selectStatement.getWhereClause().getWhereExpr()));
+        }
+        return ranges;
+    }
+
+    public Map<String, ValueRangeSet> analyze(ColumnExpr condition) {
+        if (!(condition instanceof FunctionColumnExpr)) {
+            return new HashMap<>();
+        }
+        FunctionColumnExpr funcColExpr = (FunctionColumnExpr) condition;
+        List<ColumnExpr> args = funcColExpr.getArgs();
+        String functionName = funcColExpr.getName().getName();
+        if (("and".equalsIgnoreCase(functionName) || "or".equalsIgnoreCase(functionName)) && null != args
+                && !args.isEmpty()) {
+            boolean and = "and".equalsIgnoreCase(functionName);
+            Map<String, ValueRangeSet> ranges = analyze(args.get(0));
+            for (int i = 1; i < args.size(); i++) {
+                ranges = and ? and(ranges, analyze(args.get(i))) : or(ranges, analyze(args.get(i)));
+            }
+            return ranges;
+        }
+        Map<String, ValueRangeSet> ranges = analyzeFunction(funcColExpr);
+        ranges.keySet().removeIf(columnName -> !columnFilter.test(columnName));
+        return ranges;
+    }
+
+    /**
+     * Ranges of a condition which is neither AND nor OR, empty if nothing is known.
+     */
+    protected Map<String, ValueRangeSet> analyzeFunction(FunctionColumnExpr funcColExpr) {
+        List<ColumnExpr> args = funcColExpr.getArgs();
+        if (null == args || args.size() != 2) {
+            return new HashMap<>();
+        }
+        String functionName = funcColExpr.getName().getName();
+        String columnName = columnName(args.get(0));
+        ColumnExpr valueExpr = args.get(1);
+        if (null == columnName) {
+            // 10 < id
+            columnName = columnName(args.get(1));
+            valueExpr = args.get(0);
+            functionName = flip(functionName);
+        }
+        if (null == columnName || null == functionName) {
+            return new HashMap<>();
+        }
+        ValueRangeSet range;
+        switch (functionName) {
+            case "in":
+            case "globalIn":
+                range = points(valueExpr);
+                break;
+            case "notIn":
+            case "globalNotIn":
+                range = points(valueExpr);
+                range = null == range ? null : range.complement();
+                break;
+            default:
+                range = compare(functionName, value(valueExpr));
+        }
+        Map<String, ValueRangeSet> ranges = new HashMap<>();
+        if (null != range) {
+            ranges.put(columnName, range);
+        }
+        return ranges;
+    }
+
+    /**
+     * Name of a plain column, null for any other expression.
+     */
+    protected String columnName(ColumnExpr expr) {
+        if (expr instanceof IdentifierColumnExpr) {
+            ColumnIdentifier identifier = ((IdentifierColumnExpr) expr).getIdentifier();
+            return null == identifier ? null : identifier.getQualifiedName();
+        }
+        return null;
+    }
+
+    /**
+     * A literal as a single value set, null if the expression is not a number or string literal.
+     * toDate('...') and the like are taken as their string, which sorts the same way.
+     */
+    protected ValueRangeSet value(ColumnExpr expr) {
+        if (expr instanceof FunctionColumnExpr) {
+            FunctionColumnExpr funcColExpr = (FunctionColumnExpr) expr;
+            String functionName = funcColExpr.getName().getName();
+            List<ColumnExpr> args = funcColExpr.getArgs();
+            if (("toDate".equals(functionName) || "toDateTime".equals(functionName)) && null != args
+                    && args.size() == 1 && isStringLiteral(args.get(0))) {
+                return value(args.get(0));
+            }
+            return null;
+        }
+        if (!(expr instanceof LiteralColumnExpr)) {
+            return null;
+        }
+        Literal literal = ((LiteralColumnExpr) expr).getLiteral();
+        if (literal instanceof NumberLiteral) {
+            return number(literal.toString());
+        }
+        if (literal instanceof StringLiteral) {
+            return ValueRangeSet.point(literal.asStringWithoutQuote());
+        }
+        return null;
+    }
+
+    private boolean isStringLiteral(ColumnExpr expr) {
+        return expr instanceof LiteralColumnExpr && ((LiteralColumnExpr) expr).getLiteral() instanceof StringLiteral;
+    }
+
+    /**
+     * Union of the values of a tuple or of a single value, null unless they are all literals of one type.
+     */
+    private ValueRangeSet points(ColumnExpr expr) {
+        List<ColumnExpr> values = Collections.singletonList(expr);
+        if (expr instanceof FunctionColumnExpr && "tuple".equals(((FunctionColumnExpr) expr).getName().getName())) {
+            values = LiteralListColumnExpr.readArgs((FunctionColumnExpr) expr);
+        }
+        ValueRangeSet points = null;
+        for (ColumnExpr valueExpr : values) {
+            ValueRangeSet point = value(valueExpr);
+            if (null == point || (null != points && points.getType() != point.getType())) {
+                return null;
+            }
+            points = null == points ? point : points.union(point);
+        }
+        return points;
+    }
+
+    private ValueRangeSet compare(String functionName, ValueRangeSet point) {
+        if (null == point) {
+            return null;
+        }
+        switch (functionName) {
+            case "equals":
+                return point;
+            case "notEquals":
+                return point.complement();
+            default:
+        }
+        if (point.getType() == ValueRangeSet.ValueType.INTEGER) {
+            return compare(functionName, point.getIntegerLow(0));
+        }
+        boolean number = point.getType() == ValueRangeSet.ValueType.NUMBER;
+        double numberValue = number ? point.getNumberLow(0) : 0;
+        String stringValue = number ? null : point.getStringLow(0);
+        switch (functionName) {
+            case "less":
+                return number ? ValueRangeSet.range(Double.NEGATIVE_INFINITY, false, numberValue, false)
+                        : ValueRangeSet.range(null, false, stringValue, false);
+            case "lessOrEquals":
+                return number ? ValueRangeSet.range(Double.NEGATIVE_INFINITY, false, numberValue, true)
+                        : ValueRangeSet.range(null, false, stringValue, true);
+            case "greater":
+                return number ? ValueRangeSet.range(numberValue, false, Double.POSITIVE_INFINITY, false)
+                        : ValueRangeSet.range(stringValue, false, null, false);
+            case "greaterOrEquals":
+                return number ? ValueRangeSet.range(numberValue, true, Double.POSITIVE_INFINITY, false)
+                        : ValueRangeSet.range(stringValue, true, null, false);
+            default:
+                return null;
+        }
+    }
+
+    private static ValueRangeSet compare(String functionName, long value) {
+        switch (functionName) {
+            case "less":
+                return ValueRangeSet.range(Long.MIN_VALUE, false, value, false);
+            case "lessOrEquals":
+                return ValueRangeSet.range(Long.MIN_VALUE, false, value, true);
+            case "greater":
+                return ValueRangeSet.range(value, false, Long.MAX_VALUE, false);
+            case "greaterOrEquals":
+                return ValueRangeSet.range(value, true, Long.MAX_VALUE, false);
+            default:
+                return null;
+        }
+    }
+
+    private static String flip(String functionName) {
+        switch (functionName) {
+            case "less":
+                return "greater";
+            case "lessOrEquals":
+                return "greaterOrEquals";
+            case "greater":
+                return "less";
+            case "greaterOrEquals":
+                return "lessOrEquals";
+            case "equals":
+            case "notEquals":
+                return functionName;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Integers as long bounds, so that they stay exact beyond 2^53, other numbers and integers out of the long range
+     * as doubles.
+     */
+    private static ValueRangeSet number(String text) {
+        String lower = text.toLowerCase();
+        try {
+            if (lower.startsWith("0x") || lower.startsWith("-0x")) {
+                return ValueRangeSet.point(Long.decode(lower));
+            }
+            if (isInteger(lower)) {
+                return ValueRangeSet.point(Long.parseLong(lower));
+            }
+        } catch (NumberFormatException e) {
+            // beyond the long range
+        }
+        try {
+            if (lower.endsWith("inf")) {
+                return ValueRangeSet.point(lower.startsWith("-") ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY);
+            }
+            return ValueRangeSet.point(Double.parseDouble(lower));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static boolean isInteger(String text) {
+        int start = text.startsWith("-") || text.startsWith("+") ? 1 : 0;
+        if (start == text.length()) {
+            return false;
+        }
+        for (int i = start; i < text.length(); i++) {
+            if (text.charAt(i) < '0' || text.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Map<String, ValueRangeSet> and(Map<String, ValueRangeSet> left, Map<String, ValueRangeSet> right) {
+        for (Map.Entry<String, ValueRangeSet> entry : right.entrySet()) {
+            ValueRangeSet range = left.get(entry.getKey());
+            if (null == range) {
+                left.put(entry.getKey(), entry.getValue());
+            } else if (range.getType() == entry.getValue().getType()) {
+                left.put(entry.getKey(), range.intersect(entry.getValue()));
+            }
+        }
+        return left;
+    }
+
+    private static Map<String, ValueRangeSet> or(Map<String, ValueRangeSet> left, Map<String, ValueRangeSet> right) {
+        Iterator<Map.Entry<String, ValueRangeSet>> iterator = left.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, ValueRangeSet> entry = iterator.next();
+            ValueRangeSet range = right.get(entry.getKey());
+            // a column not restricted by one side is not restricted at all
+            if (null == range || range.getType() != entry.getValue().getType()) {
+                iterator.remove();
+            } else {
+                entry.setValue(entry.getValue().union(range));
+            }
+        }
+        return left;
+    }
+}
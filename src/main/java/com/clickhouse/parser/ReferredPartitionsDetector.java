@@ -2,13 +2,21 @@ package com.clickhouse.parser;
 
 import com.clickhouse.parser.ast.*;
 import com.clickhouse.parser.ast.expr.*;
-import com.google.common.collect.Sets;
 import com.clickhouse.util.DateUtil;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.*;
 
+/**
+ * Collect the tables and the partitions referred by a query, visited through searchTablePartitions or walked by
+ * {@link AstWalker}. After a walk the partitions are read with getTablePartitions.
+ * <p>
+ * An instance is not thread safe and holds the results of one query. To reuse it, e.g. one per thread, call
+ * {@link #analyze(INode)}, or {@link #reset()} before walking the next query. The returned lists belong to the
+ * detector and are cleared by the next reset, copy them to keep them. Partition keys given with setPartitionKey are
+ * kept across queries, the ones looked up in the MetadataService are not.
+ */
 @Slf4j
 @Data
 public class ReferredPartitionsDetector extends AstVisitor {
@@ -18,21 +26,26 @@ public class ReferredPartitionsDetector extends AstVisitor {
     private List<String> tables = new ArrayList<>();
     private List<String> tablePartitions = new ArrayList<>();
 
-    private Map<SelectStatement, List<String>> tablesInSelectStatements = new HashMap<>();
+    private Map<SelectStatement, List<String>> tablesInSelectStatements = new IdentityHashMap<>();
 
-    private volatile SelectStatement currentSelectStatement;
+    private SelectStatement currentSelectStatement;
 
     private List<FilterCondition> filterConditions = new ArrayList<>();
 
     private final String POSITIVE_INF = "positive_inf";
     private final String NEGATIVE_INF = "negative_inf";
     private final String MAX_LOWER_BOUND = "2018-01-01";
-    private final Long MAX_LOWER_BOUND_TIMESTAMP = 1514736000000L;
 
     private String todayDate;
     private String targetIp;
     private MetadataService metadataService;
-    private final Map<String, String> tablePartitionColNameMap = new HashMap<>();
+    private final Map<String, PartitionKey> tablePartitionKeyMap = new HashMap<>();
+    private final Map<String, PartitionKey> presetPartitionKeyMap = new HashMap<>();
+
+    /**
+     * Whether tablePartitions holds the partitions of the filter conditions found so far.
+     */
+    private boolean partitionsCollected = false;
 
     public ReferredPartitionsDetector(String todayDate, String targetIp, MetadataService metadataService) {
         this.todayDate = todayDate;
@@ -40,6 +53,29 @@ public class ReferredPartitionsDetector extends AstVisitor {
         this.metadataService = metadataService;
     }
 
+    /**
+     * Forget the previous query, keeping the collections for the next one.
+     */
+    public ReferredPartitionsDetector reset() {
+        selectUnionQueryList.clear();
+        tables.clear();
+        tablePartitions.clear();
+        tablesInSelectStatements.clear();
+        currentSelectStatement = null;
+        filterConditions.clear();
+        tablePartitionKeyMap.clear();
+        partitionsCollected = false;
+        return this;
+    }
+
+    /**
+     * Partitions referred by a query, the previous query is forgotten.
+     */
+    public List<String> analyze(INode node) {
+        reset();
+        return searchTablePartitions(node);
+    }
+
     public List<String> searchTables(INode node) {
         if (tables.size() > 0) {
             return tables;
@@ -54,21 +90,7 @@ public class ReferredPartitionsDetector extends AstVisitor {
                 return tablePartitions;
             }
             visit(node);
-            for (FilterCondition filterCondition : filterConditions) {
-                String tableFullName = filterCondition.getDatabase() + "." + filterCondition.getTable();
-                Set<String> elements = new HashSet<>();
-                filterCondition.getSpecElementsList().forEach(set -> elements.addAll(set.getElements()));
-                for (String partitionValue : elements) {
-                    try {
-                        long partitionValueTimestamp = DateUtil.parseDate(partitionValue).getTime();
-                        if (partitionValueTimestamp > MAX_LOWER_BOUND_TIMESTAMP) {
-                            tablePartitions.add(tableFullName + "." + partitionValue);
-                        }
-                    } catch (Exception e) {
-                        log.error("", e);
-                    }
-                }
-            }
+            collectTablePartitions();
             return tablePartitions;
         } catch (Exception e) {
             log.error("", e);
@@ -76,6 +98,37 @@ public class ReferredPartitionsDetector extends AstVisitor {
         }
     }
 
+    /**
+     * Partitions of the query visited or walked last, they are collected on the first call after the walk.
+     */
+    public List<String> getTablePartitions() {
+        if (!partitionsCollected) {
+            try {
+                collectTablePartitions();
+            } catch (Exception e) {
+                log.error("", e);
+            }
+        }
+        return tablePartitions;
+    }
+
+    private void collectTablePartitions() {
+        partitionsCollected = true;
+        tablePartitions.clear();
+        int firstDay = DateUtil.toEpochDay(MAX_LOWER_BOUND) + 1;
+        for (FilterCondition filterCondition : filterConditions) {
+            String tableFullName = filterCondition.getDatabase() + "." + filterCondition.getTable();
+            PartitionKey partitionKey = getPartitionKey(tableFullName);
+            if (null == partitionKey) {
+                continue;
+            }
+            FilterSpecElements days = unionFilterRanges(filterCondition.getSpecElementsList());
+            for (String partition : partitionKey.getPartitions(days, firstDay)) {
+                tablePartitions.add(tableFullName + "." + partition);
+            }
+        }
+    }
+
     public List<SelectUnionQuery> searchSelectUnionQueryStatements(INode node) {
         visit(node);
         return selectUnionQueryList;
@@ -86,11 +139,13 @@ public class ReferredPartitionsDetector extends AstVisitor {
         if (null != selectUnionQuery) {
             selectUnionQueryList.add(selectUnionQuery);
         }
-        for (SelectStatement selectStatement : selectUnionQuery.getStatements()) {
-            currentSelectStatement = selectStatement;
-            visitSelectStatement(selectStatement);
-        }
-        return null;
+        return super.visitSelectUnionQuery(selectUnionQuery);
+    }
+
+    @Override
+    public Object visitSelectStatement(SelectStatement selectStatement) {
+        currentSelectStatement = selectStatement;
+        return super.visitSelectStatement(selectStatement);
     }
 
     @Override
@@ -105,6 +160,11 @@ public class ReferredPartitionsDetector extends AstVisitor {
 
     @Override
     public Object visitTableIdentifier(TableIdentifier tableIdentifier) {
+        addTable(tableIdentifier);
+        return super.visitTableIdentifier(tableIdentifier);
+    }
+
+    private void addTable(TableIdentifier tableIdentifier) {
         tables.add(tableIdentifier.getQualifiedName());
         if (!tablesInSelectStatements.containsKey(currentSelectStatement)) {
             List<String> tablesInStmt = new ArrayList<>();
@@ -112,7 +172,6 @@ public class ReferredPartitionsDetector extends AstVisitor {
         }
         List<String> tablesInStmt = tablesInSelectStatements.get(currentSelectStatement);
         tablesInStmt.add(tableIdentifier.getQualifiedName());
-        return super.visitTableIdentifier(tableIdentifier);
     }
 
     @Override
@@ -122,6 +181,7 @@ public class ReferredPartitionsDetector extends AstVisitor {
             FilterCondition filterCondition = doWithLogicalOperator(columnExpr);
             if (null != filterCondition) {
                 filterConditions.add(filterCondition);
+                partitionsCollected = false;
             }
         }
         return null;
@@ -264,40 +324,50 @@ public class ReferredPartitionsDetector extends AstVisitor {
             String table = columnIdentifier.getTable().getName();
 
             String value = extractFilterConditionValue(args.get(1));
-            if (null == value) {
+            // a list of values is not a single value, it is unpacked below
+            if (null == value && !"in".equals(identifier.getName())) {
                 return null;
             }
 
             FilterCondition filterCondition = new FilterCondition(database, table, columnName);
+            PartitionKey partitionKey = getPartitionKey(database + "." + table);
+            filterCondition.setPartitionType(partitionKey.getGranularity().name().toLowerCase());
+            // only a bare column is known to be a Date, a DateTime greater than a date may still be on that day
+            boolean dateColumn = partitionKey.getTransform() == PartitionKey.Transform.IDENTITY;
             switch (identifier.getName()) {
                 case "greaterOrEquals":
                     filterCondition.addFilterRange(value, POSITIVE_INF);
                     break;
                 case "greater":
-                    filterCondition.addFilterRange(nextDay(value), POSITIVE_INF);
+                    filterCondition.addFilterRange(firstDayAfter(value, dateColumn), POSITIVE_INF);
                     break;
                 case "lessOrEquals":
                     filterCondition.addFilterRange(NEGATIVE_INF, value);
                     break;
                 case "less":
-                    filterCondition.addFilterRange(NEGATIVE_INF, lastDay(value));
+                    filterCondition.addFilterRange(NEGATIVE_INF, lastDayBefore(value));
                     break;
                 case "notEquals":
-                    filterCondition.addFilterRange(NEGATIVE_INF, lastDay(value));
-                    filterCondition.addFilterRange(nextDay(value), POSITIVE_INF);
+                    filterCondition.addFilterRange(NEGATIVE_INF, lastDayBefore(value));
+                    filterCondition.addFilterRange(firstDayAfter(value, dateColumn), POSITIVE_INF);
                     break;
                 case "equals":
                     filterCondition.addFilterRange(value, value);
                     break;
                 case "in":
-                    FilterSpecElements filterSpecElements = new FilterSpecElements();
+                    // the first argument is the column, a list of values comes as a tuple
                     Set<String> argSet = new HashSet<>();
-                    for (ColumnExpr arg : args) {
-                        String argVal = extractFilterConditionValue(arg);
-                        argSet.add(argVal);
+                    for (ColumnExpr arg : args.subList(1, args.size())) {
+                        if (arg instanceof FunctionColumnExpr && "tuple".equals(((FunctionColumnExpr) arg).getName().getName())) {
+                            for (ColumnExpr tupleArg : LiteralListColumnExpr.readArgs((FunctionColumnExpr) arg)) {
+                                argSet.add(extractFilterConditionValue(tupleArg));
+                            }
+                        } else {
+                            argSet.add(extractFilterConditionValue(arg));
+                        }
                     }
-                    filterSpecElements.setElements(argSet);
-                    filterCondition.addFilterRange(filterSpecElements);
+                    argSet.remove(null);
+                    filterCondition.addFilterRange(new FilterSpecElements(argSet));
                     break;
                 default:
             }
@@ -345,8 +415,7 @@ public class ReferredPartitionsDetector extends AstVisitor {
                     }
 
                     try {
-                        long longVal = Long.parseLong(value);
-                        value = DateUtil.formatDate(new Date(Long.parseLong(value + "000")));
+                        value = DateUtil.formatEpochDay(DateUtil.epochDayOfEpochSecond(Long.parseLong(value)));
                     } catch (Exception e) {
                         log.error("", e);
                     }
@@ -436,7 +505,7 @@ public class ReferredPartitionsDetector extends AstVisitor {
                 LiteralColumnExpr literalColumnExpr = (LiteralColumnExpr) arg;
                 return literalColumnExpr.getLiteral().asStringWithoutQuote();
             case "now":
-                return DateUtil.formatDate(new Date());
+                return DateUtil.today();
             default:
         }
         return null;
@@ -490,15 +559,40 @@ public class ReferredPartitionsDetector extends AstVisitor {
     }
 
     private String getPartitionColumnName(String databaseName, String tableName, String targetIp) {
-        String tableFullName = databaseName + "." + tableName;
-        if (tablePartitionColNameMap.containsKey(tableFullName)) {
-            return tablePartitionColNameMap.get(tableFullName);
+        PartitionKey partitionKey = getPartitionKey(databaseName + "." + tableName);
+        return null == partitionKey ? null : partitionKey.getColumnName();
+    }
+
+    private PartitionKey getPartitionKey(String tableFullName) {
+        if (presetPartitionKeyMap.containsKey(tableFullName)) {
+            return presetPartitionKeyMap.get(tableFullName);
+        }
+        if (tablePartitionKeyMap.containsKey(tableFullName)) {
+            return tablePartitionKeyMap.get(tableFullName);
+        }
+        // the FROM tables are known before the conditions are met, look them all up at once
+        Set<String> tableFullNames = new LinkedHashSet<>();
+        tableFullNames.add(tableFullName);
+        for (String table : tables) {
+            if (table.indexOf('.') > 0 && !tablePartitionKeyMap.containsKey(table)
+                    && !presetPartitionKeyMap.containsKey(table)) {
+                tableFullNames.add(table);
+            }
         }
-        String partitionColumnName = metadataService.getPartitionColName(tableFullName);
-        if (null != partitionColumnName && !partitionColumnName.isEmpty()) {
-            tablePartitionColNameMap.put(tableFullName, partitionColumnName);
+        Map<String, String> partitionKeys = metadataService.getPartitionKeys(tableFullNames);
+        for (String table : tableFullNames) {
+            // tables without partition key are remembered as null
+            tablePartitionKeyMap.put(table, PartitionKey.parse(partitionKeys.get(table)));
         }
-        return partitionColumnName;
+        return tablePartitionKeyMap.get(tableFullName);
+    }
+
+    /**
+     * Use the given partition key for a table instead of asking the MetadataService, e.g. one read from
+     * CREATE TABLE with {@link PartitionKey#of(CreateTableQuery)}.
+     */
+    public void setPartitionKey(String tableFullName, PartitionKey partitionKey) {
+        presetPartitionKeyMap.put(tableFullName, partitionKey);
     }
 
     private FilterCondition mergeConditions(String logicalOperator, FilterCondition firstCondition, FilterCondition secondCondition) {
@@ -557,9 +651,7 @@ public class ReferredPartitionsDetector extends AstVisitor {
     }
 
     private FilterSpecElements intersectFilterRanges(FilterSpecElements range1, FilterSpecElements range2) {
-        Set<String> mergedRange = Sets.intersection(range1.getElements(), range2.getElements());
-        FilterSpecElements intersectionResult = new FilterSpecElements(mergedRange);
-        return intersectionResult;
+        return range1.intersect(range2);
     }
 
     private FilterSpecElements unionFilterRanges(List<FilterSpecElements> ranges1, List<FilterSpecElements> ranges2) {
@@ -588,18 +680,15 @@ public class ReferredPartitionsDetector extends AstVisitor {
      * @return
      */
     private FilterSpecElements unionFilterRanges(FilterSpecElements range1, List<FilterSpecElements> ranges) {
-        Set<String> mergedRange = range1.getElements();
+        FilterSpecElements mergedRange = range1;
         for (FilterSpecElements range : ranges) {
-            mergedRange = Sets.union(mergedRange, range.getElements());
+            mergedRange = mergedRange.union(range);
         }
-        FilterSpecElements unionResult = new FilterSpecElements(mergedRange);
-        return unionResult;
+        return mergedRange;
     }
 
     private FilterSpecElements unionFilterRanges(FilterSpecElements range1, FilterSpecElements range2) {
-        Set<String> mergedRange = Sets.union(range1.getElements(), range2.getElements());
-        FilterSpecElements unionResult = new FilterSpecElements(mergedRange);
-        return unionResult;
+        return range1.union(range2);
     }
 
     private String extractOperator(FunctionColumnExpr funcColExpr) {
@@ -640,6 +729,24 @@ public class ReferredPartitionsDetector extends AstVisitor {
         }
     }
 
+    /**
+     * First day holding a value greater than the given date or date time.
+     */
+    private String firstDayAfter(String value, boolean dateColumn) {
+        return dateColumn && !hasTime(value) ? nextDay(value) : value;
+    }
+
+    /**
+     * Last day holding a value less than the given date or date time.
+     */
+    private String lastDayBefore(String value) {
+        return hasTime(value) && !value.endsWith(" 00:00:00") ? value : lastDay(value);
+    }
+
+    private boolean hasTime(String value) {
+        return value.length() > 10 && value.charAt(10) == ' ';
+    }
+
     private String lastDay(String dateStr) {
         return addDays(dateStr, -1);
     }
@@ -649,17 +756,7 @@ public class ReferredPartitionsDetector extends AstVisitor {
     }
 
     private String addDays(String dateStr, int offset) {
-        try {
-            Date date = DateUtil.parseDate(dateStr);
-            Calendar calendar = new GregorianCalendar();
-            calendar.setTime(date);
-            calendar.add(Calendar.DATE, offset);
-            String lastDayStr = DateUtil.formatDate(calendar.getTime());
-            return lastDayStr;
-        } catch (Exception e) {
-            log.error("", e);
-        }
-        return null;
+        return DateUtil.addDays(dateStr, offset);
     }
 
 }
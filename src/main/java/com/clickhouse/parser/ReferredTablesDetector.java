@@ -9,10 +9,17 @@ import com.clickhouse.parser.ast.expr.SubqueryColumnExpr;
 import lombok.Data;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Collect the tables referred by a query, visited through searchTables or walked by {@link AstWalker}.
+ * <p>
+ * An instance is not thread safe and holds the results of one query. To reuse it, e.g. one per thread, call
+ * {@link #analyze(INode)}, or {@link #reset()} before walking the next query. The returned lists belong to the
+ * detector and are cleared by the next reset, copy them to keep them.
+ */
 @Data
 public class ReferredTablesDetector extends AstVisitor {
 
@@ -20,10 +27,33 @@ public class ReferredTablesDetector extends AstVisitor {
 
     private List<String> tables = new ArrayList<>();
 
-    private Map<SelectStatement, List<String>> tablesInSelectStatements = new HashMap<>();
+    private Map<SelectStatement, List<String>> tablesInSelectStatements = new IdentityHashMap<>();
 
-    private volatile SelectStatement currentSelectStatement;
+    private SelectStatement currentSelectStatement;
 
+    /**
+     * Forget the previous query, keeping the collections for the next one.
+     */
+    public ReferredTablesDetector reset() {
+        selectUnionQueryList.clear();
+        tables.clear();
+        tablesInSelectStatements.clear();
+        currentSelectStatement = null;
+        return this;
+    }
+
+    /**
+     * Tables referred by a query, the previous query is forgotten.
+     */
+    public List<String> analyze(INode node) {
+        reset();
+        visit(node);
+        return tables;
+    }
+
+    /**
+     * Tables referred by a query, or those of the previous query if there are any. See {@link #analyze(INode)}.
+     */
     public List<String> searchTables(INode node) {
         if (tables.size() > 0) {
             return tables;
@@ -42,11 +72,13 @@ public class ReferredTablesDetector extends AstVisitor {
         if (null != selectUnionQuery) {
             selectUnionQueryList.add(selectUnionQuery);
         }
-        for (SelectStatement selectStatement : selectUnionQuery.getStatements()) {
-            currentSelectStatement = selectStatement;
-            visitSelectStatement(selectStatement);
-        }
-        return null;
+        return super.visitSelectUnionQuery(selectUnionQuery);
+    }
+
+    @Override
+    public Object visitSelectStatement(SelectStatement selectStatement) {
+        currentSelectStatement = selectStatement;
+        return super.visitSelectStatement(selectStatement);
     }
 
     @Override
@@ -61,6 +93,11 @@ public class ReferredTablesDetector extends AstVisitor {
 
     @Override
     public Object visitTableIdentifier(TableIdentifier tableIdentifier) {
+        addTable(tableIdentifier);
+        return super.visitTableIdentifier(tableIdentifier);
+    }
+
+    private void addTable(TableIdentifier tableIdentifier) {
         tables.add(tableIdentifier.getQualifiedName());
         if (!tablesInSelectStatements.containsKey(currentSelectStatement)) {
             List<String> tablesInStmt = new ArrayList<>();
@@ -68,6 +105,5 @@ public class ReferredTablesDetector extends AstVisitor {
         }
         List<String> tablesInStmt = tablesInSelectStatements.get(currentSelectStatement);
         tablesInStmt.add(tableIdentifier.getQualifiedName());
-        return super.visitTableIdentifier(tableIdentifier);
     }
 }
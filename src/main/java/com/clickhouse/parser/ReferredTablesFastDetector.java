@@ -0,0 +1,205 @@
+package com.clickhouse.parser;
+
+import com.clickhouse.parser.ast.INode;
+import lombok.extern.slf4j.Slf4j;
+import org.antlr.v4.runtime.Token;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Find the tables referred by a SQL from its tokens only, without building the parse tree and the AST.
+ * Plain SELECT and INSERT statements are handled here; subqueries, table functions, comma joins, ARRAY JOIN and
+ * other statements fall back to the full parse and ReferredTablesDetector, so the result is always the same as
+ * the full detector's.
+ */
+@Slf4j
+public class ReferredTablesFastDetector {
+
+    private final AstParser astParser;
+
+    private final AtomicLong fastPathCount = new AtomicLong();
+
+    private final AtomicLong fallbackCount = new AtomicLong();
+
+    public ReferredTablesFastDetector(AstParser astParser) {
+        this.astParser = astParser;
+    }
+
+    public List<String> searchTables(String sql) {
+        return searchTables(sql, "default");
+    }
+
+    public List<String> searchTables(String sql, String defaultDatabase) {
+        List<String> tables = null;
+        ParserSession session = ParserSession.acquire();
+        try {
+            session.reset(sql, false);
+            tables = new TokenScanner(session, astParser.isFillDefaultDatabase() ? defaultDatabase : null).scan();
+        } finally {
+            ParserSession.release(session);
+        }
+        if (null != tables) {
+            fastPathCount.incrementAndGet();
+            return tables;
+        }
+        fallbackCount.incrementAndGet();
+        log.debug("Fall back to the full parser: {}", sql);
+        return new ReferredTablesDetector().searchTables((INode) astParser.parse(sql, defaultDatabase));
+    }
+
+    public long getFastPathCount() {
+        return fastPathCount.get();
+    }
+
+    public long getFallbackCount() {
+        return fallbackCount.get();
+    }
+
+    private static class TokenScanner {
+
+        private final ParserSession session;
+
+        private final String defaultDatabase;
+
+        private final List<String> tables = new ArrayList<>();
+
+        private Token lookahead;
+
+        private int previousType = Token.INVALID_TYPE;
+
+        private TokenScanner(ParserSession session, String defaultDatabase) {
+            this.session = session;
+            this.defaultDatabase = defaultDatabase;
+        }
+
+        private Token next() {
+            Token token;
+            if (null != lookahead) {
+                token = lookahead;
+                lookahead = null;
+            } else {
+                token = session.getLexer().nextToken();
+            }
+            return token;
+        }
+
+        private Token peek() {
+            if (null == lookahead) {
+                lookahead = session.getLexer().nextToken();
+            }
+            return lookahead;
+        }
+
+        /**
+         * @return the referred tables, or null if the statement needs the full parser
+         */
+        private List<String> scan() {
+            Token token = next();
+            if (token.getType() == ClickHouseLexer.INSERT) {
+                if (next().getType() != ClickHouseLexer.INTO) {
+                    return null;
+                }
+                if (peek().getType() == ClickHouseLexer.TABLE) {
+                    next();
+                }
+                if (!readTable(true)) {
+                    return null;
+                }
+            } else if (token.getType() != ClickHouseLexer.SELECT && token.getType() != ClickHouseLexer.WITH) {
+                return null;
+            }
+            previousType = token.getType();
+
+            int depth = 0;
+            boolean inFromClause = false;
+            while (true) {
+                token = next();
+                switch (token.getType()) {
+                    case Token.EOF:
+                    case ClickHouseLexer.SEMICOLON:
+                        return session.getSyntaxErrorCount() > 0 ? null : tables;
+                    case ClickHouseLexer.VALUES:
+                    case ClickHouseLexer.FORMAT:
+                        // the rest is data or the output format, never lex the payload
+                        if (depth == 0) {
+                            return session.getSyntaxErrorCount() > 0 ? null : tables;
+                        }
+                        break;
+                    case ClickHouseLexer.LPAREN:
+                    case ClickHouseLexer.LBRACKET:
+                        depth++;
+                        break;
+                    case ClickHouseLexer.RPAREN:
+                    case ClickHouseLexer.RBRACKET:
+                        depth--;
+                        break;
+                    case ClickHouseLexer.SELECT:
+                    case ClickHouseLexer.WITH:
+                        if (depth > 0) {
+                            return null;
+                        }
+                        inFromClause = false;
+                        break;
+                    case ClickHouseLexer.FROM:
+                        if (depth > 0 || !readTable(false)) {
+                            return null;
+                        }
+                        inFromClause = true;
+                        break;
+                    case ClickHouseLexer.JOIN:
+                        if (depth > 0 || previousType == ClickHouseLexer.ARRAY || !readTable(false)) {
+                            return null;
+                        }
+                        break;
+                    case ClickHouseLexer.COMMA:
+                        if (depth == 0 && inFromClause) {
+                            return null;
+                        }
+                        break;
+                    case ClickHouseLexer.PREWHERE:
+                    case ClickHouseLexer.WHERE:
+                    case ClickHouseLexer.GROUP:
+                    case ClickHouseLexer.HAVING:
+                    case ClickHouseLexer.ORDER:
+                    case ClickHouseLexer.LIMIT:
+                    case ClickHouseLexer.SETTINGS:
+                    case ClickHouseLexer.UNION:
+                        inFromClause = false;
+                        break;
+                    default:
+                        break;
+                }
+                previousType = token.getType();
+            }
+        }
+
+        /**
+         * Read [database.]table, a table function or anything but a plain name makes it fail.
+         * The INSERT target may be followed by its column list.
+         */
+        private boolean readTable(boolean columnsFollow) {
+            Token name = next();
+            if (name.getType() != ClickHouseLexer.IDENTIFIER) {
+                return false;
+            }
+            String database = defaultDatabase;
+            String table = name.getText();
+            if (peek().getType() == ClickHouseLexer.DOT) {
+                next();
+                Token tableName = next();
+                if (tableName.getType() != ClickHouseLexer.IDENTIFIER) {
+                    return false;
+                }
+                database = table;
+                table = tableName.getText();
+            }
+            if (!columnsFollow && peek().getType() == ClickHouseLexer.LPAREN) {
+                return false;
+            }
+            tables.add(null != database && !database.isEmpty() ? database + "." + table : table);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.clickhouse.parser;
+
+import com.clickhouse.parser.ast.INode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Parse a multi statement script lazily, one statement at a time.
+ * Files are memory-mapped window by window and other channels are read through a fixed buffer, so only the
+ * statement being parsed is held in memory. Statements are split on top-level semicolons, skipping the ones
+ * inside quoted strings, quoted identifiers and comments.
+ */
+public class SqlScriptParser implements Iterable<INode>, Closeable {
+
+    private static final int DEFAULT_MAP_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private static final int DEFAULT_READ_BUFFER_SIZE = 64 * 1024;
+
+    private static final int CHAR_BUFFER_SIZE = 8 * 1024;
+
+    private enum State {
+        NORMAL, SINGLE_QUOTE, DOUBLE_QUOTE, BACK_QUOTE, LINE_COMMENT, BLOCK_COMMENT
+    }
+
+    private final AstParser astParser;
+
+    private final String defaultDatabase;
+
+    private final ReadableByteChannel channel;
+
+    private final FileChannel fileChannel;
+
+    private final int windowSize;
+
+    private final CharsetDecoder decoder;
+
+    private final CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+
+    private final StringBuilder statement = new StringBuilder();
+
+    private ByteBuffer bytes;
+
+    private long windowStart = 0;
+
+    private boolean endOfInput = false;
+
+    private boolean flushed = false;
+
+    private State state = State.NORMAL;
+
+    private boolean escaped = false;
+
+    private char prev = 0;
+
+    private boolean hasContent = false;
+
+    public SqlScriptParser(AstParser astParser, Path path) throws IOException {
+        this(astParser, path, StandardCharsets.UTF_8, "default");
+    }
+
+    public SqlScriptParser(AstParser astParser, Path path, Charset charset, String defaultDatabase) throws IOException {
+        this(astParser, FileChannel.open(path, StandardOpenOption.READ), charset, defaultDatabase, DEFAULT_MAP_WINDOW_SIZE);
+    }
+
+    public SqlScriptParser(AstParser astParser, ReadableByteChannel channel, Charset charset) {
+        this(astParser, channel, charset, "default", DEFAULT_READ_BUFFER_SIZE);
+    }
+
+    public SqlScriptParser(AstParser astParser, ReadableByteChannel channel, Charset charset, String defaultDatabase) {
+        this(astParser, channel, charset, defaultDatabase, DEFAULT_READ_BUFFER_SIZE);
+    }
+
+    /**
+     * For FileChannel the window size is the size of each mapped region, otherwise it is the read buffer size.
+     */
+    SqlScriptParser(AstParser astParser, ReadableByteChannel channel, Charset charset, String defaultDatabase,
+                    int windowSize) {
+        this.astParser = astParser;
+        this.defaultDatabase = defaultDatabase;
+        this.channel = channel;
+        this.fileChannel = channel instanceof FileChannel ? (FileChannel) channel : null;
+        this.windowSize = windowSize;
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        if (null == fileChannel) {
+            this.bytes = ByteBuffer.allocate(windowSize);
+            this.bytes.flip();
+        } else {
+            this.bytes = ByteBuffer.allocate(0);
+        }
+        this.chars.flip();
+    }
+
+    /**
+     * Return the text of the next non-blank statement without the trailing semicolon, or null at the end of input.
+     */
+    public String nextStatement() throws IOException {
+        while (true) {
+            if (!chars.hasRemaining() && !fillChars()) {
+                return takeStatement();
+            }
+            while (chars.hasRemaining()) {
+                char c = chars.get();
+                if (scan(c)) {
+                    String sql = takeStatement();
+                    if (null != sql) {
+                        return sql;
+                    }
+                } else {
+                    statement.append(c);
+                }
+            }
+        }
+    }
+
+    /**
+     * Feed one char to the scanner, return true when it is a statement delimiter.
+     */
+    private boolean scan(char c) {
+        switch (state) {
+            case NORMAL:
+                if ((prev == '-' && c == '-') || (prev == '/' && c == '*')) {
+                    state = c == '-' ? State.LINE_COMMENT : State.BLOCK_COMMENT;
+                    prev = 0;
+                    return false;
+                }
+                if (prev == '-' || prev == '/') {
+                    hasContent = true;
+                }
+                prev = c;
+                if (c == ';') {
+                    return true;
+                }
+                if (c == '\'') {
+                    state = State.SINGLE_QUOTE;
+                } else if (c == '"') {
+                    state = State.DOUBLE_QUOTE;
+                } else if (c == '`') {
+                    state = State.BACK_QUOTE;
+                }
+                if (!Character.isWhitespace(c) && c != '-' && c != '/') {
+                    hasContent = true;
+                }
+                return false;
+            case SINGLE_QUOTE:
+                return scanQuoted(c, '\'');
+            case DOUBLE_QUOTE:
+                return scanQuoted(c, '"');
+            case BACK_QUOTE:
+                return scanQuoted(c, '`');
+            case LINE_COMMENT:
+                if (c == '\n' || c == '\r') {
+                    state = State.NORMAL;
+                }
+                return false;
+            case BLOCK_COMMENT:
+                if (prev == '*' && c == '/') {
+                    state = State.NORMAL;
+                    prev = 0;
+                } else {
+                    prev = c;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    private boolean scanQuoted(char c, char quote) {
+        // a doubled quote closes the literal and reopens it right away
+        if (escaped) {
+            escaped = false;
+        } else if (c == '\\') {
+            escaped = true;
+        } else if (c == quote) {
+            state = State.NORMAL;
+            prev = 0;
+        }
+        return false;
+    }
+
+    private String takeStatement() {
+        if (state == State.NORMAL && (prev == '-' || prev == '/')) {
+            hasContent = true;
+        }
+        String sql = hasContent ? statement.toString().trim() : null;
+        statement.setLength(0);
+        state = State.NORMAL;
+        escaped = false;
+        prev = 0;
+        hasContent = false;
+        return sql;
+    }
+
+    private boolean fillChars() throws IOException {
+        if (flushed) {
+            return false;
+        }
+        chars.clear();
+        while (chars.position() == 0) {
+            CoderResult result = decoder.decode(bytes, chars, endOfInput);
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (result.isOverflow() || chars.position() > 0) {
+                break;
+            }
+            if (endOfInput) {
+                decoder.flush(chars);
+                flushed = true;
+                break;
+            }
+            fillBytes();
+        }
+        chars.flip();
+        return chars.hasRemaining();
+    }
+
+    private void fillBytes() throws IOException {
+        if (null != fileChannel) {
+            // map the next window from the first undecoded byte, so a char split across windows is decoded whole
+            windowStart += bytes.position();
+            long size = fileChannel.size();
+            long length = Math.min(windowSize, size - windowStart);
+            bytes = fileChannel.map(FileChannel.MapMode.READ_ONLY, windowStart, length);
+            endOfInput = windowStart + length >= size;
+        } else {
+            bytes.compact();
+            int read = 0;
+            while (bytes.hasRemaining() && (read = channel.read(bytes)) >= 0) {
+                if (read == 0) {
+                    break;
+                }
+            }
+            endOfInput = read < 0;
+            bytes.flip();
+        }
+    }
+
+    @Override
+    public Iterator<INode> iterator() {
+        return new Iterator<INode>() {
+
+            private String next;
+
+            @Override
+            public boolean hasNext() {
+                if (null == next) {
+                    try {
+                        next = nextStatement();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return null != next;
+            }
+
+            @Override
+            public INode next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String sql = next;
+                next = null;
+                return (INode) astParser.parse(sql, defaultDatabase);
+            }
+        };
+    }
+
+    /**
+     * Sequential stream of the ASTs, closing the stream closes the underlying channel.
+     */
+    public Stream<INode> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    try {
+                        close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
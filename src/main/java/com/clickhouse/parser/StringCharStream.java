@@ -0,0 +1,103 @@
+package com.clickhouse.parser;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+import java.nio.CharBuffer;
+
+/**
+ * A CharStream reading straight from a String, without copying it into a byte or char buffer first.
+ * Like ANTLRInputStream it works on UTF-16 code units, so it produces exactly the same tokens.
+ */
+public class StringCharStream implements CharStream {
+
+    private final String data;
+
+    private int p = 0;
+
+    public StringCharStream(String data) {
+        this.data = data;
+    }
+
+    @Override
+    public void consume() {
+        if (p >= data.length()) {
+            throw new IllegalStateException("cannot consume EOF");
+        }
+        p++;
+    }
+
+    @Override
+    public int LA(int i) {
+        if (i == 0) {
+            return 0;
+        }
+        if (i < 0) {
+            // e.g. LA(-1) is the previously consumed character
+            i++;
+            if (p + i - 1 < 0) {
+                return IntStream.EOF;
+            }
+        }
+        int index = p + i - 1;
+        if (index >= data.length()) {
+            return IntStream.EOF;
+        }
+        return data.charAt(index);
+    }
+
+    @Override
+    public int mark() {
+        return -1;
+    }
+
+    @Override
+    public void release(int marker) {
+    }
+
+    @Override
+    public int index() {
+        return p;
+    }
+
+    @Override
+    public void seek(int index) {
+        p = Math.min(index, data.length());
+    }
+
+    @Override
+    public int size() {
+        return data.length();
+    }
+
+    @Override
+    public String getText(Interval interval) {
+        int start = interval.a;
+        int stop = interval.b;
+        if (stop >= data.length()) {
+            stop = data.length() - 1;
+        }
+        if (start >= data.length() || stop < start) {
+            return "";
+        }
+        return data.substring(start, stop + 1);
+    }
+
+    /**
+     * Read-only view of the characters from start (inclusive) to end (exclusive), they are not copied.
+     */
+    public CharSequence subSequence(int start, int end) {
+        return CharBuffer.wrap(data, start, end);
+    }
+
+    @Override
+    public String getSourceName() {
+        return IntStream.UNKNOWN_SOURCE_NAME;
+    }
+
+    @Override
+    public String toString() {
+        return data;
+    }
+}
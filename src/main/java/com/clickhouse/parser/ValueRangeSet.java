@@ -0,0 +1,517 @@
+package com.clickhouse.parser;
+
+import java.util.Arrays;
+
+/**
+ * Values a column may take, as sorted disjoint intervals with primitive bounds: longs for integers, doubles for other
+ * numbers and strings, compared lexicographically, for everything else. Sets of different types are not combined.
+ * A set is immutable, the operations return new sets.
+ */
+public final class ValueRangeSet {
+
+    public enum ValueType {
+        /**
+         * Floating point bounds.
+         */
+        NUMBER,
+        /**
+         * Integer bounds, exact over the whole 64-bit range. The values in between are still all numbers, not
+         * only integers.
+         */
+        INTEGER,
+        STRING
+    }
+
+    private final ValueType type;
+
+    private final int size;
+
+    /**
+     * Bounds of NUMBER sets, unbounded sides are infinite.
+     */
+    private final double[] numberLows;
+
+    private final double[] numberHighs;
+
+    /**
+     * Bounds of INTEGER sets, unbounded sides are Long.MIN_VALUE and Long.MAX_VALUE.
+     */
+    private final long[] integerLows;
+
+    private final long[] integerHighs;
+
+    /**
+     * Bounds of STRING sets, unbounded sides are null.
+     */
+    private final String[] stringLows;
+
+    private final String[] stringHighs;
+
+    private final boolean[] lowInclusive;
+
+    private final boolean[] highInclusive;
+
+    private ValueRangeSet(Builder builder) {
+        this.type = builder.type;
+        this.size = builder.size;
+        this.numberLows = null == builder.numberLows ? null : Arrays.copyOf(builder.numberLows, size);
+        this.numberHighs = null == builder.numberHighs ? null : Arrays.copyOf(builder.numberHighs, size);
+        this.integerLows = null == builder.integerLows ? null : Arrays.copyOf(builder.integerLows, size);
+        this.integerHighs = null == builder.integerHighs ? null : Arrays.copyOf(builder.integerHighs, size);
+        this.stringLows = null == builder.stringLows ? null : Arrays.copyOf(builder.stringLows, size);
+        this.stringHighs = null == builder.stringHighs ? null : Arrays.copyOf(builder.stringHighs, size);
+        this.lowInclusive = Arrays.copyOf(builder.lowInclusive, size);
+        this.highInclusive = Arrays.copyOf(builder.highInclusive, size);
+    }
+
+    public static ValueRangeSet all(ValueType type) {
+        return new Builder(type, 1).appendLow(null, 0).appendHigh(null, 0).build();
+    }
+
+    public static ValueRangeSet none(ValueType type) {
+        return new Builder(type, 0).build();
+    }
+
+    public static ValueRangeSet point(double value) {
+        return range(value, true, value, true);
+    }
+
+    public static ValueRangeSet point(long value) {
+        return range(value, true, value, true);
+    }
+
+    public static ValueRangeSet point(String value) {
+        return range(value, true, value, true);
+    }
+
+    /**
+     * Use infinities for unbounded sides.
+     */
+    public static ValueRangeSet range(double low, boolean lowInclusive, double high, boolean highInclusive) {
+        Builder builder = new Builder(ValueType.NUMBER, 1);
+        builder.numberLows[0] = low;
+        builder.numberHighs[0] = high;
+        builder.lowInclusive[0] = lowInclusive && !Double.isInfinite(low);
+        builder.highInclusive[0] = highInclusive && !Double.isInfinite(high);
+        builder.size = 1;
+        return builder.build().normalize();
+    }
+
+    /**
+     * Use Long.MIN_VALUE and Long.MAX_VALUE for unbounded sides.
+     */
+    public static ValueRangeSet range(long low, boolean lowInclusive, long high, boolean highInclusive) {
+        Builder builder = new Builder(ValueType.INTEGER, 1);
+        builder.integerLows[0] = low;
+        builder.integerHighs[0] = high;
+        builder.lowInclusive[0] = lowInclusive && low != Long.MIN_VALUE;
+        builder.highInclusive[0] = highInclusive && high != Long.MAX_VALUE;
+        builder.size = 1;
+        return builder.build().normalize();
+    }
+
+    /**
+     * Use null for unbounded sides.
+     */
+    public static ValueRangeSet range(String low, boolean lowInclusive, String high, boolean highInclusive) {
+        Builder builder = new Builder(ValueType.STRING, 1);
+        builder.stringLows[0] = low;
+        builder.stringHighs[0] = high;
+        builder.lowInclusive[0] = lowInclusive && null != low;
+        builder.highInclusive[0] = highInclusive && null != high;
+        builder.size = 1;
+        return builder.build().normalize();
+    }
+
+    public ValueType getType() {
+        return type;
+    }
+
+    /**
+     * Number of intervals.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * No value matches.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Every value matches.
+     */
+    public boolean isAll() {
+        return size == 1 && isLowUnbounded(0) && isHighUnbounded(0);
+    }
+
+    /**
+     * Every interval is a single value, e.g. for col = 1 or col IN (1, 2).
+     */
+    public boolean isPoints() {
+        for (int i = 0; i < size; i++) {
+            if (!lowInclusive[i] || !highInclusive[i] || compareValues(this, i, true, this, i, false) != 0) {
+                return false;
+            }
+        }
+        return size > 0;
+    }
+
+    public double getNumberLow(int i) {
+        return numberLows[i];
+    }
+
+    public double getNumberHigh(int i) {
+        return numberHighs[i];
+    }
+
+    public long getIntegerLow(int i) {
+        return integerLows[i];
+    }
+
+    public long getIntegerHigh(int i) {
+        return integerHighs[i];
+    }
+
+    public String getStringLow(int i) {
+        return stringLows[i];
+    }
+
+    public String getStringHigh(int i) {
+        return stringHighs[i];
+    }
+
+    public boolean isLowInclusive(int i) {
+        return lowInclusive[i];
+    }
+
+    public boolean isHighInclusive(int i) {
+        return highInclusive[i];
+    }
+
+    public boolean isLowUnbounded(int i) {
+        switch (type) {
+            case NUMBER:
+                return numberLows[i] == Double.NEGATIVE_INFINITY;
+            case INTEGER:
+                return integerLows[i] == Long.MIN_VALUE;
+            default:
+                return null == stringLows[i];
+        }
+    }
+
+    public boolean isHighUnbounded(int i) {
+        switch (type) {
+            case NUMBER:
+                return numberHighs[i] == Double.POSITIVE_INFINITY;
+            case INTEGER:
+                return integerHighs[i] == Long.MAX_VALUE;
+            default:
+                return null == stringHighs[i];
+        }
+    }
+
+    public ValueRangeSet intersect(ValueRangeSet other) {
+        checkType(other);
+        Builder builder = new Builder(type, size + other.size);
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            boolean lowFromThis = compareLows(this, i, other, j) >= 0;
+            boolean highFromThis = compareHighs(this, i, other, j) <= 0;
+            ValueRangeSet lowSet = lowFromThis ? this : other;
+            ValueRangeSet highSet = highFromThis ? this : other;
+            int lowIndex = lowFromThis ? i : j;
+            int highIndex = highFromThis ? i : j;
+            if (!isEmptyInterval(lowSet, lowIndex, highSet, highIndex)) {
+                builder.appendLow(lowSet, lowIndex).appendHigh(highSet, highIndex);
+            }
+            if (highFromThis) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return builder.build();
+    }
+
+    public ValueRangeSet union(ValueRangeSet other) {
+        checkType(other);
+        Builder builder = new Builder(type, size + other.size);
+        ValueRangeSet lastSet = null;
+        int lastIndex = -1;
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            ValueRangeSet set;
+            int index;
+            if (j == other.size || (i < size && compareLows(this, i, other, j) <= 0)) {
+                set = this;
+                index = i++;
+            } else {
+                set = other;
+                index = j++;
+            }
+            if (null != lastSet && touches(lastSet, lastIndex, set, index)) {
+                if (compareHighs(set, index, lastSet, lastIndex) > 0) {
+                    builder.size--;
+                    builder.appendHigh(set, index);
+                    lastSet = set;
+                    lastIndex = index;
+                }
+            } else {
+                builder.appendLow(set, index).appendHigh(set, index);
+                lastSet = set;
+                lastIndex = index;
+            }
+        }
+        return builder.build();
+    }
+
+    public ValueRangeSet complement() {
+        Builder builder = new Builder(type, size + 1);
+        if (size == 0) {
+            return all(type);
+        }
+        if (!isLowUnbounded(0)) {
+            builder.appendLow(null, 0).appendHighFromLow(this, 0);
+        }
+        for (int i = 0; i + 1 < size; i++) {
+            builder.appendLowFromHigh(this, i).appendHighFromLow(this, i + 1);
+        }
+        if (!isHighUnbounded(size - 1)) {
+            builder.appendLowFromHigh(this, size - 1).appendHigh(null, 0);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ValueRangeSet)) {
+            return false;
+        }
+        ValueRangeSet other = (ValueRangeSet) o;
+        return toString().equals(other.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                builder.append(" U ");
+            }
+            builder.append(lowInclusive[i] ? '[' : '(');
+            if (isLowUnbounded(i)) {
+                builder.append("-inf");
+            } else if (type == ValueType.NUMBER) {
+                builder.append(format(numberLows[i]));
+            } else if (type == ValueType.INTEGER) {
+                builder.append(integerLows[i]);
+            } else {
+                builder.append('\'').append(stringLows[i]).append('\'');
+            }
+            builder.append(", ");
+            if (isHighUnbounded(i)) {
+                builder.append("+inf");
+            } else if (type == ValueType.NUMBER) {
+                builder.append(format(numberHighs[i]));
+            } else if (type == ValueType.INTEGER) {
+                builder.append(integerHighs[i]);
+            } else {
+                builder.append('\'').append(stringHighs[i]).append('\'');
+            }
+            builder.append(highInclusive[i] ? ']' : ')');
+        }
+        return size == 0 ? "{}" : builder.toString();
+    }
+
+    private ValueRangeSet normalize() {
+        return isEmptyInterval(this, 0, this, 0) ? none(type) : this;
+    }
+
+    private void checkType(ValueRangeSet other) {
+        if (type != other.type) {
+            throw new IllegalArgumentException("Can not combine " + type + " and " + other.type + " ranges");
+        }
+    }
+
+    private static String format(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    /**
+     * Compare the low (or high) bound value of a.i with the low (or high) bound value of b.j, unbounded sides
+     * being infinite.
+     */
+    private static int compareValues(ValueRangeSet a, int i, boolean aLow, ValueRangeSet b, int j, boolean bLow) {
+        if (a.type == ValueType.NUMBER) {
+            return Double.compare(aLow ? a.numberLows[i] : a.numberHighs[i], bLow ? b.numberLows[j] : b.numberHighs[j]);
+        }
+        if (a.type == ValueType.INTEGER) {
+            return Long.compare(aLow ? a.integerLows[i] : a.integerHighs[i],
+                    bLow ? b.integerLows[j] : b.integerHighs[j]);
+        }
+        String aValue = aLow ? a.stringLows[i] : a.stringHighs[i];
+        String bValue = bLow ? b.stringLows[j] : b.stringHighs[j];
+        if (null == aValue || null == bValue) {
+            int aRank = null != aValue ? 0 : aLow ? -1 : 1;
+            int bRank = null != bValue ? 0 : bLow ? -1 : 1;
+            return Integer.compare(aRank, bRank);
+        }
+        return aValue.compareTo(bValue);
+    }
+
+    /**
+     * An inclusive low starts before an exclusive one at the same value.
+     */
+    private static int compareLows(ValueRangeSet a, int i, ValueRangeSet b, int j) {
+        int result = compareValues(a, i, true, b, j, true);
+        if (result != 0 || a.lowInclusive[i] == b.lowInclusive[j]) {
+            return result;
+        }
+        return a.lowInclusive[i] ? -1 : 1;
+    }
+
+    /**
+     * An inclusive high ends after an exclusive one at the same value.
+     */
+    private static int compareHighs(ValueRangeSet a, int i, ValueRangeSet b, int j) {
+        int result = compareValues(a, i, false, b, j, false);
+        if (result != 0 || a.highInclusive[i] == b.highInclusive[j]) {
+            return result;
+        }
+        return a.highInclusive[i] ? 1 : -1;
+    }
+
+    private static boolean isEmptyInterval(ValueRangeSet lowSet, int i, ValueRangeSet highSet, int j) {
+        int result = compareValues(lowSet, i, true, highSet, j, false);
+        return result > 0 || (result == 0 && !(lowSet.lowInclusive[i] && highSet.highInclusive[j]));
+    }
+
+    /**
+     * Whether b.j, which does not start before a.i, overlaps or adjoins a.i.
+     */
+    private static boolean touches(ValueRangeSet a, int i, ValueRangeSet b, int j) {
+        int result = compareValues(b, j, true, a, i, false);
+        return result < 0 || (result == 0 && (b.lowInclusive[j] || a.highInclusive[i]));
+    }
+
+    private static class Builder {
+
+        private final ValueType type;
+
+        private int size;
+
+        private final double[] numberLows;
+
+        private final double[] numberHighs;
+
+        private final long[] integerLows;
+
+        private final long[] integerHighs;
+
+        private final String[] stringLows;
+
+        private final String[] stringHighs;
+
+        private final boolean[] lowInclusive;
+
+        private final boolean[] highInclusive;
+
+        Builder(ValueType type, int capacity) {
+            this.type = type;
+            boolean number = type == ValueType.NUMBER;
+            boolean integer = type == ValueType.INTEGER;
+            boolean string = type == ValueType.STRING;
+            this.numberLows = number ? new double[capacity] : null;
+            this.numberHighs = number ? new double[capacity] : null;
+            this.integerLows = integer ? new long[capacity] : null;
+            this.integerHighs = integer ? new long[capacity] : null;
+            this.stringLows = string ? new String[capacity] : null;
+            this.stringHighs = string ? new String[capacity] : null;
+            this.lowInclusive = new boolean[capacity];
+            this.highInclusive = new boolean[capacity];
+        }
+
+        /**
+         * Start an interval with the low bound of set.i, or unbounded if set is null.
+         */
+        Builder appendLow(ValueRangeSet set, int i) {
+            if (type == ValueType.NUMBER) {
+                numberLows[size] = null == set ? Double.NEGATIVE_INFINITY : set.numberLows[i];
+            } else if (type == ValueType.INTEGER) {
+                integerLows[size] = null == set ? Long.MIN_VALUE : set.integerLows[i];
+            } else {
+                stringLows[size] = null == set ? null : set.stringLows[i];
+            }
+            lowInclusive[size] = null != set && set.lowInclusive[i];
+            return this;
+        }
+
+        /**
+         * End the interval with the high bound of set.i, or unbounded if set is null.
+         */
+        Builder appendHigh(ValueRangeSet set, int i) {
+            if (type == ValueType.NUMBER) {
+                numberHighs[size] = null == set ? Double.POSITIVE_INFINITY : set.numberHighs[i];
+            } else if (type == ValueType.INTEGER) {
+                integerHighs[size] = null == set ? Long.MAX_VALUE : set.integerHighs[i];
+            } else {
+                stringHighs[size] = null == set ? null : set.stringHighs[i];
+            }
+            highInclusive[size] = null != set && set.highInclusive[i];
+            size++;
+            return this;
+        }
+
+        /**
+         * Start an interval right after the high bound of set.i.
+         */
+        Builder appendLowFromHigh(ValueRangeSet set, int i) {
+            if (type == ValueType.NUMBER) {
+                numberLows[size] = set.numberHighs[i];
+            } else if (type == ValueType.INTEGER) {
+                integerLows[size] = set.integerHighs[i];
+            } else {
+                stringLows[size] = set.stringHighs[i];
+            }
+            lowInclusive[size] = !set.highInclusive[i];
+            return this;
+        }
+
+        /**
+         * End the interval right before the low bound of set.i.
+         */
+        Builder appendHighFromLow(ValueRangeSet set, int i) {
+            if (type == ValueType.NUMBER) {
+                numberHighs[size] = set.numberLows[i];
+            } else if (type == ValueType.INTEGER) {
+                integerHighs[size] = set.integerLows[i];
+            } else {
+                stringHighs[size] = set.stringLows[i];
+            }
+            highInclusive[size] = !set.lowInclusive[i];
+            size++;
+            return this;
+        }
+
+        ValueRangeSet build() {
+            return new ValueRangeSet(this);
+        }
+    }
+}
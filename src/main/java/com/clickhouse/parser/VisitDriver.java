@@ -0,0 +1,14 @@
+package com.clickhouse.parser;
+
+/**
+ * Takes over the children of the nodes a driven {@link AstVisitor} descends into, see {@link AstWalker}.
+ */
+interface VisitDriver {
+
+    /**
+     * Called by a default visitXxx before it visits the children of its node.
+     *
+     * @return true if the driver visits the children, the visitXxx then returns without visiting them
+     */
+    boolean descend(AstVisitor<?> visitor, Object node, VisitMethod method);
+}
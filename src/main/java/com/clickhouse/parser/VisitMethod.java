@@ -0,0 +1,191 @@
+package com.clickhouse.parser;
+
+import com.clickhouse.parser.ast.*;
+import com.clickhouse.parser.ast.expr.*;
+
+import java.util.List;
+
+/**
+ * The visitXxx methods of {@link AstVisitor}, so that a driver can call them on nodes it took from its stack.
+ */
+enum VisitMethod {
+
+    VISIT, ALTER_TABLE_QUERY, TABLE_ELEMENT_EXPR, CODEC_EXPR, CODEC_ARG_EXPR, ADD_COLUMN_ALTER_TABLE_CLAUSE,
+    ADD_INDEX_ALTER_TABLE_CLAUSE, ATTACH_ALTER_TABLE_CLAUSE, PARTITION_CLAUSE, CLEAR_ALTER_TABLE_CLAUSE,
+    CODEC_ALTER_TABLE_CLAUSE, COMMENT_ALTER_TABLE_CLAUSE, DELETE_ALTER_TABLE_CLAUSE, DETACH_ALTER_TABLE_CLAUSE,
+    DROP_COLUMN_ALTER_TABLE_CLAUSE, DROP_INDEX_ALTER_TABLE_CLAUSE, DROP_PARTITION_ALTER_TABLE_CLAUSE,
+    FREEZE_PARTITION_ALTER_TABLE_CLAUSE, MODIFY_ALTER_TABLE_CLAUSE, MOVE_PARTITION_TO_DISK_ALTER_TABLE_CLAUSE,
+    MOVE_PARTITION_TO_TABLE_ALTER_TABLE_CLAUSE, MOVE_PARTITION_TO_VOLUME_ALTER_TABLE_CLAUSE,
+    ORDER_BY_ALTER_TABLE_CLAUSE, REMOVE_ALTER_TABLE_CLAUSE, REMOVE_TTL_ALTER_TABLE_CLAUSE, RENAME_ALTER_TABLE_CLAUSE,
+    REPLACE_ALTER_TABLE_CLAUSE, TTL_ALTER_TABLE_CLAUSE, TTL_CLAUSE, TTL_EXPR, UPDATE_ALTER_TABLE_CLAUSE,
+    ASSIGNMENT_EXPR, ALTER_TABLE_CLAUSE, INSERT_QUERY, DATA_CLAUSE, CREATE_TABLE_QUERY, TABLE_SCHEMA_CLAUSE,
+    ENGINE_CLAUSE, ENGINE_EXPR, SELECT_UNION_QUERY, SELECT_STATEMENT, WITH_CLAUSE, FROM_CLAUSE, JOIN_EXPR, TABLE_EXPR,
+    IDENTIFIER, TABLE_FUNCTION_EXPR, TABLE_ARG_EXPR_LIST, TABLE_ARG_EXPR, LITERAL, TABLE_IDENTIFIER, SAMPLE_CLAUSE,
+    RATIO_EXPR, NUMBER_LITERAL, JOIN_CONSTRAINT_CLAUSE, ARRAY_JOIN_CLAUSE, PREWHERE_CLAUSE, WHERE_CLAUSE,
+    GROUP_BY_CLAUSE, HAVING_CLAUSE, ORDER_BY_CLAUSE, ORDER_EXPR, STRING_LITERAL, LIMIT_BY_CLAUSE, LIMIT_EXPR,
+    LIMIT_CLAUSE, SETTINGS_CLAUSE, SETTING_EXPR, SELECT_COLUMN_EXPR_LIST, COLUMN_EXPR_LIST, ASTERISK_COLUMN_EXPR,
+    COLUMN_EXPR, LITERAL_COLUMN_EXPR, IDENTIFIER_COLUMN_EXPR, ALIAS_COLUMN_EXPR, FUNCTION_COLUMN_EXPR,
+    SUBQUERY_COLUMN_EXPR;
+
+    @SuppressWarnings("unchecked")
+    Object invoke(AstVisitor<?> visitor, Object node) {
+        switch (this) {
+            case VISIT:
+                return visitor.visit((INode) node);
+            case ALTER_TABLE_QUERY:
+                return visitor.visitAlterTableQuery((AlterTableQuery) node);
+            case TABLE_ELEMENT_EXPR:
+                return visitor.visitTableElementExpr((TableElementExpr) node);
+            case CODEC_EXPR:
+                return visitor.visitCodecExpr((CodecExpr) node);
+            case CODEC_ARG_EXPR:
+                return visitor.visitCodecArgExpr((CodecArgExpr) node);
+            case ADD_COLUMN_ALTER_TABLE_CLAUSE:
+                return visitor.visitAddColumnAlterTableClause((AddColumnAlterTableClause) node);
+            case ADD_INDEX_ALTER_TABLE_CLAUSE:
+                return visitor.visitAddIndexAlterTableClause((AddIndexAlterTableClause) node);
+            case ATTACH_ALTER_TABLE_CLAUSE:
+                return visitor.visitAttachAlterTableClause((AttachAlterTableClause) node);
+            case PARTITION_CLAUSE:
+                return visitor.visitPartitionClause((PartitionClause) node);
+            case CLEAR_ALTER_TABLE_CLAUSE:
+                return visitor.visitClearAlterTableClause((ClearAlterTableClause) node);
+            case CODEC_ALTER_TABLE_CLAUSE:
+                return visitor.visitCodecAlterTableClause((CodecAlterTableClause) node);
+            case COMMENT_ALTER_TABLE_CLAUSE:
+                return visitor.visitCommentAlterTableClause((CommentAlterTableClause) node);
+            case DELETE_ALTER_TABLE_CLAUSE:
+                return visitor.visitDeleteAlterTableClause((DeleteAlterTableClause) node);
+            case DETACH_ALTER_TABLE_CLAUSE:
+                return visitor.visitDetachAlterTableClause((DetachAlterTableClause) node);
+            case DROP_COLUMN_ALTER_TABLE_CLAUSE:
+                return visitor.visitDropColumnAlterTableClause((DropColumnAlterTableClause) node);
+            case DROP_INDEX_ALTER_TABLE_CLAUSE:
+                return visitor.visitDropIndexAlterTableClause((DropIndexAlterTableClause) node);
+            case DROP_PARTITION_ALTER_TABLE_CLAUSE:
+                return visitor.visitDropPartitionAlterTableClause((DropPartitionAlterTableClause) node);
+            case FREEZE_PARTITION_ALTER_TABLE_CLAUSE:
+                return visitor.visitFreezePartitionAlterTableClause((FreezePartitionAlterTableClause) node);
+            case MODIFY_ALTER_TABLE_CLAUSE:
+                return visitor.visitModifyAlterTableClause((ModifyAlterTableClause) node);
+            case MOVE_PARTITION_TO_DISK_ALTER_TABLE_CLAUSE:
+                return visitor.visitMovePartitionToDiskAlterTableClause((MovePartitionToDiskAlterTableClause) node);
+            case MOVE_PARTITION_TO_TABLE_ALTER_TABLE_CLAUSE:
+                return visitor.visitMovePartitionToTableAlterTableClause((MovePartitionToTableAlterTableClause) node);
+            case MOVE_PARTITION_TO_VOLUME_ALTER_TABLE_CLAUSE:
+                return visitor.visitMovePartitionToVolumeAlterTableClause((MovePartitionToVolumeAlterTableClause) node);
+            case ORDER_BY_ALTER_TABLE_CLAUSE:
+                return visitor.visitOrderByAlterTableClause((OrderByAlterTableClause) node);
+            case REMOVE_ALTER_TABLE_CLAUSE:
+                return visitor.visitRemoveAlterTableClause((RemoveAlterTableClause) node);
+            case REMOVE_TTL_ALTER_TABLE_CLAUSE:
+                return visitor.visitRemoveTTLAlterTableClause((RemoveTTLAlterTableClause) node);
+            case RENAME_ALTER_TABLE_CLAUSE:
+                return visitor.visitRenameAlterTableClause((RenameAlterTableClause) node);
+            case REPLACE_ALTER_TABLE_CLAUSE:
+                return visitor.visitReplaceAlterTableClause((ReplaceAlterTableClause) node);
+            case TTL_ALTER_TABLE_CLAUSE:
+                return visitor.visitTTLAlterTableClause((TTLAlterTableClause) node);
+            case TTL_CLAUSE:
+                return visitor.visitTTLClause((TTLClause) node);
+            case TTL_EXPR:
+                return visitor.visitTTLExpr((TTLExpr) node);
+            case UPDATE_ALTER_TABLE_CLAUSE:
+                return visitor.visitUpdateAlterTableClause((UpdateAlterTableClause) node);
+            case ASSIGNMENT_EXPR:
+                return visitor.visitAssignmentExpr((AssignmentExpr) node);
+            case ALTER_TABLE_CLAUSE:
+                return visitor.visitAlterTableClause((AlterTableClause) node);
+            case INSERT_QUERY:
+                return visitor.visitInsertQuery((InsertQuery) node);
+            case DATA_CLAUSE:
+                return visitor.visitDataClause((DataClause) node);
+            case CREATE_TABLE_QUERY:
+                return visitor.visitCreateTableQuery((CreateTableQuery) node);
+            case TABLE_SCHEMA_CLAUSE:
+                return visitor.visitTableSchemaClause((TableSchemaClause) node);
+            case ENGINE_CLAUSE:
+                return visitor.visitEngineClause((EngineClause) node);
+            case ENGINE_EXPR:
+                return visitor.visitEngineExpr((EngineExpr) node);
+            case SELECT_UNION_QUERY:
+                return visitor.visitSelectUnionQuery((SelectUnionQuery) node);
+            case SELECT_STATEMENT:
+                return visitor.visitSelectStatement((SelectStatement) node);
+            case WITH_CLAUSE:
+                return visitor.visitWithClause((WithClause) node);
+            case FROM_CLAUSE:
+                return visitor.visitFromClause((FromClause) node);
+            case JOIN_EXPR:
+                return visitor.visitJoinExpr((JoinExpr) node);
+            case TABLE_EXPR:
+                return visitor.visitTableExpr((TableExpr) node);
+            case IDENTIFIER:
+                return visitor.visitIdentifier((Identifier) node);
+            case TABLE_FUNCTION_EXPR:
+                return visitor.visitTableFunctionExpr((TableFunctionExpr) node);
+            case TABLE_ARG_EXPR_LIST:
+                return visitor.visitTableArgExprList((List) node);
+            case TABLE_ARG_EXPR:
+                return visitor.visitTableArgExpr((TableArgExpr) node);
+            case LITERAL:
+                return visitor.visitLiteral((Literal) node);
+            case TABLE_IDENTIFIER:
+                return visitor.visitTableIdentifier((TableIdentifier) node);
+            case SAMPLE_CLAUSE:
+                return visitor.visitSampleClause((SampleClause) node);
+            case RATIO_EXPR:
+                return visitor.visitRatioExpr((RatioExpr) node);
+            case NUMBER_LITERAL:
+                return visitor.visitNumberLiteral((NumberLiteral) node);
+            case JOIN_CONSTRAINT_CLAUSE:
+                return visitor.visitJoinConstraintClause((JoinConstraintClause) node);
+            case ARRAY_JOIN_CLAUSE:
+                return visitor.visitArrayJoinClause((ArrayJoinClause) node);
+            case PREWHERE_CLAUSE:
+                return visitor.visitPrewhereClause((PrewhereClause) node);
+            case WHERE_CLAUSE:
+                return visitor.visitWhereClause((WhereClause) node);
+            case GROUP_BY_CLAUSE:
+                return visitor.visitGroupByClause((GroupByClause) node);
+            case HAVING_CLAUSE:
+                return visitor.visitHavingClause((HavingClause) node);
+            case ORDER_BY_CLAUSE:
+                return visitor.visitOrderByClause((OrderByClause) node);
+            case ORDER_EXPR:
+                return visitor.visitOrderExpr((OrderExpr) node);
+            case STRING_LITERAL:
+                return visitor.visitStringLiteral((StringLiteral) node);
+            case LIMIT_BY_CLAUSE:
+                return visitor.visitLimitByClause((LimitByClause) node);
+            case LIMIT_EXPR:
+                return visitor.visitLimitExpr((LimitExpr) node);
+            case LIMIT_CLAUSE:
+                return visitor.visitLimitClause((LimitClause) node);
+            case SETTINGS_CLAUSE:
+                return visitor.visitSettingsClause((SettingsClause) node);
+            case SETTING_EXPR:
+                return visitor.visitSettingExpr((SettingExpr) node);
+            case SELECT_COLUMN_EXPR_LIST:
+                return visitor.visitSelectColumnExprList((List) node);
+            case COLUMN_EXPR_LIST:
+                return visitor.visitColumnExprList((List) node);
+            case ASTERISK_COLUMN_EXPR:
+                return visitor.visitAsteriskColumnExpr((AsteriskColumnExpr) node);
+            case COLUMN_EXPR:
+                return visitor.visitColumnExpr((ColumnExpr) node);
+            case LITERAL_COLUMN_EXPR:
+                return visitor.visitLiteralColumnExpr((ColumnExpr) node);
+            case IDENTIFIER_COLUMN_EXPR:
+                return visitor.visitIdentifierColumnExpr((ColumnExpr) node);
+            case ALIAS_COLUMN_EXPR:
+                return visitor.visitAliasColumnExpr((AliasColumnExpr) node);
+            case FUNCTION_COLUMN_EXPR:
+                return visitor.visitFunctionColumnExpr((ColumnExpr) node);
+            case SUBQUERY_COLUMN_EXPR:
+                return visitor.visitSubqueryColumnExpr((ColumnExpr) node);
+            default:
+                throw new IllegalStateException(name());
+        }
+    }
+}
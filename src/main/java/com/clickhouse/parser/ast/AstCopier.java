@@ -0,0 +1,110 @@
+package com.clickhouse.parser.ast;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Deep copy of an AST. Nodes are cloned field by field and their lists copied into new ArrayLists, while strings,
+ * enums and other immutable values are shared. A node referred to twice in the tree is copied once, so the copy has
+ * the same shape as the original.
+ */
+public class AstCopier {
+
+    /**
+     * Fields of each node class holding something that has to be copied.
+     */
+    private static final ClassValue<Field[]> COPIED_FIELDS = new ClassValue<Field[]>() {
+        @Override
+        protected Field[] computeValue(Class<?> type) {
+            List<Field> fields = new ArrayList<>();
+            for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers()) && !isImmutable(field.getType())) {
+                        field.setAccessible(true);
+                        fields.add(field);
+                    }
+                }
+            }
+            return fields.toArray(new Field[0]);
+        }
+    };
+
+    private final IdentityHashMap<Object, Object> copies = new IdentityHashMap<>();
+
+    public static <T> T copy(T ast) {
+        return new AstCopier().copyOf(ast);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T copyOf(T ast) {
+        return (T) copyValue(ast);
+    }
+
+    /**
+     * @return number of nodes, lists and arrays copied so far
+     */
+    public int getCopiedCount() {
+        return copies.size();
+    }
+
+    private Object copyValue(Object value) {
+        if (null == value || isImmutable(value.getClass()) || value instanceof Enum) {
+            return value;
+        }
+        Object copy = copies.get(value);
+        if (null != copy) {
+            return copy;
+        }
+        if (value instanceof INode) {
+            INode node = (INode) value;
+            INode nodeCopy = node.shallowCopy();
+            copies.put(value, nodeCopy);
+            try {
+                for (Field field : COPIED_FIELDS.get(node.getClass())) {
+                    Object fieldValue = field.get(node);
+                    if (null != fieldValue) {
+                        field.set(nodeCopy, copyValue(fieldValue));
+                    }
+                }
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+            return nodeCopy;
+        }
+        if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            List<Object> listCopy = new ArrayList<>(list.size());
+            copies.put(value, listCopy);
+            for (Object element : list) {
+                listCopy.add(copyValue(element));
+            }
+            return listCopy;
+        }
+        if (value instanceof CharBuffer) {
+            // read-only views, only the position is per copy
+            copy = ((CharBuffer) value).duplicate();
+        } else if (value instanceof BitSet) {
+            copy = ((BitSet) value).clone();
+        } else if (value instanceof long[]) {
+            copy = ((long[]) value).clone();
+        } else if (value instanceof int[]) {
+            copy = ((int[]) value).clone();
+        } else if (value instanceof CharSequence) {
+            copy = value.toString();
+        } else {
+            throw new IllegalArgumentException("Can not copy " + value.getClass().getName());
+        }
+        copies.put(value, copy);
+        return copy;
+    }
+
+    private static boolean isImmutable(Class<?> type) {
+        return type.isPrimitive() || type.isEnum() || type == String.class || type == Integer.class
+                || type == Long.class || type == Boolean.class || type == Class.class;
+    }
+}
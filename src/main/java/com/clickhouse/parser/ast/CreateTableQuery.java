@@ -1,5 +1,6 @@
 package com.clickhouse.parser.ast;
 
+import com.clickhouse.parser.AstVisitor;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 
@@ -44,4 +45,8 @@ public class CreateTableQuery extends DDLQuery {
         this.query = query;
     }
 
+    @Override
+    public <T> T accept(AstVisitor<T> astVisitor) {
+        return astVisitor.visitCreateTableQuery(this);
+    }
 }
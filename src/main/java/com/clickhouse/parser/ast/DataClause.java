@@ -3,6 +3,7 @@ package com.clickhouse.parser.ast;
 import com.clickhouse.parser.AstVisitor;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
+import lombok.ToString;
 
 @Data
 @EqualsAndHashCode(callSuper = true)
@@ -27,6 +28,14 @@ public class DataClause extends INode {
 
     private SelectUnionQuery selectUnionQuery;
 
+    /**
+     * Payload of VALUES and FORMAT from the offset to the end of the statement, a view of the statement that is
+     * neither copied nor parsed. Not part of equals.
+     */
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private CharSequence data;
+
     public DataClause(ClauseType type) {
         this.clauseType = type;
     }
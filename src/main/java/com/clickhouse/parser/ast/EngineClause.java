@@ -31,7 +31,6 @@ public class EngineClause extends INode {
 
     @Override
     public <T> T accept(AstVisitor<T> astVisitor) {
-        // TODO:
-        return super.accept(astVisitor);
+        return astVisitor.visitEngineClause(this);
     }
 }
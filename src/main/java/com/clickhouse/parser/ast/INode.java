@@ -1,14 +1,49 @@
 package com.clickhouse.parser.ast;
 
 import com.clickhouse.parser.AstVisitor;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Setter;
+import lombok.ToString;
 
 @Data
-public class INode {
+public class INode implements Cloneable {
+
+    /**
+     * Cached NodeKind of the class, looked up on first use. Not part of equals.
+     */
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private NodeKind kind;
 
     public INode() {
     }
 
+    /**
+     * Kind of the node class, see {@link NodeKind}.
+     */
+    public NodeKind getKind() {
+        NodeKind nodeKind = kind;
+        if (null == nodeKind) {
+            nodeKind = NodeKind.of(getClass());
+            kind = nodeKind;
+        }
+        return nodeKind;
+    }
+
+    /**
+     * Copy of the node sharing its fields, see {@link AstCopier}.
+     */
+    INode shallowCopy() {
+        try {
+            return (INode) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     public <T> T accept(AstVisitor<T> astVisitor) {
         // override this method in subclass
         return null;
@@ -0,0 +1,143 @@
+package com.clickhouse.parser.ast;
+
+import com.clickhouse.parser.ast.expr.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Kind of a node class, so that hot paths can dispatch with a switch instead of a long instanceof chain.
+ * A class which is not listed gets the kind of its nearest listed superclass, or OTHER.
+ * Constants are only appended, the ordinal of a kind never changes.
+ */
+public enum NodeKind {
+
+    OTHER(null),
+
+    // queries
+    SELECT_UNION_QUERY(SelectUnionQuery.class),
+    SELECT_STATEMENT(SelectStatement.class),
+    INSERT_QUERY(InsertQuery.class),
+    DATA_CLAUSE(DataClause.class),
+    ALTER_TABLE_QUERY(AlterTableQuery.class),
+    CREATE_TABLE_QUERY(CreateTableQuery.class),
+
+    // clauses
+    WITH_CLAUSE(WithClause.class),
+    FROM_CLAUSE(FromClause.class),
+    ARRAY_JOIN_CLAUSE(ArrayJoinClause.class),
+    PREWHERE_CLAUSE(PrewhereClause.class),
+    WHERE_CLAUSE(WhereClause.class),
+    GROUP_BY_CLAUSE(GroupByClause.class),
+    HAVING_CLAUSE(HavingClause.class),
+    ORDER_BY_CLAUSE(OrderByClause.class),
+    LIMIT_BY_CLAUSE(LimitByClause.class),
+    LIMIT_CLAUSE(LimitClause.class),
+    SETTINGS_CLAUSE(SettingsClause.class),
+    SAMPLE_CLAUSE(SampleClause.class),
+    JOIN_CONSTRAINT_CLAUSE(JoinConstraintClause.class),
+    PARTITION_CLAUSE(PartitionClause.class),
+    TTL_CLAUSE(TTLClause.class),
+    ENGINE_CLAUSE(EngineClause.class),
+    TABLE_SCHEMA_CLAUSE(TableSchemaClause.class),
+
+    // identifiers and literals
+    IDENTIFIER(Identifier.class),
+    DATABASE_IDENTIFIER(DatabaseIdentifier.class),
+    TABLE_IDENTIFIER(TableIdentifier.class),
+    COLUMN_IDENTIFIER(ColumnIdentifier.class),
+    LITERAL(Literal.class),
+    NUMBER_LITERAL(NumberLiteral.class),
+    STRING_LITERAL(StringLiteral.class),
+    ENUM_VALUE(EnumValue.class),
+
+    // column expressions
+    ALIAS_COLUMN_EXPR(AliasColumnExpr.class),
+    ASTERISK_COLUMN_EXPR(AsteriskColumnExpr.class),
+    FUNCTION_COLUMN_EXPR(FunctionColumnExpr.class),
+    IDENTIFIER_COLUMN_EXPR(IdentifierColumnExpr.class),
+    LAMBDA_COLUMN_EXPR(LambdaColumnExpr.class),
+    LITERAL_COLUMN_EXPR(LiteralColumnExpr.class),
+    SUBQUERY_COLUMN_EXPR(SubqueryColumnExpr.class),
+
+    // other expressions
+    JOIN_EXPR(JoinExpr.class),
+    TABLE_EXPR(TableExpr.class),
+    TABLE_FUNCTION_EXPR(TableFunctionExpr.class),
+    TABLE_ARG_EXPR(TableArgExpr.class),
+    RATIO_EXPR(RatioExpr.class),
+    ORDER_EXPR(OrderExpr.class),
+    LIMIT_EXPR(LimitExpr.class),
+    SETTING_EXPR(SettingExpr.class),
+    ASSIGNMENT_EXPR(AssignmentExpr.class),
+    TTL_EXPR(TTLExpr.class),
+    CODEC_EXPR(CodecExpr.class),
+    CODEC_ARG_EXPR(CodecArgExpr.class),
+    ENGINE_EXPR(EngineExpr.class),
+    TABLE_ELEMENT_EXPR(TableElementExpr.class),
+    TABLE_COLUMN_PROPERTY_EXPR(TableColumnPropertyExpr.class),
+    COLUMN_TYPE_EXPR(ColumnTypeExpr.class),
+
+    // alter table clauses
+    ADD_COLUMN_ALTER_TABLE_CLAUSE(AddColumnAlterTableClause.class),
+    ADD_INDEX_ALTER_TABLE_CLAUSE(AddIndexAlterTableClause.class),
+    ATTACH_ALTER_TABLE_CLAUSE(AttachAlterTableClause.class),
+    CLEAR_ALTER_TABLE_CLAUSE(ClearAlterTableClause.class),
+    CODEC_ALTER_TABLE_CLAUSE(CodecAlterTableClause.class),
+    COMMENT_ALTER_TABLE_CLAUSE(CommentAlterTableClause.class),
+    DELETE_ALTER_TABLE_CLAUSE(DeleteAlterTableClause.class),
+    DETACH_ALTER_TABLE_CLAUSE(DetachAlterTableClause.class),
+    DROP_COLUMN_ALTER_TABLE_CLAUSE(DropColumnAlterTableClause.class),
+    DROP_INDEX_ALTER_TABLE_CLAUSE(DropIndexAlterTableClause.class),
+    DROP_PARTITION_ALTER_TABLE_CLAUSE(DropPartitionAlterTableClause.class),
+    FREEZE_PARTITION_ALTER_TABLE_CLAUSE(FreezePartitionAlterTableClause.class),
+    MODIFY_ALTER_TABLE_CLAUSE(ModifyAlterTableClause.class),
+    MOVE_PARTITION_TO_DISK_ALTER_TABLE_CLAUSE(MovePartitionToDiskAlterTableClause.class),
+    MOVE_PARTITION_TO_TABLE_ALTER_TABLE_CLAUSE(MovePartitionToTableAlterTableClause.class),
+    MOVE_PARTITION_TO_VOLUME_ALTER_TABLE_CLAUSE(MovePartitionToVolumeAlterTableClause.class),
+    ORDER_BY_ALTER_TABLE_CLAUSE(OrderByAlterTableClause.class),
+    REMOVE_ALTER_TABLE_CLAUSE(RemoveAlterTableClause.class),
+    REMOVE_TTL_ALTER_TABLE_CLAUSE(RemoveTTLAlterTableClause.class),
+    RENAME_ALTER_TABLE_CLAUSE(RenameAlterTableClause.class),
+    REPLACE_ALTER_TABLE_CLAUSE(ReplaceAlterTableClause.class),
+    TTL_ALTER_TABLE_CLAUSE(TTLAlterTableClause.class),
+    UPDATE_ALTER_TABLE_CLAUSE(UpdateAlterTableClause.class),
+    ;
+
+    private static final Map<Class<?>, NodeKind> BY_CLASS = new HashMap<>();
+
+    static {
+        for (NodeKind kind : values()) {
+            if (null != kind.nodeClass) {
+                BY_CLASS.put(kind.nodeClass, kind);
+            }
+        }
+    }
+
+    private static final ClassValue<NodeKind> KINDS = new ClassValue<NodeKind>() {
+        @Override
+        protected NodeKind computeValue(Class<?> type) {
+            for (Class<?> c = type; null != c; c = c.getSuperclass()) {
+                NodeKind kind = BY_CLASS.get(c);
+                if (null != kind) {
+                    return kind;
+                }
+            }
+            return OTHER;
+        }
+    };
+
+    private final Class<? extends INode> nodeClass;
+
+    NodeKind(Class<? extends INode> nodeClass) {
+        this.nodeClass = nodeClass;
+    }
+
+    public Class<? extends INode> getNodeClass() {
+        return nodeClass;
+    }
+
+    public static NodeKind of(Class<?> nodeClass) {
+        return KINDS.get(nodeClass);
+    }
+}
@@ -55,7 +55,6 @@ public class TableSchemaClause extends INode {
 
     @Override
     public <T> T accept(AstVisitor<T> astVisitor) {
-        // TODO:
-        return super.accept(astVisitor);
+        return astVisitor.visitTableSchemaClause(this);
     }
 }
@@ -23,7 +23,6 @@ public class EngineExpr extends INode {
 
     @Override
     public <T> T accept(AstVisitor<T> astVisitor) {
-        // TODO:
-        return super.accept(astVisitor);
+        return astVisitor.visitEngineExpr(this);
     }
 }
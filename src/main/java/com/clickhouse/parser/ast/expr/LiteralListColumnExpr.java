@@ -0,0 +1,266 @@
+package com.clickhouse.parser.ast.expr;
+
+import com.clickhouse.parser.ast.Identifier;
+import com.clickhouse.parser.ast.Literal;
+import com.clickhouse.parser.ast.NumberLiteral;
+import com.clickhouse.parser.ast.StringLiteral;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * A tuple or array of number literals or of string literals, e.g. the values of a long IN list, kept in one long[]
+ * or in one String instead of three objects per element. Only built by an AstParser with compactLiteralLists set.
+ * The first {@link #getArgs()} turns it into an ordinary list of LiteralColumnExprs, which may be modified like the
+ * arguments of any function; callers which only read the arguments use {@link #readArgs(FunctionColumnExpr)} to keep
+ * the list compact. So do the default AstVisitor methods and AstWalker: the literals they visit are created for the
+ * visit, and a visitor that modifies them calls getArgs first. The node equals the FunctionColumnExpr it replaces.
+ */
+public class LiteralListColumnExpr extends FunctionColumnExpr {
+
+    /**
+     * Shorter lists stay ordinary function nodes.
+     */
+    public static final int MIN_SIZE = 16;
+
+    private final int size;
+
+    private final boolean strings;
+
+    /**
+     * Values of the numbers if they are all decimal integers written the way Long.toString writes them.
+     */
+    private long[] values;
+
+    /**
+     * Tokens of the literals one after another otherwise, token i ends at ends[i].
+     */
+    private String tokens;
+
+    private int[] ends;
+
+    private BitSet negative;
+
+    /**
+     * The literals once materialized by {@link #getArgs()}, null while the list is compact.
+     */
+    private List<ColumnExpr> args;
+
+    /**
+     * Hash of the literals, computed once while the list is compact.
+     */
+    private int elementsHash;
+
+    private LiteralListColumnExpr(Identifier name, int size, boolean strings, long[] values, String tokens, int[] ends,
+                                  BitSet negative) {
+        super(name, null, null);
+        this.size = size;
+        this.strings = strings;
+        this.values = values;
+        this.tokens = tokens;
+        this.ends = ends;
+        this.negative = negative;
+    }
+
+    /**
+     * @return null unless name is tuple or array and the args are at least {@link #MIN_SIZE} number literals or
+     * string literals
+     */
+    public static LiteralListColumnExpr of(Identifier name, List<ColumnExpr> args) {
+        if (null == args || args.size() < MIN_SIZE
+                || !("tuple".equals(name.getName()) || "array".equals(name.getName()))) {
+            return null;
+        }
+        int size = args.size();
+        boolean strings = false;
+        boolean integers = true;
+        int length = 0;
+        for (int i = 0; i < size; i++) {
+            ColumnExpr arg = args.get(i);
+            if (!(arg instanceof LiteralColumnExpr) || arg.isExpectSingleColumn()) {
+                return null;
+            }
+            Literal literal = ((LiteralColumnExpr) arg).getLiteral();
+            boolean string = literal.getClass() == StringLiteral.class;
+            if (!string && literal.getClass() != NumberLiteral.class) {
+                return null;
+            }
+            if (i == 0) {
+                strings = string;
+            } else if (string != strings) {
+                return null;
+            }
+            if (!string && integers) {
+                integers = isPlainInteger((NumberLiteral) literal);
+            }
+            length += literal.asString().length();
+        }
+        if (!strings && integers) {
+            long[] values = new long[size];
+            for (int i = 0; i < size; i++) {
+                NumberLiteral literal = (NumberLiteral) ((LiteralColumnExpr) args.get(i)).getLiteral();
+                long value = Long.parseLong(literal.asString());
+                values[i] = literal.isNegative() ? -value : value;
+            }
+            return new LiteralListColumnExpr(name, size, false, values, null, null, null);
+        }
+        StringBuilder tokens = new StringBuilder(length);
+        int[] ends = new int[size];
+        BitSet negative = new BitSet();
+        for (int i = 0; i < size; i++) {
+            Literal literal = ((LiteralColumnExpr) args.get(i)).getLiteral();
+            tokens.append(literal.asString());
+            ends[i] = tokens.length();
+            if (!strings && ((NumberLiteral) literal).isNegative()) {
+                negative.set(i);
+            }
+        }
+        return new LiteralListColumnExpr(name, size, strings, null, tokens.toString(), ends, negative);
+    }
+
+    /**
+     * A decimal integer which survives a round trip through a long, e.g. not 007 or -0.
+     */
+    private static boolean isPlainInteger(NumberLiteral literal) {
+        String token = literal.asString();
+        // 18 digits always fit
+        if (token.isEmpty() || token.length() > 18 || (token.charAt(0) == '0' && token.length() > 1)
+                || (literal.isNegative() && "0".equals(token))) {
+            return false;
+        }
+        for (int i = 0; i < token.length(); i++) {
+            if (token.charAt(i) < '0' || token.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The arguments of expr for a caller which only reads them right away: those of a compact list are created on
+     * each get and the list stays compact.
+     */
+    public static List<ColumnExpr> readArgs(FunctionColumnExpr expr) {
+        if (expr instanceof LiteralListColumnExpr && ((LiteralListColumnExpr) expr).isCompact()) {
+            return ((LiteralListColumnExpr) expr).new Elements();
+        }
+        return expr.getArgs();
+    }
+
+    /**
+     * @return false once {@link #getArgs()} materialized the literals, {@link #size()}, {@link #isStrings()},
+     * {@link #getLiteral(int)} and {@link #sameValues(LiteralListColumnExpr)} are only valid before
+     */
+    public boolean isCompact() {
+        return null == args;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isStrings() {
+        return strings;
+    }
+
+    public Literal getLiteral(int index) {
+        if (null != values) {
+            long value = values[index];
+            NumberLiteral literal = new NumberLiteral(Long.toString(Math.abs(value)));
+            if (value < 0) {
+                literal.makeNegative();
+            }
+            return literal;
+        }
+        String token = tokens.substring(index == 0 ? 0 : ends[index - 1], ends[index]);
+        if (strings) {
+            return new StringLiteral(token);
+        }
+        NumberLiteral literal = new NumberLiteral(token);
+        if (negative.get(index)) {
+            literal.makeNegative();
+        }
+        return literal;
+    }
+
+    @Override
+    public List<ColumnExpr> getArgs() {
+        if (null == args) {
+            List<ColumnExpr> literals = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                literals.add(ColumnExpr.createLiteral(getLiteral(i)));
+            }
+            args = literals;
+            values = null;
+            tokens = null;
+            ends = null;
+            negative = null;
+        }
+        return args;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!isCompact()) {
+            return super.equals(o);
+        }
+        if (o instanceof LiteralListColumnExpr && ((LiteralListColumnExpr) o).isCompact()) {
+            LiteralListColumnExpr other = (LiteralListColumnExpr) o;
+            return isExpectSingleColumn() == other.isExpectSingleColumn() && getName().equals(other.getName())
+                    && sameValues(other);
+        }
+        return plain().equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return isCompact() ? plain().hashCode() : super.hashCode();
+    }
+
+    /**
+     * A FunctionColumnExpr over the literals created on demand, which leaves this list compact.
+     */
+    private FunctionColumnExpr plain() {
+        FunctionColumnExpr plain = new FunctionColumnExpr(getName(), getParams(), new Elements());
+        plain.setExpectSingleColumn(isExpectSingleColumn());
+        return plain;
+    }
+
+    /**
+     * Whether both compact lists hold the same literals, without creating them.
+     */
+    public boolean sameValues(LiteralListColumnExpr other) {
+        return size == other.size && strings == other.strings && Arrays.equals(values, other.values)
+                && Objects.equals(tokens, other.tokens) && Arrays.equals(ends, other.ends)
+                && Objects.equals(negative, other.negative);
+    }
+
+    private class Elements extends AbstractList<ColumnExpr> implements RandomAccess {
+
+        @Override
+        public ColumnExpr get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return ColumnExpr.createLiteral(getLiteral(index));
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public int hashCode() {
+            if (0 == elementsHash) {
+                elementsHash = super.hashCode();
+            }
+            return elementsHash;
+        }
+    }
+}
@@ -1,68 +1,80 @@
 package com.clickhouse.util;
 
-import lombok.extern.slf4j.Slf4j;
-
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.Date;
-import java.util.GregorianCalendar;
-import java.util.TimeZone;
 
-@Slf4j
+/**
+ * Dates as epoch days (days since 1970-01-01) and date times as epoch seconds. yyyy-MM-dd and
+ * yyyy-MM-dd HH:mm:ss are parsed by hand without creating Date or Calendar objects; the time zone used for date
+ * times and for today() is Asia/Shanghai unless changed with {@link #setZoneId(ZoneId)}.
+ * Nothing is kept per thread, all the methods are safe to call from any thread.
+ */
 public class DateUtil {
 
-    public static final ThreadLocal<SimpleDateFormat> dateFormat = new ThreadLocal() {
-        @Override
-        protected SimpleDateFormat initialValue() {
-            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
-            dateFormat.setTimeZone(TimeZone.getTimeZone("Asia/Shanghai"));
-            return dateFormat;
-        }
-    };
+    /**
+     * Returned by the primitive parsers when the text is not a date.
+     */
+    public static final int INVALID_EPOCH_DAY = Integer.MIN_VALUE;
 
-    public static final ThreadLocal<SimpleDateFormat> datetimeFormat = new ThreadLocal() {
-        @Override
-        protected SimpleDateFormat initialValue() {
-            SimpleDateFormat datetimeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-            datetimeFormat.setTimeZone(TimeZone.getTimeZone("Asia/Shanghai"));
-            return datetimeFormat;
-        }
-    };
+    public static final long INVALID_EPOCH_SECOND = Long.MIN_VALUE;
+
+    public static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    public static final DateTimeFormatter DATETIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final int SECONDS_PER_DAY = 86400;
+
+    private static final int DAYS_0000_TO_1970 = (146097 * 5) - (30 * 365 + 7);
+
+    private static volatile ZoneId zoneId = ZoneId.of("Asia/Shanghai");
+
+    public static ZoneId getZoneId() {
+        return zoneId;
+    }
+
+    public static void setZoneId(ZoneId zoneId) {
+        DateUtil.zoneId = zoneId;
+    }
 
     public static String formatDate(Date date) {
-        return dateFormat.get().format(date);
+        return formatEpochDay(epochDayOfEpochSecond(Math.floorDiv(date.getTime(), 1000L)));
     }
 
     public static String formatDatetime(Date date) {
-        return datetimeFormat.get().format(date);
+        return formatEpochSecond(Math.floorDiv(date.getTime(), 1000L));
     }
 
     public static Date parseDate(String str) {
-        try {
-            return dateFormat.get().parse(str);
-        } catch (ParseException e) {
-            log.error("", e);
+        int epochDay = parseEpochDay(str);
+        if (epochDay == INVALID_EPOCH_DAY) {
             return null;
         }
+        return Date.from(LocalDate.ofEpochDay(epochDay).atStartOfDay(zoneId).toInstant());
     }
 
     public static Date parseDatetime(String str) {
-        try {
-            return datetimeFormat.get().parse(str);
-        } catch (ParseException e) {
-            log.error("", e);
+        long epochSecond = parseEpochSecond(str);
+        if (epochSecond == INVALID_EPOCH_SECOND) {
             return null;
         }
+        return new Date(epochSecond * 1000L);
     }
 
-
     public static String yesterday() {
-        return lastDay(today());
+        return formatEpochDay(todayEpochDay() - 1);
     }
 
     public static String today() {
-        return dateFormat.get().format(new Date());
+        return formatEpochDay(todayEpochDay());
+    }
+
+    public static int todayEpochDay() {
+        return (int) LocalDate.now(zoneId).toEpochDay();
     }
 
     public static String lastDay(String dateStr) {
@@ -73,18 +85,212 @@ public class DateUtil {
         return addDays(dateStr, 1);
     }
 
+    /**
+     * @return null if dateStr is not a date
+     */
     public static String addDays(String dateStr, int offset) {
-        try {
-            Date date = dateFormat.get().parse(dateStr);
-            Calendar calendar = new GregorianCalendar();
-            calendar.setTime(date);
-            calendar.add(Calendar.DATE, offset);
-            String lastDayStr = dateFormat.get().format(calendar.getTime());
-            return lastDayStr;
-        } catch (Exception e) {
-            log.error("", e);
-        }
-        return null;
+        int epochDay = parseEpochDay(dateStr);
+        if (epochDay == INVALID_EPOCH_DAY) {
+            return null;
+        }
+        return formatEpochDay(epochDay + offset);
+    }
+
+    /**
+     * Days since 1970-01-01 of a yyyy-MM-dd date, null if the string is not a date.
+     */
+    public static Integer toEpochDay(String str) {
+        int epochDay = parseEpochDay(str);
+        return epochDay == INVALID_EPOCH_DAY ? null : epochDay;
+    }
+
+    /**
+     * Parse yyyy-MM-dd, month and day may have one digit and anything after a space or 'T' (e.g. a time) is ignored.
+     *
+     * @return the epoch day or {@link #INVALID_EPOCH_DAY}
+     */
+    public static int parseEpochDay(CharSequence str) {
+        if (null == str) {
+            return INVALID_EPOCH_DAY;
+        }
+        int length = str.length();
+        int pos = 0;
+        int year = 0;
+        int digits = 0;
+        for (; pos < length && digits < 4; pos++, digits++) {
+            int digit = str.charAt(pos) - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            year = year * 10 + digit;
+        }
+        if (digits != 4 || pos == length || str.charAt(pos++) != '-') {
+            return INVALID_EPOCH_DAY;
+        }
+        int month = 0;
+        for (digits = 0; pos < length && digits < 2; pos++, digits++) {
+            int digit = str.charAt(pos) - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            month = month * 10 + digit;
+        }
+        if (digits == 0 || pos == length || str.charAt(pos++) != '-') {
+            return INVALID_EPOCH_DAY;
+        }
+        int day = 0;
+        for (digits = 0; pos < length && digits < 2; pos++, digits++) {
+            int digit = str.charAt(pos) - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            day = day * 10 + digit;
+        }
+        if (digits == 0 || (pos < length && str.charAt(pos) != ' ' && str.charAt(pos) != 'T')) {
+            return INVALID_EPOCH_DAY;
+        }
+        if (month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+            return INVALID_EPOCH_DAY;
+        }
+        return toEpochDay(year, month, day);
+    }
+
+    /**
+     * Parse yyyy-MM-dd HH:mm:ss in the configured time zone, a date alone is its start of day.
+     *
+     * @return the epoch second or {@link #INVALID_EPOCH_SECOND}
+     */
+    public static long parseEpochSecond(CharSequence str) {
+        int epochDay = parseEpochDay(str);
+        if (epochDay == INVALID_EPOCH_DAY) {
+            return INVALID_EPOCH_SECOND;
+        }
+        int length = str.length();
+        int pos = indexOfTime(str);
+        int secondOfDay = 0;
+        if (pos < length) {
+            if (length - pos != 8 || str.charAt(pos + 2) != ':' || str.charAt(pos + 5) != ':') {
+                return INVALID_EPOCH_SECOND;
+            }
+            int hour = twoDigits(str, pos);
+            int minute = twoDigits(str, pos + 3);
+            int second = twoDigits(str, pos + 6);
+            if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+                return INVALID_EPOCH_SECOND;
+            }
+            secondOfDay = hour * 3600 + minute * 60 + second;
+        }
+        long localSecond = (long) epochDay * SECONDS_PER_DAY + secondOfDay;
+        return localSecond - offsetSeconds(localSecond);
+    }
+
+    public static String formatEpochDay(int epochDay) {
+        return appendEpochDay(new StringBuilder(10), epochDay).toString();
+    }
+
+    public static StringBuilder appendEpochDay(StringBuilder builder, int epochDay) {
+        long zeroDay = (long) epochDay + DAYS_0000_TO_1970 - 60;
+        long adjust = 0;
+        if (zeroDay < 0) {
+            long adjustCycles = (zeroDay + 1) / 146097 - 1;
+            adjust = adjustCycles * 400;
+            zeroDay += -adjustCycles * 146097;
+        }
+        long yearEst = (400 * zeroDay + 591) / 146097;
+        long doyEst = zeroDay - (365 * yearEst + yearEst / 4 - yearEst / 100 + yearEst / 400);
+        if (doyEst < 0) {
+            yearEst--;
+            doyEst = zeroDay - (365 * yearEst + yearEst / 4 - yearEst / 100 + yearEst / 400);
+        }
+        yearEst += adjust;
+        int marchDoy0 = (int) doyEst;
+        int marchMonth0 = (marchDoy0 * 5 + 2) / 153;
+        int month = (marchMonth0 + 2) % 12 + 1;
+        int day = marchDoy0 - (marchMonth0 * 306 + 5) / 10 + 1;
+        int year = (int) (yearEst + marchMonth0 / 10);
+        if (year < 0 || year > 9999) {
+            return builder.append(LocalDate.ofEpochDay(epochDay).format(DATE_FORMATTER));
+        }
+        builder.append((char) ('0' + year / 1000)).append((char) ('0' + year / 100 % 10))
+                .append((char) ('0' + year / 10 % 10)).append((char) ('0' + year % 10)).append('-');
+        appendTwoDigits(builder, month).append('-');
+        return appendTwoDigits(builder, day);
+    }
+
+    public static String formatEpochSecond(long epochSecond) {
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), zoneId).format(DATETIME_FORMATTER);
+    }
+
+    /**
+     * The day of an instant in the configured time zone.
+     */
+    public static int epochDayOfEpochSecond(long epochSecond) {
+        ZoneOffset offset = zoneId.getRules().getOffset(Instant.ofEpochSecond(epochSecond));
+        return (int) Math.floorDiv(epochSecond + offset.getTotalSeconds(), SECONDS_PER_DAY);
+    }
+
+    private static int toEpochDay(int year, int month, int day) {
+        long y = year;
+        long total = 365 * y;
+        total += (y + 3) / 4 - (y + 99) / 100 + (y + 399) / 400;
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total--;
+            if (!isLeapYear(year)) {
+                total--;
+            }
+        }
+        return (int) (total - DAYS_0000_TO_1970);
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return isLeapYear(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static int offsetSeconds(long localSecond) {
+        if (zoneId instanceof ZoneOffset) {
+            return ((ZoneOffset) zoneId).getTotalSeconds();
+        }
+        return zoneId.getRules().getOffset(LocalDateTime.ofEpochSecond(localSecond, 0, ZoneOffset.UTC)).getTotalSeconds();
+    }
+
+    private static int indexOfTime(CharSequence str) {
+        int length = str.length();
+        for (int i = 0; i < length; i++) {
+            char c = str.charAt(i);
+            if (c == ' ' || c == 'T') {
+                return i + 1;
+            }
+        }
+        return length;
+    }
+
+    private static int twoDigits(CharSequence str, int pos) {
+        int high = str.charAt(pos) - '0';
+        int low = str.charAt(pos + 1) - '0';
+        if (high < 0 || high > 9 || low < 0 || low > 9) {
+            return -1;
+        }
+        return high * 10 + low;
+    }
+
+    private static StringBuilder appendTwoDigits(StringBuilder builder, int value) {
+        return builder.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
     }
 
 }
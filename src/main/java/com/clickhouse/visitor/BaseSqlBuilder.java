@@ -514,25 +514,25 @@ public class BaseSqlBuilder extends AstVisitor<String> {
 
     @Override
     public String visitColumnExpr(ColumnExpr expr) {
-        if (expr instanceof AsteriskColumnExpr) {
-            return visitAsteriskColumnExpr((AsteriskColumnExpr) expr);
-        }
-        if (expr instanceof AliasColumnExpr) {
-            return visitAliasColumnExpr((AliasColumnExpr) expr);
-        }
-        if (expr instanceof FunctionColumnExpr) {
-            return visitFunctionColumnExpr(expr);
-        }
-        if (expr instanceof SubqueryColumnExpr) {
-            return visitSubqueryColumnExpr(expr);
-        }
-        if (expr instanceof IdentifierColumnExpr) {
-            return visitIdentifierColumnExpr(expr);
+        if (null == expr || null == expr.getExprType()) {
+            return null;
         }
-        if (expr instanceof LiteralColumnExpr) {
-            return visitLiteralColumnExpr(expr);
+        switch (expr.getExprType()) {
+            case ASTERISK:
+                return visitAsteriskColumnExpr((AsteriskColumnExpr) expr);
+            case ALIAS:
+                return visitAliasColumnExpr((AliasColumnExpr) expr);
+            case FUNCTION:
+                return visitFunctionColumnExpr(expr);
+            case SUBQUERY:
+                return visitSubqueryColumnExpr(expr);
+            case IDENTIFIER:
+                return visitIdentifierColumnExpr(expr);
+            case LITERAL:
+                return visitLiteralColumnExpr(expr);
+            default:
+                return null;
         }
-        return null;
     }
 
     @Override
@@ -571,7 +571,7 @@ public class BaseSqlBuilder extends AstVisitor<String> {
 
     public String visitMinusFunctionColumnExpr(FunctionColumnExpr expr) {
         try {
-            List<ColumnExpr> columnExprs = expr.getArgs();
+            List<ColumnExpr> columnExprs = LiteralListColumnExpr.readArgs(expr);
             String column = visit(columnExprs.get(0));
             ColumnExpr argsExpr = columnExprs.get(1);
             String literal = visit(argsExpr);
@@ -584,7 +584,7 @@ public class BaseSqlBuilder extends AstVisitor<String> {
 
     public String visitPlusFunctionColumnExpr(FunctionColumnExpr expr) {
         try {
-            List<ColumnExpr> columnExprs = expr.getArgs();
+            List<ColumnExpr> columnExprs = LiteralListColumnExpr.readArgs(expr);
             String column = visit(columnExprs.get(0));
             ColumnExpr argsExpr = columnExprs.get(1);
             String literal = visit(argsExpr);
@@ -597,13 +597,13 @@ public class BaseSqlBuilder extends AstVisitor<String> {
 
     public String visitInFunctionColumnExpr(FunctionColumnExpr expr) {
         try {
-            List<ColumnExpr> columnExprs = expr.getArgs();
+            List<ColumnExpr> columnExprs = LiteralListColumnExpr.readArgs(expr);
             String column = visit(columnExprs.get(0));
             ColumnExpr argsExpr = columnExprs.get(1);
             if (argsExpr instanceof FunctionColumnExpr) {
                 FunctionColumnExpr tupleFunctionExpr = (FunctionColumnExpr) argsExpr;
                 // extract the tuple
-                List<ColumnExpr> tupleFunctionExprArgs = tupleFunctionExpr.getArgs();
+                List<ColumnExpr> tupleFunctionExprArgs = LiteralListColumnExpr.readArgs(tupleFunctionExpr);
                 StringBuffer inStatementBuffer = new StringBuffer();
                 inStatementBuffer.append("(" + column + ") IN " + "(");
                 for (int i = 0; i < tupleFunctionExprArgs.size(); i++) {
@@ -630,7 +630,7 @@ public class BaseSqlBuilder extends AstVisitor<String> {
 
     public String visitLikeFunctionColumnExpr(FunctionColumnExpr expr) {
         try {
-            List<ColumnExpr> columnExprs = expr.getArgs();
+            List<ColumnExpr> columnExprs = LiteralListColumnExpr.readArgs(expr);
             String column = visit(columnExprs.get(0));
             ColumnExpr argsExpr = columnExprs.get(1);
             if (argsExpr instanceof LiteralColumnExpr) {
@@ -710,7 +710,7 @@ public class BaseSqlBuilder extends AstVisitor<String> {
                     case "plus":
                         return visitPlusFunctionColumnExpr(functionColumnExpr);
                     default:
-                        if (null != functionColumnExpr.getArgs()) {
+                        if (null != LiteralListColumnExpr.readArgs(functionColumnExpr)) {
                             buffer.append(funcName + "({VALUE})");
                         } else {
                             buffer.append(funcName + "()");
@@ -723,8 +723,9 @@ public class BaseSqlBuilder extends AstVisitor<String> {
                 buffer.append(params);
             }
 
-            if (null != functionColumnExpr.getArgs()) {
-                String args = visitColumnExprList(functionColumnExpr.getArgs());
+            List<ColumnExpr> argExprs = LiteralListColumnExpr.readArgs(functionColumnExpr);
+            if (null != argExprs) {
+                String args = visitColumnExprList(argExprs);
                 String[] fields = args.split("\\{,\\}");
                 if (isCompareOperator && null != fields && fields.length == 2) {
                     String var = fields[0];
@@ -0,0 +1,96 @@
+package com.clickhouse.visitor;
+
+import com.clickhouse.parser.ast.LimitClause;
+import com.clickhouse.parser.ast.Literal;
+import com.clickhouse.parser.ast.NumberLiteral;
+import com.clickhouse.parser.ast.StringLiteral;
+import com.clickhouse.parser.ast.TableIdentifier;
+import com.clickhouse.parser.ast.expr.AliasColumnExpr;
+import com.clickhouse.parser.ast.expr.ColumnExpr;
+import com.clickhouse.parser.ast.expr.FunctionColumnExpr;
+import com.clickhouse.parser.ast.expr.LiteralColumnExpr;
+
+import java.util.Locale;
+
+/**
+ * Render the template of a query: literals become '?', IN lists collapse into a single '?' and column, table and alias
+ * names are lower-cased. Function names are kept as written, ClickHouse resolves most of them case-sensitively.
+ * This is the readable counterpart of QueryFingerprinter.
+ */
+public class NormalizedSqlBuilder extends BaseSqlBuilder {
+
+    @Override
+    public String visitIdentifierColumnExpr(ColumnExpr expr) {
+        return fold(super.visitIdentifierColumnExpr(expr));
+    }
+
+    @Override
+    public String visitTableIdentifier(TableIdentifier tableIdentifier) {
+        return fold(super.visitTableIdentifier(tableIdentifier));
+    }
+
+    @Override
+    public String visitAliasColumnExpr(AliasColumnExpr expr) {
+        StringBuilder buffer = new StringBuilder();
+        if (null != expr.getExpr()) {
+            buffer.append(visitColumnExpr(expr.getExpr()));
+        }
+        if (null != expr.getAlias()) {
+            String alias = fold(visitIdentifier(expr.getAlias()));
+            if (null != alias) {
+                buffer.append(" AS ").append(alias);
+            }
+        }
+        return buffer.toString();
+    }
+
+    @Override
+    public String visitLiteral(Literal literal) {
+        return "?";
+    }
+
+    @Override
+    public String visitNumberLiteral(NumberLiteral numberLiteral) {
+        return "?";
+    }
+
+    @Override
+    public String visitStringLiteral(StringLiteral stringLiteral) {
+        return "?";
+    }
+
+    @Override
+    public String visitLiteralColumnExpr(ColumnExpr expr) {
+        return "?";
+    }
+
+    @Override
+    public String visitLimitClause(LimitClause limitClause) {
+        String limit = super.visitLimitClause(limitClause);
+        return limit.isEmpty() ? limit : "LIMIT ? ";
+    }
+
+    @Override
+    public String visitFunctionColumnExpr(ColumnExpr expr) {
+        if (expr instanceof FunctionColumnExpr && QueryFingerprinter.isInWithLiteralList((FunctionColumnExpr) expr)) {
+            FunctionColumnExpr functionColumnExpr = (FunctionColumnExpr) expr;
+            String column = visit(functionColumnExpr.getArgs().get(0));
+            switch (functionColumnExpr.getName().getName()) {
+                case "notIn":
+                    return "(" + column + ") NOT IN (?) ";
+                case "globalIn":
+                    return "(" + column + ") GLOBAL IN (?) ";
+                case "globalNotIn":
+                    return "(" + column + ") GLOBAL NOT IN (?) ";
+                default:
+                    return "(" + column + ") IN (?) ";
+            }
+        }
+        return super.visitFunctionColumnExpr(expr);
+    }
+
+    private static String fold(String name) {
+        return null == name ? null : name.toLowerCase(Locale.ROOT);
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.clickhouse.visitor;
+
+import lombok.Data;
+
+@Data
+public class QueryFingerprint {
+
+    /**
+     * High and low 64 bits of the 128-bit fingerprint, the low bits alone are the 64-bit fingerprint.
+     */
+    private final long high;
+
+    private final long low;
+
+    /**
+     * Normalized SQL with literals replaced by '?', null if the statement can not be rendered.
+     */
+    private final String template;
+
+    public String toHexString() {
+        return String.format("%016x%016x", high, low);
+    }
+
+}
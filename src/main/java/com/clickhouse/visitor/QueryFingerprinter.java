@@ -0,0 +1,415 @@
+package com.clickhouse.visitor;
+
+import com.clickhouse.parser.AstVisitor;
+import com.clickhouse.parser.ast.*;
+import com.clickhouse.parser.ast.expr.*;
+
+import java.util.List;
+
+/**
+ * Compute the shape of a query: literals are replaced by a placeholder, IN lists of any length collapse into one
+ * placeholder and identifiers are compared case-insensitively. The hash is computed while walking the AST, no
+ * normalized string is built unless the template is asked for.
+ * Instances keep the hash state of the current walk, so they are not thread-safe.
+ */
+public class QueryFingerprinter extends AstVisitor<Object> {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final long SECOND_LANE_SEED = 0x9e3779b97f4a7c15L;
+
+    private static final long SECOND_LANE_PRIME = 0xc2b2ae3d27d4eb4fL;
+
+    /**
+     * Tags of the structural elements. Only append new tags, the ordinal is part of the hash.
+     */
+    private enum Tag {
+        NODE, SELECT_UNION, SELECT, WITH, FROM, ARRAY_JOIN, PREWHERE, WHERE, GROUP_BY, HAVING, ORDER_BY, LIMIT_BY,
+        LIMIT, SETTINGS, SAMPLE, JOIN, JOIN_CONSTRAINT, TABLE, TABLE_FUNCTION, TABLE_IDENTIFIER, ORDER, LIST,
+        LIST_END, ASTERISK, PLACEHOLDER, IN_LIST, IDENTIFIER, ALIAS, FUNCTION, SUBQUERY, LAMBDA, INSERT, DATA,
+        FORMAT,
+    }
+
+    private long first;
+
+    private long second;
+
+    public QueryFingerprinter() {
+    }
+
+    /**
+     * 64-bit fingerprint, this path allocates nothing but the walk itself.
+     */
+    public long fingerprint64(INode ast) {
+        walk(ast);
+        return finish64();
+    }
+
+    /**
+     * 128-bit fingerprint together with the normalized template of SELECT statements.
+     */
+    public QueryFingerprint fingerprint(INode ast) {
+        walk(ast);
+        long low = finish64();
+        long high = mix64(second ^ Long.rotateLeft(first, 32));
+        String template = null;
+        if (ast instanceof SelectUnionQuery) {
+            template = new NormalizedSqlBuilder().build((SelectUnionQuery) ast);
+        }
+        return new QueryFingerprint(high, low, template);
+    }
+
+    private void walk(INode ast) {
+        first = FNV_OFFSET_BASIS;
+        second = SECOND_LANE_SEED;
+        if (null != ast) {
+            visit(ast);
+        }
+    }
+
+    private long finish64() {
+        return mix64(first ^ Long.rotateLeft(second, 17));
+    }
+
+    private static long mix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private void mix(long value) {
+        first = (first ^ value) * FNV_PRIME;
+        second = Long.rotateLeft(second + value * SECOND_LANE_PRIME, 31) * SECOND_LANE_SEED;
+    }
+
+    private void mix(Tag tag) {
+        mix(tag.ordinal() + 1);
+    }
+
+    private void mix(boolean value) {
+        mix(value ? 1 : 2);
+    }
+
+    private void mix(Enum<?> value) {
+        mix(null == value ? 0 : value.ordinal() + 1);
+    }
+
+    private void mixFolded(String name) {
+        if (null == name) {
+            mix(0);
+            return;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            mix(Character.toLowerCase(name.charAt(i)));
+        }
+        mix(name.length());
+    }
+
+    @Override
+    public Object visit(INode astNode) {
+        mix(Tag.NODE);
+        // a compact literal list hashes like the tuple or array it stands for
+        mix((astNode instanceof LiteralListColumnExpr ? FunctionColumnExpr.class : astNode.getClass()).getName()
+                .hashCode());
+        return super.visit(astNode);
+    }
+
+    @Override
+    public Object visitSelectUnionQuery(SelectUnionQuery selectUnionQuery) {
+        mix(Tag.SELECT_UNION);
+        mix(null == selectUnionQuery.getStatements() ? 0 : selectUnionQuery.getStatements().size());
+        super.visitSelectUnionQuery(selectUnionQuery);
+        if (null != selectUnionQuery.getFormat()) {
+            mix(Tag.FORMAT);
+            mixFolded(selectUnionQuery.getFormat());
+        }
+        return null;
+    }
+
+    @Override
+    public Object visitSelectStatement(SelectStatement selectStatement) {
+        mix(Tag.SELECT);
+        mix(selectStatement.isDistinct());
+        mix(selectStatement.isWithTotals());
+        mix(selectStatement.getModifierType());
+        return super.visitSelectStatement(selectStatement);
+    }
+
+    @Override
+    public Object visitWithClause(WithClause withClause) {
+        mix(Tag.WITH);
+        return super.visitWithClause(withClause);
+    }
+
+    @Override
+    public Object visitFromClause(FromClause fromClause) {
+        mix(Tag.FROM);
+        return super.visitFromClause(fromClause);
+    }
+
+    @Override
+    public Object visitArrayJoinClause(ArrayJoinClause arrayJoinClause) {
+        mix(Tag.ARRAY_JOIN);
+        mix(arrayJoinClause.isLeft());
+        return super.visitArrayJoinClause(arrayJoinClause);
+    }
+
+    @Override
+    public Object visitPrewhereClause(PrewhereClause prewhereClause) {
+        mix(Tag.PREWHERE);
+        return super.visitPrewhereClause(prewhereClause);
+    }
+
+    @Override
+    public Object visitWhereClause(WhereClause whereClause) {
+        mix(Tag.WHERE);
+        return super.visitWhereClause(whereClause);
+    }
+
+    @Override
+    public Object visitGroupByClause(GroupByClause groupByClause) {
+        mix(Tag.GROUP_BY);
+        return super.visitGroupByClause(groupByClause);
+    }
+
+    @Override
+    public Object visitHavingClause(HavingClause havingClause) {
+        mix(Tag.HAVING);
+        return super.visitHavingClause(havingClause);
+    }
+
+    @Override
+    public Object visitOrderByClause(OrderByClause orderByClause) {
+        mix(Tag.ORDER_BY);
+        return super.visitOrderByClause(orderByClause);
+    }
+
+    @Override
+    public Object visitOrderExpr(OrderExpr orderExpr) {
+        mix(Tag.ORDER);
+        mix(orderExpr.isAsc());
+        mix(orderExpr.getNulls());
+        return super.visitOrderExpr(orderExpr);
+    }
+
+    @Override
+    public Object visitLimitByClause(LimitByClause limitByClause) {
+        mix(Tag.LIMIT_BY);
+        return super.visitLimitByClause(limitByClause);
+    }
+
+    @Override
+    public Object visitLimitClause(LimitClause limitClause) {
+        mix(Tag.LIMIT);
+        return super.visitLimitClause(limitClause);
+    }
+
+    @Override
+    public Object visitSettingsClause(SettingsClause settingsClause) {
+        mix(Tag.SETTINGS);
+        return super.visitSettingsClause(settingsClause);
+    }
+
+    @Override
+    public Object visitSampleClause(SampleClause sampleClause) {
+        mix(Tag.SAMPLE);
+        return super.visitSampleClause(sampleClause);
+    }
+
+    @Override
+    public Object visitJoinExpr(JoinExpr joinExpr) {
+        mix(Tag.JOIN);
+        mix(joinExpr.getExprType());
+        mix(joinExpr.getOpType());
+        mix(joinExpr.getOpMode());
+        mix(joinExpr.isFinalExpr());
+        return super.visitJoinExpr(joinExpr);
+    }
+
+    @Override
+    public Object visitJoinConstraintClause(JoinConstraintClause joinConstraintClause) {
+        mix(Tag.JOIN_CONSTRAINT);
+        mix(joinConstraintClause.getType());
+        return super.visitJoinConstraintClause(joinConstraintClause);
+    }
+
+    @Override
+    public Object visitTableExpr(TableExpr tableExpr) {
+        mix(Tag.TABLE);
+        return super.visitTableExpr(tableExpr);
+    }
+
+    @Override
+    public Object visitTableFunctionExpr(TableFunctionExpr function) {
+        mix(Tag.TABLE_FUNCTION);
+        return super.visitTableFunctionExpr(function);
+    }
+
+    @Override
+    public Object visitTableIdentifier(TableIdentifier tableIdentifier) {
+        mix(Tag.TABLE_IDENTIFIER);
+        if (null != tableIdentifier.getDatabase()) {
+            visitIdentifier(tableIdentifier.getDatabase());
+        }
+        mixFolded(tableIdentifier.getName());
+        return null;
+    }
+
+    @Override
+    public Object visitIdentifier(Identifier identifier) {
+        mix(Tag.IDENTIFIER);
+        mixFolded(identifier.getQualifiedName());
+        return null;
+    }
+
+    @Override
+    public Object visitLiteral(Literal literal) {
+        mix(Tag.PLACEHOLDER);
+        return null;
+    }
+
+    @Override
+    public Object visitNumberLiteral(NumberLiteral numberLiteral) {
+        mix(Tag.PLACEHOLDER);
+        return null;
+    }
+
+    @Override
+    public Object visitStringLiteral(StringLiteral stringLiteral) {
+        mix(Tag.PLACEHOLDER);
+        return null;
+    }
+
+    @Override
+    public Object visitLiteralColumnExpr(ColumnExpr expr) {
+        mix(Tag.PLACEHOLDER);
+        return null;
+    }
+
+    @Override
+    public Object visitSelectColumnExprList(List<ColumnExpr> exprs) {
+        return visitColumnExprList(exprs);
+    }
+
+    @Override
+    public Object visitColumnExprList(List<ColumnExpr> exprs) {
+        mix(Tag.LIST);
+        super.visitColumnExprList(exprs);
+        mix(Tag.LIST_END);
+        return null;
+    }
+
+    @Override
+    public Object visitColumnExpr(ColumnExpr expr) {
+        if (expr instanceof LambdaColumnExpr) {
+            LambdaColumnExpr lambdaColumnExpr = (LambdaColumnExpr) expr;
+            mix(Tag.LAMBDA);
+            if (null != lambdaColumnExpr.getLambdaArgs()) {
+                for (Identifier arg : lambdaColumnExpr.getLambdaArgs()) {
+                    visitIdentifier(arg);
+                }
+            }
+            if (null != lambdaColumnExpr.getLambdaExpr()) {
+                visitColumnExpr(lambdaColumnExpr.getLambdaExpr());
+            }
+            return null;
+        }
+        return super.visitColumnExpr(expr);
+    }
+
+    @Override
+    public Object visitAsteriskColumnExpr(AsteriskColumnExpr expr) {
+        mix(Tag.ASTERISK);
+        if (null != expr.getTable()) {
+            visitTableIdentifier(expr.getTable());
+        }
+        return null;
+    }
+
+    @Override
+    public Object visitAliasColumnExpr(AliasColumnExpr expr) {
+        mix(Tag.ALIAS);
+        return super.visitAliasColumnExpr(expr);
+    }
+
+    @Override
+    public Object visitFunctionColumnExpr(ColumnExpr expr) {
+        mix(Tag.FUNCTION);
+        FunctionColumnExpr functionColumnExpr = (FunctionColumnExpr) expr;
+        if (isInWithLiteralList(functionColumnExpr)) {
+            visitIdentifier(functionColumnExpr.getName());
+            visitColumnExpr(functionColumnExpr.getArgs().get(0));
+            mix(Tag.IN_LIST);
+            return null;
+        }
+        return super.visitFunctionColumnExpr(expr);
+    }
+
+    @Override
+    public Object visitSubqueryColumnExpr(ColumnExpr expr) {
+        mix(Tag.SUBQUERY);
+        SubqueryColumnExpr subqueryColumnExpr = (SubqueryColumnExpr) expr;
+        if (null != subqueryColumnExpr.getQuery()) {
+            visitSelectUnionQuery(subqueryColumnExpr.getQuery());
+        }
+        return null;
+    }
+
+    @Override
+    public Object visitInsertQuery(InsertQuery insertQuery) {
+        mix(Tag.INSERT);
+        return super.visitInsertQuery(insertQuery);
+    }
+
+    @Override
+    public Object visitDataClause(DataClause dataClause) {
+        // the payload of VALUES and FORMAT is never part of the shape
+        mix(Tag.DATA);
+        return super.visitDataClause(dataClause);
+    }
+
+    /**
+     * x IN (literal, ...) or x IN literal, shared with NormalizedSqlBuilder so that the hash and the template agree.
+     */
+    static boolean isInWithLiteralList(FunctionColumnExpr expr) {
+        if (null == expr.getName() || null == expr.getArgs() || expr.getArgs().size() != 2) {
+            return false;
+        }
+        switch (expr.getName().getName()) {
+            case "in":
+            case "notIn":
+            case "globalIn":
+            case "globalNotIn":
+                break;
+            default:
+                return false;
+        }
+        ColumnExpr values = expr.getArgs().get(1);
+        if (values instanceof LiteralColumnExpr) {
+            return true;
+        }
+        if (values instanceof LiteralListColumnExpr && ((LiteralListColumnExpr) values).isCompact()) {
+            return true;
+        }
+        if (values instanceof FunctionColumnExpr) {
+            FunctionColumnExpr tuple = (FunctionColumnExpr) values;
+            if (null == tuple.getName() || null == tuple.getArgs()
+                    || !("tuple".equals(tuple.getName().getName()) || "array".equals(tuple.getName().getName()))) {
+                return false;
+            }
+            for (ColumnExpr arg : tuple.getArgs()) {
+                if (!(arg instanceof LiteralColumnExpr)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+}
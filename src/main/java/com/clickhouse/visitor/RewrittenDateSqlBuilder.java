@@ -16,6 +16,9 @@ public class RewrittenDateSqlBuilder extends BaseSqlBuilder {
         if (null != expr && expr instanceof LiteralColumnExpr) {
             LiteralColumnExpr literalColumnExpr = (LiteralColumnExpr) expr;
             String value = visit(literalColumnExpr.getLiteral());
+            if (null == value) {
+                return null;
+            }
             if (value.equals(comparedResult.getSecondValueLowerBound())) {
                 value = comparedResult.getSecondValueUpperBound();
             } else if (value.equals(comparedResult.getSecondValueUpperBound())) {
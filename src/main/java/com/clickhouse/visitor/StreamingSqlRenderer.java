@@ -0,0 +1,646 @@
+package com.clickhouse.visitor;
+
+import com.clickhouse.parser.ast.*;
+import com.clickhouse.parser.ast.expr.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Opt-in renderer that appends the SQL of {@link ClickHouseSqlBuilder}, or of a {@link GlobalJoinAstRewriter}, to an
+ * {@link Appendable} instead of building a String for every node. Each clause of the top level statements is handed
+ * to the output once written, so a Writer does not wait for the whole query.
+ * A function whose arguments contain a '{' (string literals, the {,} separators of nested lists) or whose rendering
+ * is not plain is left to the builder, so the template replacement of BaseSqlBuilder is not repeated here. Overrides
+ * of other visit methods than visitJoinOperator are not used; the test corpus compares both renderings.
+ */
+public final class StreamingSqlRenderer {
+
+    private static final String SEPARATOR = "{,}";
+
+    /**
+     * The identifier joiner of ClickHouseSqlBuilder.
+     */
+    private static final String JOINER_SYMBOL = ".";
+
+    private final BaseSqlBuilder builder;
+
+    private final Appendable out;
+
+    private final StringBuilder sb;
+
+    /**
+     * End of the last text written that contained a '{'. Only ever too large, never too small, after the buffer
+     * shrinks.
+     */
+    private int lastBrace = -1;
+
+    private int depth;
+
+    public StreamingSqlRenderer(Appendable out) {
+        this(new ClickHouseSqlBuilder(), out);
+    }
+
+    /**
+     * Render with the join keywords of the rewriter, which records {@code withoutGlobalKeyword} as usual.
+     */
+    public StreamingSqlRenderer(GlobalJoinAstRewriter rewriter, Appendable out) {
+        this((BaseSqlBuilder) rewriter, out);
+    }
+
+    private StreamingSqlRenderer(BaseSqlBuilder builder, Appendable out) {
+        this.builder = builder;
+        this.out = out;
+        this.sb = out instanceof StringBuilder ? (StringBuilder) out : new StringBuilder();
+    }
+
+    public void render(SelectUnionQuery selectUnionQuery) throws IOException {
+        try {
+            selectUnionQuery(selectUnionQuery);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            if (sb != out) {
+                sb.setLength(0);
+            }
+            lastBrace = -1;
+            depth = 0;
+        }
+    }
+
+    private void selectUnionQuery(SelectUnionQuery selectUnionQuery) {
+        depth++;
+        List<SelectStatement> selectStatements = selectUnionQuery.getStatements();
+        for (int i = 0; i < selectStatements.size(); i++) {
+            if (i != 0) {
+                sb.append(" UNION ALL ");
+            }
+            selectStatement(selectStatements.get(i));
+        }
+        String format = selectUnionQuery.getFormat();
+        if (null != format && !format.isEmpty()) {
+            sb.append(" FORMAT ");
+            append(format);
+        }
+        flush();
+        depth--;
+    }
+
+    /**
+     * Hand what the top level statement wrote so far to the output. The rollbacks of the renderer never reach back
+     * past the clause being written.
+     */
+    private void flush() {
+        if (depth != 1 || sb == out || sb.length() == 0) {
+            return;
+        }
+        try {
+            out.append(sb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        sb.setLength(0);
+        lastBrace = -1;
+    }
+
+    private void selectStatement(SelectStatement selectStatement) {
+        if (null != selectStatement.getWithClause()) {
+            columnExprList(selectStatement.getWithClause().getWithExpr());
+        }
+        if (null != selectStatement.getExprs()) {
+            List<ColumnExpr> exprs = selectStatement.getExprs();
+            for (int i = 0; i < exprs.size(); i++) {
+                sb.append(i == 0 ? "SELECT " : ",");
+                columnExprOrNull(exprs.get(i));
+            }
+            sb.append(' ');
+        }
+        flush();
+        if (null != selectStatement.getFromClause()) {
+            joinExpr(selectStatement.getFromClause().getExpr());
+        }
+        flush();
+        if (null != selectStatement.getArrayJoinClause() && null != selectStatement.getArrayJoinClause().getExprs()) {
+            columnExprList(selectStatement.getArrayJoinClause().getExprs());
+        }
+        if (null != selectStatement.getPrewhereClause() && null != selectStatement.getPrewhereClause().getPrewhereExpr()) {
+            columnExpr(selectStatement.getPrewhereClause().getPrewhereExpr());
+        }
+        if (null != selectStatement.getWhereClause() && null != selectStatement.getWhereClause().getWhereExpr()) {
+            int start = sb.length();
+            sb.append("WHERE ");
+            if (!columnExpr(selectStatement.getWhereClause().getWhereExpr()) || sb.length() == start + 6) {
+                sb.setLength(start);
+            }
+        }
+        flush();
+        if (null != selectStatement.getGroupByClause() && null != selectStatement.getGroupByClause().getGroupByExprs()) {
+            int start = sb.length();
+            sb.append("GROUP BY ");
+            columnExprList(selectStatement.getGroupByClause().getGroupByExprs());
+            closeGroupOrHaving(start, start + 9);
+        }
+        switch (selectStatement.getModifierType()) {
+            case CUBE:
+                sb.append("WITH CUBE ");
+                break;
+            case ROLLUP:
+                sb.append("WITH ROLLUP ");
+                break;
+            case NONE:
+            default:
+        }
+        if (null != selectStatement.getHavingClause() && null != selectStatement.getHavingClause().getHavingExpr()) {
+            int start = sb.length();
+            sb.append("HAVING ");
+            if (columnExpr(selectStatement.getHavingClause().getHavingExpr())) {
+                closeGroupOrHaving(start, start + 7);
+            } else {
+                sb.setLength(start);
+            }
+        }
+        flush();
+        if (null != selectStatement.getOrderByClause() && null != selectStatement.getOrderByClause().getOrderExprs()) {
+            List<OrderExpr> orderExprs = selectStatement.getOrderByClause().getOrderExprs();
+            sb.append("ORDER BY ");
+            for (int i = 0; i < orderExprs.size(); i++) {
+                OrderExpr orderExpr = orderExprs.get(i);
+                if (!orderExpr(orderExpr)) {
+                    sb.append("null");
+                }
+                sb.append(' ').append(orderExpr.isAsc() ? "ASC " : "DESC ");
+                if (i != orderExprs.size() - 1) {
+                    sb.append(',');
+                }
+            }
+        }
+        flush();
+        if (null != selectStatement.getLimitByClause()) {
+            LimitByClause limitByClause = selectStatement.getLimitByClause();
+            if (null != limitByClause.getLimit()) {
+                limitExpr(limitByClause.getLimit());
+            } else if (null != limitByClause.getExprs()) {
+                columnExprList(limitByClause.getExprs());
+            }
+        }
+        if (null != selectStatement.getLimitClause()) {
+            ColumnExpr limit = selectStatement.getLimitClause().getLimitExpr().getLimit();
+            if (limit instanceof LiteralColumnExpr
+                    && ((LiteralColumnExpr) limit).getLiteral() instanceof NumberLiteral) {
+                sb.append("LIMIT ");
+                append(((LiteralColumnExpr) limit).getLiteral().toString());
+                sb.append(' ');
+            }
+        }
+        flush();
+        // BaseSqlBuilder does not render SETTINGS
+    }
+
+    /**
+     * GROUP BY and HAVING end with a space and turn every {,} in their text into a comma, or disappear if empty.
+     */
+    private void closeGroupOrHaving(int start, int body) {
+        if (sb.length() == body) {
+            sb.setLength(start);
+            return;
+        }
+        if (lastBrace > body) {
+            int write = body;
+            int length = sb.length();
+            for (int read = body; read < length; ) {
+                if (read + 2 < length && sb.charAt(read) == '{' && sb.charAt(read + 1) == ','
+                        && sb.charAt(read + 2) == '}') {
+                    sb.setCharAt(write++, ',');
+                    read += 3;
+                } else {
+                    sb.setCharAt(write++, sb.charAt(read++));
+                }
+            }
+            sb.setLength(write);
+        }
+        sb.append(' ');
+    }
+
+    private void joinExpr(JoinExpr joinExpr) {
+        if (null != joinExpr.getTableExpr()) {
+            if (joinExpr.getExprType().equals(JoinExpr.ExprType.TABLE)) {
+                sb.append("FROM ");
+            }
+            tableExpr(joinExpr.getTableExpr());
+        }
+        if (null != joinExpr.getSampleClause()) {
+            append(sampleClause(joinExpr.getSampleClause()));
+        }
+        if (null != joinExpr.getLeftExpr()) {
+            joinExpr(joinExpr.getLeftExpr());
+        }
+        if (null != joinExpr.getRightExpr()) {
+            switch (joinExpr.getExprType()) {
+                case TABLE:
+                    sb.append("FROM ");
+                    break;
+                case JOIN_OP:
+                    append(builder.visitJoinOperator(joinExpr.getOpType(), joinExpr.getOpMode()));
+                    break;
+                default:
+            }
+            int start = sb.length();
+            joinExpr(joinExpr.getRightExpr());
+            if (startsWith(start, "FROM ")) {
+                sb.delete(start, start + 5);
+            }
+        }
+        if (null != joinExpr.getJoinConstraintClause()) {
+            List<ColumnExpr> exprs = joinExpr.getJoinConstraintClause().getExprs();
+            if (null == exprs) {
+                sb.append("null");
+            } else {
+                int start = sb.length();
+                sb.append("ON ");
+                columnExprList(exprs);
+                if (sb.length() == start + 3) {
+                    sb.setLength(start);
+                }
+            }
+        }
+        sb.append(' ');
+    }
+
+    private void tableExpr(TableExpr tableExpr) {
+        if (null != tableExpr.getFunction()) {
+            tableFunctionExpr(tableExpr.getFunction());
+            return;
+        }
+        if (null != tableExpr.getIdentifier()) {
+            append(tableExpr.getIdentifier().getQualifiedName(JOINER_SYMBOL));
+            return;
+        }
+        if (null != tableExpr.getSubQuery()) {
+            int start = sb.length();
+            sb.append('(');
+            selectUnionQuery(tableExpr.getSubQuery());
+            if (sb.length() > start + 1) {
+                sb.append(") ");
+                return;
+            }
+            sb.setLength(start);
+        }
+        if (null != tableExpr.getExpr()) {
+            int start = sb.length();
+            tableExpr(tableExpr.getExpr());
+            if (sb.length() > start) {
+                sb.append(' ');
+            }
+        }
+        if (null != tableExpr.getAlias()) {
+            String alias = tableExpr.getAlias().getQualifiedName();
+            if (null != alias && !alias.isEmpty()) {
+                append(alias);
+                sb.append(' ');
+            }
+        }
+    }
+
+    private void tableFunctionExpr(TableFunctionExpr function) {
+        if (null != function.getName()) {
+            append(function.getName().getQualifiedName());
+            sb.append('(');
+        }
+        if (null != function.getArgs()) {
+            // BaseSqlBuilder renders no table function argument yet
+            for (int i = 0; i < function.getArgs().size(); i++) {
+                if (i != 0) {
+                    sb.append(',');
+                }
+                sb.append("null");
+            }
+            sb.append(") ");
+        }
+    }
+
+    private static String sampleClause(SampleClause sampleClause) {
+        if (null != sampleClause.getRatio()) {
+            return ratioExpr(sampleClause.getRatio());
+        }
+        if (null != sampleClause.getOffset()) {
+            return ratioExpr(sampleClause.getOffset());
+        }
+        return null;
+    }
+
+    private static String ratioExpr(RatioExpr ratioExpr) {
+        if (null != ratioExpr.getNumerator()) {
+            return ratioExpr.getNumerator().toString();
+        }
+        if (null != ratioExpr.getDenominator()) {
+            return ratioExpr.getDenominator().toString();
+        }
+        return null;
+    }
+
+    private boolean orderExpr(OrderExpr orderExpr) {
+        if (null != orderExpr.getExpr()) {
+            return columnExpr(orderExpr.getExpr());
+        }
+        if (null != orderExpr.getCollate()) {
+            return appendNonNull(orderExpr.getCollate().asString());
+        }
+        return false;
+    }
+
+    private boolean limitExpr(LimitExpr limitExpr) {
+        if (null != limitExpr.getLimit()) {
+            return columnExpr(limitExpr.getLimit());
+        }
+        if (null != limitExpr.getOffset()) {
+            return columnExpr(limitExpr.getOffset());
+        }
+        return false;
+    }
+
+    private void columnExprList(List<ColumnExpr> exprs) {
+        for (int i = 0; i < exprs.size(); i++) {
+            columnExprOrNull(exprs.get(i));
+            if (i != exprs.size() - 1) {
+                sb.append(SEPARATOR);
+                lastBrace = sb.length();
+            }
+        }
+    }
+
+    private void columnExprOrNull(ColumnExpr expr) {
+        if (!columnExpr(expr)) {
+            sb.append("null");
+        }
+    }
+
+    /**
+     * @return false, with nothing written, where BaseSqlBuilder returns null
+     */
+    private boolean columnExpr(ColumnExpr expr) {
+        if (null == expr || null == expr.getExprType()) {
+            return false;
+        }
+        switch (expr.getExprType()) {
+            case ASTERISK:
+                sb.append('*');
+                return true;
+            case ALIAS:
+                aliasColumnExpr((AliasColumnExpr) expr);
+                return true;
+            case FUNCTION:
+                return expr instanceof FunctionColumnExpr && functionColumnExpr((FunctionColumnExpr) expr);
+            case SUBQUERY:
+                if (expr instanceof SubqueryColumnExpr && null != ((SubqueryColumnExpr) expr).getQuery()) {
+                    sb.append(" (");
+                    selectUnionQuery(((SubqueryColumnExpr) expr).getQuery());
+                    sb.append(") ");
+                    return true;
+                }
+                return false;
+            case IDENTIFIER:
+                return expr instanceof IdentifierColumnExpr
+                        && appendNonNull(((IdentifierColumnExpr) expr).getIdentifier().getQualifiedName());
+            case LITERAL:
+                return expr instanceof LiteralColumnExpr && literal(((LiteralColumnExpr) expr).getLiteral());
+            default:
+                return false;
+        }
+    }
+
+    private boolean literal(Literal literal) {
+        if (literal instanceof NumberLiteral) {
+            return appendNonNull(literal.toString());
+        }
+        if (literal instanceof StringLiteral) {
+            return appendNonNull(literal.asString());
+        }
+        // BaseSqlBuilder.visit(literal) throws on a null literal
+        Objects.requireNonNull(literal);
+        return false;
+    }
+
+    private void aliasColumnExpr(AliasColumnExpr expr) {
+        if (null != expr.getExpr()) {
+            columnExprOrNull(expr.getExpr());
+        }
+        if (null != expr.getAlias()) {
+            String alias = expr.getAlias().getQualifiedName();
+            if (null != alias) {
+                sb.append(" AS ");
+                append(alias);
+            }
+        }
+    }
+
+    private boolean functionColumnExpr(FunctionColumnExpr expr) {
+        if (null == expr.getName() || null != expr.getParams()) {
+            return byBuilder(expr);
+        }
+        String funcName = expr.getName().getQualifiedName();
+        switch (funcName) {
+            case "equals":
+                return operator(expr, ") = (");
+            case "notEquals":
+                return operator(expr, ") != (");
+            case "lessOrEquals":
+                return operator(expr, ") <= (");
+            case "greaterOrEquals":
+                return operator(expr, ") >= (");
+            case "less":
+                return operator(expr, ") < (");
+            case "greater":
+                return operator(expr, ") > (");
+            case "and":
+                return operator(expr, " AND ");
+            case "or":
+                return operator(expr, " OR ");
+            case "divide":
+                return operator(expr, ") / (");
+            case "multiply":
+                return operator(expr, ") * (");
+            case "countDistinct":
+                return call(expr, "COUNT(DISTINCT", ")");
+            case "in":
+                return inFunctionColumnExpr(expr);
+            case "like":
+                return likeFunctionColumnExpr(expr);
+            case "minus":
+                return binaryFunctionColumnExpr(expr, ") - (");
+            case "plus":
+                return binaryFunctionColumnExpr(expr, ") + (");
+            default:
+                return call(expr, funcName, "");
+        }
+    }
+
+    /**
+     * (left) op (right) for two arguments, the builder otherwise.
+     */
+    private boolean operator(FunctionColumnExpr expr, String infix) {
+        List<ColumnExpr> args = LiteralListColumnExpr.readArgs(expr);
+        if (null == args || args.size() != 2) {
+            return byBuilder(expr);
+        }
+        int start = sb.length();
+        sb.append('(');
+        columnExprOrNull(args.get(0));
+        sb.append(infix);
+        int right = sb.length();
+        columnExprOrNull(args.get(1));
+        // an empty right side is dropped by the split in BaseSqlBuilder
+        if (lastBrace > start || sb.length() == right) {
+            sb.setLength(start);
+            return byBuilder(expr);
+        }
+        sb.append(") ");
+        return true;
+    }
+
+    /**
+     * name(args)suffix, the builder if the function has no arguments or they contain a '{'.
+     */
+    private boolean call(FunctionColumnExpr expr, String name, String suffix) {
+        List<ColumnExpr> args = LiteralListColumnExpr.readArgs(expr);
+        if (null == args) {
+            return byBuilder(expr);
+        }
+        int start = sb.length();
+        append(name);
+        sb.append('(');
+        int last = sb.length();
+        for (int i = 0; i < args.size(); i++) {
+            if (i != 0) {
+                sb.append(',');
+            }
+            last = sb.length();
+            columnExprOrNull(args.get(i));
+        }
+        // trailing empty arguments are dropped by the split in BaseSqlBuilder
+        if (lastBrace > start || (args.size() > 1 && sb.length() == last)) {
+            sb.setLength(start);
+            return byBuilder(expr);
+        }
+        sb.append(')').append(suffix);
+        return true;
+    }
+
+    /**
+     * Write what the builder renders for the function, nothing where it renders null.
+     */
+    private boolean byBuilder(FunctionColumnExpr expr) {
+        return appendNonNull(builder.visitFunctionColumnExpr(expr));
+    }
+
+    private boolean inFunctionColumnExpr(FunctionColumnExpr expr) {
+        int start = sb.length();
+        try {
+            List<ColumnExpr> columnExprs = LiteralListColumnExpr.readArgs(expr);
+            ColumnExpr column = columnExprs.get(0);
+            ColumnExpr argsExpr = columnExprs.get(1);
+            if (argsExpr instanceof FunctionColumnExpr) {
+                List<ColumnExpr> tupleArgs = LiteralListColumnExpr.readArgs((FunctionColumnExpr) argsExpr);
+                sb.append('(');
+                visitOrNull(column);
+                sb.append(") IN (");
+                for (int i = 0; i < tupleArgs.size(); i++) {
+                    visitOrNull(tupleArgs.get(i));
+                    if (i != tupleArgs.size() - 1) {
+                        sb.append(',');
+                    }
+                }
+                sb.append(") ");
+                return true;
+            } else if (argsExpr instanceof LiteralColumnExpr) {
+                sb.append('(');
+                visitOrNull(column);
+                sb.append(") = (");
+                visitOrNull(argsExpr);
+                sb.append(')');
+                return true;
+            }
+            return false;
+        } catch (RuntimeException e) {
+            sb.setLength(start);
+            return false;
+        }
+    }
+
+    private boolean likeFunctionColumnExpr(FunctionColumnExpr expr) {
+        int start = sb.length();
+        try {
+            List<ColumnExpr> columnExprs = LiteralListColumnExpr.readArgs(expr);
+            ColumnExpr column = columnExprs.get(0);
+            ColumnExpr argsExpr = columnExprs.get(1);
+            if (argsExpr instanceof LiteralColumnExpr) {
+                sb.append('(');
+                visitOrNull(column);
+                sb.append(") LIKE (");
+                visitOrNull(argsExpr);
+                sb.append(')');
+                return true;
+            }
+            return false;
+        } catch (RuntimeException e) {
+            sb.setLength(start);
+            return false;
+        }
+    }
+
+    private boolean binaryFunctionColumnExpr(FunctionColumnExpr expr, String infix) {
+        int start = sb.length();
+        try {
+            List<ColumnExpr> columnExprs = LiteralListColumnExpr.readArgs(expr);
+            ColumnExpr column = columnExprs.get(0);
+            ColumnExpr argsExpr = columnExprs.get(1);
+            sb.append('(');
+            visitOrNull(column);
+            sb.append(infix);
+            visitOrNull(argsExpr);
+            sb.append(')');
+            return true;
+        } catch (RuntimeException e) {
+            sb.setLength(start);
+            return false;
+        }
+    }
+
+    /**
+     * Like BaseSqlBuilder.visit(expr), which throws on a null expression.
+     */
+    private void visitOrNull(ColumnExpr expr) {
+        if (null == expr) {
+            throw new NullPointerException();
+        }
+        columnExprOrNull(expr);
+    }
+
+    private boolean startsWith(int start, String prefix) {
+        if (sb.length() - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (sb.charAt(start + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean appendNonNull(String text) {
+        if (null == text) {
+            return false;
+        }
+        append(text);
+        return true;
+    }
+
+    private void append(String text) {
+        sb.append(text);
+        if (null != text && text.indexOf('{') >= 0) {
+            lastBrace = sb.length();
+        }
+    }
+}
@@ -6,13 +6,14 @@ import com.clickhouse.util.DateUtil;
 import com.clickhouse.parser.ast.WhereClause;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.Date;
 import java.util.List;
 import java.util.regex.Pattern;
 
 @Slf4j
 public class WhereClauseComparator {
 
+    private static final Pattern DATE_PATTERN = Pattern.compile("[0-9]{4}-[0-9]{2}-[0-9]{2}");
+
     private ComparedResult comparedResult = new ComparedResult();
 
     public ComparedResult compare(WhereClause whereClause1, WhereClause whereClause2) {
@@ -32,25 +33,26 @@ public class WhereClauseComparator {
     }
 
     public boolean visitColumnExpr(ColumnExpr expr1, ColumnExpr expr2) {
-        if (expr1 instanceof AsteriskColumnExpr && expr1 instanceof AsteriskColumnExpr) {
-            return visitAsteriskColumnExpr((AsteriskColumnExpr) expr1, (AsteriskColumnExpr) expr2);
-        }
-        if (expr1 instanceof AliasColumnExpr && expr2 instanceof AliasColumnExpr) {
-            return visitAliasColumnExpr((AliasColumnExpr) expr1, (AliasColumnExpr) expr2);
-        }
-        if (expr1 instanceof FunctionColumnExpr && expr2 instanceof FunctionColumnExpr) {
-            return visitFunctionColumnExpr((FunctionColumnExpr) expr1, (FunctionColumnExpr) expr2);
-        }
-        if (expr1 instanceof SubqueryColumnExpr && expr2 instanceof SubqueryColumnExpr) {
-            return visitSubqueryColumnExpr((SubqueryColumnExpr) expr1, (SubqueryColumnExpr) expr2);
-        }
-        if (expr1 instanceof IdentifierColumnExpr && expr2 instanceof IdentifierColumnExpr) {
-            return visitIdentifierColumnExpr((IdentifierColumnExpr) expr1, (IdentifierColumnExpr) expr2);
+        if (null == expr1 || null == expr2 || null == expr1.getExprType()
+                || expr1.getExprType() != expr2.getExprType()) {
+            return comparedResult.isTotallyTheSame();
+        }
+        switch (expr1.getExprType()) {
+            case ASTERISK:
+                return visitAsteriskColumnExpr((AsteriskColumnExpr) expr1, (AsteriskColumnExpr) expr2);
+            case ALIAS:
+                return visitAliasColumnExpr((AliasColumnExpr) expr1, (AliasColumnExpr) expr2);
+            case FUNCTION:
+                return visitFunctionColumnExpr((FunctionColumnExpr) expr1, (FunctionColumnExpr) expr2);
+            case SUBQUERY:
+                return visitSubqueryColumnExpr((SubqueryColumnExpr) expr1, (SubqueryColumnExpr) expr2);
+            case IDENTIFIER:
+                return visitIdentifierColumnExpr((IdentifierColumnExpr) expr1, (IdentifierColumnExpr) expr2);
+            case LITERAL:
+                return visitLiteralColumnExpr((LiteralColumnExpr) expr1, (LiteralColumnExpr) expr2);
+            default:
+                return comparedResult.isTotallyTheSame();
         }
-        if (expr1 instanceof LiteralColumnExpr && expr2 instanceof LiteralColumnExpr) {
-            return visitLiteralColumnExpr((LiteralColumnExpr) expr1, (LiteralColumnExpr) expr2);
-        }
-        return comparedResult.isTotallyTheSame();
     }
 
     public boolean visitAsteriskColumnExpr(AsteriskColumnExpr expr1, AsteriskColumnExpr expr2) {
@@ -76,8 +78,16 @@ public class WhereClauseComparator {
             if (null != expr1.getParams() && null != expr2.getParams()) {
                 comparedResult.setTotallyTheSame(visitColumnExprList(expr1.getParams(), expr2.getParams()) && comparedResult.isTotallyTheSame());
             }
-            if (null != expr1.getArgs() && null != expr2.getArgs()) {
-                comparedResult.setTotallyTheSame(visitColumnExprList(expr1.getArgs(), expr2.getArgs()) && comparedResult.isTotallyTheSame());
+            if (expr1 instanceof LiteralListColumnExpr && expr2 instanceof LiteralListColumnExpr
+                    && ((LiteralListColumnExpr) expr1).isCompact() && ((LiteralListColumnExpr) expr2).isCompact()
+                    && ((LiteralListColumnExpr) expr1).sameValues((LiteralListColumnExpr) expr2)) {
+                // equal literals change nothing
+                return comparedResult.isTotallyTheSame();
+            }
+            List<ColumnExpr> args1 = LiteralListColumnExpr.readArgs(expr1);
+            List<ColumnExpr> args2 = LiteralListColumnExpr.readArgs(expr2);
+            if (null != args1 && null != args2) {
+                comparedResult.setTotallyTheSame(visitColumnExprList(args1, args2) && comparedResult.isTotallyTheSame());
             }
         }
         return comparedResult.isTotallyTheSame();
@@ -147,7 +157,11 @@ public class WhereClauseComparator {
         if (str.startsWith("'") && str.endsWith("'")) {
             tmp = str.substring(1, str.length() - 1);
         }
-        return Pattern.matches("[0-9]{4}-[0-9]{2}-[0-9]{2}", tmp);
+        return DATE_PATTERN.matcher(tmp).matches();
+    }
+
+    private int parseQuotedDate(String str) {
+        return DateUtil.parseEpochDay(str.subSequence(1, str.length() - 1));
     }
 
     private void updateFirstValueUpperBoundDate(String dateStr) {
@@ -159,14 +173,12 @@ public class WhereClauseComparator {
             return;
         }
 
-        Date date = DateUtil.parseDate(dateStr.substring(1, dateStr.length() - 1));
-        Date firstValueUpperBoundDate = DateUtil.parseDate(firstValueUpperBound.substring(1, firstValueUpperBound.length() - 1));
-        if (date.getTime() > firstValueUpperBoundDate.getTime()) {
+        int date = parseQuotedDate(dateStr);
+        if (date > parseQuotedDate(firstValueUpperBound)) {
             comparedResult.setFirstValueUpperBound(dateStr);
         }
 
-        Date firstValueLowerBoundDate = DateUtil.parseDate(firstValueLowerBound.substring(1, firstValueLowerBound.length() - 1));
-        if (date.getTime() < firstValueLowerBoundDate.getTime()) {
+        if (date < parseQuotedDate(firstValueLowerBound)) {
             comparedResult.setFirstValueLowerBound(dateStr);
         }
     }
@@ -180,14 +192,12 @@ public class WhereClauseComparator {
             return;
         }
 
-        Date date = DateUtil.parseDate(dateStr.substring(1, dateStr.length() - 1));
-        Date secondValueUpperBoundDate = DateUtil.parseDate(secondValueUpperBound.substring(1, secondValueUpperBound.length() - 1));
-        if (date.getTime() > secondValueUpperBoundDate.getTime()) {
+        int date = parseQuotedDate(dateStr);
+        if (date > parseQuotedDate(secondValueUpperBound)) {
             comparedResult.setSecondValueUpperBound(dateStr);
         }
 
-        Date secondValueLowerBoundDate = DateUtil.parseDate(secondValueLowerBound.substring(1, secondValueLowerBound.length() - 1));
-        if (date.getTime() < secondValueLowerBoundDate.getTime()) {
+        if (date < parseQuotedDate(secondValueLowerBound)) {
             comparedResult.setSecondValueLowerBound(dateStr);
         }
     }
@@ -1,12 +1,66 @@
 package com.clickhouse.parser;
 
 import com.clickhouse.data.FieldLineageInfo;
+import com.clickhouse.metrics.InMemoryParseMetrics;
+import com.clickhouse.metrics.ParseMetrics;
+import com.clickhouse.parser.ast.AstCopier;
+import com.clickhouse.parser.ast.CreateTableQuery;
+import com.clickhouse.parser.ast.DataClause;
 import com.clickhouse.parser.ast.DistributedTableInfoDetector;
 import com.clickhouse.parser.ast.INode;
+import com.clickhouse.parser.ast.InsertQuery;
+import com.clickhouse.parser.ast.Identifier;
+import com.clickhouse.parser.ast.Literal;
+import com.clickhouse.parser.ast.NodeKind;
+import com.clickhouse.parser.ast.SelectStatement;
+import com.clickhouse.parser.ast.TableIdentifier;
+import com.clickhouse.parser.ast.WhereClause;
+import com.clickhouse.parser.ast.expr.ColumnExpr;
+import com.clickhouse.parser.ast.expr.FunctionColumnExpr;
+import com.clickhouse.parser.ast.expr.IdentifierColumnExpr;
+import com.clickhouse.parser.ast.expr.LiteralColumnExpr;
+import com.clickhouse.parser.ast.expr.LiteralListColumnExpr;
+import com.clickhouse.parser.ast.SelectUnionQuery;
+import com.clickhouse.util.DateUtil;
 import lombok.extern.slf4j.Slf4j;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.Token;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @Slf4j
 public class TestAstParser {
@@ -126,5 +180,981 @@ public class TestAstParser {
         log.info("It takes " + (end - start) + " ms");
     }
 
+    @Test
+    public void testTwoStageParsing() {
+        List<String> sqls = Arrays.asList(
+                "SELECT t1.id, count(1) as total_count FROM my_db1.table1 t1 LEFT JOIN my_db2.table2 t2 ON t1.id = t2.id GROUP BY t1.id",
+                "SELECT * FROM t WHERE uid global in (SELECT uid FROM t2) FORMAT JSON",
+                "SELECT a FROM my_db.my_tbl WHERE dt >= '2021-10-01' AND dt <= '2021-10-31' AND x IN (1, 2, 3) ORDER BY a DESC LIMIT 10",
+                "ALTER TABLE my_db.my_tbl DROP PARTITION '2020-11-21'",
+                "INSERT INTO my_db.my_tbl (id, name) VALUES (1, 'a')",
+                "WITH 1 AS x SELECT a, b FROM (SELECT a, b FROM my_db.t3 WHERE b != 0) UNION ALL SELECT a, b FROM my_db.t4");
+        AstParser llParser = new AstParser();
+        AstParser twoStageParser = new AstParser(false, true);
+        for (String sql : sqls) {
+            assertEquals(llParser.parse(sql), twoStageParser.parse(sql));
+        }
+        assertEquals(sqls.size(), twoStageParser.getSllParseCount() + twoStageParser.getLlFallbackCount());
+        assertTrue(twoStageParser.getSllParseCount() > 0);
+        log.info("SLL parsed {}, LL fallback {}", twoStageParser.getSllParseCount(), twoStageParser.getLlFallbackCount());
+
+        // SLL can not decide a JOIN ... ON, the LL fallback gives the same AST
+        String join = "SELECT t1.id FROM my_db1.table1 t1 JOIN my_db2.table2 t2 ON t1.id = t2.id";
+        long llFallbackCount = twoStageParser.getLlFallbackCount();
+        assertEquals(llParser.parse(join), twoStageParser.parse(join));
+        assertEquals(llFallbackCount + 1, twoStageParser.getLlFallbackCount());
+
+        // an invalid statement fails SLL too and is reported by the LL parse as without two stages
+        String invalid = "SELECT a FROM t WHERE b = = 1";
+        llFallbackCount = twoStageParser.getLlFallbackCount();
+        ParseResult llResult = llParser.parseAll(Collections.singletonList(invalid)).get(0);
+        ParseResult twoStageResult = twoStageParser.parseAll(Collections.singletonList(invalid)).get(0);
+        assertEquals(llFallbackCount + 1, twoStageParser.getLlFallbackCount());
+        assertTrue(llResult.getSyntaxErrorCount() > 0);
+        assertEquals(llResult.getSyntaxErrorCount(), twoStageResult.getSyntaxErrorCount());
+        assertEquals(llResult.getAst(), twoStageResult.getAst());
+        assertEquals(String.valueOf(llResult.getError()), String.valueOf(twoStageResult.getError()));
+        String llErrors = syntaxErrors(llParser, invalid);
+        assertFalse(llErrors.isEmpty());
+        assertEquals(llErrors, syntaxErrors(twoStageParser, invalid));
+    }
+
+    /**
+     * What parsing a statement prints as syntax errors.
+     */
+    private static String syntaxErrors(AstParser astParser, String sql) {
+        PrintStream err = System.err;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(out, true));
+        try {
+            astParser.parse(sql);
+        } catch (RuntimeException e) {
+            // the errors are printed before the AST fails to build
+        } finally {
+            System.setErr(err);
+        }
+        return out.toString();
+    }
+
+    @Test
+    public void testParserSessionReuse() {
+        String sql1 = "SELECT t1.id, count(1) as total_count FROM my_db1.table1 t1 LEFT JOIN my_db2.table2 t2 ON t1.id = t2.id GROUP BY t1.id";
+        String sql2 = "ALTER TABLE my_db.my_tbl ADD COLUMN IF NOT EXISTS id Int64";
+        AstParser astParser = new AstParser();
+        Object first = astParser.parse(sql1);
+        Object second = astParser.parse(sql2);
+        // the pooled lexer/parser must not leak state from one statement into the next
+        assertEquals(first, astParser.parse(sql1));
+        assertEquals(second, astParser.parse(sql2));
+    }
+
+    @Test
+    public void testDfaCacheWarmUp() {
+        List<String> corpus = Arrays.asList(
+                "SELECT t1.id, count(1) as total_count FROM my_db1.table1 t1 LEFT JOIN my_db2.table2 t2 ON t1.id = t2.id GROUP BY t1.id",
+                "ALTER TABLE my_db.my_tbl DROP PARTITION '2020-11-21'");
+        AstParser astParser = new AstParser();
+        AstParser.clearDfaCache();
+        assertEquals(0, AstParser.getParserDfaStateCount());
+        assertEquals(corpus.size(), astParser.warmUp(corpus));
+        int stateCount = AstParser.getDfaStateCount();
+        assertTrue(stateCount > 0);
+
+        AstParser.setMaxDfaStateCount(1);
+        try {
+            astParser.parse(corpus.get(0));
+            assertTrue(AstParser.getDfaStateCount() < stateCount);
+        } finally {
+            AstParser.setMaxDfaStateCount(0);
+        }
+    }
+
+    @Test
+    public void testParseAll() {
+        List<String> sqls = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            sqls.add("SELECT id, name FROM my_db.table" + i + " WHERE id = " + i);
+        }
+        sqls.add(100, "SELECT FROM WHERE");
+        AstParser astParser = new AstParser();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        astParser.setForkJoinPool(pool);
+        try {
+            List<ParseResult> results = astParser.parseAll(sqls);
+            assertEquals(sqls.size(), results.size());
+            for (int i = 0; i < sqls.size(); i++) {
+                ParseResult result = results.get(i);
+                assertEquals(sqls.get(i), result.getSql());
+                if (i == 100) {
+                    assertFalse(result.isSuccess());
+                } else {
+                    assertTrue(result.isSuccess());
+                    assertEquals(astParser.parse(sqls.get(i)), result.getAst());
+                }
+            }
+
+            // per statement default database
+            AstParser fillingParser = new AstParser(true);
+            fillingParser.setForkJoinPool(pool);
+            List<String> tableSqls = Arrays.asList("SELECT id FROM t1", "SELECT id FROM t2", "SELECT id FROM db.t3");
+            List<String> databases = Arrays.asList("db1", "db2", "db3");
+            results = fillingParser.parseAll(tableSqls, databases);
+            for (int i = 0; i < tableSqls.size(); i++) {
+                assertEquals(databases.get(i), results.get(i).getDefaultDatabase());
+                assertEquals(fillingParser.parse(tableSqls.get(i), databases.get(i)), results.get(i).getAst());
+            }
+            assertNotEquals(fillingParser.parse(tableSqls.get(0)), results.get(0).getAst());
+            results = fillingParser.parseAll(tableSqls, "db1");
+            assertEquals(fillingParser.parse(tableSqls.get(1), "db1"), results.get(1).getAst());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testSqlScriptParser() throws Exception {
+        List<String> sqls = Arrays.asList(
+                "SELECT 'a;b', `c;d`, \"e;f\", 'it''s;', '\\';' FROM my_db.t1",
+                "INSERT INTO my_db.t2 (a, b) VALUES ('\u4e2d\u6587;', 1)",
+                "SELECT id /* ; */ FROM my_db.t3 WHERE x - 1 > 0 -- trailing ;\n AND y = '\u6d4b\u8bd5'",
+                "SELECT 1 / 2");
+        String script = "-- header ;\n" + String.join(";\n/* between */;\n", sqls) + "\n;\n  -- footer";
+        byte[] bytes = script.getBytes(StandardCharsets.UTF_8);
+        AstParser astParser = new AstParser();
+        List<INode> expected = new ArrayList<>();
+        for (String sql : sqls) {
+            expected.add((INode) astParser.parse(sql));
+        }
+
+        List<String> statements = new ArrayList<>();
+        try (SqlScriptParser scriptParser = new SqlScriptParser(astParser,
+                Channels.newChannel(new ByteArrayInputStream(bytes)), StandardCharsets.UTF_8)) {
+            for (String sql = scriptParser.nextStatement(); null != sql; sql = scriptParser.nextStatement()) {
+                statements.add(sql);
+            }
+        }
+        assertEquals(sqls.size(), statements.size());
+        assertTrue(statements.get(1).startsWith("INSERT INTO my_db.t2"));
+
+        Path file = Files.createTempFile("script", ".sql");
+        try {
+            Files.write(file, bytes);
+            // tiny windows so that multi-byte chars get split across mapped regions
+            try (SqlScriptParser scriptParser = new SqlScriptParser(astParser, FileChannel.open(file),
+                    StandardCharsets.UTF_8, "default", 7)) {
+                List<INode> asts = new ArrayList<>();
+                scriptParser.forEach(asts::add);
+                assertEquals(expected, asts);
+            }
+            try (SqlScriptParser scriptParser = new SqlScriptParser(astParser, file)) {
+                assertEquals(sqls.size(), scriptParser.stream().count());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testCachingAstParser() {
+        String sql = "SELECT t1.id, count(1) FROM my_db1.table1 t1 GLOBAL JOIN my_db2.table2 t2 ON t1.id = t2.id GROUP BY t1.id";
+        AstParser astParser = new AstParser(true);
+        CachingAstParser cachingAstParser = CachingAstParser.withMaximumWeight(astParser, 1024 * 1024);
+        Object expected = astParser.parse(sql);
+        SelectUnionQuery first = (SelectUnionQuery) cachingAstParser.parse(sql);
+        assertEquals(expected, first);
+        // modifying a returned tree must not leak into the cache
+        first.getStatements().clear();
+        SelectUnionQuery second = (SelectUnionQuery) cachingAstParser.parse(sql);
+        assertNotSame(first, second);
+        assertEquals(expected, second);
+        assertEquals(1, cachingAstParser.stats().hitCount());
+        assertEquals(1, cachingAstParser.stats().missCount());
+
+        // a different default database is a different entry
+        cachingAstParser.parse(sql, "other_db");
+        assertEquals(2, cachingAstParser.size());
+
+        // hits are deep copies of every kind of statement
+        StringBuilder inList = new StringBuilder("0");
+        for (int i = 1; i < 100; i++) {
+            inList.append(", ").append(i);
+        }
+        List<String> sqls = Arrays.asList(
+                "WITH 1 AS x SELECT a, b FROM (SELECT a, b FROM my_db.t3 WHERE b != 0) UNION ALL SELECT a, b FROM my_db.t4",
+                "SELECT id, arrayMap(x -> x + 1, arr) FROM my_db.t5 WHERE id IN (" + inList + ") SETTINGS max_threads = 1",
+                "CREATE TABLE my_db.events (ts DateTime, id UInt64 CODEC(Delta, ZSTD), e Enum8('a' = 1)) "
+                        + "ENGINE = MergeTree() PARTITION BY toYYYYMM(ts) ORDER BY id",
+                "ALTER TABLE my_db.my_tbl DELETE WHERE id = 1",
+                "INSERT INTO my_db.my_tbl (id, name) VALUES (1, 'a')");
+        for (String statement : sqls) {
+            Object expectedAst = astParser.parse(statement);
+            assertEquals(expectedAst, cachingAstParser.parse(statement));
+            Object hit = cachingAstParser.parse(statement);
+            assertEquals(expectedAst, hit);
+            assertNotSame(hit, cachingAstParser.parse(statement));
+            assertEquals(expectedAst.toString(), AstCopier.copy(hit).toString());
+        }
+
+        // the data of INSERT ... VALUES is kept, and only by a lazy parser
+        AstParser lazyParser = new AstParser();
+        lazyParser.setLazyInsertData(true);
+        CachingAstParser lazyCachingParser = CachingAstParser.withMaximumSize(lazyParser, 16);
+        String insert = "INSERT INTO my_db.my_tbl (id, name) VALUES (1, 'a')";
+        for (int i = 0; i < 2; i++) {
+            assertEquals(" (1, 'a')", ((InsertQuery) lazyCachingParser.parse(insert)).getDataClause().getData().toString());
+        }
+        assertEquals(1, lazyCachingParser.stats().hitCount());
+    }
+
+    @Test
+    public void testReferredTablesFastDetector() {
+        List<String> fastSqls = Arrays.asList(
+                "SELECT id, count() FROM my_db.t1 WHERE id IN (1, 2) GROUP BY id",
+                "SELECT * FROM t1 AS a GLOBAL LEFT JOIN my_db.t2 b ON a.id = b.id JOIN t3 USING (id) LIMIT 10",
+                "SELECT a FROM `my_db`.`t1` FINAL UNION ALL SELECT a FROM t2 FORMAT JSON",
+                "INSERT INTO TABLE my_db.t1 (a, b) VALUES (1, 'FROM x'), (2, 'JOIN y')",
+                "INSERT INTO t1 SELECT a, b FROM my_db.t2 WHERE b > 0;");
+        List<String> fallbackSqls = Arrays.asList(
+                "SELECT * FROM (SELECT id FROM my_db.t1) t",
+                "SELECT id FROM t1 WHERE id IN (SELECT id FROM t2)",
+                "SELECT number FROM numbers(10)",
+                "SELECT a FROM t1, t2",
+                "SELECT s FROM t1 ARRAY JOIN arr AS s",
+                "ALTER TABLE my_db.my_tbl DROP PARTITION '2020-11-21'");
+        for (boolean fillDefaultDatabase : new boolean[]{false, true}) {
+            AstParser astParser = new AstParser(fillDefaultDatabase);
+            ReferredTablesFastDetector fastDetector = new ReferredTablesFastDetector(astParser);
+            for (String sql : fastSqls) {
+                List<String> expected = new ReferredTablesDetector().searchTables((INode) astParser.parse(sql, "my_default"));
+                assertEquals(expected, fastDetector.searchTables(sql, "my_default"), sql);
+            }
+            assertEquals(fastSqls.size(), fastDetector.getFastPathCount());
+            for (String sql : fallbackSqls) {
+                List<String> expected = new ReferredTablesDetector().searchTables((INode) astParser.parse(sql, "my_default"));
+                assertEquals(expected, fastDetector.searchTables(sql, "my_default"), sql);
+            }
+            assertEquals(fallbackSqls.size(), fastDetector.getFallbackCount());
+        }
+    }
+
+    @Test
+    public void testParseMetrics() {
+        InMemoryParseMetrics metrics = new InMemoryParseMetrics(true);
+        AstParser astParser = new AstParser(false, true);
+        astParser.setParseMetrics(metrics);
+        List<String> sqls = Arrays.asList(
+                "SELECT id, name FROM my_db.t1 WHERE id IN (1, 2, 3)",
+                "SELECT t1.id, count(1) FROM my_db1.table1 t1 LEFT JOIN my_db2.table2 t2 ON t1.id = t2.id GROUP BY t1.id",
+                "INSERT INTO my_db.t1 (a, b) VALUES (1, 2)");
+        for (String sql : sqls) {
+            INode ast = (INode) astParser.parse(sql);
+            metrics.timeVisit(new ReferredTablesDetector(), ast);
+        }
+        log.info(metrics.toString());
+        for (ParseMetrics.Phase phase : ParseMetrics.Phase.values()) {
+            assertEquals(sqls.size(), metrics.getPhase(phase).getCount());
+        }
+        assertTrue(metrics.getTokenCounts().getPercentile(0.5) >= 10);
+        assertTrue(metrics.getNodeCounts().getMax() >= 10);
+        assertTrue(metrics.getAllocatedBytes().getSum() > 0);
+    }
+
+    @Test
+    public void testAstWalker() throws Exception {
+        List<String> sqls = Arrays.asList(
+                "SELECT t1.id, count(1) AS c FROM my_db1.table1 t1 LEFT JOIN my_db2.table2 t2 ON t1.id = t2.id "
+                        + "WHERE t1.dt >= '2021-01-01' AND t2.name IN ('a', 'b') GROUP BY t1.id ORDER BY c DESC LIMIT 10",
+                "WITH 1 AS x SELECT a FROM (SELECT a FROM my_db.t3 PREWHERE b != 0) "
+                        + "ARRAY JOIN arr HAVING a > 1 LIMIT 1 BY a SETTINGS max_threads = 1 UNION ALL SELECT b FROM numbers(10)",
+                "INSERT INTO my_db.my_tbl (id, name) SELECT id, name FROM my_db.t5",
+                "CREATE TABLE my_db.events (ts DateTime, id UInt64 CODEC(Delta, ZSTD)) ENGINE = MergeTree() "
+                        + "PARTITION BY toYYYYMM(ts) ORDER BY id SETTINGS index_granularity = 8192",
+                "ALTER TABLE my_db.my_tbl DELETE WHERE id = 1");
+        AstParser astParser = new AstParser();
+        for (String sql : sqls) {
+            INode ast = (INode) astParser.parse(sql);
+            List<String> visited = new ArrayList<>();
+            new CallbackRecorder(visited).visit(ast);
+            List<String> walked = new ArrayList<>();
+            new AstWalker().walk(ast, new CallbackRecorder(walked));
+            assertEquals(visited, walked, sql);
+            assertEquals("leave " + ast.getClass().getSimpleName(), walked.get(walked.size() - 1));
+        }
+        // the engine clause of CREATE TABLE is walked too
+        List<String> walked = new ArrayList<>();
+        new AstWalker().walk((INode) astParser.parse(sqls.get(3)), new CallbackRecorder(walked));
+        assertTrue(walked.contains("identifier toYYYYMM"));
+        assertTrue(walked.contains("leave EngineClause"));
+
+        // an override that does not call super prunes the subtree
+        INode ast = (INode) astParser.parse(sqls.get(0));
+        List<String> identifiers = new ArrayList<>();
+        new AstWalker().walk(ast, new AstVisitor<Object>() {
+            @Override
+            public Object visitWhereClause(WhereClause whereClause) {
+                return null;
+            }
+
+            @Override
+            public Object visitIdentifier(Identifier identifier) {
+                identifiers.add(identifier.getName());
+                return null;
+            }
+        });
+        assertFalse(identifiers.contains("dt"));
+        assertTrue(identifiers.contains("c"));
+
+        // the walker takes the children from the defaults, each child a default visits must be recorded
+        for (Method method : AstVisitor.class.getDeclaredMethods()) {
+            if (Modifier.isPublic(method.getModifiers()) && method.getName().startsWith("visit")) {
+                assertEquals(ChildCollector.class, ChildCollector.class
+                        .getMethod(method.getName(), method.getParameterTypes()).getDeclaringClass(), method.getName());
+            }
+        }
+    }
+
+    @Test
+    public void testWalkDeepQuery() {
+        // a generated filter with thousands of conditions parses into an OR chain as deep as it is long
+        StringBuilder sql = new StringBuilder("SELECT id FROM my_db.table1 WHERE id = 0");
+        for (int i = 1; i < 10000; i++) {
+            sql.append(" OR id = ").append(i);
+        }
+        INode ast = (INode) new AstParser().parse(sql.toString());
+        ReferredTablesDetector tablesDetector = new ReferredTablesDetector();
+        new AstWalker().walk(ast, tablesDetector);
+        assertEquals(Collections.singletonList("my_db.table1"), tablesDetector.getTables());
+        int[] count = new int[1];
+        AstVisitor<Object> identifierCounter = new AstVisitor<Object>() {
+            @Override
+            public Object visitIdentifier(Identifier identifier) {
+                count[0]++;
+                return null;
+            }
+        };
+        new AstWalker().walk(ast, identifierCounter);
+        // the select column, the database, each condition's function name and column, and the name of each OR
+        assertEquals(2 + 10000 * 2 + 9999, count[0]);
+
+        // far deeper than the Java stack can recurse
+        int depth = 200000;
+        ColumnExpr expr = ColumnExpr.createLiteral(Literal.createNumber("1"));
+        for (int i = 0; i < depth; i++) {
+            expr = ColumnExpr.createFunction(new Identifier("not"), null, Collections.singletonList(expr));
+        }
+        ColumnExpr deepExpr = expr;
+        assertThrows(StackOverflowError.class, () -> identifierCounter.visit(deepExpr));
+        count[0] = 0;
+        new AstWalker().walk(deepExpr, identifierCounter);
+        assertEquals(depth, count[0]);
+    }
+
+    /**
+     * Record the callbacks of a visit, to compare a recursive visit with a walk.
+     */
+    private static class CallbackRecorder extends AstVisitor<Object> {
+
+        private final List<String> calls;
+
+        CallbackRecorder(List<String> calls) {
+            this.calls = calls;
+        }
+
+        @Override
+        public Object visitSelectStatement(SelectStatement selectStatement) {
+            calls.add("select");
+            return super.visitSelectStatement(selectStatement);
+        }
+
+        @Override
+        public Object visitTableIdentifier(TableIdentifier tableIdentifier) {
+            calls.add("table " + tableIdentifier.getQualifiedName());
+            return super.visitTableIdentifier(tableIdentifier);
+        }
+
+        @Override
+        public Object visitIdentifier(Identifier identifier) {
+            calls.add("identifier " + identifier.getName());
+            return null;
+        }
+
+        @Override
+        public Object visitColumnExprList(List<ColumnExpr> exprs) {
+            calls.add("list " + exprs.size());
+            return super.visitColumnExprList(exprs);
+        }
+
+        @Override
+        public Object visitFunctionColumnExpr(ColumnExpr expr) {
+            calls.add("function");
+            return super.visitFunctionColumnExpr(expr);
+        }
+
+        @Override
+        public Object visitLiteral(Literal literal) {
+            calls.add("literal " + literal.asString());
+            return super.visitLiteral(literal);
+        }
+
+        @Override
+        public void leave(Object node) {
+            calls.add("leave " + (node instanceof List ? "list" : node.getClass().getSimpleName()));
+        }
+    }
+
+    @Test
+    public void testNodeKind() {
+        TableIdentifier tableIdentifier = new TableIdentifier(new Identifier("my_db"), new Identifier("my_table"));
+        assertEquals(NodeKind.TABLE_IDENTIFIER, tableIdentifier.getKind());
+        assertEquals(NodeKind.IDENTIFIER, new Identifier("id").getKind());
+        assertEquals(NodeKind.NUMBER_LITERAL, Literal.createNumber("1").getKind());
+        assertEquals(NodeKind.OTHER, new INode().getKind());
+        // the kind is not serialized and comes back on the copy
+        CachingAstParser cachingAstParser = CachingAstParser.withMaximumSize(new AstParser(), 16);
+        assertEquals(NodeKind.SELECT_UNION_QUERY, ((INode) cachingAstParser.parse("SELECT id FROM my_db.my_table")).getKind());
+        INode copy = (INode) cachingAstParser.parse("SELECT id FROM my_db.my_table");
+        assertEquals(NodeKind.SELECT_UNION_QUERY, copy.getKind());
+    }
+
+    @Test
+    public void testFilterSpecElements() {
+        FilterSpecElements range = new FilterSpecElements("2021-10-01", "2021-10-10");
+        FilterSpecElements days = new FilterSpecElements(new HashSet<>(Arrays.asList("2021-10-12", "2021-10-05", "2021-10-11")));
+        assertEquals(2, days.size());
+        assertEquals("FilterSpecElements([2021-10-05, 2021-10-05], [2021-10-11, 2021-10-12])", days.toString());
+        assertEquals("FilterSpecElements([2021-10-05, 2021-10-05])", range.intersect(days).toString());
+        assertEquals("FilterSpecElements([2021-10-01, 2021-10-12])", range.union(days).toString());
+        assertTrue(range.intersect(new FilterSpecElements("2021-11-01", "2021-11-02")).isEmpty());
+        // open bounds are kept as a single range
+        FilterSpecElements open = new FilterSpecElements("negative_inf", "positive_inf");
+        assertEquals(1, open.size());
+        assertEquals(new ArrayList<>(range.getElements()), new ArrayList<>(open.intersect(range).getElements()));
+
+        String sql = "SELECT id FROM my_db1.table1 WHERE my_db1.table1.dt IN ('2021-10-03', '2021-10-01')";
+        MetadataService metadataService = new MetadataService() {
+            @Override
+            public String getPartitionColName(String tableFullName) {
+                return "dt";
+            }
+
+            @Override
+            public List<String> getTables() {
+                return Collections.emptyList();
+            }
+        };
+        List<String> partitions = new ReferredPartitionsDetector("2021-11-02", "127.0.0.1", metadataService)
+                .searchTablePartitions((INode) new AstParser().parse(sql));
+        assertEquals(Arrays.asList("my_db1.table1.2021-10-01", "my_db1.table1.2021-10-03"), partitions);
+    }
+
+    @Test
+    public void testCachingMetadataService() {
+        String sql = "SELECT t1.id FROM my_db1.table1 t1 JOIN my_db2.table2 t2 ON t1.id = t2.id "
+                + "WHERE my_db1.table1.dt = '2021-10-01' AND my_db2.table2.dt = '2021-10-02'";
+        List<Collection<String>> lookups = new ArrayList<>();
+        MetadataService metadataService = new MetadataService() {
+            @Override
+            public String getPartitionColName(String tableFullName) {
+                return getPartitionColNames(Collections.singleton(tableFullName)).get(tableFullName);
+            }
+
+            @Override
+            public Map<String, String> getPartitionColNames(Collection<String> tableFullNames) {
+                lookups.add(new ArrayList<>(tableFullNames));
+                Map<String, String> partitionColNames = new HashMap<>();
+                for (String tableFullName : tableFullNames) {
+                    if (!tableFullName.startsWith("my_db2.")) {
+                        partitionColNames.put(tableFullName, "dt");
+                    }
+                }
+                return partitionColNames;
+            }
+
+            @Override
+            public List<String> getTables() {
+                return Collections.emptyList();
+            }
+        };
+        CachingMetadataService cachingMetadataService = new CachingMetadataService(metadataService, 100, 1, 1, TimeUnit.MINUTES);
+        AstParser astParser = new AstParser();
+        List<String> partitions = new ReferredPartitionsDetector("2021-11-02", "127.0.0.1", cachingMetadataService)
+                .searchTablePartitions((INode) astParser.parse(sql));
+        assertEquals(Collections.singletonList("my_db1.table1.2021-10-01"), partitions);
+        // both tables in one lookup
+        assertEquals(1, lookups.size());
+        assertTrue(lookups.get(0).containsAll(Arrays.asList("my_db1.table1", "my_db2.table2")));
+
+        // a new detector is served by the cache, including the table without partition column
+        assertEquals(partitions, new ReferredPartitionsDetector("2021-11-02", "127.0.0.1", cachingMetadataService)
+                .searchTablePartitions((INode) astParser.parse(sql)));
+        assertEquals(1, lookups.size());
+        assertEquals("dt", cachingMetadataService.getPartitionKey("my_db1.table1"));
+        assertEquals(null, cachingMetadataService.getPartitionKey("my_db2.table2"));
+        assertEquals(1, lookups.size());
+
+        cachingMetadataService.invalidate("my_db2.table2");
+        assertEquals(null, cachingMetadataService.getPartitionKey("my_db2.table2"));
+        assertEquals(2, lookups.size());
+    }
+
+    @Test
+    public void testDateUtil() {
+        for (int epochDay = -800; epochDay < 40000; epochDay += 7) {
+            LocalDate date = LocalDate.ofEpochDay(epochDay);
+            assertEquals(date.toString(), DateUtil.formatEpochDay(epochDay));
+            assertEquals(epochDay, DateUtil.parseEpochDay(date.toString()));
+        }
+        assertEquals(DateUtil.parseEpochDay("2021-03-01"), DateUtil.parseEpochDay("2021-3-1"));
+        assertEquals(DateUtil.parseEpochDay("2021-03-01"), DateUtil.parseEpochDay("2021-03-01 10:00:00"));
+        assertEquals(DateUtil.INVALID_EPOCH_DAY, DateUtil.parseEpochDay("2021-02-29"));
+        assertEquals(DateUtil.INVALID_EPOCH_DAY, DateUtil.parseEpochDay("2021-13-01"));
+        assertEquals(DateUtil.INVALID_EPOCH_DAY, DateUtil.parseEpochDay("20210301"));
+        assertEquals(DateUtil.INVALID_EPOCH_DAY, DateUtil.parseEpochDay("today"));
+        assertEquals(DateUtil.INVALID_EPOCH_DAY, DateUtil.parseEpochDay(null));
+
+        assertEquals("2021-03-01", DateUtil.nextDay("2021-02-28"));
+        assertEquals("2020-02-29", DateUtil.lastDay("2020-03-01"));
+        assertEquals(null, DateUtil.addDays("not a date", 1));
+
+        ZoneId zoneId = DateUtil.getZoneId();
+        assertEquals(LocalDateTime.of(2021, 10, 1, 23, 59, 59).atZone(zoneId).toEpochSecond(),
+                DateUtil.parseEpochSecond("2021-10-01 23:59:59"));
+        assertEquals(DateUtil.INVALID_EPOCH_SECOND, DateUtil.parseEpochSecond("2021-10-01 24:00:00"));
+        assertEquals("2021-10-01 23:59:59", DateUtil.formatEpochSecond(DateUtil.parseEpochSecond("2021-10-01 23:59:59")));
+        assertEquals(18901, DateUtil.epochDayOfEpochSecond(DateUtil.parseEpochSecond("2021-10-01 00:00:00")));
+        assertEquals("2021-10-01", DateUtil.formatDate(DateUtil.parseDatetime("2021-10-01 00:00:00")));
+    }
+
+    @Test
+    public void testPartitionKey() {
+        AstParser astParser = new AstParser();
+        CreateTableQuery createTableQuery = (CreateTableQuery) astParser.parse("CREATE TABLE my_db.events (ts DateTime, "
+                + "id UInt64) ENGINE = MergeTree() PARTITION BY toYYYYMM(ts) ORDER BY id");
+        PartitionKey monthKey = PartitionKey.of(createTableQuery);
+        assertEquals(new PartitionKey("ts", PartitionKey.Transform.TO_YYYYMM), monthKey);
+        // partitions of a tuple are named after all its components
+        assertEquals(null, PartitionKey.parse("(toDate(ts), tenant_id)"));
+        assertEquals(null, PartitionKey.parse("tuple(tenant_id, toDate(ts))"));
+        assertEquals(new PartitionKey("ts", PartitionKey.Transform.TO_DATE), PartitionKey.parse("tuple(toDate(ts))"));
+        assertEquals(new PartitionKey("ts", PartitionKey.Transform.TO_START_OF_HOUR), PartitionKey.parse("toStartOfHour(ts)"));
+        assertEquals(new PartitionKey("dt", PartitionKey.Transform.IDENTITY), PartitionKey.parse("dt"));
+        assertEquals(new PartitionKey("_dt2", PartitionKey.Transform.IDENTITY), PartitionKey.parse("_dt2"));
+        assertEquals(null, PartitionKey.parse("NULL"));
+        assertEquals(null, PartitionKey.parse("tenant_id % 16"));
+        // parsed expressions are cached
+        assertSame(PartitionKey.parse("toStartOfHour(ts)"), PartitionKey.parse("toStartOfHour(ts)"));
+
+        Map<String, String> partitionKeys = new HashMap<>();
+        partitionKeys.put("my_db.hourly", "toStartOfHour(ts)");
+        partitionKeys.put("my_db.daily", "toDate(ts)");
+        partitionKeys.put("my_db.tenants", "(toDate(ts), tenant_id)");
+        MetadataService metadataService = new MetadataService() {
+            @Override
+            public String getPartitionColName(String tableFullName) {
+                return null;
+            }
+
+            @Override
+            public Map<String, String> getPartitionKeys(Collection<String> tableFullNames) {
+                return partitionKeys;
+            }
 
+            @Override
+            public List<String> getTables() {
+                return Collections.emptyList();
+            }
+        };
+
+        ReferredPartitionsDetector detector = new ReferredPartitionsDetector("2021-11-02", "127.0.0.1", metadataService);
+        detector.setPartitionKey("my_db.events", monthKey);
+        List<String> partitions = detector.searchTablePartitions((INode) astParser.parse("SELECT id FROM my_db.events "
+                + "WHERE my_db.events.ts > '2021-10-31 10:00:00' AND my_db.events.ts < '2021-12-01'"));
+        assertEquals(Arrays.asList("my_db.events.202110", "my_db.events.202111"), partitions);
+
+        partitions = new ReferredPartitionsDetector("2021-11-02", "127.0.0.1", metadataService)
+                .searchTablePartitions((INode) astParser.parse("SELECT id FROM my_db.hourly "
+                        + "WHERE my_db.hourly.ts >= '2021-10-01 22:00:00' AND my_db.hourly.ts < '2021-10-02'"));
+        assertEquals(24, partitions.size());
+        assertEquals("my_db.hourly.2021-10-01 00:00:00", partitions.get(0));
+        assertEquals("my_db.hourly.2021-10-01 23:00:00", partitions.get(23));
+
+        // a date is midnight for a DateTime column, so greater keeps the day
+        partitions = new ReferredPartitionsDetector("2021-11-02", "127.0.0.1", metadataService)
+                .searchTablePartitions((INode) astParser.parse("SELECT id FROM my_db.daily "
+                        + "WHERE my_db.daily.ts > '2021-10-01' AND my_db.daily.ts <= '2021-10-02'"));
+        assertEquals(Arrays.asList("my_db.daily.2021-10-01", "my_db.daily.2021-10-02"), partitions);
+
+        // no names like my_db.tenants.2021-10-01 for partitions that are really ('2021-10-01', 3)
+        partitions = new ReferredPartitionsDetector("2021-11-02", "127.0.0.1", metadataService)
+                .searchTablePartitions((INode) astParser.parse("SELECT id FROM my_db.tenants "
+                        + "WHERE my_db.tenants.ts > '2021-10-01' AND my_db.tenants.ts <= '2021-10-02'"));
+        assertEquals(Collections.emptyList(), partitions);
+    }
+
+    @Test
+    public void testPredicateRangeAnalyzer() {
+        ValueRangeSet range = ValueRangeSet.range(1, true, 5, false).union(ValueRangeSet.range(5, true, 8, true));
+        assertEquals("[1, 8]", range.toString());
+        assertEquals("(-inf, 1) U (8, +inf)", range.complement().toString());
+        assertEquals("[3, 8]", range.intersect(ValueRangeSet.range(3, true, Long.MAX_VALUE, false)).toString());
+        assertTrue(range.intersect(ValueRangeSet.point(9)).isEmpty());
+        assertTrue(ValueRangeSet.range(1, false, 1, true).isEmpty());
+        ValueRangeSet fractions = ValueRangeSet.range(1.5, true, 5, false).union(ValueRangeSet.range(5, true, 8.5, true));
+        assertEquals("[1.5, 8.5]", fractions.toString());
+        assertEquals("[3, 8.5]", fractions.intersect(ValueRangeSet.range(3, true, Double.POSITIVE_INFINITY, false))
+                .toString());
+
+        AstParser astParser = new AstParser();
+        SelectUnionQuery query = (SelectUnionQuery) astParser.parse("SELECT * FROM my_db.t PREWHERE id > 5 "
+                + "WHERE (id BETWEEN 1 AND 20) AND (name = 'a' OR name IN ('b', 'c')) AND (kind = 1 OR id = 3) "
+                + "AND 100 >= score AND score NOT IN (0, 50) AND dt >= toDate('2021-10-01')");
+        Map<String, ValueRangeSet> ranges = new PredicateRangeAnalyzer().analyze(query.getStatements().get(0));
+        assertEquals("(5, 20]", ranges.get("id").toString());
+        assertEquals("['a', 'a'] U ['b', 'b'] U ['c', 'c']", ranges.get("name").toString());
+        assertTrue(ranges.get("name").isPoints());
+        // kind is only restricted by one side of the OR
+        assertFalse(ranges.containsKey("kind"));
+        assertEquals("(-inf, 0) U (0, 50) U (50, 100]", ranges.get("score").toString());
+        assertEquals("['2021-10-01', +inf)", ranges.get("dt").toString());
+
+        ranges = new PredicateRangeAnalyzer("id"::equals).analyze(query.getStatements().get(0));
+        assertEquals(Collections.singleton("id"), ranges.keySet());
+
+        query = (SelectUnionQuery) astParser.parse("SELECT * FROM my_db.t WHERE t.id = -1 AND t.id > 0");
+        ranges = new PredicateRangeAnalyzer().analyze(query.getStatements().get(0));
+        assertTrue(ranges.get("t.id").isEmpty());
+
+        // integers keep long bounds, 2^53 + 1 is not rounded onto its neighbours
+        query = (SelectUnionQuery) astParser.parse("SELECT * FROM my_db.t WHERE id > 9007199254740992 "
+                + "AND id <= 9007199254740993 AND ratio < 0.5");
+        ranges = new PredicateRangeAnalyzer().analyze(query.getStatements().get(0));
+        assertEquals(ValueRangeSet.ValueType.INTEGER, ranges.get("id").getType());
+        assertEquals("(9007199254740992, 9007199254740993]", ranges.get("id").toString());
+        assertEquals(9007199254740993L, ranges.get("id").getIntegerHigh(0));
+        assertEquals(ValueRangeSet.ValueType.NUMBER, ranges.get("ratio").getType());
+        query = (SelectUnionQuery) astParser.parse("SELECT * FROM my_db.t WHERE id = 9007199254740993 "
+                + "AND id != 9007199254740992");
+        ranges = new PredicateRangeAnalyzer().analyze(query.getStatements().get(0));
+        assertEquals("[9007199254740993, 9007199254740993]", ranges.get("id").toString());
+    }
+
+    @Test
+    public void testReusableDetectors() {
+        String sql1 = "SELECT t1.id FROM my_db1.table1 t1 JOIN my_db2.table2 t2 ON t1.id = t2.id "
+                + "WHERE my_db1.table1.dt = '2021-10-01'";
+        String sql2 = "INSERT INTO my_db3.table3 (id) SELECT id FROM my_db4.table4 WHERE my_db4.table4.dt IN ('2021-10-02', '2021-10-03')";
+        MetadataService metadataService = new MetadataService() {
+            @Override
+            public String getPartitionColName(String tableFullName) {
+                return "dt";
+            }
+
+            @Override
+            public List<String> getTables() {
+                return Collections.emptyList();
+            }
+        };
+        AstParser astParser = new AstParser();
+
+        ReferredTablesDetector tablesDetector = new ReferredTablesDetector();
+        ReferredPartitionsDetector partitionsDetector = new ReferredPartitionsDetector("2021-11-02", "127.0.0.1", metadataService);
+        DataLineageDetector lineageDetector = new DataLineageDetector();
+        for (String sql : Arrays.asList(sql1, sql2, sql1)) {
+            assertEquals(new ReferredTablesDetector().searchTables((INode) astParser.parse(sql)),
+                    tablesDetector.analyze((INode) astParser.parse(sql)));
+            assertEquals(new ReferredPartitionsDetector("2021-11-02", "127.0.0.1", metadataService)
+                            .searchTablePartitions((INode) astParser.parse(sql)),
+                    partitionsDetector.analyze((INode) astParser.parse(sql)));
+        }
+        String sql3 = "INSERT INTO my_db3.table3 (id, name) SELECT t1.id, t1.name FROM my_db4.table4 t1";
+        String sql4 = "INSERT INTO my_db3.table3 (id) SELECT t1.id FROM (SELECT id1 + id2 AS id FROM my_db4.table4) t1";
+        for (String sql : Arrays.asList(sql3, sql4, sql3)) {
+            DataLineageDetector newLineageDetector = new DataLineageDetector();
+            newLineageDetector.visit((INode) astParser.parse(sql));
+            List<FieldLineageInfo> fieldLineage = lineageDetector.analyze((INode) astParser.parse(sql));
+            assertFalse(fieldLineage.isEmpty());
+            assertEquals(newLineageDetector.getFieldLineage(), fieldLineage);
+        }
+        assertEquals(Collections.singletonList("my_db1.table1.2021-10-01"), partitionsDetector.getTablePartitions());
+
+        // a walk after a reset
+        new AstWalker().walk((INode) astParser.parse(sql2), partitionsDetector.reset());
+        assertEquals(Arrays.asList("my_db4.table4.2021-10-02", "my_db4.table4.2021-10-03"), partitionsDetector.getTablePartitions());
+    }
+
+    @Test
+    public void testBuildAstWhileParsing() {
+        List<String> sqls = Arrays.asList(
+                "SELECT t1.id, count(1) as total_count FROM my_db1.table1 t1 LEFT JOIN my_db2.table2 t2 ON t1.id = t2.id GROUP BY t1.id",
+                "SELECT * FROM t WHERE uid global in (SELECT uid FROM t2) AND (a BETWEEN 1 AND 2) FORMAT JSON",
+                "WITH 1 AS x SELECT a, b FROM (SELECT a, b FROM my_db.t3 WHERE b != 0) UNION ALL SELECT a, b FROM my_db.t4",
+                "INSERT INTO my_db.my_tbl SELECT id, arrayMap(x -> x + 1, arr) FROM my_db.t5",
+                "CREATE TABLE my_db.events (ts DateTime, id UInt64) ENGINE = MergeTree() PARTITION BY toYYYYMM(ts) ORDER BY id",
+                "ALTER TABLE my_db.my_tbl DELETE WHERE id = 1");
+        AstParser astParser = new AstParser();
+        AstParser eagerParser = new AstParser();
+        eagerParser.setBuildAstWhileParsing(true);
+        AstParser eagerTwoStageParser = new AstParser(false, true);
+        eagerTwoStageParser.setBuildAstWhileParsing(true);
+        for (String sql : sqls) {
+            Object ast = astParser.parse(sql);
+            assertEquals(ast, eagerParser.parse(sql));
+            assertEquals(ast, eagerTwoStageParser.parse(sql));
+        }
+        // the pooled session must not keep the listener
+        assertEquals(astParser.parse(sqls.get(0)), new AstParser().parse(sqls.get(0)));
+    }
+
+    @Test
+    public void testLiteralList() {
+        AstParser astParser = new AstParser();
+        astParser.setCompactLiteralLists(true);
+        String[] lists = {
+                "1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, -17, 123456789012345678",
+                "'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'i', 'j', 'k', 'l', 'm', 'n', 'o', 'p', 'it''s'",
+                "1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 007, -0, 0x1F, 1.5e3, -inf, 9223372036854775808"};
+        for (String list : lists) {
+            for (String sql : Arrays.asList("SELECT [" + list + "]", "SELECT a FROM t WHERE x IN (" + list + ")")) {
+                SelectStatement selectStatement = ((SelectUnionQuery) astParser.parse(sql)).getStatements().get(0);
+                FunctionColumnExpr literalList = (FunctionColumnExpr) (null == selectStatement.getWhereClause()
+                        ? selectStatement.getExprs().get(0)
+                        : ((FunctionColumnExpr) selectStatement.getWhereClause().getWhereExpr()).getArgs().get(1));
+                assertTrue(literalList instanceof LiteralListColumnExpr, sql);
+                // equal to the list of literal nodes it replaces, without materializing them
+                List<ColumnExpr> args = new ArrayList<>(LiteralListColumnExpr.readArgs(literalList));
+                FunctionColumnExpr plain = new FunctionColumnExpr(literalList.getName(), null, args) {
+                };
+                assertEquals(literalList, plain);
+                assertEquals(plain.hashCode(), literalList.hashCode());
+                assertTrue(((LiteralListColumnExpr) literalList).isCompact(), sql);
+                assertEquals(plain, literalList);
+                assertEquals(list.split(", ").length, args.size());
+                assertEquals(list.split(", ")[args.size() - 1].replace("'", ""),
+                        ((LiteralColumnExpr) args.get(args.size() - 1)).getLiteral().toString().replace("'", ""));
+                // getArgs materializes an ordinary list which keeps edits
+                List<ColumnExpr> materialized = literalList.getArgs();
+                assertFalse(((LiteralListColumnExpr) literalList).isCompact(), sql);
+                assertEquals(literalList, plain);
+                assertEquals(args, materialized);
+                assertEquals(plain.hashCode(), literalList.hashCode());
+                ColumnExpr first = ColumnExpr.createLiteral(Literal.createNull());
+                materialized.set(0, first);
+                materialized.add(ColumnExpr.createLiteral(Literal.createNull()));
+                assertSame(materialized, literalList.getArgs());
+                assertEquals(args.size() + 1, literalList.getArgs().size());
+                assertSame(first, literalList.getArgs().get(0));
+                assertNotEquals(plain, literalList);
+            }
+        }
+        // short and mixed lists stay function nodes
+        for (String list : Arrays.asList("1, 2, 3", lists[0] + ", 'a'", lists[0] + ", NULL", lists[0] + ", x")) {
+            SelectStatement selectStatement = ((SelectUnionQuery) astParser.parse("SELECT [" + list + "]")).getStatements().get(0);
+            assertFalse(selectStatement.getExprs().get(0) instanceof LiteralListColumnExpr, list);
+        }
+        // off by default
+        SelectStatement selectStatement = ((SelectUnionQuery) new AstParser().parse("SELECT [" + lists[0] + "]"))
+                .getStatements().get(0);
+        assertFalse(selectStatement.getExprs().get(0) instanceof LiteralListColumnExpr);
+    }
+
+    @Test
+    public void testLiteralListStaysCompact() {
+        StringBuilder values = new StringBuilder("0");
+        for (int i = 1; i < 100; i++) {
+            values.append(", ").append(i);
+        }
+        String sql = "SELECT id, name FROM my_db.my_tbl WHERE my_db.my_tbl.dt = '2021-10-01' AND id IN (" + values + ")";
+        AstParser astParser = new AstParser();
+        astParser.setCompactLiteralLists(true);
+        SelectUnionQuery ast = (SelectUnionQuery) astParser.parse(sql);
+        LiteralListColumnExpr literalList = literalList(ast);
+        INode insert = (INode) astParser.parse("INSERT INTO TABLE my_db.result (id, name) " + sql);
+        MetadataService metadataService = new MetadataService() {
+            @Override
+            public String getPartitionColName(String tableFullName) {
+                return "dt";
+            }
+
+            @Override
+            public List<String> getTables() {
+                return Collections.emptyList();
+            }
+        };
+
+        // analyses only read the literals
+        assertEquals(Collections.singletonList("my_db.my_tbl"), new ReferredTablesDetector().searchTables(ast));
+        assertEquals(Collections.singletonList("my_db.my_tbl.2021-10-01"),
+                new ReferredPartitionsDetector("2021-11-02", "127.0.0.1", metadataService).searchTablePartitions(ast));
+        new DataLineageDetector().visit(insert);
+        SelectUnionQuery plain = (SelectUnionQuery) new AstParser().parse(sql);
+        assertEquals(new PredicateRangeAnalyzer().analyze(plain.getStatements().get(0)),
+                new PredicateRangeAnalyzer().analyze(ast.getStatements().get(0)));
+        int[] literals = new int[1];
+        AstVisitor<Object> literalCounter = new AstVisitor<Object>() {
+            @Override
+            public Object visitLiteralColumnExpr(ColumnExpr expr) {
+                literals[0]++;
+                return null;
+            }
+        };
+        literalCounter.visit(ast);
+        new AstWalker().walk(ast, literalCounter);
+        assertEquals(2 * 101, literals[0]);
+        assertEquals(ast, AstCopier.copy(ast));
+        assertTrue(literalList.isCompact());
+        assertTrue(literalList(insert).isCompact());
+    }
+
+    private static LiteralListColumnExpr literalList(INode ast) {
+        LiteralListColumnExpr[] literalList = new LiteralListColumnExpr[1];
+        new AstVisitor<Object>() {
+            @Override
+            public Object visitFunctionColumnExpr(ColumnExpr expr) {
+                if (expr instanceof LiteralListColumnExpr) {
+                    literalList[0] = (LiteralListColumnExpr) expr;
+                }
+                return super.visitFunctionColumnExpr(expr);
+            }
+        }.visit(ast);
+        return literalList[0];
+    }
+
+    @Test
+    public void testInternNames() {
+        String sql = "SELECT id, name FROM my_db.my_tbl WHERE id = 1 AND name = 'a'";
+        AstParser plainParser = new AstParser();
+        AstParser internParser = new AstParser();
+        internParser.setInternNames(true);
+        SelectStatement plain = ((SelectUnionQuery) plainParser.parse(sql)).getStatements().get(0);
+        SelectStatement first = ((SelectUnionQuery) internParser.parse(sql)).getStatements().get(0);
+        SelectStatement second = ((SelectUnionQuery) internParser.parse(new String(sql.toCharArray()))).getStatements().get(0);
+        assertEquals(plain, first);
+        assertEquals(first, second);
+        String firstName = ((IdentifierColumnExpr) first.getExprs().get(1)).getIdentifier().getName();
+        String secondName = ((IdentifierColumnExpr) second.getExprs().get(1)).getIdentifier().getName();
+        assertSame(firstName, secondName);
+        assertNotSame(((IdentifierColumnExpr) plain.getExprs().get(1)).getIdentifier().getName(), firstName);
+        // operator names are shared with or without interning
+        FunctionColumnExpr plainWhere = (FunctionColumnExpr) plain.getWhereClause().getWhereExpr();
+        FunctionColumnExpr where = (FunctionColumnExpr) second.getWhereClause().getWhereExpr();
+        assertSame(plainWhere.getName(), where.getName());
+        assertSame(((FunctionColumnExpr) plainWhere.getArgs().get(0)).getName(),
+                ((FunctionColumnExpr) where.getArgs().get(1)).getName());
+    }
+
+    @Test
+    public void testLazyInsertData() {
+        StringBuilder values = new StringBuilder(" (0, 'a')");
+        for (int i = 1; i < 10000; i++) {
+            values.append(", (").append(i).append(", 'a''b\\'c')");
+        }
+        String header = "INSERT INTO my_db.my_tbl (id, name) VALUES";
+        List<String> sqls = Arrays.asList(header + values, header + " ('unterminated !x",
+                "INSERT INTO my_db.my_tbl FORMAT CSV\n1,\"a\"\n2,'b\n", "INSERT INTO TABLE values VALUES (1)",
+                "INSERT INTO FUNCTION remote('127.0.0.1', my_db.my_tbl) VALUES (1)",
+                "INSERT INTO my_db.my_tbl SELECT * FROM values('id Int8', 1, 2)");
+        AstParser astParser = new AstParser();
+        AstParser lazyParser = new AstParser();
+        lazyParser.setLazyInsertData(true);
+        for (boolean useFastLexer : Arrays.asList(false, true)) {
+            ParserSession.setUseFastLexer(useFastLexer);
+            try {
+                for (String sql : sqls) {
+                    Object ast = astParser.parse(sql);
+                    assertEquals(ast, lazyParser.parse(sql));
+                    assertEquals(0, lazyParser.parseAll(Collections.singletonList(sql)).get(0).getSyntaxErrorCount(), sql);
+                    DataClause dataClause = ((InsertQuery) ast).getDataClause();
+                    if (null != dataClause.getData()) {
+                        assertEquals(sql.substring(dataClause.getOffset()), dataClause.getData().toString());
+                    }
+                }
+            } finally {
+                ParserSession.setUseFastLexer(false);
+            }
+        }
+        DataClause dataClause = ((InsertQuery) lazyParser.parse(sqls.get(0))).getDataClause();
+        assertEquals(values.toString(), dataClause.getData().toString());
+        assertEquals(values.length(), dataClause.getData().length());
+
+        // only the header and EOF are lexed
+        ParserSession session = new ParserSession();
+        session.setLazyInsertData(true);
+        session.reset(sqls.get(0), false);
+        session.parseSll();
+        assertEquals(12, session.getTokenCount());
+        assertEquals(Token.EOF, session.getTokens().get(11).getType());
+        session.reset(sqls.get(2), false);
+        session.parseSll();
+        assertEquals(8, session.getTokenCount());
+        assertEquals(Token.EOF, session.getTokens().get(7).getType());
+        // the token after VALUES is read ahead otherwise
+        session.setLazyInsertData(false);
+        session.reset(sqls.get(0), false);
+        session.parseSll();
+        assertEquals(ClickHouseLexer.LPAREN, session.getTokens().get(11).getType());
+    }
+
+    @Test
+    public void testFastLexer() {
+        List<String> sqls = new ArrayList<>(Arrays.asList(
+                "SELECT t1.id, count(1) as total_count FROM my_db1.table1 t1 LEFT JOIN my_db2.table2 t2 ON t1.id = t2.id GROUP BY t1.id",
+                "select a, b from `my db`.\"t\"\"1\" where x in (1, 2.5, .5e3, 1e-5, 0x1F, 0x1.8p3, 0x1e+5, 017, 019, inf, Infinity, nan) format JSON",
+                "INSERT INTO t VALUES ('a''b', 'c\\'d', NULL, true, false, TRUE, yyyy, asc, is_object_id)\n-- comment\r\n/* block\n */ x",
+                "SELECT a || b, a -> b, a == b, a != b, a <> b, a <= b, a >= b, {x:UInt8}, [1], a % 2 ? 1 : 0; _ _a a_1",
+                "'unterminated", "`unterminated", "\"unterminated", "'trailing\\", "/* unterminated", "-- at end",
+                "a | b", "a !b", "!", "|", "$x @y #z ^ & ~", "\u00e9l\u00e8ve 'caf\u00e9'", "1.", "1.e", "0x", "0x.p1", "0xe", "1e+", ""));
+        String[] fragments = {"SELECT", "select", "FrOm", "true", "false", "x", "_", "ab_1", "0", "1", "07", "9", "0x",
+                "0X1f", "e", "E", "p", "+", "-", ".", "'", "''", "\\", "`", "\"", " ", "\n", "\r", "\t", "--", "/*", "*/",
+                "*", "/", "|", "||", "!", "=", "<", ">", "(", ")", ",", ";", "{", "}", "$", "\u00e9", "INFINITY", "null"};
+        Random random = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            StringBuilder sql = new StringBuilder();
+            for (int j = random.nextInt(20); j >= 0; j--) {
+                sql.append(fragments[random.nextInt(fragments.length)]);
+            }
+            sqls.add(sql.toString());
+        }
+        // longer than the chunks the statement is copied in
+        for (int i = 0; i < 50; i++) {
+            StringBuilder sql = new StringBuilder();
+            for (int j = random.nextInt(20000); j >= 0; j--) {
+                sql.append(fragments[random.nextInt(fragments.length)]);
+            }
+            sqls.add(sql.toString());
+        }
+        ClickHouseLexer lexer = new ClickHouseLexer(new StringCharStream(""));
+        FastClickHouseLexer fastLexer = new FastClickHouseLexer(new StringCharStream(""));
+        for (String sql : sqls) {
+            assertEquals(lex(lexer, sql), lex(fastLexer, sql), sql);
+        }
+
+        AstParser astParser = new AstParser();
+        Object ast = astParser.parse(sqls.get(0));
+        ParserSession.setUseFastLexer(true);
+        try {
+            assertEquals(ast, astParser.parse(sqls.get(0)));
+        } finally {
+            ParserSession.setUseFastLexer(false);
+        }
+    }
+
+    private static List<String> lex(ClickHouseLexer lexer, String sql) {
+        List<String> tokens = new ArrayList<>();
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(new BaseErrorListener() {
+            @Override
+            public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line,
+                                    int charPositionInLine, String msg, RecognitionException e) {
+                tokens.add(line + ":" + charPositionInLine + " " + msg);
+            }
+        });
+        lexer.setInputStream(new StringCharStream(sql));
+        Token token;
+        do {
+            token = lexer.nextToken();
+            tokens.add(token.getType() + " " + token.getStartIndex() + "-" + token.getStopIndex() + " "
+                    + token.getLine() + ":" + token.getCharPositionInLine() + " " + token.getText());
+        } while (token.getType() != Token.EOF);
+        return tokens;
+    }
 }
@@ -2,10 +2,26 @@ package com.clickhouse.visitor;
 
 import com.clickhouse.parser.ast.INode;
 import com.clickhouse.parser.ast.SelectUnionQuery;
+import com.clickhouse.parser.ast.expr.ColumnExpr;
+import com.clickhouse.parser.ast.expr.FunctionColumnExpr;
+import com.clickhouse.parser.ast.expr.LiteralListColumnExpr;
 import com.clickhouse.parser.AstParser;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.Test;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 @Slf4j
 public class TestRewriter {
 
@@ -44,4 +60,118 @@ public class TestRewriter {
         log.info(rewrittenSql);
     }
 
+    @Test
+    public void testStreamingSqlRenderer() throws IOException {
+        AstParser astParser = new AstParser(false);
+        for (String sql : readQueries("/select_queries.sql")) {
+            SelectUnionQuery ast = (SelectUnionQuery) astParser.parse(sql);
+            StringBuilder streamed = new StringBuilder("-- ");
+            new StreamingSqlRenderer(streamed).render(ast);
+            assertEquals("-- " + new ClickHouseSqlBuilder().build(ast), streamed.toString(), sql);
+
+            GlobalJoinAstRewriter expected = new GlobalJoinAstRewriter();
+            GlobalJoinAstRewriter actual = new GlobalJoinAstRewriter();
+            StringWriter writer = new StringWriter();
+            new StreamingSqlRenderer(actual, writer).render(ast);
+            assertEquals(expected.visit(ast), writer.toString(), sql);
+            assertEquals(expected.isWithoutGlobalKeyword(), actual.isWithoutGlobalKeyword(), sql);
+        }
+
+        // a Writer gets the query clause by clause
+        SelectUnionQuery ast = (SelectUnionQuery) astParser.parse(
+                "SELECT a, count() FROM t WHERE b = 1 GROUP BY a ORDER BY a LIMIT 10");
+        List<String> chunks = new ArrayList<>();
+        StringWriter writer = new StringWriter() {
+            @Override
+            public StringWriter append(CharSequence csq) {
+                chunks.add(csq.toString());
+                return super.append(csq);
+            }
+        };
+        new StreamingSqlRenderer(writer).render(ast);
+        assertEquals(new ClickHouseSqlBuilder().build(ast), writer.toString());
+        assertTrue(chunks.size() > 1);
+    }
+
+    private static List<String> readQueries(String resource) throws IOException {
+        List<String> sqls = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                TestRewriter.class.getResourceAsStream(resource), StandardCharsets.UTF_8))) {
+            String line;
+            while (null != (line = reader.readLine())) {
+                if (!line.isEmpty() && !line.startsWith("--")) {
+                    sqls.add(line);
+                }
+            }
+        }
+        return sqls;
+    }
+
+    @Test
+    public void testFingerprint() {
+        AstParser astParser = new AstParser(false);
+        QueryFingerprinter fingerprinter = new QueryFingerprinter();
+        QueryFingerprint first = fingerprinter.fingerprint((INode) astParser.parse(
+                "SELECT id, name FROM my_db.t WHERE id IN (1, 2, 3) AND name = 'abc' AND dt >= '2021-01-01' LIMIT 10"));
+        QueryFingerprint second = fingerprinter.fingerprint((INode) astParser.parse(
+                "select ID,  NAME from MY_DB.T where ID in (7) and NAME = 'xyz'\n and DT >= '2022-02-02' limit 100"));
+        QueryFingerprint third = fingerprinter.fingerprint((INode) astParser.parse(
+                "SELECT id, name FROM my_db.t WHERE id IN (1, 2, 3) OR name = 'abc' AND dt >= '2021-01-01' LIMIT 10"));
+        log.info(first.getTemplate());
+        assertEquals(first, second);
+        assertEquals(first.getLow(), fingerprinter.fingerprint64((INode) astParser.parse(
+                "SELECT id, name FROM my_db.t WHERE id IN (5, 6) AND name = '' AND dt >= '2020-01-01' LIMIT 1")));
+        assertNotEquals(first.getLow(), third.getLow());
+        assertNotEquals(first.getTemplate(), third.getTemplate());
+        assertEquals(-1, first.getTemplate().indexOf("abc"));
+
+        // function names are case-sensitive in ClickHouse, only column, table and alias names are folded
+        String template = fingerprinter.fingerprint((INode) astParser.parse(
+                "SELECT toDate(DT) AS Day, countIf(X > 1) FROM My_Db.T WHERE ID != 1 GROUP BY Day")).getTemplate();
+        assertTrue(template.contains("toDate(dt) AS day"), template);
+        assertTrue(template.contains("countIf((x) > (?) )"), template);
+        assertTrue(template.contains("FROM my_db.t "), template);
+        assertTrue(template.contains("(id) != (?)"), template);
+    }
+
+    @Test
+    public void testLiteralList() {
+        StringBuilder values = new StringBuilder("1");
+        for (int i = 2; i <= 100; i++) {
+            values.append(", ").append(i);
+        }
+        String sql = "SELECT a FROM t WHERE dt = '2021-10-01' AND x IN (" + values + ") AND y IN ('" +
+                values.toString().replace(", ", "', '") + "')";
+        for (boolean compactLiteralLists : new boolean[]{false, true}) {
+            AstParser astParser = new AstParser(false);
+            astParser.setCompactLiteralLists(compactLiteralLists);
+            INode ast = (INode) astParser.parse(sql);
+            String built = new BaseSqlBuilder().visit(ast);
+            assertTrue(built.contains("IN (" + values.toString().replace(", ", ",") + ")"), built);
+            assertEquals(built, new BaseSqlBuilder().visit((INode) astParser.parse(built)));
+            QueryFingerprinter fingerprinter = new QueryFingerprinter();
+            assertEquals(fingerprinter.fingerprint64(ast), fingerprinter.fingerprint64((INode) astParser.parse(
+                    sql.replace("IN (1, ", "IN (0, 1, "))));
+
+            SelectUnionQuery query1 = (SelectUnionQuery) ast;
+            SelectUnionQuery query2 = (SelectUnionQuery) astParser.parse(sql.replace("2021-10-01", "2021-10-02"));
+            WhereClauseComparator comparator = new WhereClauseComparator();
+            ComparedResult result = comparator.compare(query1.getStatements().get(0).getWhereClause(),
+                    query2.getStatements().get(0).getWhereClause());
+            assertTrue(result.isOnlyDateDifferent());
+            query2 = (SelectUnionQuery) astParser.parse(sql.replace(", 50,", ", 51,"));
+            result = comparator.compare(query1.getStatements().get(0).getWhereClause(),
+                    query2.getStatements().get(0).getWhereClause());
+            assertFalse(result.isTotallyTheSame());
+            // rendering, fingerprinting and comparing only read the literal lists
+            for (ColumnExpr condition : ((FunctionColumnExpr) query1.getStatements().get(0).getWhereClause()
+                    .getWhereExpr()).getArgs()) {
+                ColumnExpr list = ((FunctionColumnExpr) condition).getArgs().get(1);
+                if ("in".equals(((FunctionColumnExpr) condition).getName().getName())) {
+                    assertEquals(compactLiteralLists, list instanceof LiteralListColumnExpr
+                            && ((LiteralListColumnExpr) list).isCompact());
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,74 @@
+-- SELECT queries the SQL renderers are compared on, one per line
+SELECT t1.a FROM t1 RIGHT JOIN t2 ON t1.id = t2.id LIMIT 1000
+SELECT t1.id, count(1) as total_count FROM my_db1.table1 t1 LEFT JOIN my_db2.table2 t2 ON t1.id = t2.id GROUP BY t1.id
+SELECT * FROM t WHERE uid global in (SELECT uid FROM t2) FORMAT JSON
+SELECT a FROM my_db.my_tbl WHERE dt >= '2021-10-01' AND dt <= '2021-10-31' AND x IN (1, 2, 3) ORDER BY a DESC LIMIT 10
+WITH 1 AS x SELECT a, b FROM (SELECT a, b FROM my_db.t3 WHERE b != 0) UNION ALL SELECT a, b FROM my_db.t4
+SELECT t1.id FROM my_db1.table1 t1 JOIN my_db2.table2 t2 ON t1.id = t2.id
+SELECT id, name FROM my_db.table
+SELECT id FROM t1
+SELECT id FROM t2
+SELECT id FROM db.t3
+SELECT 1 / 2
+SELECT t1.id, count(1) FROM my_db1.table1 t1 GLOBAL JOIN my_db2.table2 t2 ON t1.id = t2.id GROUP BY t1.id
+SELECT id, count() FROM my_db.t1 WHERE id IN (1, 2) GROUP BY id
+SELECT * FROM t1 AS a GLOBAL LEFT JOIN my_db.t2 b ON a.id = b.id JOIN t3 USING (id) LIMIT 10
+SELECT a FROM `my_db`.`t1` FINAL UNION ALL SELECT a FROM t2 FORMAT JSON
+SELECT * FROM (SELECT id FROM my_db.t1) t
+SELECT id FROM t1 WHERE id IN (SELECT id FROM t2)
+SELECT number FROM numbers(10)
+SELECT a FROM t1, t2
+SELECT s FROM t1 ARRAY JOIN arr AS s
+SELECT id, name FROM my_db.t1 WHERE id IN (1, 2, 3)
+SELECT t1.id, count(1) FROM my_db1.table1 t1 LEFT JOIN my_db2.table2 t2 ON t1.id = t2.id GROUP BY t1.id
+SELECT t1.id, count(1) AS c FROM my_db1.table1 t1 LEFT JOIN my_db2.table2 t2 ON t1.id = t2.id
+WITH 1 AS x SELECT a FROM (SELECT a FROM my_db.t3 PREWHERE b != 0)
+SELECT id FROM my_db.table1 WHERE id = 0
+SELECT id FROM my_db.my_table
+SELECT id FROM my_db1.table1 WHERE my_db1.table1.dt IN ('2021-10-03', '2021-10-01')
+SELECT id FROM my_db.events
+SELECT id FROM my_db.hourly
+SELECT id FROM my_db.daily
+SELECT id FROM my_db.tenants
+SELECT * FROM my_db.t PREWHERE id > 5
+SELECT * FROM my_db.t WHERE t.id = -1 AND t.id > 0
+SELECT * FROM my_db.t WHERE id > 9007199254740992
+SELECT * FROM my_db.t WHERE id = 9007199254740993
+SELECT * FROM t WHERE uid global in (SELECT uid FROM t2) AND (a BETWEEN 1 AND 2) FORMAT JSON
+SELECT id, name FROM my_db.my_tbl WHERE id = 1 AND name = 'a'
+select a, b from `my db`."t""1" where x in (1, 2.5, .5e3, 1e-5, 0x1F, 0x1.8p3, 0x1e+5, 017, 019, inf, Infinity, nan) format JSON
+SELECT * FROM t WHERE uid global in (SELECT uid FROM t2)
+SELECT a + 1, a - 2, a * 3, a / 4 FROM t ARRAY JOIN arr AS x, arr2 PREWHERE b = 1 WHERE c LIKE '%a%' ORDER BY a DESC, b LIMIT 10
+SELECT a FROM t WHERE ((a = 1) AND (b = 2 OR c = 3) AND d NOT IN (1,2) AND (e BETWEEN 1 AND 5)) LIMIT 5 BY a
+SELECT * FROM (SELECT a FROM t1 JOIN t2 ON t1.a = t2.a AND t1.b = t2.b) WHERE x IN (SELECT y FROM t3 WITH 1 AS q, 2 AS r)
+SELECT id FROM t1 RIGHT JOIN t2 ON t1.id = t2.id GLOBAL INNER JOIN t3 ON t2.id = t3.id GROUP BY id WITH ROLLUP UNION ALL SELECT 1
+SELECT quantile(0.5)(x), quantiles(0.5, 0.9)(x), countDistinct(y), count(DISTINCT y), now() FROM numbers(10)
+SELECT f('{,}', b), g('{,}'), equals('{VALUE}', 2) FROM t WHERE s = 'x{,}y' GROUP BY a, b HAVING count() > 1
+SELECT id, name FROM my_db.t WHERE id IN (1, 2, 3) AND name = 'abc' AND dt >= '2021-01-01' LIMIT 10
+select ID,  NAME from MY_DB.T where ID in (7) and NAME = 'xyz'  and DT >= '2022-02-02' limit 100
+SELECT id, name FROM my_db.t WHERE id IN (1, 2, 3) OR name = 'abc' AND dt >= '2021-01-01' LIMIT 10
+SELECT id, name FROM my_db.t WHERE id IN (5, 6) AND name = '' AND dt >= '2020-01-01' LIMIT 1
+SELECT toDate(DT) AS Day, countIf(X > 1) FROM My_Db.T WHERE ID != 1 GROUP BY Day
+SELECT a FROM t WHERE x IN (SELECT y FROM t3)
+SELECT a FROM t WHERE x IN (SELECT y FROM t3) AND b = 1
+SELECT a FROM t WHERE x LIKE concat('a', 'b') OR x LIKE 'z{,}'
+SELECT a FROM t PREWHERE x IN t2 WHERE b = '{VALUE}' AND c = '{VAR}'
+SELECT f(a, '') , g('', ''), h('{,}', ''), equals(a, ''), and(a, ''), divide('', 1) FROM t
+SELECT quantile(0.5)('{,}'), quantiles(0.5, '{,}')(x, ''), countDistinct('{,}', y), countDistinct(a, '') FROM t
+SELECT * FROM numbers(10) AS n JOIN remote('a', db, t) AS r ON n.number = r.x
+SELECT * FROM (SELECT a FROM t) AS s LEFT JOIN (SELECT b FROM u) AS v ON s.a = v.b GLOBAL LEFT JOIN w USING (a)
+SELECT * FROM a INNER JOIN b ON a.x = b.x AND a.y = b.y RIGHT JOIN c ON c.z = b.z FULL JOIN d ON d.q = c.q
+SELECT a, count() FROM t GROUP BY a, f('{,}', b) WITH CUBE HAVING count() > 1 AND g(a, b) = 'x{,}y' ORDER BY a ASC, b DESC, f(c, d) LIMIT 3 BY a LIMIT 100
+SELECT (SELECT max(a) FROM t) AS m, [1, 2, 3] AS arr, (1, 'a') AS tup, tuple(1, 2) FROM t FORMAT TSV
+SELECT a FROM t WHERE a IN (1, 2, 3) AND b NOT IN ('x', 'y') AND c GLOBAL IN (1) AND d IN 5 AND e IN (f(1), 2)
+SELECT a - 1, a + b, minus(a), plus(), a * b * c, -a, NOT a, a IS NULL, a ? b : c FROM t
+SELECT CASE WHEN a = 1 THEN 'x' ELSE 'y' END, CAST(a AS String), a[1], t.1, INTERVAL 1 DAY FROM t
+SELECT a AS `Weird{,}Name`, `b{VALUE}` FROM `db`.`tab{,}le` WHERE `b{VAR}` = 1 GROUP BY `c{,}d`
+SELECT * FROM t WHERE dt = '2021-10-01' AND dt >= '2021-01-01' AND x = 'A' SETTINGS max_threads = 1
+WITH 1 AS x, (SELECT 2) AS y SELECT x, y FROM t ARRAY JOIN arr AS e, [1,2] AS f
+SELECT a FROM t1 UNION ALL SELECT b FROM t2 UNION ALL SELECT c FROM t3 WHERE c LIKE 'q'
+SELECT NULL, a = NULL, f(NULL), inf, nan, 0x1F, 1e10, -1.5 FROM t WHERE NULL
+SELECT DISTINCT a FROM t FINAL WHERE 1 ORDER BY a COLLATE 'en' LIMIT 10, 20
+SELECT a FROM t WHERE and(a, b, c) AND or(a) AND equals(a, b, c) AND less(a)
+SELECT f()(), f(1)(), f(a)(b, c) FROM t
+SELECT a FROM t ORDER BY a WITH FILL LIMIT 1 OFFSET 2